@@ -1,6 +1,87 @@
 --create it as non-root user in a non-default database!
+--pg_trgm is a trusted extension (since Postgres 13), so it can be created by a database owner
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
 CREATE TABLE todo (
     id bigserial PRIMARY KEY,
     name text NOT NULL,
-    description text
-);
\ No newline at end of file
+    description text,
+    --name words are more relevant (weight A) than description ones (weight B)
+    search_document tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', name), 'A') ||
+        setweight(to_tsvector('english', coalesce(description, '')), 'B')
+    ) STORED
+);
+
+--ID is already indexed by the primary key, this one backs keyset pagination sorted by name
+CREATE INDEX todo_name_id ON todo (name, id);
+
+--Trigram indexes back case-insensitive, substring (ILIKE '%phrase%') name and description filters
+CREATE INDEX todo_name_trgm ON todo USING gin (name gin_trgm_ops);
+CREATE INDEX todo_description_trgm ON todo USING gin (description gin_trgm_ops);
+
+--Backs full-text (word) search
+CREATE INDEX todo_search_document ON todo USING gin (search_document);
+
+--Version of all todos, see TodoRepository.version().
+--It is striped by backend pid, so that concurrent writers mostly don't wait for each other's row lock
+CREATE TABLE IF NOT EXISTS todo_version (
+    slot smallint PRIMARY KEY,
+    version bigint NOT NULL
+);
+
+INSERT INTO todo_version (slot, version)
+SELECT s, 0 FROM generate_series(0, 15) AS s
+ON CONFLICT DO NOTHING;
+
+CREATE OR REPLACE FUNCTION increment_todo_version() RETURNS trigger AS $$
+BEGIN
+    UPDATE todo_version SET version = version + 1 WHERE slot = pg_backend_pid() % 16;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER todo_version_increment
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON todo
+    FOR EACH STATEMENT EXECUTE FUNCTION increment_todo_version();
+
+--Changes of todos for GET /todos/changes (see PostgresTodoChangesListener), delivered to listeners on commit.
+--One notification per statement, not per row: every notification is queued and serialized (by a global lock)
+--on commit, whether anyone listens or not. It has ids of changed todos (listener reads their current state),
+--or no ids if there are more than 300 of them, since max payload is 8000 bytes.
+--Triggers are created disabled: the app enables them when it starts the feed (TODO_CHANGES_FEED_ENABLED=true)
+--and disables them when it starts without it, see PostgresTodoChangesListener.
+CREATE OR REPLACE FUNCTION notify_todo_changes() RETURNS trigger AS $$
+DECLARE
+    changed_ids bigint[];
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        SELECT array_agg(id ORDER BY id) INTO changed_ids FROM old_todos;
+    ELSE
+        SELECT array_agg(id ORDER BY id) INTO changed_ids FROM new_todos;
+    END IF;
+
+    IF changed_ids IS NOT NULL THEN
+        PERFORM pg_notify('todo_changes', json_build_object(
+            'type', CASE TG_OP WHEN 'INSERT' THEN 'CREATED' WHEN 'UPDATE' THEN 'UPDATED' ELSE 'DELETED' END,
+            'ids', CASE WHEN cardinality(changed_ids) <= 300 THEN changed_ids END)::text);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+--Transition tables are allowed only in triggers of a single event
+CREATE TRIGGER todo_changes_insert_notify
+    AFTER INSERT ON todo REFERENCING NEW TABLE AS new_todos
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_todo_changes();
+
+CREATE TRIGGER todo_changes_update_notify
+    AFTER UPDATE ON todo REFERENCING NEW TABLE AS new_todos
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_todo_changes();
+
+CREATE TRIGGER todo_changes_delete_notify
+    AFTER DELETE ON todo REFERENCING OLD TABLE AS old_todos
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_todo_changes();
+
+ALTER TABLE todo DISABLE TRIGGER todo_changes_insert_notify, DISABLE TRIGGER todo_changes_update_notify,
+    DISABLE TRIGGER todo_changes_delete_notify;
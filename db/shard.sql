@@ -0,0 +1,16 @@
+--Makes a db (with schema.sql) a shard of ShardedTodoRepository, run it once on every shard, with its id:
+--psql -v shard_id=1 -f shard.sql
+--256 is ShardedTodoRepository.MAX_SHARDS, app checks all of it on start and refuses to start otherwise.
+--It doesn't move existing todos: every shard can have only ids of its shard id remainder (id % 256),
+--so todos created before sharding (ids 1..N) need to be moved to their shards (or renumbered) first.
+
+--Sequence generates only ids of the shard remainder, past all existing ids
+ALTER SEQUENCE todo_id_seq INCREMENT BY 256;
+
+SELECT setval('todo_id_seq',
+    (greatest((SELECT coalesce(max(id), 0) FROM todo), last_value) / 256 + 1) * 256 + :shard_id)
+FROM todo_id_seq
+WHERE last_value % 256 != :shard_id OR NOT is_called;
+
+--Sorted by name pages are merged by code points, so shards order names by "C" collation, whatever their default is
+CREATE INDEX IF NOT EXISTS todo_name_c_id ON todo (name COLLATE "C", id);
@@ -4,17 +4,48 @@ package com.igor101.thebesttodoapp;
 We need to create The Best Todo App.
 
 Endpoints to implement:
-* GET /todos?nameFilter={}&descriptionFilter={}
-    * without params (both are optional), returns all todos
+* GET /todos?nameFilter={}&descriptionFilter={}&sort={}&after={}&limit={}&stream={}&fields={}
+    * without params (all are optional), returns first page of all todos
     * with nameFilter returns all Todos that contain that phrase in name (case-insensitive)
     * with descriptionFilter returns all Todos that contain that phrase in description (case-insensitive)
+    * sort is either id (default) or name, id is always a tie-breaker
+    * after is an id of the last todo from the previous page (keyset pagination).
+      When sorting by name, it needs to point to an existing todo, otherwise page is empty
+    * limit is a page size, 100 by default, max 1000
+    * with stream=true todos are streamed from db cursor straight to the response, limit is then optional and unbounded
+    * fields are comma-separated todo fields (id, name, description) to return, all by default.
+      Listing without description (fields=id,name) doesn't read it from db, which makes it considerably lighter
+* GET /todos?q={}&limit={}
+    * full-text search: returns todos containing all words from q, ordered by relevance (name words are more relevant)
+    * limit is a number of top todos to return, 20 by default, max 100
+    * other GET /todos params are ignored
+* GET /todos?ids={}
+    * returns existing todos of given ids (comma-separated, max 100), ordered by id, other params are ignored
+* all GET /todos responses have a strong ETag of todos version (increased by every write, from any app instance)
+  and query params, so with a matching If-None-Match header 304 is returned, without querying todos
+* responses are json by default, but also CBOR, Smile or MessagePack, if client accepts them (Accept);
+  request bodies can be in any of these formats too (Content-Type)
+* responses are compressed with zstd or gzip, if client accepts them (Accept-Encoding)
 * POST /todos - adds new TodoData returning id
 * PUT /todos/{id} - updates TodoData returning Empty
 * DELETE /todos/{id} - deletes Todo returning Empty
+* POST /todos/batch - adds [TodoData] (max 100) returning [id], in the same order
+* PUT /todos/batch - updates [Todo] (max 100) returning Empty
+* DELETE /todos/batch?ids={} - deletes Todos of given ids (max 100) returning Empty
+* GET /todos/changes - Server-Sent Events stream of todo changes (created, updated and deleted events,
+  notified by db triggers), only with the db (not sharded); requires Accept: text/event-stream (sent by EventSource),
+  a client too slow to keep up is disconnected
+* GET /metrics - latency histograms of routes, concurrency limit, db pool and jvm metrics
+  in the Prometheus text format (not in the json format below)
+* GET /ready - 200 once the app is ready to serve requests (db pools are filled and app is warmed up, if enabled),
+  503 before
+* /todos requests over an adaptive concurrency limit (see ConcurrencyLimiter), if it is enabled,
+  are rejected right away with 503 and SERVICE_OVERLOADED error (streams are not limited)
 
 POST/PUT endpoints should validate TodoData:
 * name can't be null and should have between 2 to 50 characters
 * description is optional, but it can have max 1000 characters
+Batch is rejected if any of its items is invalid, errors of items have their index, like INVALID_TODO_NAME[1]
 
 ALL responses should have the following format:
 {
@@ -23,7 +54,11 @@ ALL responses should have the following format:
     "errors": [String] - list of meaningful errors
 }
 
-Todos should be stored in the relational database.
+Todos should be stored in the relational database
+(or, without it, in append-only log files with snapshots, see LogTodoRepository).
+Reads can be served by its replicas, see ReplicaRoutingTodoRepository,
+or todos can be spread across a few dbs, see ShardedTodoRepository.
+Requests can also be handled asynchronously, without http threads waiting for the db, see AsyncTodoController.
 
 We must also create a simple frontend that will show how the whole API works.
 It needs to be available under /(root) path.
@@ -34,33 +69,104 @@ ALL code (excluding frontend) needs to be thoroughly tested including database a
 
 import com.igor101.thebesttodoapp.application.ApiErrors;
 import com.igor101.thebesttodoapp.application.ApiResponse;
+import com.igor101.thebesttodoapp.application.AsyncTodoController;
+import com.igor101.thebesttodoapp.application.ConcurrencyLimiter;
 import com.igor101.thebesttodoapp.application.HttpFunctions;
+import com.igor101.thebesttodoapp.application.HttpMetrics;
+import com.igor101.thebesttodoapp.application.MetricsController;
+import com.igor101.thebesttodoapp.application.ReadinessController;
+import com.igor101.thebesttodoapp.application.ResponseCompression;
+import com.igor101.thebesttodoapp.application.StartupWarmUp;
+import com.igor101.thebesttodoapp.application.TodoChangesBroadcaster;
+import com.igor101.thebesttodoapp.application.TodoChangesController;
 import com.igor101.thebesttodoapp.application.TodoController;
+import com.igor101.thebesttodoapp.application.WireFormat;
+import com.igor101.thebesttodoapp.core.AsyncTodoService;
 import com.igor101.thebesttodoapp.core.TheBestTodoAppException;
+import com.igor101.thebesttodoapp.core.TodoRepository;
 import com.igor101.thebesttodoapp.core.TodoService;
+import com.igor101.thebesttodoapp.infrastructure.CachingTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.ClientWrites;
+import com.igor101.thebesttodoapp.infrastructure.ExecutorAsyncTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.GroupCommitTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.JdbcTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.LogTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.PostgresTodoChangesListener;
+import com.igor101.thebesttodoapp.infrastructure.ReplicaRoutingTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.ShardedTodoRepository;
 import com.igor101.thebesttodoapp.infrastructure.SqlTodoRepository;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.http.Context;
+import io.javalin.http.Cookie;
+import io.javalin.http.Header;
 import io.javalin.http.staticfiles.Location;
+import io.javalin.util.ConcurrencyUtil;
+import io.javalin.util.LoomThreadPool;
+import io.javalin.util.LoomUtil;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
 public class TheBestTodoApp {
 
     private static final Logger LOG = LoggerFactory.getLogger(TheBestTodoApp.class);
+    private static final String CLIENT_WRITES_COOKIE = "todos-write-position";
     private final TheBestTodoAppConfig config;
+    //If given, db is not used at all (useful for benchmarks)
+    private final TodoRepository inProcessTodoRepository;
+    private final HttpMetrics httpMetrics = new HttpMetrics();
+    private final ReadinessController readinessController = new ReadinessController();
     private Javalin app;
+    private HikariDataSource dataSource;
+    private CachingTodoRepository todosCache;
+    private GroupCommitTodoRepository groupCommitTodoRepository;
+    private LogTodoRepository logTodoRepository;
+    private ReplicaRoutingTodoRepository replicaRoutingTodoRepository;
+    private final List<HikariDataSource> replicaDataSources = new ArrayList<>();
+    private ShardedTodoRepository shardedTodoRepository;
+    private final List<HikariDataSource> shardDataSources = new ArrayList<>();
+    private ExecutorAsyncTodoRepository asyncTodoRepository;
+    private TodoChangesBroadcaster todoChangesBroadcaster;
+    private PostgresTodoChangesListener todoChangesListener;
 
-    public TheBestTodoApp(TheBestTodoAppConfig config) {
+    public TheBestTodoApp(TheBestTodoAppConfig config, TodoRepository inProcessTodoRepository) {
         this.config = config;
+        this.inProcessTodoRepository = inProcessTodoRepository;
+    }
+
+    public TheBestTodoApp(TheBestTodoAppConfig config) {
+        this(config, null);
     }
 
     public void start() {
         app = Javalin.create(c -> {
+            c.jetty.server(this::httpServer);
+            //Javalin measures execution time, it's the same for sync and async handlers
+            c.requestLogger.http((ctx, executionTimeMs) -> {
+                if (!StartupWarmUp.warmUpRequest(ctx)) {
+                    httpMetrics.record(ctx.method(), ctx.endpointHandlerPath(), ctx.statusCode(),
+                            (long) (executionTimeMs * 1000));
+                }
+            });
+            c.compression.custom(staticFilesCompression());
             if (config.staticFilesPath().isEmpty()) {
                 c.staticFiles.add("public", Location.CLASSPATH);
             } else {
@@ -68,38 +174,338 @@ public class TheBestTodoApp {
             }
         });
 
+        var compression = config.compression();
+        app.attribute(ResponseCompression.APP_ATTRIBUTE, new ResponseCompression(compression.enabled(),
+                compression.minSize(), compression.gzipLevel(), compression.zstdEnabled()));
+
         app.exception(Exception.class, (exception, ctx) -> {
             if (exception instanceof TheBestTodoAppException appException) {
                 LOG.warn("Handling AppException...", appException);
-                HttpFunctions.writeJsonResponse(ctx, ApiResponse.ofFailure(appException.errors()), 400);
+                HttpFunctions.writeResponse(ctx, ApiResponse.ofFailure(appException.errors()), 400);
+            } else if (exception instanceof RejectedExecutionException) {
+                //Queue of async todos calls is full, the same as over the concurrency limit
+                LOG.warn("Rejecting request, db threads are overloaded");
+                ctx.header(Header.RETRY_AFTER, "1");
+                HttpFunctions.writeResponse(ctx, ApiResponse.ofFailure(ApiErrors.SERVICE_OVERLOADED), 503);
             } else {
                 LOG.error("Handling unknown exception...", exception);
-                HttpFunctions.writeJsonResponse(ctx, ApiResponse.ofFailure(ApiErrors.UNKNOWN_ERROR), 500);
+                HttpFunctions.writeResponse(ctx, ApiResponse.ofFailure(ApiErrors.UNKNOWN_ERROR), 500);
             }
         });
 
-        var todoRepository = new SqlTodoRepository(dslContext());
+        var todoRepository = inProcessTodoRepository == null ? todoRepository() : inProcessTodoRepository;
         var todoService = new TodoService(todoRepository);
 
-        var todoController = new TodoController(todoService);
-        todoController.init(app);
+        if (replicaRoutingTodoRepository != null) {
+            app.before(ctx -> ClientWrites.bind(clientWrites(ctx)));
+            app.after(ctx -> ClientWrites.bind(null));
+        }
+
+        var concurrencyLimiter = concurrencyLimiter();
+        var asyncTodos = config.asyncTodos();
+        if (asyncTodos.enabled()) {
+            asyncTodoRepository = new ExecutorAsyncTodoRepository(todoRepository, asyncTodos.dbThreads(),
+                    asyncTodos.queueSize());
+            var asyncTodoController = new AsyncTodoController(new AsyncTodoService(asyncTodoRepository),
+                    todoService, concurrencyLimiter);
+            asyncTodoController.init(app);
+        } else {
+            var todoController = new TodoController(todoService, concurrencyLimiter);
+            todoController.init(app);
+        }
+
+        if (dataSource != null && config.dbShards().urls().isEmpty()) {
+            if (config.todoChangesFeed().enabled()) {
+                initTodoChangesFeed();
+            } else {
+                disableTodoChangesNotifications();
+            }
+        }
+
+        var metricsController = new MetricsController(httpMetrics, dbPoolStats(), concurrencyLimiter);
+        metricsController.init(app);
+
+        readinessController.init(app);
 
         app.start(config.httpPort());
+
+        prepareToServeRequests();
+    }
+
+    //Ready only when requests can be served fast, without creating db connections or loading classes
+    private void prepareToServeRequests() {
+        if (dataSource != null) {
+            fillDbPool(dataSource);
+        }
+        replicaDataSources.forEach(this::fillDbPool);
+        shardDataSources.forEach(this::fillDbPool);
+        if (config.warmUp().enabled()) {
+            new StartupWarmUp(config.httpPort(), config.warmUp().iterations()).run();
+        }
+        readinessController.ready();
+        LOG.info("Ready to serve requests, {} ms since jvm start", ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    //Pool fills itself in the background, but this way all connections are created before the first request
+    private void fillDbPool(HikariDataSource dataSource) {
+        var connections = new ArrayList<Connection>();
+        try {
+            for (int i = 0; i < dataSource.getMaximumPoolSize(); i++) {
+                connections.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            LOG.warn("Failed to fill db pool, it has {} connections", connections.size(), e);
+        } finally {
+            for (var c : connections) {
+                try {
+                    c.close();
+                } catch (SQLException e) {
+                    LOG.warn("Failed to return connection to db pool", e);
+                }
+            }
+        }
+    }
+
+    private ConcurrencyLimiter concurrencyLimiter() {
+        var limit = config.concurrencyLimit();
+        if (!limit.enabled()) {
+            return null;
+        }
+        return new ConcurrencyLimiter(limit.initialLimit(), limit.minLimit(), limit.maxLimit(),
+                limit.latencyThreshold());
+    }
+
+    private void initTodoChangesFeed() {
+        var feed = config.todoChangesFeed();
+        todoChangesBroadcaster = new TodoChangesBroadcaster(feed.clientBufferSize(), feed.senderThreads(),
+                feed.keepAliveInterval(), feed.sendTimeout());
+        todoChangesListener = new PostgresTodoChangesListener(config.dbUrl(), config.dbUser(), config.dbPassword(),
+                todoChangesBroadcaster::publish, todoChangesBroadcaster::publishMissedChanges);
+        todoChangesListener.start();
+
+        new TodoChangesController(todoChangesBroadcaster).init(app);
+    }
+
+    private void disableTodoChangesNotifications() {
+        try (var connection = dataSource.getConnection()) {
+            PostgresTodoChangesListener.notifyChanges(connection, false);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to disable todo changes notifications", e);
+        }
+    }
+
+    //Api responses are compressed by ResponseCompression, Javalin's gzip is left for static files and metrics
+    private CompressionStrategy staticFilesCompression() {
+        var compression = config.compression();
+        if (!compression.enabled()) {
+            return CompressionStrategy.NONE;
+        }
+
+        var strategy = new CompressionStrategy(null, new Gzip(compression.gzipLevel()));
+        strategy.setMinSizeForCompression(compression.minSize());
+
+        var excludedMimeTypes = new ArrayList<>(strategy.getExcludedMimeTypesFromCompression());
+        for (var format : WireFormat.values()) {
+            excludedMimeTypes.add(format.contentType());
+        }
+        strategy.setExcludedMimeTypesFromCompression(excludedMimeTypes);
+
+        return strategy;
+    }
+
+    private Supplier<MetricsController.DbPoolStats> dbPoolStats() {
+        if (dataSource == null) {
+            return null;
+        }
+        return () -> {
+            var pool = dataSource.getHikariPoolMXBean();
+            return new MetricsController.DbPoolStats(pool.getActiveConnections(), pool.getIdleConnections(),
+                    pool.getThreadsAwaitingConnection(), dataSource.getMaximumPoolSize());
+        };
+    }
+
+    private Server httpServer() {
+        var serverConfig = config.httpServer();
+
+        ConcurrencyUtil.INSTANCE.setUseLoom(serverConfig.virtualThreads());
+
+        if (!serverConfig.virtualThreads()) {
+            var threadPool = new QueuedThreadPool(serverConfig.maxThreads(), serverConfig.minThreads());
+            threadPool.setName("JettyServerThreadPool");
+            return new Server(threadPool);
+        }
+
+        if (!LoomUtil.INSTANCE.getLoomAvailable()) {
+            throw new RuntimeException("Virtual threads require Java 21+, but runtime is: "
+                    + System.getProperty("java.version"));
+        }
+
+        return new Server(new LoomThreadPool("JettyServerThreadPool"));
+    }
+
+    private TodoRepository todoRepository() {
+        var logStorage = config.logStorage();
+        if (logStorage.enabled()) {
+            logTodoRepository = new LogTodoRepository(Path.of(logStorage.directory()), logStorage.fsyncInterval(),
+                    logStorage.compactionThreshold());
+            return logTodoRepository;
+        }
+
+        TodoRepository dbTodoRepository;
+        if (!config.dbShards().urls().isEmpty()) {
+            dbTodoRepository = shardedTodoRepository();
+        } else if (config.dbReplicas().urls().isEmpty()) {
+            dbTodoRepository = sqlTodoRepository();
+        } else {
+            dbTodoRepository = replicaRoutingTodoRepository(sqlTodoRepository());
+        }
+
+        var cacheConfig = config.todosCache();
+        if (!cacheConfig.enabled()) {
+            return dbTodoRepository;
+        }
+
+        todosCache = new CachingTodoRepository(dbTodoRepository, cacheConfig.maxWeight(), cacheConfig.ttl(),
+                cacheConfig.versionRefreshInterval(), Clock.systemUTC());
+
+        return todosCache;
+    }
+
+    //Last write position of a client is kept in its cookie, see ReplicaRoutingTodoRepository
+    private static ClientWrites clientWrites(Context ctx) {
+        long lastWritePosition;
+        try {
+            var cookie = ctx.cookie(CLIENT_WRITES_COOKIE);
+            lastWritePosition = cookie == null ? 0 : Long.parseLong(cookie);
+        } catch (NumberFormatException e) {
+            lastWritePosition = 0;
+        }
+        //Session, http only cookie
+        return new ClientWrites(lastWritePosition, position -> ctx.cookie(
+                new Cookie(CLIENT_WRITES_COOKIE, String.valueOf(position), "/", -1, false, 0, true)));
+    }
+
+    //Replicas have pools of the same size as the primary, and so is the limit of their reader threads
+    private TodoRepository replicaRoutingTodoRepository(TodoRepository primary) {
+        var replicasConfig = config.dbReplicas();
+        var replicas = replicasConfig.urls().stream()
+                .map(url -> {
+                    var replicaDataSource = dataSource(url, false);
+                    replicaDataSources.add(replicaDataSource);
+                    if (config.jdbcRepository().enabled()) {
+                        var repository = new JdbcTodoRepository(replicaDataSource,
+                                config.jdbcRepository().prepareThreshold());
+                        return new ReplicaRoutingTodoRepository.Replica(url, repository, repository::replicationLag,
+                                repository::walPosition);
+                    }
+                    var repository = new SqlTodoRepository(DSL.using(replicaDataSource, SQLDialect.POSTGRES));
+                    return new ReplicaRoutingTodoRepository.Replica(url, repository, repository::replicationLag,
+                            repository::walPosition);
+                })
+                .toList();
+
+        var primaryWalPosition = new SqlTodoRepository(DSL.using(dataSource, SQLDialect.POSTGRES));
+        replicaRoutingTodoRepository = new ReplicaRoutingTodoRepository(primary, primaryWalPosition::walPosition,
+                replicas, replicas.size() * config.dbPool().size(), replicasConfig.maxLag(),
+                replicasConfig.healthCheckInterval(), replicasConfig.minHedgeDelay());
+
+        return replicaRoutingTodoRepository;
+    }
+
+    //Shards have pools of the same size as the primary, shard 0, and so is the limit of their worker threads
+    private TodoRepository shardedTodoRepository() {
+        var shards = new ArrayList<ShardedTodoRepository.Shard>();
+        shards.add(new ShardedTodoRepository.Shard(0, config.dbUrl(), dslContext()));
+
+        var urls = config.dbShards().urls();
+        for (int i = 0; i < urls.size(); i++) {
+            var shardDataSource = dataSource(urls.get(i), true);
+            shardDataSources.add(shardDataSource);
+            shards.add(new ShardedTodoRepository.Shard(i + 1, urls.get(i),
+                    DSL.using(shardDataSource, SQLDialect.POSTGRES)));
+        }
+
+        shardedTodoRepository = new ShardedTodoRepository(shards, shards.size() * config.dbPool().size());
+
+        return shardedTodoRepository;
+    }
+
+    //Group commit is jOOQ based, so it takes precedence over the jdbc repository
+    private TodoRepository sqlTodoRepository() {
+        var groupCommit = config.groupCommit();
+        if (!groupCommit.enabled() && config.jdbcRepository().enabled()) {
+            dataSource = dataSource(config.dbUrl(), true);
+            return new JdbcTodoRepository(dataSource, config.jdbcRepository().prepareThreshold());
+        }
+        if (!groupCommit.enabled()) {
+            return new SqlTodoRepository(dslContext());
+        }
+
+        groupCommitTodoRepository = new GroupCommitTodoRepository(dslContext(), groupCommit.maxSize(),
+                groupCommit.window());
+
+        return groupCommitTodoRepository;
+    }
+
+    //Null if cache is disabled
+    public CachingTodoRepository todosCache() {
+        return todosCache;
     }
 
     private DSLContext dslContext() {
+        dataSource = dataSource(config.dbUrl(), true);
+
+        return DSL.using(dataSource, SQLDialect.POSTGRES);
+    }
+
+    //Replicas might be down at start, so their pools may start empty (they are health checked anyway)
+    private HikariDataSource dataSource(String url, boolean failIfUnavailable) {
         var hikariConfig = new HikariConfig();
         hikariConfig.setUsername(config.dbUser());
         hikariConfig.setPassword(config.dbPassword());
-        hikariConfig.setJdbcUrl(config.dbUrl());
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setMaximumPoolSize(config.dbPool().size());
+        hikariConfig.setConnectionTimeout(config.dbPool().connectionTimeout().toMillis());
+        if (!failIfUnavailable) {
+            hikariConfig.setInitializationFailTimeout(-1);
+        }
 
-        return DSL.using(new HikariDataSource(hikariConfig), SQLDialect.POSTGRES);
+        return new HikariDataSource(hikariConfig);
     }
 
     public void stop() {
+        if (todoChangesListener != null) {
+            todoChangesListener.close();
+        }
+        if (todoChangesBroadcaster != null) {
+            todoChangesBroadcaster.close();
+        }
         if (app != null) {
             app.stop();
         }
+        if (asyncTodoRepository != null) {
+            asyncTodoRepository.close();
+        }
+        if (todosCache != null) {
+            todosCache.close();
+        }
+        if (groupCommitTodoRepository != null) {
+            groupCommitTodoRepository.close();
+        }
+        if (logTodoRepository != null) {
+            logTodoRepository.close();
+        }
+        if (replicaRoutingTodoRepository != null) {
+            replicaRoutingTodoRepository.close();
+        }
+        replicaDataSources.forEach(HikariDataSource::close);
+        if (shardedTodoRepository != null) {
+            shardedTodoRepository.close();
+        }
+        shardDataSources.forEach(HikariDataSource::close);
+        if (dataSource != null) {
+            dataSource.close();
+        }
     }
 
     public static void main(String[] args) {
@@ -107,5 +513,10 @@ public class TheBestTodoApp {
 
         var app = new TheBestTodoApp(config);
         app.start();
+
+        if (config.warmUp().exitAfter()) {
+            app.stop();
+            System.exit(0);
+        }
     }
 }
@@ -1,39 +1,315 @@
 package com.igor101.thebesttodoapp;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public record TheBestTodoAppConfig(int httpPort,
                                    String dbUser,
                                    String dbPassword,
                                    String dbUrl,
-                                   String staticFilesPath) {
+                                   String staticFilesPath,
+                                   TodosCache todosCache,
+                                   GroupCommit groupCommit,
+                                   HttpServer httpServer,
+                                   DbPool dbPool,
+                                   Compression compression,
+                                   LogStorage logStorage,
+                                   TodoChangesFeed todoChangesFeed,
+                                   DbReplicas dbReplicas,
+                                   JdbcRepository jdbcRepository,
+                                   ConcurrencyLimit concurrencyLimit,
+                                   WarmUp warmUp,
+                                   DbShards dbShards,
+                                   AsyncTodos asyncTodos) {
 
     public TheBestTodoAppConfig(int httpPort,
                                 String dbUser,
                                 String dbPassword,
                                 String dbUrl) {
-        this(httpPort, dbUser, dbPassword, dbUrl, "");
+        //Without warm-up, so that the app is ready as soon as it is started
+        this(httpPort, dbUser, dbPassword, dbUrl, "", TodosCache.DISABLED, GroupCommit.DISABLED, HttpServer.DEFAULT,
+                DbPool.DEFAULT, Compression.DEFAULT, LogStorage.DISABLED, TodoChangesFeed.DISABLED,
+                DbReplicas.NONE, JdbcRepository.DISABLED, ConcurrencyLimit.DISABLED, WarmUp.DISABLED, DbShards.NONE,
+                AsyncTodos.DISABLED);
     }
 
     public static TheBestTodoAppConfig fromEnvVariables() {
+        return fromEnvVariables(System.getenv());
+    }
+
+    static TheBestTodoAppConfig fromEnvVariables(Map<String, String> env) {
         int httpPort;
         try {
-            httpPort = Integer.parseInt(envVariableOrThrow("HTTP_PORT"));
+            httpPort = Integer.parseInt(envVariableOrThrow(env, "HTTP_PORT"));
         } catch (Exception e) {
             throw new RuntimeException("Invalid HTTP_PORT, integer is required", e);
         }
 
-        var dbUser = envVariableOrThrow("DB_USER");
-        var dbPassword = envVariableOrThrow("DB_PASSWORD");
-        var dbUrl = envVariableOrThrow("DB_URL");
-        var staticFilesPath = Optional.ofNullable(System.getenv("STATIC_FILES_PATH")).orElse("");
+        var logStorage = new LogStorage(Boolean.parseBoolean(envVariableOrDefault(env, "LOG_STORAGE_ENABLED", "false")),
+                envVariableOrDefault(env, "LOG_STORAGE_DIRECTORY", LogStorage.DEFAULT.directory()),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "LOG_STORAGE_FSYNC_INTERVAL_MILLIS",
+                        LogStorage.DEFAULT.fsyncInterval().toMillis())),
+                longEnvVariableOrDefault(env, "LOG_STORAGE_COMPACTION_THRESHOLD",
+                        LogStorage.DEFAULT.compactionThreshold()));
+
+        //Db is not used at all with log storage
+        var dbUser = logStorage.enabled() ? "" : envVariableOrThrow(env, "DB_USER");
+        var dbPassword = logStorage.enabled() ? "" : envVariableOrThrow(env, "DB_PASSWORD");
+        var dbUrl = logStorage.enabled() ? "" : envVariableOrThrow(env, "DB_URL");
+        var staticFilesPath = envVariableOrDefault(env, "STATIC_FILES_PATH", "");
+
+        var todosCache = new TodosCache(Boolean.parseBoolean(envVariableOrDefault(env, "TODOS_CACHE_ENABLED", "false")),
+                longEnvVariableOrDefault(env, "TODOS_CACHE_MAX_WEIGHT", TodosCache.DEFAULT_MAX_WEIGHT),
+                Duration.ofSeconds(longEnvVariableOrDefault(env, "TODOS_CACHE_TTL_SECONDS",
+                        TodosCache.DEFAULT_TTL.toSeconds())),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "TODOS_CACHE_VERSION_REFRESH_INTERVAL_MILLIS",
+                        TodosCache.DEFAULT_VERSION_REFRESH_INTERVAL.toMillis())));
+
+        var groupCommit = new GroupCommit(
+                Boolean.parseBoolean(envVariableOrDefault(env, "GROUP_COMMIT_ENABLED", "false")),
+                (int) longEnvVariableOrDefault(env, "GROUP_COMMIT_MAX_SIZE", GroupCommit.DEFAULT_MAX_SIZE),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "GROUP_COMMIT_WINDOW_MILLIS",
+                        GroupCommit.DEFAULT_WINDOW.toMillis())));
+
+        var httpServer = new HttpServer(
+                Boolean.parseBoolean(envVariableOrDefault(env, "VIRTUAL_THREADS_ENABLED", "false")),
+                (int) longEnvVariableOrDefault(env, "HTTP_SERVER_MIN_THREADS", HttpServer.DEFAULT.minThreads()),
+                (int) longEnvVariableOrDefault(env, "HTTP_SERVER_MAX_THREADS", HttpServer.DEFAULT.maxThreads()));
+
+        var dbPool = new DbPool((int) longEnvVariableOrDefault(env, "DB_POOL_SIZE", DbPool.DEFAULT.size()),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "DB_CONNECTION_TIMEOUT_MILLIS",
+                        DbPool.DEFAULT.connectionTimeout().toMillis())));
+
+        var compression = new Compression(
+                Boolean.parseBoolean(envVariableOrDefault(env, "COMPRESSION_ENABLED", "true")),
+                (int) longEnvVariableOrDefault(env, "COMPRESSION_MIN_SIZE", Compression.DEFAULT.minSize()),
+                (int) longEnvVariableOrDefault(env, "COMPRESSION_GZIP_LEVEL", Compression.DEFAULT.gzipLevel()),
+                Boolean.parseBoolean(envVariableOrDefault(env, "COMPRESSION_ZSTD_ENABLED", "true")));
+
+        var todoChangesFeed = new TodoChangesFeed(
+                Boolean.parseBoolean(envVariableOrDefault(env, "TODO_CHANGES_FEED_ENABLED", "false")),
+                (int) longEnvVariableOrDefault(env, "TODO_CHANGES_FEED_CLIENT_BUFFER_SIZE",
+                        TodoChangesFeed.ENABLED.clientBufferSize()),
+                (int) longEnvVariableOrDefault(env, "TODO_CHANGES_FEED_SENDER_THREADS",
+                        TodoChangesFeed.ENABLED.senderThreads()),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "TODO_CHANGES_FEED_KEEP_ALIVE_INTERVAL_MILLIS",
+                        TodoChangesFeed.ENABLED.keepAliveInterval().toMillis())),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "TODO_CHANGES_FEED_SEND_TIMEOUT_MILLIS",
+                        TodoChangesFeed.ENABLED.sendTimeout().toMillis())));
+
+        var dbReplicas = new DbReplicas(urlsEnvVariable(env, "DB_REPLICA_URLS"),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "DB_REPLICAS_MAX_LAG_MILLIS",
+                        DbReplicas.NONE.maxLag().toMillis())),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "DB_REPLICAS_HEALTH_CHECK_INTERVAL_MILLIS",
+                        DbReplicas.NONE.healthCheckInterval().toMillis())),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "DB_REPLICAS_MIN_HEDGE_DELAY_MILLIS",
+                        DbReplicas.NONE.minHedgeDelay().toMillis())));
+
+        var jdbcRepository = new JdbcRepository(
+                Boolean.parseBoolean(envVariableOrDefault(env, "JDBC_REPOSITORY_ENABLED", "false")),
+                (int) longEnvVariableOrDefault(env, "JDBC_REPOSITORY_PREPARE_THRESHOLD",
+                        JdbcRepository.DISABLED.prepareThreshold()));
+
+        var concurrencyLimit = new ConcurrencyLimit(
+                Boolean.parseBoolean(envVariableOrDefault(env, "CONCURRENCY_LIMIT_ENABLED", "false")),
+                (int) longEnvVariableOrDefault(env, "CONCURRENCY_LIMIT_INITIAL",
+                        ConcurrencyLimit.DISABLED.initialLimit()),
+                (int) longEnvVariableOrDefault(env, "CONCURRENCY_LIMIT_MIN", ConcurrencyLimit.DISABLED.minLimit()),
+                (int) longEnvVariableOrDefault(env, "CONCURRENCY_LIMIT_MAX", ConcurrencyLimit.DISABLED.maxLimit()),
+                Duration.ofMillis(longEnvVariableOrDefault(env, "CONCURRENCY_LIMIT_LATENCY_THRESHOLD_MILLIS",
+                        ConcurrencyLimit.DISABLED.latencyThreshold().toMillis())));
+
+        var warmUp = new WarmUp(Boolean.parseBoolean(envVariableOrDefault(env, "WARM_UP_ENABLED", "false")),
+                (int) longEnvVariableOrDefault(env, "WARM_UP_ITERATIONS", WarmUp.DEFAULT.iterations()),
+                Boolean.parseBoolean(envVariableOrDefault(env, "WARM_UP_EXIT_AFTER", "false")));
+
+        var dbShards = new DbShards(urlsEnvVariable(env, "DB_SHARD_URLS"));
+
+        var asyncTodos = new AsyncTodos(Boolean.parseBoolean(envVariableOrDefault(env, "ASYNC_TODOS_ENABLED", "false")),
+                (int) longEnvVariableOrDefault(env, "ASYNC_TODOS_DB_THREADS", AsyncTodos.dbThreads(dbPool)),
+                (int) longEnvVariableOrDefault(env, "ASYNC_TODOS_QUEUE_SIZE", AsyncTodos.DISABLED.queueSize()));
+
+        return new TheBestTodoAppConfig(httpPort, dbUser, dbPassword, dbUrl, staticFilesPath, todosCache,
+                groupCommit, httpServer, dbPool, compression, logStorage, todoChangesFeed, dbReplicas, jdbcRepository,
+                concurrencyLimit, warmUp, dbShards, asyncTodos);
+    }
 
-        return new TheBestTodoAppConfig(httpPort, dbUser, dbPassword, dbUrl, staticFilesPath);
+    //Comma-separated
+    private static List<String> urlsEnvVariable(Map<String, String> env, String key) {
+        return Arrays.stream(envVariableOrDefault(env, key, "").split(","))
+                .map(String::strip)
+                .filter(u -> !u.isEmpty())
+                .toList();
     }
 
-    private static String envVariableOrThrow(String key) {
-        return Optional.ofNullable(System.getenv(key))
+    private static String envVariableOrThrow(Map<String, String> env, String key) {
+        return Optional.ofNullable(env.get(key))
                 .orElseThrow(() -> new RuntimeException(
                         "Env variable of %s key is required, but was null".formatted(key)));
     }
+
+    private static String envVariableOrDefault(Map<String, String> env, String key, String defaultValue) {
+        return Optional.ofNullable(env.get(key)).orElse(defaultValue);
+    }
+
+    private static long longEnvVariableOrDefault(Map<String, String> env, String key, long defaultValue) {
+        try {
+            return Long.parseLong(envVariableOrDefault(env, key, String.valueOf(defaultValue)));
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid %s, integer is required".formatted(key), e);
+        }
+    }
+
+    /*
+    maxWeight is an approximate size of cached todos, in bytes.
+    Writes of other app instances are noticed (by a version read in the background) after versionRefreshInterval.
+    */
+    public record TodosCache(boolean enabled, long maxWeight, Duration ttl, Duration versionRefreshInterval) {
+
+        static final long DEFAULT_MAX_WEIGHT = 50 * 1024 * 1024;
+        static final Duration DEFAULT_TTL = Duration.ofSeconds(60);
+        static final Duration DEFAULT_VERSION_REFRESH_INTERVAL = Duration.ofSeconds(1);
+        static final TodosCache DISABLED = new TodosCache(false, DEFAULT_MAX_WEIGHT, DEFAULT_TTL,
+                DEFAULT_VERSION_REFRESH_INTERVAL);
+    }
+
+    //Writes of concurrent requests are committed together, in groups of maxSize or collected within window
+    public record GroupCommit(boolean enabled, int maxSize, Duration window) {
+
+        static final int DEFAULT_MAX_SIZE = 100;
+        static final Duration DEFAULT_WINDOW = Duration.ofMillis(2);
+        static final GroupCommit DISABLED = new GroupCommit(false, DEFAULT_MAX_SIZE, DEFAULT_WINDOW);
+    }
+
+    /*
+    With virtual threads (app is built for Java 21, so its runtime has them), every request has its own thread,
+    so min/max threads are ignored and concurrency is limited only by the DbPool: requests wait up to
+    its connectionTimeout for a connection. See HttpThreadsBenchmark for the comparison of both modes.
+    */
+    public record HttpServer(boolean virtualThreads, int minThreads, int maxThreads) {
+
+        static final HttpServer DEFAULT = new HttpServer(false, 8, 200);
+    }
+
+    public record DbPool(int size, Duration connectionTimeout) {
+
+        static final DbPool DEFAULT = new DbPool(10, Duration.ofSeconds(30));
+    }
+
+    /*
+    Compression of responses bigger than minSize (in bytes), negotiated by Accept-Encoding.
+    gzipLevel is from 1 (fastest) to 9 (smallest), zstd has its own, fixed level.
+    */
+    public record Compression(boolean enabled, int minSize, int gzipLevel, boolean zstdEnabled) {
+
+        static final Compression DEFAULT = new Compression(true, 1024, 4, true);
+        static final Compression DISABLED = new Compression(false, DEFAULT.minSize, DEFAULT.gzipLevel, false);
+    }
+
+    /*
+    Todos stored in an append-only log files in the directory (see LogTodoRepository), instead of the db.
+    With zero fsyncInterval every write is forced to disk before it returns, otherwise logs are forced
+    every interval. Log is compacted to a snapshot when it grows over compactionThreshold bytes.
+    */
+    public record LogStorage(boolean enabled, String directory, Duration fsyncInterval, long compactionThreshold) {
+
+        static final LogStorage DEFAULT = new LogStorage(true, "todos-data", Duration.ZERO, 64 * 1024 * 1024);
+        static final LogStorage DISABLED = new LogStorage(false, DEFAULT.directory, DEFAULT.fsyncInterval,
+                DEFAULT.compactionThreshold);
+    }
+
+    /*
+    GET /todos/changes, available only with the db (changes are notified by it), it is opt-in: notifying triggers
+    are enabled only when the feed is started (and disabled when the app starts without it, see
+    PostgresTodoChangesListener), since every notification costs a global lock on commit.
+    Every client has a buffer of clientBufferSize events, it is disconnected if it is full (client is too slow)
+    or if sending an event to it takes longer than sendTimeout.
+    */
+    public record TodoChangesFeed(boolean enabled, int clientBufferSize, int senderThreads,
+                                  Duration keepAliveInterval, Duration sendTimeout) {
+
+        static final TodoChangesFeed ENABLED = new TodoChangesFeed(true, 1000, 4, Duration.ofSeconds(15),
+                Duration.ofSeconds(5));
+        static final TodoChangesFeed DISABLED = new TodoChangesFeed(false, ENABLED.clientBufferSize,
+                ENABLED.senderThreads, ENABLED.keepAliveInterval, ENABLED.sendTimeout);
+    }
+
+    /*
+    Urls of db replicas (with the same user and password as the primary), serving reads,
+    see ReplicaRoutingTodoRepository. Replicas lagging more than maxLag don't serve them.
+    Clients read their own writes, since the app keeps their last write position in a cookie.
+    */
+    public record DbReplicas(List<String> urls, Duration maxLag, Duration healthCheckInterval,
+                             Duration minHedgeDelay) {
+
+        static final DbReplicas NONE = new DbReplicas(List.of(), Duration.ofSeconds(1), Duration.ofSeconds(1),
+                Duration.ofMillis(2));
+    }
+
+    /*
+    Todos are read and written by plain jdbc statements, see JdbcTodoRepository, instead of jOOQ queries
+    (unless group commit is enabled). A statement is server-side prepared after prepareThreshold executions
+    on a connection (0 - never).
+    */
+    public record JdbcRepository(boolean enabled, int prepareThreshold) {
+
+        static final JdbcRepository DISABLED = new JdbcRepository(false, 1);
+    }
+
+    /*
+    Adaptive limit of concurrent todos requests, see ConcurrencyLimiter: requests over it are rejected with 503.
+    It shrinks when requests take longer than latencyThreshold and grows when they don't.
+    It is opt-in: latencyThreshold needs to be tuned to the latencies of a given deployment,
+    otherwise the limit might shrink under a load that the app and db handle fine.
+    */
+    public record ConcurrencyLimit(boolean enabled, int initialLimit, int minLimit, int maxLimit,
+                                   Duration latencyThreshold) {
+
+        static final ConcurrencyLimit DISABLED = new ConcurrencyLimit(false, 20, 4, 200, Duration.ofMillis(250));
+        static final ConcurrencyLimit ENABLED = new ConcurrencyLimit(true, DISABLED.initialLimit,
+                DISABLED.minLimit, DISABLED.maxLimit, DISABLED.latencyThreshold);
+    }
+
+    /*
+    Before the app is ready (see ReadinessController), every todos route is requested iterations times,
+    without writing anything, see StartupWarmUp. With exitAfter, app exits right after it:
+    it is a training run, creating the AppCDS archive (see Dockerfile).
+    It is opt-in: with it, app gets ready a few times later and reaches its steady latency later too,
+    only its first requests are faster (see StartupBenchmark).
+    */
+    public record WarmUp(boolean enabled, int iterations, boolean exitAfter) {
+
+        static final WarmUp DEFAULT = new WarmUp(true, 20, false);
+        static final WarmUp DISABLED = new WarmUp(false, DEFAULT.iterations, false);
+    }
+
+    /*
+    Urls of db shards (with the same user and password as the primary), other than the primary, which is
+    the first shard; see ShardedTodoRepository. Shard id is the url position (primary is 0, the first url is 1),
+    so new urls need to be appended; every shard needs db/shard.sql run with its id before the start.
+    With shards, replicas, group commit and jdbc repository are not used,
+    and there is no todo changes feed (it would have changes of the primary only).
+    */
+    public record DbShards(List<String> urls) {
+
+        static final DbShards NONE = new DbShards(List.of());
+    }
+
+    /*
+    Todos requests are handled asynchronously, see AsyncTodoController: http threads don't wait for the db,
+    todos are read and written by dbThreads, with up to queueSize calls waiting for them
+    (see ExecutorAsyncTodoRepository), calls over it are rejected with 503.
+    Db threads also write responses, so by default there are a bit more of them than db connections.
+    */
+    public record AsyncTodos(boolean enabled, int dbThreads, int queueSize) {
+
+        static final AsyncTodos DISABLED = new AsyncTodos(false, dbThreads(DbPool.DEFAULT), 1000);
+
+        static int dbThreads(DbPool dbPool) {
+            return dbPool.size() + 2;
+        }
+    }
 }
@@ -5,4 +5,6 @@ public class ApiErrors {
     public static final String INVALID_PATH_PARAM = "INVALID_PATH_PARAM";
     public static final String INVALID_QUERY_PARAM = "INVALID_QUERY_PARAM";
     public static final String UNKNOWN_ERROR = "UNKNOWN_ERROR";
+    public static final String SERVICE_OVERLOADED = "SERVICE_OVERLOADED";
+    public static final String NOT_READY = "NOT_READY";
 }
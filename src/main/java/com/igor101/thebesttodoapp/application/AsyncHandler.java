@@ -0,0 +1,22 @@
+package com.igor101.thebesttodoapp.application;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+import java.util.concurrent.CompletableFuture;
+
+//Handler of requests completed by the returned future (see Context.future), null if it was completed right away
+@FunctionalInterface
+public interface AsyncHandler {
+
+    CompletableFuture<?> handle(Context context) throws Exception;
+
+    static Handler of(AsyncHandler handler) {
+        return ctx -> {
+            var future = handler.handle(ctx);
+            if (future != null) {
+                ctx.future(() -> future);
+            }
+        };
+    }
+}
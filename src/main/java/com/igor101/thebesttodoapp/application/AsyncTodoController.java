@@ -0,0 +1,118 @@
+package com.igor101.thebesttodoapp.application;
+
+import com.igor101.thebesttodoapp.core.AsyncTodoService;
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoService;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/*
+The same routes as TodoController, but handled by AsyncTodoService: an http thread only parses a request
+and is released, its response is written when todos are read or written (see Context.future).
+Streams are handled by TodoController, synchronously and not limited:
+they keep their connection and thread until they end anyway.
+*/
+public class AsyncTodoController {
+
+    private final AsyncTodoService service;
+    private final TodoController streamsController;
+    //Null if requests are not limited
+    private final ConcurrencyLimiter limiter;
+
+    public AsyncTodoController(AsyncTodoService service, TodoService streamsService, ConcurrencyLimiter limiter) {
+        this.service = service;
+        this.streamsController = new TodoController(streamsService);
+        this.limiter = limiter;
+    }
+
+    public void init(Javalin app) {
+        var limitedTodos = limited(this::todos);
+        app.get(TodoController.PATH, ctx -> {
+            if (TodoController.streamed(ctx)) {
+                streamsController.todos(ctx);
+            } else {
+                limitedTodos.handle(ctx);
+            }
+        });
+
+        app.post(TodoController.PATH, limited(ctx -> {
+            var newTodo = HttpFunctions.objectFromBody(ctx, TodoData.class);
+
+            return service.create(newTodo)
+                    .thenAccept(id -> HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(id), 201));
+        }));
+
+        app.post(TodoController.BATCH_PATH, limited(ctx -> {
+            var newTodos = HttpFunctions.objectFromBody(ctx, TodoData[].class);
+
+            return service.createAll(Arrays.asList(newTodos))
+                    .thenAccept(ids -> HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(ids), 201));
+        }));
+
+        //Batch routes need to be registered before /{id} ones, which would match them otherwise
+        app.put(TodoController.BATCH_PATH, limited(ctx -> {
+            var todos = HttpFunctions.objectFromBody(ctx, Todo[].class);
+
+            return service.updateAll(Arrays.asList(todos))
+                    .thenRun(() -> HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200));
+        }));
+
+        app.delete(TodoController.BATCH_PATH, limited(ctx -> {
+            var ids = HttpFunctions.longsQueryParam(ctx, "ids");
+
+            return service.deleteAll(ids)
+                    .thenRun(() -> HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200));
+        }));
+
+        app.put(TodoController.PATH + "/{id}", limited(ctx -> {
+            var todoId = HttpFunctions.pathParam(ctx, "id", Long.class);
+            var todoData = HttpFunctions.objectFromBody(ctx, TodoData.class);
+
+            return service.update(todoId, todoData)
+                    .thenRun(() -> HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200));
+        }));
+
+        app.delete(TodoController.PATH + "/{id}", limited(ctx -> {
+            var todoId = HttpFunctions.pathParam(ctx, "id", Long.class);
+
+            return service.delete(todoId)
+                    .thenRun(() -> HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200));
+        }));
+    }
+
+    private CompletableFuture<?> todos(Context ctx) {
+        //Read before todos, so that they are at least as new as it
+        return service.todosVersion().thenCompose(version -> {
+            var etag = HttpFunctions.etag(ctx, version);
+            if (HttpFunctions.notModified(ctx, etag)) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            var search = TodoController.todosSearch(ctx);
+            if (search != null) {
+                return service.search(search)
+                        .thenAccept(todos -> HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(todos), 200));
+            }
+
+            var ids = HttpFunctions.longsQueryParam(ctx, "ids");
+            if (ids != null) {
+                return service.todos(ids)
+                        .thenAccept(todos -> HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(todos), 200));
+            }
+
+            var query = TodoController.todosQuery(ctx, false);
+            return service.todos(query)
+                    .thenAccept(todos -> HttpFunctions.writeResponse(ctx,
+                            ApiResponse.ofSuccess(TodoController.projected(todos, query.fields())), 200));
+        });
+    }
+
+    private Handler limited(AsyncHandler handler) {
+        return limiter == null ? AsyncHandler.of(handler) : limiter.limitedAsync(handler);
+    }
+}
@@ -0,0 +1,178 @@
+package com.igor101.thebesttodoapp.application;
+
+import com.igor101.thebesttodoapp.core.TheBestTodoAppException;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.Header;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Adaptive (AIMD) limit of concurrently handled requests. Requests over the limit are rejected right away with 503,
+instead of waiting for db connections until their clients time out: when the db slows down, queueing makes
+latency of all requests collapse and most of the work is then wasted on responses that no one waits for.
+Limit grows by one with every request faster than latencyThreshold, but only if at least half of the limit
+was in use (otherwise there is no evidence that more concurrency is fine).
+It shrinks by BACKOFF_RATIO with a slower request or one that failed with an unknown (not validation) error,
+at most once per such a round trip: requests started before the last decrease don't decrease it again,
+since they were admitted by an old limit.
+Limit is always between minLimit and maxLimit.
+Nothing is synchronized: in flight requests are an atomic counter, limit and time of its last decrease
+are changed by compare-and-set.
+Streamed responses are not limited (see TodoController): they are long and their latency depends on clients.
+Neither are warm-up requests (see StartupWarmUp), made before the app is ready.
+*/
+public class ConcurrencyLimiter {
+
+    static final double BACKOFF_RATIO = 0.9;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    //Bits of double, to be compared and set
+    private final AtomicLong limit;
+    private final AtomicLong lastDecreaseNanos = new AtomicLong(System.nanoTime());
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.limit = new AtomicLong(Double.doubleToLongBits(Math.max(minLimit, Math.min(maxLimit, initialLimit))));
+    }
+
+    public Handler limited(Handler handler) {
+        return ctx -> {
+            if (StartupWarmUp.warmUpRequest(ctx)) {
+                handler.handle(ctx);
+                return;
+            }
+            if (!tryAcquire()) {
+                reject(ctx);
+                return;
+            }
+            var start = System.nanoTime();
+            var failed = false;
+            try {
+                handler.handle(ctx);
+            } catch (Exception e) {
+                failed = !(e instanceof TheBestTodoAppException);
+                throw e;
+            } finally {
+                release(start, System.nanoTime() - start, failed);
+            }
+        };
+    }
+
+    //Request is in flight until its future completes, not only until the handler returns
+    public Handler limitedAsync(AsyncHandler handler) {
+        var unlimited = AsyncHandler.of(handler);
+        return ctx -> {
+            if (StartupWarmUp.warmUpRequest(ctx)) {
+                unlimited.handle(ctx);
+                return;
+            }
+            if (!tryAcquire()) {
+                reject(ctx);
+                return;
+            }
+            var start = System.nanoTime();
+            CompletableFuture<?> future;
+            try {
+                future = handler.handle(ctx);
+            } catch (Exception e) {
+                release(start, System.nanoTime() - start, !(e instanceof TheBestTodoAppException));
+                throw e;
+            }
+            if (future == null) {
+                release(start, System.nanoTime() - start, false);
+                return;
+            }
+            ctx.future(() -> future.whenComplete((r, e) -> release(start, System.nanoTime() - start,
+                    e != null && !(unwrapped(e) instanceof TheBestTodoAppException))));
+        };
+    }
+
+    private static void reject(Context context) {
+        context.header(Header.RETRY_AFTER, "1");
+        HttpFunctions.writeResponse(context, ApiResponse.ofFailure(ApiErrors.SERVICE_OVERLOADED), 503);
+    }
+
+    private static Throwable unwrapped(Throwable exception) {
+        return exception instanceof CompletionException && exception.getCause() != null ?
+                exception.getCause() : exception;
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            var current = inFlight.get();
+            if (current >= limit()) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release(long startNanos, long latencyNanos, boolean failed) {
+        var wasInFlight = inFlight.getAndDecrement();
+        if (failed || latencyNanos > latencyThresholdNanos) {
+            var lastDecrease = lastDecreaseNanos.get();
+            if (startNanos - lastDecrease > 0
+                    && lastDecreaseNanos.compareAndSet(lastDecrease, startNanos + latencyNanos)) {
+                changeLimit(true, wasInFlight);
+            }
+        } else {
+            changeLimit(false, wasInFlight);
+        }
+    }
+
+    private void changeLimit(boolean decrease, int wasInFlight) {
+        while (true) {
+            var currentBits = limit.get();
+            var current = Double.longBitsToDouble(currentBits);
+            double changed;
+            if (decrease) {
+                changed = Math.max(minLimit, current * BACKOFF_RATIO);
+            } else if (wasInFlight * 2 >= current) {
+                changed = Math.min(maxLimit, current + 1);
+            } else {
+                return;
+            }
+            if (changed == current || limit.compareAndSet(currentBits, Double.doubleToLongBits(changed))) {
+                return;
+            }
+        }
+    }
+
+    public int limit() {
+        return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    void write(PrometheusWriter writer) {
+        writer.type("todos_concurrency_limit", "gauge", "Current limit of concurrently handled todos requests");
+        writer.sample("todos_concurrency_limit", null, limit());
+
+        writer.type("todos_requests_in_flight", "gauge", "Todos requests handled right now");
+        writer.sample("todos_requests_in_flight", null, inFlight());
+
+        writer.type("todos_requests_rejected_total", "counter",
+                "Todos requests rejected (with 503), because of the concurrency limit");
+        writer.sample("todos_requests_rejected_total", null, rejected());
+    }
+}
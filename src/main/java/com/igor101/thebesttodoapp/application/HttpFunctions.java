@@ -1,27 +1,176 @@
 package com.igor101.thebesttodoapp.application;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.igor101.thebesttodoapp.core.TheBestTodoAppException;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
 public class HttpFunctions {
 
     private static final Logger LOG = LoggerFactory.getLogger(HttpFunctions.class);
+    private static final int QUERY_HASH_BYTES = 16;
+
+    /*
+    In a format negotiated by Accept header (json by default), compressed if client accepts it.
+    Serialized into a pooled ResponseBuffer and written straight to the response output from it,
+    so that nothing is written if serialization fails, and an error response can still be returned.
+    */
+    public static void writeResponse(Context context, Object response, int responseCode) {
+        var format = responseFormat(context);
+        var buffer = ResponseBuffer.borrow();
+        try {
+            format.write(response, buffer);
+
+            context.status(responseCode)
+                    .header(Header.CONTENT_TYPE, format.contentType());
+
+            var compressed = ResponseCompression.of(context).compress(context, buffer.bytes(), buffer.size());
+            if (compressed == null) {
+                context.outputStream().write(buffer.bytes(), 0, buffer.size());
+            } else {
+                context.outputStream().write(compressed);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            ResponseBuffer.release(buffer);
+        }
+    }
 
-    public static void writeJsonResponse(Context context, Object response, int responseCode) {
-        var jsonResponse = JsonMapper.toJson(response);
+    //Also adds Vary: Accept header, since response representation depends on it
+    public static WireFormat responseFormat(Context context) {
+        if (!context.res().getHeaders(Header.VARY).contains(Header.ACCEPT)) {
+            context.res().addHeader(Header.VARY, Header.ACCEPT);
+        }
+        return WireFormat.ofAccept(context.header(Header.ACCEPT));
+    }
 
+    /*
+    Writes the same {success, data, errors} envelope as writeResponse, but with data items written one by one,
+    straight to the response output stream.
+    Generator (and compressing stream, if any) is closed (flushed) only on success,
+    so that if an error happens before its buffer was flushed, nothing is written,
+    and an error response can still be returned.
+    */
+    public static <T> void writeStreamResponse(Context context,
+                                               Consumer<Consumer<T>> dataStream,
+                                               int responseCode) {
+        var format = responseFormat(context);
         context.status(responseCode)
-                .result(jsonResponse)
-                .header("content-type", "application/json");
+                .header(Header.CONTENT_TYPE, format.contentType());
+        try {
+            var responseOutput = context.outputStream();
+            var output = ResponseCompression.of(context).compress(context, responseOutput);
+            var generator = format.generator(output);
+
+            generator.writeStartObject();
+            generator.writeBooleanField("success", true);
+            generator.writeArrayFieldStart("data");
+
+            dataStream.accept(item -> writeObject(generator, item));
+
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("errors");
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            generator.close();
+            if (output != responseOutput) {
+                output.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeObject(JsonGenerator generator, Object object) {
+        try {
+            generator.writeObject(object);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+    Strong ETag of a collection version, query string (filters and so on) and response format,
+    that is the same on every app instance.
+    */
+    public static String etag(Context context, long version) {
+        var format = responseFormat(context);
+        var formatSuffix = format == WireFormat.JSON ? "" : "-" + format.name().toLowerCase();
+        return "\"%d-%s%s\"".formatted(version, queryHash(context.queryString()), formatSuffix);
     }
 
-    public static <T> T jsonFromBody(Context context, Class<T> type) {
+    /*
+    SHA-256 of the query string with params sorted by their names (stable, so that values of a repeated param
+    keep their order), truncated to 128 bits, so that different queries practically never share an ETag.
+    */
+    static String queryHash(String queryString) {
+        var normalized = queryString == null || queryString.isEmpty() ? "" : Arrays.stream(queryString.split("&"))
+                .sorted(Comparator.comparing(p -> p.split("=", 2)[0]))
+                .collect(Collectors.joining("&"));
         try {
-            return JsonMapper.toObject(context.body(), type);
+            var hash = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, QUERY_HASH_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform is required to support it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //If true, 304 response was already set
+    public static boolean notModified(Context context, String etag) {
+        context.header(Header.ETAG, etag);
+
+        var ifNoneMatch = context.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        var etags = ResponseCompression.allEncodingsETags(etag);
+        var matched = Arrays.stream(ifNoneMatch.split(","))
+                .map(String::strip)
+                //If-None-Match uses weak comparison
+                .map(t -> t.startsWith("W/") ? t.substring(2) : t)
+                .filter(t -> t.equals("*") || etags.contains(t))
+                .findFirst();
+        if (matched.isEmpty()) {
+            return false;
+        }
+
+        //The same representation that client has, compressed one has ETag of its encoding
+        context.header(Header.ETAG, matched.get().equals("*") ? etag : matched.get())
+                .status(HttpStatus.NOT_MODIFIED);
+        return true;
+    }
+
+    //In a format of Content-Type header, json if it is absent
+    public static <T> T objectFromBody(Context context, Class<T> type) {
+        var contentType = context.header(Header.CONTENT_TYPE);
+        var format = contentType == null ? WireFormat.JSON : WireFormat.ofContentType(contentType);
+        if (format == null) {
+            throw new TheBestTodoAppException(ApiErrors.INVALID_BODY);
+        }
+        try {
+            return format.toObject(context.bodyAsBytes(), type);
         } catch (Exception e) {
-            LOG.warn("Problem while parsing json body...", e);
+            LOG.warn("Problem while parsing {} body...", format, e);
             throw new TheBestTodoAppException(ApiErrors.INVALID_BODY);
         }
     }
@@ -41,4 +190,49 @@ public class HttpFunctions {
             throw new TheBestTodoAppException(ApiErrors.INVALID_QUERY_PARAM);
         }
     }
+
+    //Comma-separated or repeated (ids=1,2&ids=3) param, null if absent
+    public static List<Long> longsQueryParam(Context context, String param) {
+        var values = context.queryParams(param);
+        if (values.isEmpty()) {
+            return null;
+        }
+        try {
+            return values.stream()
+                    .flatMap(v -> Arrays.stream(v.split(",")))
+                    .map(v -> Long.parseLong(v.strip()))
+                    .toList();
+        } catch (Exception e) {
+            throw new TheBestTodoAppException(ApiErrors.INVALID_QUERY_PARAM);
+        }
+    }
+
+    //Comma-separated or repeated, case-insensitive enum values, default if absent
+    public static <T extends Enum<T>> Set<T> enumsQueryParam(Context context, String param, Class<T> type,
+                                                             Set<T> defaultValue) {
+        var values = context.queryParams(param);
+        if (values.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return values.stream()
+                    .flatMap(v -> Arrays.stream(v.split(",")))
+                    .map(v -> Enum.valueOf(type, v.strip().toUpperCase()))
+                    .collect(Collectors.toUnmodifiableSet());
+        } catch (Exception e) {
+            throw new TheBestTodoAppException(ApiErrors.INVALID_QUERY_PARAM);
+        }
+    }
+
+    public static <T extends Enum<T>> T enumQueryParam(Context context, String param, Class<T> type, T defaultValue) {
+        var value = context.queryParam(param);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.strip().toUpperCase());
+        } catch (Exception e) {
+            throw new TheBestTodoAppException(ApiErrors.INVALID_QUERY_PARAM);
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package com.igor101.thebesttodoapp.application;
+
+import io.javalin.http.HandlerType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+Latency histograms per method, route (endpoint path, like /todos/{id}, so that their number is bounded)
+and status code.
+Once a histogram exists, recording to it doesn't allocate: lookups are by existing enum and String instances.
+*/
+public class HttpMetrics {
+
+    //Static files, not found paths and so on
+    static final String OTHER_ROUTE = "other";
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+    private static final long[] BUCKETS_MICROS = {1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000,
+            250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000};
+    private static final List<Double> QUANTILES = List.of(0.5, 0.9, 0.99, 0.999);
+    private final Map<HandlerType, Map<String, RouteLatencies>> routesByMethod = new EnumMap<>(HandlerType.class);
+
+    public HttpMetrics() {
+        for (var method : HandlerType.values()) {
+            routesByMethod.put(method, new ConcurrentHashMap<>());
+        }
+    }
+
+    public void record(HandlerType method, String route, int status, long latencyMicros) {
+        if (status < MIN_STATUS || status > MAX_STATUS) {
+            return;
+        }
+
+        var routes = routesByMethod.get(method);
+        var actualRoute = route == null || route.isEmpty() ? OTHER_ROUTE : route;
+
+        var latencies = routes.get(actualRoute);
+        if (latencies == null) {
+            latencies = routes.computeIfAbsent(actualRoute, r -> new RouteLatencies());
+        }
+
+        latencies.histogram(status).record(latencyMicros);
+    }
+
+    void write(PrometheusWriter writer) {
+        var histogramName = "http_server_request_duration_seconds";
+        var quantileName = "http_server_request_duration_quantile_seconds";
+        var snapshots = snapshots();
+
+        writer.type(histogramName, "histogram", "Duration of http requests");
+        for (var s : snapshots) {
+            for (var b : BUCKETS_MICROS) {
+                writer.sample(histogramName + "_bucket", s.labels() + "," + leLabel(PrometheusWriter.seconds(b)),
+                        s.snapshot().countAtMost(b));
+            }
+            writer.sample(histogramName + "_bucket", s.labels() + "," + leLabel("+Inf"), s.snapshot().count());
+            writer.sample(histogramName + "_sum", s.labels(), PrometheusWriter.seconds(s.snapshot().sumMicros()));
+            writer.sample(histogramName + "_count", s.labels(), s.snapshot().count());
+        }
+
+        writer.type(quantileName, "gauge",
+                "Quantiles of http requests duration, since start, with max relative error of ~6%");
+        for (var s : snapshots) {
+            for (var q : QUANTILES) {
+                writer.sample(quantileName, s.labels() + "," + PrometheusWriter.label("quantile", String.valueOf(q)),
+                        PrometheusWriter.seconds(s.snapshot().quantile(q)));
+            }
+        }
+    }
+
+    private static String leLabel(Object value) {
+        return PrometheusWriter.label("le", String.valueOf(value));
+    }
+
+    private List<LabeledSnapshot> snapshots() {
+        var snapshots = new ArrayList<LabeledSnapshot>();
+        routesByMethod.forEach((method, routes) -> routes.forEach((route, latencies) -> {
+            for (int status = MIN_STATUS; status <= MAX_STATUS; status++) {
+                var histogram = latencies.byStatus.get(status);
+                if (histogram != null) {
+                    var labels = String.join(",", PrometheusWriter.label("method", method.name()),
+                            PrometheusWriter.label("route", route),
+                            PrometheusWriter.label("status", String.valueOf(status)));
+                    snapshots.add(new LabeledSnapshot(labels, histogram.snapshot()));
+                }
+            }
+        }));
+        return snapshots;
+    }
+
+    private record LabeledSnapshot(String labels, LatencyHistogram.Snapshot snapshot) {
+    }
+
+    private static class RouteLatencies {
+
+        private final AtomicReferenceArray<LatencyHistogram> byStatus = new AtomicReferenceArray<>(MAX_STATUS + 1);
+
+        LatencyHistogram histogram(int status) {
+            var histogram = byStatus.get(status);
+            if (histogram == null) {
+                byStatus.compareAndSet(status, null, new LatencyHistogram());
+                histogram = byStatus.get(status);
+            }
+            return histogram;
+        }
+    }
+}
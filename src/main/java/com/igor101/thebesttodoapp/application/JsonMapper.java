@@ -1,12 +1,14 @@
 package com.igor101.thebesttodoapp.application;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.OutputStream;
 import java.util.List;
 
 public class JsonMapper {
 
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static final ObjectMapper MAPPER = new ObjectMapper();
 
     public static String toJson(Object object) {
         try {
@@ -16,6 +18,14 @@ public class JsonMapper {
         }
     }
 
+    public static byte[] toJsonBytes(Object object) {
+        try {
+            return MAPPER.writeValueAsBytes(object);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static <T> T toObject(String json, Class<T> type) {
         try {
             return MAPPER.readValue(json, type);
@@ -32,4 +42,14 @@ public class JsonMapper {
             throw new RuntimeException(e);
         }
     }
+
+    public static JsonGenerator generator(OutputStream output) {
+        try {
+            return MAPPER.getFactory()
+                    .createGenerator(output)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
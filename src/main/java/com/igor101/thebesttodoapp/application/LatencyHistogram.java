@@ -0,0 +1,101 @@
+package com.igor101.thebesttodoapp.application;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+HDR-style histogram of latencies in microseconds.
+Values below 2 * SUB_BUCKETS have their own buckets, bigger ones are split into SUB_BUCKETS linear buckets
+per power of 2 (so max relative error is 1/SUB_BUCKETS), up to MAX_VALUE (~67s), bigger values are clamped.
+Counts (and sum) are striped by thread id, so that recording is a single, mostly uncontended, atomic add,
+without any allocation. Reads sum all stripes up, so they are more expensive, but rare.
+*/
+final class LatencyHistogram {
+
+    static final long MAX_VALUE = (1L << 26) - 1;
+    private static final int SUB_BUCKETS_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS;
+    static final int BUCKETS = bucket(MAX_VALUE) + 1;
+    private static final int MAX_STRIPES = 16;
+    private static final int STRIPES = stripes();
+    //Sum of stripe is stored right after its buckets
+    private static final int STRIPE_SIZE = BUCKETS + 1;
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * STRIPE_SIZE);
+
+    private static int stripes() {
+        var processors = Runtime.getRuntime().availableProcessors();
+        return Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, processors * 2 - 1)));
+    }
+
+    static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        var clamped = Math.min(value, MAX_VALUE);
+        var shift = 63 - Long.numberOfLeadingZeros(clamped) - SUB_BUCKETS_BITS;
+        return shift * SUB_BUCKETS + (int) (clamped >>> shift);
+    }
+
+    static long bucketLowerBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        var shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket - shift * SUB_BUCKETS) << shift;
+    }
+
+    //Inclusive
+    static long bucketUpperBound(int bucket) {
+        return bucket + 1 < BUCKETS ? bucketLowerBound(bucket + 1) - 1 : MAX_VALUE;
+    }
+
+    void record(long micros) {
+        var stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1)) * STRIPE_SIZE;
+        stripes.incrementAndGet(stripe + bucket(micros));
+        stripes.addAndGet(stripe + BUCKETS, Math.max(micros, 0));
+    }
+
+    Snapshot snapshot() {
+        var counts = new long[BUCKETS];
+        var count = 0L;
+        var sum = 0L;
+        for (int s = 0; s < STRIPES; s++) {
+            var stripe = s * STRIPE_SIZE;
+            for (int b = 0; b < BUCKETS; b++) {
+                var c = stripes.get(stripe + b);
+                counts[b] += c;
+                count += c;
+            }
+            sum += stripes.get(stripe + BUCKETS);
+        }
+        return new Snapshot(counts, count, sum);
+    }
+
+    record Snapshot(long[] counts, long count, long sumMicros) {
+
+        //Values that are in the same bucket as the given one are counted as well
+        long countAtMost(long micros) {
+            var last = bucket(micros);
+            var result = 0L;
+            for (int b = 0; b <= last; b++) {
+                result += counts[b];
+            }
+            return result;
+        }
+
+        //Upper bound of a bucket with the quantile value, 0 if there are no values
+        long quantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            var rank = Math.max(1, (long) Math.ceil(quantile * count));
+            var seen = 0L;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counts[b];
+                if (seen >= rank) {
+                    return bucketUpperBound(b);
+                }
+            }
+            return MAX_VALUE;
+        }
+    }
+}
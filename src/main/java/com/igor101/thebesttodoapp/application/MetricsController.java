@@ -0,0 +1,93 @@
+package com.igor101.thebesttodoapp.application;
+
+import io.javalin.Javalin;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/*
+GET /metrics in the Prometheus text format: http requests latencies (recorded by HttpMetrics),
+todos concurrency limit stats, db connection pool stats and jvm memory/gc/threads gauges.
+Everything is computed only on scrape, request hot path is not affected.
+*/
+public class MetricsController {
+
+    static final String PATH = "/metrics";
+    private final HttpMetrics httpMetrics;
+    //Null if there is no db pool
+    private final Supplier<DbPoolStats> dbPoolStats;
+    //Null if todos requests are not limited
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    public MetricsController(HttpMetrics httpMetrics, Supplier<DbPoolStats> dbPoolStats,
+                             ConcurrencyLimiter concurrencyLimiter) {
+        this.httpMetrics = httpMetrics;
+        this.dbPoolStats = dbPoolStats;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public void init(Javalin app) {
+        app.get(PATH, ctx -> ctx.contentType(PrometheusWriter.CONTENT_TYPE).result(metrics()));
+    }
+
+    String metrics() {
+        var writer = new PrometheusWriter();
+        httpMetrics.write(writer);
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.write(writer);
+        }
+        if (dbPoolStats != null) {
+            writeDbPoolMetrics(writer, dbPoolStats.get());
+        }
+        writeJvmMetrics(writer);
+        return writer.text();
+    }
+
+    private void writeDbPoolMetrics(PrometheusWriter writer, DbPoolStats stats) {
+        writer.type("db_pool_connections", "gauge", "Connections of db pool, by state");
+        writer.sample("db_pool_connections", PrometheusWriter.label("state", "active"), stats.active());
+        writer.sample("db_pool_connections", PrometheusWriter.label("state", "idle"), stats.idle());
+
+        writer.type("db_pool_max_connections", "gauge", "Max size of db pool");
+        writer.sample("db_pool_max_connections", null, stats.max());
+
+        writer.type("db_pool_threads_awaiting_connection", "gauge", "Threads waiting for a connection from db pool");
+        writer.sample("db_pool_threads_awaiting_connection", null, stats.threadsAwaitingConnection());
+    }
+
+    private void writeJvmMetrics(PrometheusWriter writer) {
+        var memory = ManagementFactory.getMemoryMXBean();
+        var heap = memory.getHeapMemoryUsage();
+        var nonHeap = memory.getNonHeapMemoryUsage();
+
+        writeMemoryMetrics(writer, "used", "Used memory, by area", heap.getUsed(), nonHeap.getUsed());
+        writeMemoryMetrics(writer, "committed", "Committed memory, by area",
+                heap.getCommitted(), nonHeap.getCommitted());
+        writeMemoryMetrics(writer, "max", "Max memory, by area (-1 if undefined)", heap.getMax(), nonHeap.getMax());
+
+        var collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        writer.type("jvm_gc_collections_total", "counter", "Garbage collections, by collector");
+        for (var c : collectors) {
+            writer.sample("jvm_gc_collections_total", PrometheusWriter.label("gc", c.getName()),
+                    c.getCollectionCount());
+        }
+        writer.type("jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collections, by collector");
+        for (var c : collectors) {
+            writer.sample("jvm_gc_collection_seconds_total", PrometheusWriter.label("gc", c.getName()),
+                    c.getCollectionTime() / 1000.0);
+        }
+
+        writer.type("jvm_threads_live", "gauge", "Live threads, including daemon ones");
+        writer.sample("jvm_threads_live", null, ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    private void writeMemoryMetrics(PrometheusWriter writer, String type, String help, long heap, long nonHeap) {
+        var name = "jvm_memory_" + type + "_bytes";
+        writer.type(name, "gauge", help);
+        writer.sample(name, PrometheusWriter.label("area", "heap"), heap);
+        writer.sample(name, PrometheusWriter.label("area", "nonheap"), nonHeap);
+    }
+
+    public record DbPoolStats(int active, int idle, int threadsAwaitingConnection, int max) {
+    }
+}
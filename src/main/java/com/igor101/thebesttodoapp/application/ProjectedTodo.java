@@ -0,0 +1,44 @@
+package com.igor101.thebesttodoapp.application;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoField;
+
+import java.io.IOException;
+import java.util.Set;
+
+//Todo with only the given fields written, in every WireFormat
+@JsonSerialize(using = ProjectedTodo.Serializer.class)
+record ProjectedTodo(Todo todo, Set<TodoField> fields) {
+
+    static class Serializer extends StdSerializer<ProjectedTodo> {
+
+        //StdSerializer is Serializable (so that mappers can be), -Xlint:serial warns about classes without it
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(ProjectedTodo.class);
+        }
+
+        @Override
+        public void serialize(ProjectedTodo projected, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            var todo = projected.todo();
+            var fields = projected.fields();
+            generator.writeStartObject();
+            if (fields.contains(TodoField.ID)) {
+                generator.writeNumberField("id", todo.id());
+            }
+            if (fields.contains(TodoField.NAME)) {
+                generator.writeStringField("name", todo.name());
+            }
+            if (fields.contains(TodoField.DESCRIPTION)) {
+                generator.writeStringField("description", todo.description());
+            }
+            generator.writeEndObject();
+        }
+    }
+}
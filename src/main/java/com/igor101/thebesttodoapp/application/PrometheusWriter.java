@@ -0,0 +1,44 @@
+package com.igor101.thebesttodoapp.application;
+
+//Prometheus text exposition format, version 0.0.4
+class PrometheusWriter {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final StringBuilder text = new StringBuilder();
+
+    static double seconds(long micros) {
+        return micros / 1_000_000.0;
+    }
+
+    static String label(String name, String value) {
+        var escaped = value.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n");
+        return name + "=\"" + escaped + "\"";
+    }
+
+    void type(String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    void sample(String name, String labels, double value) {
+        sampleName(name, labels).append(value).append('\n');
+    }
+
+    void sample(String name, String labels, long value) {
+        sampleName(name, labels).append(value).append('\n');
+    }
+
+    private StringBuilder sampleName(String name, String labels) {
+        text.append(name);
+        if (labels != null && !labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+        return text.append(' ');
+    }
+
+    String text() {
+        return text.toString();
+    }
+}
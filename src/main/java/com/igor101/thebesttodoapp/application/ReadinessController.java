@@ -0,0 +1,27 @@
+package com.igor101.thebesttodoapp.application;
+
+import io.javalin.Javalin;
+
+/*
+GET /ready - 200, once the app is ready to serve requests (db pools are filled and app is warmed up, if enabled),
+503 before, so that a load balancer (or an orchestrator readiness probe) doesn't send requests to it too early.
+*/
+public class ReadinessController {
+
+    static final String PATH = "/ready";
+    private volatile boolean ready;
+
+    public void init(Javalin app) {
+        app.get(PATH, ctx -> {
+            if (ready) {
+                HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200);
+            } else {
+                HttpFunctions.writeResponse(ctx, ApiResponse.ofFailure(ApiErrors.NOT_READY), 503);
+            }
+        });
+    }
+
+    public void ready() {
+        ready = true;
+    }
+}
@@ -0,0 +1,64 @@
+package com.igor101.thebesttodoapp.application;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+Growable, not synchronized output stream, of which bytes are read without copying them.
+Responses are serialized into them (see HttpFunctions.writeResponse) and their bytes are written
+straight to the response output, so that there are no intermediate arrays (and their copies) on every request.
+Buffers are pooled, like gzip encoders of ResponseCompression: up to POOL_SIZE of them are kept,
+and only if they haven't grown over MAX_POOLED_SIZE, so that a few huge responses don't pin a lot of memory.
+*/
+public class ResponseBuffer extends OutputStream {
+
+    static final int INITIAL_SIZE = 16 * 1024;
+    static final int MAX_POOLED_SIZE = 256 * 1024;
+    private static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final BlockingQueue<ResponseBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private int size;
+
+    public static ResponseBuffer borrow() {
+        var buffer = POOL.poll();
+        return buffer == null ? new ResponseBuffer() : buffer;
+    }
+
+    //Buffer (and its bytes) must not be used after that
+    public static void release(ResponseBuffer buffer) {
+        if (buffer.bytes.length <= MAX_POOLED_SIZE) {
+            buffer.size = 0;
+            POOL.offer(buffer);
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(bytes, offset, this.bytes, size, length);
+        size += length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+
+    //Only the first size() of them are written ones
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public int size() {
+        return size;
+    }
+}
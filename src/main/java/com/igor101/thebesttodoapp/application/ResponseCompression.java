@@ -0,0 +1,339 @@
+package com.igor101.thebesttodoapp.application;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+Compression of json responses, negotiated by Accept-Encoding: zstd (if enabled, pure Java, with its fixed level)
+is preferred over gzip, if client accepts both with the same q-value.
+Responses smaller than minSize are not compressed, streamed ones are always compressed, since their size is unknown.
+Gzip encoders (Deflater with its native memory, crc and output buffer) are pooled, up to POOL_SIZE of them
+are kept and reused, zstd compressor is stateless and shared.
+Compressed response has an ETag of its encoding, so that strong ETags of different representations differ.
+It's set as an app attribute, so that it can be used by HttpFunctions.
+*/
+public class ResponseCompression {
+
+    public static final String APP_ATTRIBUTE = ResponseCompression.class.getName();
+    private static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    public static final ResponseCompression NONE = new ResponseCompression(false, Integer.MAX_VALUE,
+            Deflater.DEFAULT_COMPRESSION, false);
+    private final boolean enabled;
+    private final int minSize;
+    private final int gzipLevel;
+    private final boolean zstdEnabled;
+    private final BlockingQueue<GzipEncoder> gzipEncoders = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final ZstdCompressor zstdCompressor = new ZstdCompressor();
+
+    public ResponseCompression(boolean enabled, int minSize, int gzipLevel, boolean zstdEnabled) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.gzipLevel = gzipLevel;
+        this.zstdEnabled = zstdEnabled;
+    }
+
+    public static ResponseCompression of(Context context) {
+        ResponseCompression compression = context.appAttribute(APP_ATTRIBUTE);
+        return compression == null ? NONE : compression;
+    }
+
+    //Sets Content-Encoding (and Vary) headers, returns the same bytes if the response should not be compressed
+    public byte[] compress(Context context, byte[] response) {
+        var compressed = compress(context, response, response.length);
+        return compressed == null ? response : compressed;
+    }
+
+    //The same, but of the first length bytes of a (pooled) buffer, null if they should not be compressed
+    public byte[] compress(Context context, byte[] response, int length) {
+        if (!enabled) {
+            return null;
+        }
+        context.res().addHeader(Header.VARY, Header.ACCEPT_ENCODING);
+        if (length < minSize) {
+            return null;
+        }
+
+        var encoding = negotiate(context.header(Header.ACCEPT_ENCODING));
+        if (encoding == Encoding.IDENTITY) {
+            return null;
+        }
+
+        setEncodingHeaders(context, encoding);
+
+        return encoding == Encoding.ZSTD ? zstd(response, length) : gzip(response, length);
+    }
+
+    private void setEncodingHeaders(Context context, Encoding encoding) {
+        context.header(Header.CONTENT_ENCODING, encoding.headerValue);
+        var etag = context.res().getHeader(Header.ETAG);
+        if (etag != null) {
+            context.header(Header.ETAG, encodingETag(etag, encoding));
+        }
+    }
+
+    static String encodingETag(String etag, Encoding encoding) {
+        return etag.substring(0, etag.length() - 1) + "--" + encoding.headerValue + "\"";
+    }
+
+    //Etags of all representations of a response
+    static List<String> allEncodingsETags(String etag) {
+        return List.of(etag, encodingETag(etag, Encoding.GZIP), encodingETag(etag, Encoding.ZSTD));
+    }
+
+    //Sets Content-Encoding (and Vary) headers, returns the same stream if the response should not be compressed
+    public OutputStream compress(Context context, OutputStream response) {
+        if (!enabled) {
+            return response;
+        }
+        context.res().addHeader(Header.VARY, Header.ACCEPT_ENCODING);
+
+        var encoding = negotiate(context.header(Header.ACCEPT_ENCODING));
+        if (encoding == Encoding.IDENTITY) {
+            return response;
+        }
+
+        setEncodingHeaders(context, encoding);
+
+        try {
+            return encoding == Encoding.ZSTD ? new ZstdOutputStream(response) : new GzipOutputStream(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Encoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return Encoding.IDENTITY;
+        }
+
+        //-1 if not listed
+        var gzipQ = -1.0;
+        var zstdQ = -1.0;
+        var anyQ = 0.0;
+        for (var e : acceptEncoding.split(",")) {
+            var parts = e.split(";");
+            var q = qValue(parts);
+            switch (parts[0].strip().toLowerCase()) {
+                case "gzip", "x-gzip" -> gzipQ = q;
+                case "zstd" -> zstdQ = q;
+                case "*" -> anyQ = q;
+                default -> {
+                }
+            }
+        }
+        if (gzipQ < 0) {
+            gzipQ = anyQ;
+        }
+        if (zstdQ < 0) {
+            zstdQ = anyQ;
+        }
+
+        if (zstdEnabled && zstdQ > 0 && zstdQ >= gzipQ) {
+            return Encoding.ZSTD;
+        }
+        return gzipQ > 0 ? Encoding.GZIP : Encoding.IDENTITY;
+    }
+
+    private static double qValue(String[] encodingParts) {
+        for (int i = 1; i < encodingParts.length; i++) {
+            var param = encodingParts[i].strip();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    public byte[] zstd(byte[] response) {
+        return zstd(response, response.length);
+    }
+
+    byte[] zstd(byte[] response, int length) {
+        var compressed = new byte[zstdCompressor.maxCompressedLength(length)];
+        var compressedLength = zstdCompressor.compress(response, 0, length, compressed, 0, compressed.length);
+        return Arrays.copyOf(compressed, compressedLength);
+    }
+
+    public byte[] gzip(byte[] response) {
+        return gzip(response, response.length);
+    }
+
+    byte[] gzip(byte[] response, int length) {
+        var encoder = borrowGzipEncoder();
+        try {
+            return encoder.encode(response, length);
+        } finally {
+            returnGzipEncoder(encoder);
+        }
+    }
+
+    private GzipEncoder borrowGzipEncoder() {
+        var encoder = gzipEncoders.poll();
+        return encoder == null ? new GzipEncoder(gzipLevel) : encoder;
+    }
+
+    private void returnGzipEncoder(GzipEncoder encoder) {
+        encoder.reset();
+        if (!gzipEncoders.offer(encoder)) {
+            encoder.end();
+        }
+    }
+
+    enum Encoding {
+        IDENTITY("identity"), GZIP("gzip"), ZSTD("zstd");
+
+        final String headerValue;
+
+        Encoding(String headerValue) {
+            this.headerValue = headerValue;
+        }
+    }
+
+    private static class GzipEncoder {
+
+        private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+        GzipEncoder(int level) {
+            deflater = new Deflater(level, true);
+        }
+
+        byte[] encode(byte[] input, int inputLength) {
+            crc.update(input, 0, inputLength);
+            deflater.setInput(input, 0, inputLength);
+            deflater.finish();
+
+            System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER_SIZE);
+            var length = GZIP_HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+
+            var output = Arrays.copyOf(buffer, length + GZIP_TRAILER_SIZE);
+            writeTrailer(output, length, crc.getValue(), inputLength);
+            return output;
+        }
+
+        void deflate(byte[] input, int offset, int length, OutputStream output) throws IOException {
+            crc.update(input, offset, length);
+            deflater.setInput(input, offset, length);
+            while (!deflater.needsInput()) {
+                var deflated = deflater.deflate(buffer, 0, buffer.length);
+                output.write(buffer, 0, deflated);
+            }
+        }
+
+        void finish(OutputStream output, long inputLength) throws IOException {
+            deflater.finish();
+            while (!deflater.finished()) {
+                var deflated = deflater.deflate(buffer, 0, buffer.length);
+                output.write(buffer, 0, deflated);
+            }
+            var trailer = new byte[GZIP_TRAILER_SIZE];
+            writeTrailer(trailer, 0, crc.getValue(), inputLength);
+            output.write(trailer);
+        }
+
+        private static void writeTrailer(byte[] output, int offset, long crc, long inputLength) {
+            writeIntLE(output, offset, crc);
+            writeIntLE(output, offset + 4, inputLength);
+        }
+
+        private static void writeIntLE(byte[] output, int offset, long value) {
+            output[offset] = (byte) value;
+            output[offset + 1] = (byte) (value >> 8);
+            output[offset + 2] = (byte) (value >> 16);
+            output[offset + 3] = (byte) (value >> 24);
+        }
+
+        void reset() {
+            deflater.reset();
+            crc.reset();
+        }
+
+        void end() {
+            deflater.end();
+        }
+    }
+
+    /*
+    Header is written only with the first bytes, so that nothing is written to the response
+    if there was an error before any output.
+    Encoder is returned to the pool only if the stream was closed.
+    */
+    private class GzipOutputStream extends OutputStream {
+
+        private final OutputStream output;
+        private final GzipEncoder encoder = borrowGzipEncoder();
+        private boolean headerWritten;
+        private long inputLength;
+        private boolean closed;
+
+        GzipOutputStream(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            writeHeaderIfNeeded();
+            encoder.deflate(bytes, offset, length, output);
+            inputLength += length;
+        }
+
+        private void writeHeaderIfNeeded() throws IOException {
+            if (!headerWritten) {
+                output.write(GZIP_HEADER);
+                headerWritten = true;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeHeaderIfNeeded();
+                encoder.finish(output, inputLength);
+                output.close();
+            } finally {
+                returnGzipEncoder(encoder);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.igor101.thebesttodoapp.application;
+
+import io.javalin.http.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/*
+Requests every TodoController route of the running app, over local http, iterations times,
+so that classes (Jetty, Javalin, Jackson, jOOQ, db driver) are loaded, serializers are introspected,
+db connections are used and hot code is compiled, before real requests come.
+Nothing is written: todos are only read, writes are invalid (rejected by validation, before any db call),
+and only every INVALID_WRITES_EVERY iteration, since their errors are logged.
+Requests are tagged by the HEADER with a random (per jvm) token, so that they are not recorded by HttpMetrics
+and ConcurrencyLimiter: their latencies are of the cold app, not of the one serving real requests.
+*/
+public class StartupWarmUp {
+
+    static final int INVALID_WRITES_EVERY = 10;
+    static final String HEADER = "X-Warm-Up";
+    private static final String TOKEN = UUID.randomUUID().toString();
+    private static final Logger LOG = LoggerFactory.getLogger(StartupWarmUp.class);
+    private static final List<String> READ_QUERIES = List.of("", "?limit=20&sort=name",
+            "?nameFilter=warm-up&descriptionFilter=warm-up", "?limit=10&after=1", "?q=warm+up", "?ids=1,2,3",
+            "?stream=true&limit=10");
+    private static final List<String> ENCODINGS = List.of("identity", "gzip", "zstd");
+    private final String todosUrl;
+    private final int iterations;
+
+    public StartupWarmUp(int port, int iterations) {
+        this.todosUrl = "http://localhost:%d%s".formatted(port, TodoController.PATH);
+        this.iterations = iterations;
+    }
+
+    public static boolean warmUpRequest(Context context) {
+        return TOKEN.equals(context.header(HEADER));
+    }
+
+    //Warm-up failures are logged, app can serve requests without it anyway
+    public void run() {
+        var start = System.currentTimeMillis();
+        var client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        var formats = WireFormat.values();
+        var requests = 0;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                var format = formats[i % formats.length];
+                var encoding = ENCODINGS.get(i % ENCODINGS.size());
+                for (var q : READ_QUERIES) {
+                    send(client, HttpRequest.newBuilder(URI.create(todosUrl + q))
+                            .header("Accept", format.contentType())
+                            .header("Accept-Encoding", encoding)
+                            .GET());
+                    requests++;
+                }
+                if (i % INVALID_WRITES_EVERY == 0) {
+                    requests += sendInvalidWrites(client);
+                }
+            }
+            LOG.info("Warmed up with {} requests in {} ms", requests, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            LOG.warn("Failed to warm up, after {} requests", requests, e);
+        }
+    }
+
+    private int sendInvalidWrites(HttpClient client) throws Exception {
+        var invalidTodo = "{\"name\": \"\"}";
+        send(client, HttpRequest.newBuilder(URI.create(todosUrl))
+                .POST(HttpRequest.BodyPublishers.ofString(invalidTodo)));
+        send(client, HttpRequest.newBuilder(URI.create(todosUrl + "/1"))
+                .PUT(HttpRequest.BodyPublishers.ofString(invalidTodo)));
+        send(client, HttpRequest.newBuilder(URI.create(todosUrl + "/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" + invalidTodo + "]")));
+        send(client, HttpRequest.newBuilder(URI.create(todosUrl + "/batch"))
+                .PUT(HttpRequest.BodyPublishers.ofString("[{\"id\": 1, \"name\": \"\"}]")));
+        return 4;
+    }
+
+    private void send(HttpClient client, HttpRequest.Builder request) throws Exception {
+        var response = client.send(request.header(HEADER, TOKEN).build(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() >= 500) {
+            throw new RuntimeException("Warm-up request: %s has failed with %d status"
+                    .formatted(response.request().uri(), response.statusCode()));
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.igor101.thebesttodoapp.application;
+
+import com.igor101.thebesttodoapp.core.TodoChange;
+import io.javalin.http.sse.SseClient;
+import org.eclipse.jetty.server.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Fans out todo changes to SSE clients of GET /todos/changes.
+Publishing never blocks nor writes to clients: an event is serialized once and only offered to a bounded buffer
+of each client. Buffers are drained (written to clients) by a small pool of sender threads, a client at a time,
+at most MAX_EVENTS_PER_DRAIN events in a row, so that one client doesn't keep a sender for long.
+A client whose buffer is full is too slow to keep up: it is disconnected right away, by the publisher
+(as it missed changes anyway), and can reconnect and get the current state from GET /todos.
+Sending to a client (a blocking write) is bounded by sendTimeout: a client that doesn't receive an event
+for that long is disconnected by aborting its connection, which fails the write and frees its sender.
+Disconnecting never blocks, so other clients are not affected by a slow one.
+Keep-alive comments are sent periodically, so that idle connections are kept open by proxies
+and disconnected clients are detected (sending to them fails).
+*/
+public class TodoChangesBroadcaster implements AutoCloseable {
+
+    static final String MISSED_CHANGES_EVENT = "missed-changes";
+    private static final Logger LOG = LoggerFactory.getLogger(TodoChangesBroadcaster.class);
+    private static final int MAX_EVENTS_PER_DRAIN = 100;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong lastEventId = new AtomicLong();
+    private final int clientBufferSize;
+    private final ExecutorService senders;
+    private final long sendTimeoutNanos;
+    private final ScheduledExecutorService keepAlive;
+
+    public TodoChangesBroadcaster(int clientBufferSize, int senderThreads, Duration keepAliveInterval,
+                                  Duration sendTimeout) {
+        this.clientBufferSize = clientBufferSize;
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.senders = Executors.newFixedThreadPool(senderThreads, daemonThreads("todo-changes-sender"));
+        this.keepAlive = Executors.newSingleThreadScheduledExecutor(daemonThreads("todo-changes-keep-alive"));
+        this.keepAlive.scheduleAtFixedRate(this::sendKeepAlive, keepAliveInterval.toMillis(),
+                keepAliveInterval.toMillis(), TimeUnit.MILLISECONDS);
+        var timeoutsCheckInterval = Math.max(10, sendTimeout.toMillis() / 2);
+        this.keepAlive.scheduleAtFixedRate(this::disconnectTimedOut, timeoutsCheckInterval, timeoutsCheckInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            var thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public void subscribe(SseClient client) {
+        client.keepAlive();
+        subscribe(new SseClientSink(client));
+    }
+
+    public void subscribe(Sink sink) {
+        var subscriber = new Subscriber(sink);
+        subscribers.add(subscriber);
+        sink.onClose(() -> subscribers.remove(subscriber));
+    }
+
+    int subscribers() {
+        return subscribers.size();
+    }
+
+    public void publish(TodoChange change) {
+        publish(new Event(change.type().name().toLowerCase(), JsonMapper.toJson(change),
+                String.valueOf(lastEventId.incrementAndGet())));
+    }
+
+    //Clients should get the current state from GET /todos, since some changes were not published
+    public void publishMissedChanges() {
+        publish(new Event(MISSED_CHANGES_EVENT, "{}", String.valueOf(lastEventId.incrementAndGet())));
+    }
+
+    private void publish(Event event) {
+        for (var s : subscribers) {
+            s.offer(event);
+        }
+    }
+
+    private void sendKeepAlive() {
+        for (var s : subscribers) {
+            s.offerKeepAlive();
+        }
+    }
+
+    private void disconnectTimedOut() {
+        var now = System.nanoTime();
+        for (var s : subscribers) {
+            var sendingSince = s.sendingSince;
+            if (sendingSince != 0 && now - sendingSince > sendTimeoutNanos) {
+                LOG.warn("Disconnecting todo changes client, sending to it takes longer than {} ms",
+                        TimeUnit.NANOSECONDS.toMillis(sendTimeoutNanos));
+                s.disconnect();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        keepAlive.shutdownNow();
+        senders.shutdownNow();
+        for (var s : subscribers) {
+            s.disconnect();
+        }
+    }
+
+    //Comment if data is null
+    public record Event(String name, String data, String id) {
+
+        static final Event KEEP_ALIVE = new Event(null, null, null);
+    }
+
+    //Abstraction over SseClient, for tests and benchmarks
+    public interface Sink {
+
+        void send(Event event);
+
+        void onClose(Runnable onClose);
+
+        //Must not block, even if send is blocked: it should fail the send then
+        void close();
+    }
+
+    private record SseClientSink(SseClient client) implements Sink {
+
+        @Override
+        public void send(Event event) {
+            if (event.data() == null) {
+                client.sendComment("keep-alive");
+            } else {
+                client.sendEvent(event.name(), event.data(), event.id());
+            }
+        }
+
+        @Override
+        public void onClose(Runnable onClose) {
+            client.onClose(onClose);
+        }
+
+        //Abort closes the connection (without writing anything), so that a blocked write fails right away
+        @Override
+        public void close() {
+            try {
+                Request.getBaseRequest(client.ctx.req()).getHttpChannel()
+                        .abort(new TimeoutException("Todo changes client disconnected"));
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private class Subscriber {
+
+        private final Sink sink;
+        private final BlockingQueue<Event> buffer = new ArrayBlockingQueue<>(clientBufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean disconnected = new AtomicBoolean();
+        //Zero if nothing is being sent
+        private volatile long sendingSince;
+
+        Subscriber(Sink sink) {
+            this.sink = sink;
+        }
+
+        void offer(Event event) {
+            if (disconnected.get()) {
+                return;
+            }
+            if (buffer.offer(event)) {
+                scheduleDrain();
+            } else {
+                LOG.warn("Disconnecting too slow todo changes client, its buffer of {} events is full",
+                        clientBufferSize);
+                disconnect();
+            }
+        }
+
+        void disconnect() {
+            if (disconnected.compareAndSet(false, true)) {
+                subscribers.remove(this);
+                buffer.clear();
+                try {
+                    sink.close();
+                } catch (Exception e) {
+                    LOG.warn("Failed to close todo changes client", e);
+                }
+            }
+        }
+
+        //Only if buffer is empty, there is no need to keep alive a connection with pending events
+        void offerKeepAlive() {
+            if (buffer.isEmpty() && buffer.offer(Event.KEEP_ALIVE)) {
+                scheduleDrain();
+            }
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (Exception e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        //Only one sender at a time drains the buffer of a given subscriber
+        private void drain() {
+            try {
+                for (int i = 0; i < MAX_EVENTS_PER_DRAIN && !disconnected.get(); i++) {
+                    var event = buffer.poll();
+                    if (event == null) {
+                        break;
+                    }
+                    sendingSince = System.nanoTime();
+                    sink.send(event);
+                    sendingSince = 0;
+                }
+            } catch (Exception e) {
+                sendingSince = 0;
+                if (!disconnected.get()) {
+                    LOG.warn("Failed to send todo changes, disconnecting client", e);
+                    disconnect();
+                }
+                return;
+            } finally {
+                draining.set(false);
+            }
+
+            if (!buffer.isEmpty() && !disconnected.get()) {
+                scheduleDrain();
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.igor101.thebesttodoapp.application;
+
+import io.javalin.Javalin;
+
+//GET /todos/changes - Server-Sent Events of todo changes, see TodoChangesBroadcaster
+public class TodoChangesController {
+
+    static final String PATH = TodoController.PATH + "/changes";
+    private final TodoChangesBroadcaster broadcaster;
+
+    public TodoChangesController(TodoChangesBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    public void init(Javalin app) {
+        app.sse(PATH, broadcaster::subscribe);
+    }
+}
@@ -1,49 +1,167 @@
 package com.igor101.thebesttodoapp.application;
 
+import com.igor101.thebesttodoapp.core.Todo;
 import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoField;
 import com.igor101.thebesttodoapp.core.TodoService;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
 import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 public class TodoController {
 
     static final String PATH = "/todos";
+    static final String BATCH_PATH = PATH + "/batch";
     private final TodoService service;
+    //Null if requests are not limited
+    private final ConcurrencyLimiter limiter;
 
-    public TodoController(TodoService service) {
+    public TodoController(TodoService service, ConcurrencyLimiter limiter) {
         this.service = service;
+        this.limiter = limiter;
+    }
+
+    public TodoController(TodoService service) {
+        this(service, null);
     }
 
     public void init(Javalin app) {
         //TODO: test filters!
+        var limitedTodos = limited(this::todos);
         app.get(PATH, ctx -> {
-            var nameFilter = HttpFunctions.queryParam(ctx, "nameFilter", String.class, null);
-            var descriptionFilter = HttpFunctions.queryParam(ctx, "descriptionFilter", String.class, null);
-
-            var todos = service.todos(nameFilter, descriptionFilter);
-            HttpFunctions.writeJsonResponse(ctx, ApiResponse.ofSuccess(todos), 200);
+            if (streamed(ctx)) {
+                todos(ctx);
+            } else {
+                limitedTodos.handle(ctx);
+            }
         });
 
-        app.post(PATH, ctx -> {
-            var newTodo = HttpFunctions.jsonFromBody(ctx, TodoData.class);
+        app.post(PATH, limited(ctx -> {
+            var newTodo = HttpFunctions.objectFromBody(ctx, TodoData.class);
             var newTodoId = service.create(newTodo);
 
-            HttpFunctions.writeJsonResponse(ctx, ApiResponse.ofSuccess(newTodoId), 201);
-        });
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(newTodoId), 201);
+        }));
+
+        app.post(BATCH_PATH, limited(ctx -> {
+            var newTodos = HttpFunctions.objectFromBody(ctx, TodoData[].class);
+            var newTodosIds = service.createAll(Arrays.asList(newTodos));
+
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(newTodosIds), 201);
+        }));
 
-        app.put(PATH + "/{id}", ctx -> {
+        //Batch routes need to be registered before /{id} ones, which would match them otherwise
+        app.put(BATCH_PATH, limited(ctx -> {
+            var todos = HttpFunctions.objectFromBody(ctx, Todo[].class);
+
+            service.updateAll(Arrays.asList(todos));
+
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200);
+        }));
+
+        app.delete(BATCH_PATH, limited(ctx -> {
+            var ids = HttpFunctions.longsQueryParam(ctx, "ids");
+
+            service.deleteAll(ids);
+
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200);
+        }));
+
+        app.put(PATH + "/{id}", limited(ctx -> {
             var todoId = HttpFunctions.pathParam(ctx, "id", Long.class);
-            var todoData = HttpFunctions.jsonFromBody(ctx, TodoData.class);
+            var todoData = HttpFunctions.objectFromBody(ctx, TodoData.class);
 
             service.update(todoId, todoData);
 
-            HttpFunctions.writeJsonResponse(ctx, ApiResponse.ofSuccess(), 200);
-        });
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200);
+        }));
 
-        app.delete(PATH + "/{id}", ctx -> {
+        app.delete(PATH + "/{id}", limited(ctx -> {
             var todoId = HttpFunctions.pathParam(ctx, "id", Long.class);
             service.delete(todoId);
 
-            HttpFunctions.writeJsonResponse(ctx, ApiResponse.ofSuccess(), 200);
-        });
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(), 200);
+        }));
+    }
+
+    //Also used by AsyncTodoController for streams, see it
+    void todos(Context ctx) {
+        //Read before todos, so that they are at least as new as it
+        var etag = HttpFunctions.etag(ctx, service.todosVersion());
+        if (HttpFunctions.notModified(ctx, etag)) {
+            return;
+        }
+
+        var search = todosSearch(ctx);
+        if (search != null) {
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(service.search(search)), 200);
+            return;
+        }
+
+        var ids = HttpFunctions.longsQueryParam(ctx, "ids");
+        if (ids != null) {
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(service.todos(ids)), 200);
+            return;
+        }
+
+        var stream = streamed(ctx);
+        var query = todosQuery(ctx, stream);
+        if (stream) {
+            HttpFunctions.writeStreamResponse(ctx,
+                    todos -> service.streamTodos(query, t -> todos.accept(projected(t, query.fields()))), 200);
+        } else {
+            var todos = projected(service.todos(query), query.fields());
+            HttpFunctions.writeResponse(ctx, ApiResponse.ofSuccess(todos), 200);
+        }
+    }
+
+    //Null if it's not a search request
+    static TodosSearch todosSearch(Context ctx) {
+        var searchQuery = HttpFunctions.queryParam(ctx, "q", String.class, null);
+        if (searchQuery == null) {
+            return null;
+        }
+        var limit = HttpFunctions.queryParam(ctx, "limit", Integer.class, TodosSearch.DEFAULT_LIMIT);
+        return new TodosSearch(searchQuery, limit);
+    }
+
+    static boolean streamed(Context ctx) {
+        return HttpFunctions.queryParam(ctx, "stream", Boolean.class, false);
+    }
+
+    static TodosQuery todosQuery(Context ctx, boolean stream) {
+        var nameFilter = HttpFunctions.queryParam(ctx, "nameFilter", String.class, null);
+        var descriptionFilter = HttpFunctions.queryParam(ctx, "descriptionFilter", String.class, null);
+        var sort = HttpFunctions.enumQueryParam(ctx, "sort", TodosSort.class, TodosSort.ID);
+        var after = HttpFunctions.queryParam(ctx, "after", Long.class, null);
+        var afterName = HttpFunctions.queryParam(ctx, "afterName", String.class, null);
+        var limit = HttpFunctions.queryParam(ctx, "limit", Integer.class,
+                stream ? TodosQuery.NO_LIMIT : TodosQuery.DEFAULT_LIMIT);
+
+        var fields = HttpFunctions.enumsQueryParam(ctx, "fields", TodoField.class, TodoField.ALL);
+
+        return new TodosQuery(nameFilter, descriptionFilter, sort, after, afterName, limit, fields);
+    }
+
+    static List<Object> projected(List<Todo> todos, Set<TodoField> fields) {
+        return todos.stream()
+                .map(t -> projected(t, fields))
+                .toList();
+    }
+
+    //All fields are written as they are, without ProjectedTodo indirection
+    private static Object projected(Todo todo, Set<TodoField> fields) {
+        return fields.equals(TodoField.ALL) ? todo : new ProjectedTodo(todo, fields);
+    }
+
+    private Handler limited(Handler handler) {
+        return limiter == null ? handler : limiter.limited(handler);
     }
 }
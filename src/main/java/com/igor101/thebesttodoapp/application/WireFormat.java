@@ -0,0 +1,155 @@
+package com.igor101.thebesttodoapp.application;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.msgpack.jackson.dataformat.MessagePackMapper;
+
+import java.io.OutputStream;
+import java.util.List;
+
+/*
+Formats of requests and responses, all of them with the same, Jackson data model.
+Json is the default one, binary ones are mostly for service-to-service callers:
+they are smaller and cheaper to encode/decode.
+*/
+public enum WireFormat {
+
+    JSON(JsonMapper.MAPPER, "application/json"),
+    CBOR(new CBORMapper(), "application/cbor"),
+    SMILE(new SmileMapper(), "application/x-jackson-smile"),
+    MESSAGE_PACK(new MessagePackMapper(), "application/msgpack", "application/x-msgpack");
+
+    private final ObjectMapper mapper;
+    private final List<String> contentTypes;
+    //With their root (de)serializers resolved once per type, instead of being looked up by the mapper on every call
+    private final ClassValue<ObjectWriter> writers = new ClassValue<>() {
+        @Override
+        protected ObjectWriter computeValue(Class<?> type) {
+            return mapper.writerFor(type);
+        }
+    };
+    private final ClassValue<ObjectReader> readers = new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return mapper.readerFor(type);
+        }
+    };
+
+    WireFormat(ObjectMapper mapper, String... contentTypes) {
+        this.mapper = mapper;
+        this.contentTypes = List.of(contentTypes);
+    }
+
+    public String contentType() {
+        return contentTypes.get(0);
+    }
+
+    public byte[] toBytes(Object object) {
+        try {
+            return writer(object).writeValueAsBytes(object);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Straight to the output (like ResponseBuffer), without intermediate byte arrays of toBytes
+    public void write(Object object, OutputStream output) {
+        try {
+            writer(object).writeValue(output, object);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ObjectWriter writer(Object object) {
+        return object == null ? mapper.writer() : writers.get(object.getClass());
+    }
+
+    public <T> T toObject(byte[] bytes, Class<T> type) {
+        try {
+            return readers.get(type).readValue(bytes);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //MessagePack generator needs to know sizes of arrays, so it buffers everything until the root object is closed
+    public JsonGenerator generator(OutputStream output) {
+        try {
+            return mapper.getFactory()
+                    .createGenerator(output)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Null if content type (without parameters, like charset) is not supported
+    public static WireFormat ofContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        var mediaType = mediaType(contentType);
+        for (var f : values()) {
+            if (f.contentTypes.contains(mediaType)) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    private static String mediaType(String contentType) {
+        var paramsStart = contentType.indexOf(';');
+        var mediaType = paramsStart < 0 ? contentType : contentType.substring(0, paramsStart);
+        return mediaType.strip().toLowerCase();
+    }
+
+    /*
+    Format of the highest q-value in Accept header, the first one (in header order) of equal ones.
+    Json if there is no header or none of its types is supported, so that there is always some meaningful response.
+    */
+    public static WireFormat ofAccept(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+
+        var best = JSON;
+        var bestQ = 0.0;
+        for (var type : accept.split(",")) {
+            var q = qValue(type);
+            var format = ofContentType(type);
+            if (format == null) {
+                var mediaType = mediaType(type);
+                if (mediaType.equals("*/*") || mediaType.equals("application/*")) {
+                    format = JSON;
+                } else {
+                    continue;
+                }
+            }
+            if (q > bestQ) {
+                best = format;
+                bestQ = q;
+            }
+        }
+
+        return best;
+    }
+
+    private static double qValue(String type) {
+        for (var param : type.split(";")) {
+            var stripped = param.strip();
+            if (stripped.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(stripped.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,31 @@
+package com.igor101.thebesttodoapp.core;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/*
+TodoRepository, whose methods return right away, with futures completed once todos are read or written.
+There is no streaming: a stream holds its connection (and a thread writing the response) until it's done anyway.
+*/
+public interface AsyncTodoRepository {
+
+    CompletableFuture<List<Todo>> todos(TodosQuery query);
+
+    CompletableFuture<List<Todo>> search(TodosSearch search);
+
+    CompletableFuture<List<Todo>> todos(List<Long> ids);
+
+    CompletableFuture<Long> create(TodoData todo);
+
+    CompletableFuture<List<Long>> createAll(List<TodoData> todos);
+
+    CompletableFuture<Void> update(long id, TodoData todo);
+
+    CompletableFuture<Void> updateAll(List<Todo> todos);
+
+    CompletableFuture<Void> delete(long id);
+
+    CompletableFuture<Void> deleteAll(List<Long> ids);
+
+    CompletableFuture<Long> version();
+}
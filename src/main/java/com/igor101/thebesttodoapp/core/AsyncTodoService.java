@@ -0,0 +1,63 @@
+package com.igor101.thebesttodoapp.core;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+//TodoService of AsyncTodoRepository: invalid arguments are rejected right away, by thrown exceptions, not futures
+public class AsyncTodoService {
+
+    private final AsyncTodoRepository todoRepository;
+
+    public AsyncTodoService(AsyncTodoRepository todoRepository) {
+        this.todoRepository = todoRepository;
+    }
+
+    public CompletableFuture<Long> todosVersion() {
+        return todoRepository.version();
+    }
+
+    public CompletableFuture<List<Todo>> todos(TodosQuery query) {
+        TodoService.validateTodosQuery(query, TodoService.MAX_TODOS_LIMIT);
+        return todoRepository.todos(query);
+    }
+
+    public CompletableFuture<List<Todo>> search(TodosSearch search) {
+        TodoService.validateSearch(search);
+        return todoRepository.search(search);
+    }
+
+    public CompletableFuture<List<Todo>> todos(List<Long> ids) {
+        TodoService.validateBatchSize(ids);
+        return todoRepository.todos(ids);
+    }
+
+    public CompletableFuture<Long> create(TodoData todo) {
+        TodoService.validateTodoData(todo);
+        return todoRepository.create(todo);
+    }
+
+    public CompletableFuture<List<Long>> createAll(List<TodoData> todos) {
+        TodoService.validateBatchSize(todos);
+        TodoService.validateTodosData(todos);
+        return todoRepository.createAll(todos);
+    }
+
+    public CompletableFuture<Void> update(long id, TodoData todo) {
+        TodoService.validateTodoData(todo);
+        return todoRepository.update(id, todo);
+    }
+
+    public CompletableFuture<Void> updateAll(List<Todo> todos) {
+        TodoService.validateUpdatedTodos(todos);
+        return todoRepository.updateAll(todos);
+    }
+
+    public CompletableFuture<Void> delete(long id) {
+        return todoRepository.delete(id);
+    }
+
+    public CompletableFuture<Void> deleteAll(List<Long> ids) {
+        TodoService.validateBatchSize(ids);
+        return todoRepository.deleteAll(ids);
+    }
+}
@@ -3,4 +3,13 @@ package com.igor101.thebesttodoapp.core;
 public class Errors {
     public static final String INVALID_TODO_NAME = "INVALID_TODO_NAME";
     public static final String INVALID_TODO_DESCRIPTION = "INVALID_TODO_DESCRIPTION";
+    public static final String INVALID_TODOS_LIMIT = "INVALID_TODOS_LIMIT";
+    public static final String INVALID_TODOS_CURSOR = "INVALID_TODOS_CURSOR";
+    public static final String INVALID_SEARCH_QUERY = "INVALID_SEARCH_QUERY";
+    public static final String INVALID_BATCH_SIZE = "INVALID_BATCH_SIZE";
+
+    //Error of a batch item, like INVALID_TODO_NAME[2]
+    public static String ofItem(String error, int index) {
+        return "%s[%d]".formatted(error, index);
+    }
 }
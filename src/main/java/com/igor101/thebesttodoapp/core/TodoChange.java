@@ -0,0 +1,9 @@
+package com.igor101.thebesttodoapp.core;
+
+//Todo is null for DELETED
+public record TodoChange(Type type, long id, TodoData todo) {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+}
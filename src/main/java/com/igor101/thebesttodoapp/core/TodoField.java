@@ -0,0 +1,10 @@
+package com.igor101.thebesttodoapp.core;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+public enum TodoField {
+    ID, NAME, DESCRIPTION;
+
+    public static final Set<TodoField> ALL = Set.copyOf(EnumSet.allOf(TodoField.class));
+}
@@ -1,14 +1,38 @@
 package com.igor101.thebesttodoapp.core;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface TodoRepository {
 
-    List<Todo> todos(String nameFilter, String descriptionFilter);
+    List<Todo> todos(TodosQuery query);
+
+    //Passes todos to the consumer one by one, without materializing the whole result
+    void streamTodos(TodosQuery query, Consumer<Todo> consumer);
+
+    //Todos ordered by relevance (the most relevant first) and then by id
+    List<Todo> search(TodosSearch search);
+
+    //Existing todos ordered by id
+    List<Todo> todos(List<Long> ids);
 
     long create(TodoData todo);
 
+    //Ids in todos order
+    List<Long> createAll(List<TodoData> todos);
+
     void update(long id, TodoData todo);
 
+    //Non-existing todos are ignored
+    void updateAll(List<Todo> todos);
+
     void delete(long id);
+
+    void deleteAll(List<Long> ids);
+
+    /*
+    Version of all todos, increasing on every write, also the ones done by other app instances.
+    Reading it before todos guarantees that they are at least as new as this version.
+    */
+    long version();
 }
@@ -2,20 +2,80 @@ package com.igor101.thebesttodoapp.core;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class TodoService {
 
     static final int MIN_NAME_LENGTH = 2;
     static final int MAX_NAME_LENGTH = 50;
     static final int MAX_DESCRIPTION_LENGTH = 1000;
+    static final int MAX_TODOS_LIMIT = 1000;
+    static final int MAX_SEARCH_QUERY_LENGTH = 200;
+    static final int MAX_SEARCH_LIMIT = 100;
+    static final int MAX_BATCH_SIZE = 100;
     private final TodoRepository todoRepository;
 
     public TodoService(TodoRepository todoRepository) {
         this.todoRepository = todoRepository;
     }
 
-    public List<Todo> todos(String nameFilter, String descriptionFilter) {
-        return todoRepository.todos(nameFilter, descriptionFilter);
+    //See TodoRepository.version()
+    public long todosVersion() {
+        return todoRepository.version();
+    }
+
+    public List<Todo> todos(TodosQuery query) {
+        validateTodosQuery(query, MAX_TODOS_LIMIT);
+        return todoRepository.todos(query);
+    }
+
+    static void validateTodosQuery(TodosQuery query, int maxLimit) {
+        if (query.limit() < 1 || query.limit() > maxLimit) {
+            throw new TheBestTodoAppException(Errors.INVALID_TODOS_LIMIT);
+        }
+        if (!query.validCursor()) {
+            throw new TheBestTodoAppException(Errors.INVALID_TODOS_CURSOR);
+        }
+    }
+
+    //Streamed todos are never held in memory all at once, so the limit is not capped
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        validateTodosQuery(query, Integer.MAX_VALUE);
+        todoRepository.streamTodos(query, consumer);
+    }
+
+    public List<Todo> search(TodosSearch search) {
+        validateSearch(search);
+        return todoRepository.search(search);
+    }
+
+    static void validateSearch(TodosSearch search) {
+        var errors = new ArrayList<String>();
+
+        if (search.query() == null
+                || search.query().isBlank()
+                || search.query().length() > MAX_SEARCH_QUERY_LENGTH) {
+            errors.add(Errors.INVALID_SEARCH_QUERY);
+        }
+
+        if (search.limit() < 1 || search.limit() > MAX_SEARCH_LIMIT) {
+            errors.add(Errors.INVALID_TODOS_LIMIT);
+        }
+
+        if (!errors.isEmpty()) {
+            throw new TheBestTodoAppException(errors);
+        }
+    }
+
+    public List<Todo> todos(List<Long> ids) {
+        validateBatchSize(ids);
+        return todoRepository.todos(ids);
+    }
+
+    static void validateBatchSize(List<?> batch) {
+        if (batch == null || batch.isEmpty() || batch.size() > MAX_BATCH_SIZE) {
+            throw new TheBestTodoAppException(Errors.INVALID_BATCH_SIZE);
+        }
     }
 
     public long create(TodoData todo) {
@@ -23,20 +83,48 @@ public class TodoService {
         return todoRepository.create(todo);
     }
 
-    private void validateTodoData(TodoData todo) {
+    //Whole batch is rejected, if any of its todos is invalid, with errors of every invalid one
+    public List<Long> createAll(List<TodoData> todos) {
+        validateBatchSize(todos);
+        validateTodosData(todos);
+        return todoRepository.createAll(todos);
+    }
+
+    static void validateTodoData(TodoData todo) {
+        var errors = todoDataErrors(todo);
+        if (!errors.isEmpty()) {
+            throw new TheBestTodoAppException(errors);
+        }
+    }
+
+    private static List<String> todoDataErrors(TodoData todo) {
         var errors = new ArrayList<String>();
 
-        if (todo.name() == null
+        if (todo == null
+                || todo.name() == null
                 || todo.name().strip().length() < MIN_NAME_LENGTH
                 || todo.name().length() > MAX_NAME_LENGTH) {
             errors.add(Errors.INVALID_TODO_NAME);
         }
 
-        if (todo.description() != null
+        if (todo != null
+                && todo.description() != null
                 && todo.description().length() > MAX_DESCRIPTION_LENGTH) {
             errors.add(Errors.INVALID_TODO_DESCRIPTION);
         }
 
+        return errors;
+    }
+
+    static void validateTodosData(List<TodoData> todos) {
+        var errors = new ArrayList<String>();
+
+        for (int i = 0; i < todos.size(); i++) {
+            for (var e : todoDataErrors(todos.get(i))) {
+                errors.add(Errors.ofItem(e, i));
+            }
+        }
+
         if (!errors.isEmpty()) {
             throw new TheBestTodoAppException(errors);
         }
@@ -47,7 +135,24 @@ public class TodoService {
         todoRepository.update(id, todo);
     }
 
+    public void updateAll(List<Todo> todos) {
+        validateUpdatedTodos(todos);
+        todoRepository.updateAll(todos);
+    }
+
+    static void validateUpdatedTodos(List<Todo> todos) {
+        validateBatchSize(todos);
+        validateTodosData(todos.stream()
+                .map(t -> t == null ? null : new TodoData(t.name(), t.description()))
+                .toList());
+    }
+
     public void delete(long id) {
         todoRepository.delete(id);
     }
+
+    public void deleteAll(List<Long> ids) {
+        validateBatchSize(ids);
+        todoRepository.deleteAll(ids);
+    }
 }
@@ -0,0 +1,54 @@
+package com.igor101.thebesttodoapp.core;
+
+import java.util.Set;
+
+/*
+Keyset (cursor) pagination: after is an id of the last todo from the previous page (null for the first one).
+Todos are always ordered by a sort key with id as a tie-breaker, so pages are stable regardless of concurrent writes.
+Sorted by name, the cursor is (afterName, after): the name of the last todo is a part of it,
+so that the next page doesn't depend on whether that todo was renamed or deleted in the meantime.
+Fields are the ones needed by a caller; repositories may skip reading the others (description, mostly the largest
+one), returning todos with nulls instead. Id and name are always read, since they are needed to sort and paginate.
+*/
+public record TodosQuery(String nameFilter,
+                         String descriptionFilter,
+                         TodosSort sort,
+                         Long after,
+                         String afterName,
+                         int limit,
+                         Set<TodoField> fields) {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    public TodosQuery {
+        fields = Set.copyOf(fields);
+    }
+
+    public TodosQuery(String nameFilter, String descriptionFilter, TodosSort sort, Long after, int limit,
+                      Set<TodoField> fields) {
+        this(nameFilter, descriptionFilter, sort, after, null, limit, fields);
+    }
+
+    public TodosQuery(String nameFilter, String descriptionFilter, TodosSort sort, Long after, String afterName,
+                      int limit) {
+        this(nameFilter, descriptionFilter, sort, after, afterName, limit, TodoField.ALL);
+    }
+
+    public TodosQuery(String nameFilter, String descriptionFilter, TodosSort sort, Long after, int limit) {
+        this(nameFilter, descriptionFilter, sort, after, null, limit, TodoField.ALL);
+    }
+
+    public TodosQuery(String nameFilter, String descriptionFilter) {
+        this(nameFilter, descriptionFilter, TodosSort.ID, null, DEFAULT_LIMIT);
+    }
+
+    //Without afterName, there is nothing to compare names of todos with
+    public boolean validCursor() {
+        return sort != TodosSort.NAME || after == null || afterName != null;
+    }
+
+    public boolean withDescription() {
+        return fields.contains(TodoField.DESCRIPTION);
+    }
+}
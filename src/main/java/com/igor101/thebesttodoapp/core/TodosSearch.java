@@ -0,0 +1,13 @@
+package com.igor101.thebesttodoapp.core;
+
+/*
+Full-text (word) search: todos containing all words from the query, ranked by relevance and capped at top limit.
+*/
+public record TodosSearch(String query, int limit) {
+
+    public static final int DEFAULT_LIMIT = 20;
+
+    public TodosSearch(String query) {
+        this(query, DEFAULT_LIMIT);
+    }
+}
@@ -0,0 +1,5 @@
+package com.igor101.thebesttodoapp.core;
+
+public enum TodosSort {
+    ID, NAME
+}
@@ -0,0 +1,362 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*
+Caches todos(query) results of a delegate, bounded by their approximate weight (in bytes) and TTL,
+evicting not recently used entries first, by the clock (second chance) algorithm: entries are queued in the order
+they were put, hit only marks an entry as used and eviction takes the queue head, but moves used ones to its tail
+(unmarking them), so that it is O(1) amortized and hits don't need the lock.
+Writes passing through it invalidate only entries that they could have changed:
+* create - entries which filters match new todo
+* update - entries containing updated todo (found by the index of entries by their todos ids)
+or which filters match its new version
+* delete - entries containing deleted todo
+Pages sorted by name don't depend on their after todo, since its name is a part of the cursor (see TodosQuery).
+Every write also increments a generation, so that results loaded before it are not cached after it.
+Reads of cached entries don't take any lock, only loaded results, writes and evictions are serialized.
+Streamed todos and search results are not cached.
+Writes done bypassing this repository (by other app instances for example) are visible after TTL at most,
+or right after the version refresh that noticed them: delegate version is read in the background, every
+versionRefreshInterval, and every change of it, not produced by own writes, drops the whole cache,
+so that cached todos are never older than the known version. version() returns the known one, without any db call
+or lock, so writes bypassing this repository are also noticed by it after versionRefreshInterval at most.
+Own write reads the delegate version only after it (one db call) and, if no other own write is in progress
+and the known version is not newer, it becomes known, in the same critical section as its invalidation.
+Writes bypassing this repository, done since the last refresh up to an own write, are then visible after TTL at most.
+*/
+public final class CachingTodoRepository implements TodoRepository, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingTodoRepository.class);
+    private static final int TODO_BASE_WEIGHT = 48;
+    private static final int ENTRY_BASE_WEIGHT = 128;
+    private static final int MIN_EVICTION_QUEUE_COMPACTION_SIZE = 64;
+    private final TodoRepository delegate;
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<TodosQuery, CachedTodos> cache = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService versionRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "todos-cache-version-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //Guarded by the lock, as everything below it, except the generation and version which are also read without it
+    private final Map<Long, Set<TodosQuery>> queriesOfTodos = new HashMap<>();
+    //Might contain entries already removed from the cache, they are skipped and compacted from time to time
+    private final Deque<CachedTodos> evictionQueue = new ArrayDeque<>();
+    private final Object lock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile long generation;
+    private volatile long version;
+    private long weight;
+    private int writesInProgress;
+
+    public CachingTodoRepository(TodoRepository delegate, long maxWeight, Duration ttl,
+                                 Duration versionRefreshInterval, Clock clock) {
+        this.delegate = delegate;
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.version = delegate.version();
+
+        versionRefresher.scheduleWithFixedDelay(() -> {
+            try {
+                refreshVersion();
+            } catch (Exception e) {
+                LOG.warn("Failed to refresh todos version, cached todos are dropped after TTL at most", e);
+            }
+        }, versionRefreshInterval.toMillis(), versionRefreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<Todo> todos(TodosQuery query) {
+        var cached = cache.get(query);
+        if (cached != null && cached.expiresAt > clock.millis()) {
+            if (!cached.used) {
+                cached.used = true;
+            }
+            hits.increment();
+            return cached.todos;
+        }
+
+        var loadGeneration = generation;
+        misses.increment();
+
+        var todos = delegate.todos(query);
+
+        synchronized (lock) {
+            if (cached != null && cache.get(query) == cached) {
+                remove(query);
+            }
+            if (loadGeneration == generation) {
+                put(query, todos);
+            }
+        }
+
+        return todos;
+    }
+
+    private void put(TodosQuery query, List<Todo> todos) {
+        var entryWeight = weight(query, todos);
+        if (entryWeight > maxWeight) {
+            return;
+        }
+
+        remove(query);
+        var entry = new CachedTodos(query, List.copyOf(todos), entryWeight, clock.millis() + ttlMillis);
+        cache.put(query, entry);
+        evictionQueue.addLast(entry);
+        if (evictionQueue.size() > 2 * cache.size() + MIN_EVICTION_QUEUE_COMPACTION_SIZE) {
+            evictionQueue.removeIf(e -> cache.get(e.query) != e);
+        }
+        for (var t : entry.todos) {
+            queriesOfTodos.computeIfAbsent(t.id(), id -> new HashSet<>()).add(query);
+        }
+        weight += entryWeight;
+
+        while (weight > maxWeight) {
+            evictNotRecentlyUsed();
+        }
+    }
+
+    //Terminates, since weight over the max means that there is a cached entry, and used ones are unmarked
+    private void evictNotRecentlyUsed() {
+        while (true) {
+            var entry = evictionQueue.removeFirst();
+            if (cache.get(entry.query) != entry) {
+                continue;
+            }
+            if (entry.used) {
+                entry.used = false;
+                evictionQueue.addLast(entry);
+                continue;
+            }
+            remove(entry.query);
+            evictions.increment();
+            return;
+        }
+    }
+
+    private static long weight(TodosQuery query, List<Todo> todos) {
+        var weight = ENTRY_BASE_WEIGHT + 2L * (length(query.nameFilter()) + length(query.descriptionFilter()));
+        for (var t : todos) {
+            weight += TODO_BASE_WEIGHT + 2L * (length(t.name()) + length(t.description()));
+        }
+        return weight;
+    }
+
+    private static int length(String string) {
+        return string == null ? 0 : string.length();
+    }
+
+    private void remove(TodosQuery query) {
+        var removed = cache.remove(query);
+        if (removed == null) {
+            return;
+        }
+        weight -= removed.weight;
+        for (var t : removed.todos) {
+            var queries = queriesOfTodos.get(t.id());
+            if (queries != null && queries.remove(query) && queries.isEmpty()) {
+                queriesOfTodos.remove(t.id());
+            }
+        }
+    }
+
+    @Override
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        delegate.streamTodos(query, consumer);
+    }
+
+    @Override
+    public List<Todo> search(TodosSearch search) {
+        return delegate.search(search);
+    }
+
+    @Override
+    public List<Todo> todos(List<Long> ids) {
+        return delegate.todos(ids);
+    }
+
+    @Override
+    public long create(TodoData todo) {
+        return write(() -> delegate.create(todo), List.of(), query -> matches(query, todo));
+    }
+
+    @Override
+    public List<Long> createAll(List<TodoData> todos) {
+        return write(() -> delegate.createAll(todos), List.of(),
+                query -> todos.stream().anyMatch(t -> matches(query, t)));
+    }
+
+    @Override
+    public void update(long id, TodoData todo) {
+        write(() -> {
+            delegate.update(id, todo);
+            return null;
+        }, List.of(id), query -> matches(query, todo));
+    }
+
+    @Override
+    public void updateAll(List<Todo> todos) {
+        write(() -> {
+            delegate.updateAll(todos);
+            return null;
+        }, todos.stream().map(Todo::id).toList(), query -> todos.stream()
+                .anyMatch(t -> matches(query, new TodoData(t.name(), t.description()))));
+    }
+
+    @Override
+    public void delete(long id) {
+        write(() -> {
+            delegate.delete(id);
+            return null;
+        }, List.of(id), null);
+    }
+
+    @Override
+    public void deleteAll(List<Long> ids) {
+        write(() -> {
+            delegate.deleteAll(ids);
+            return null;
+        }, ids, null);
+    }
+
+    //Invalidates entries even if the write has failed, since it might have changed something before that
+    private <T> T write(Supplier<T> write, List<Long> ids, Predicate<TodosQuery> matching) {
+        synchronized (lock) {
+            writesInProgress++;
+        }
+
+        var versionAfter = -1L;
+        try {
+            var result = write.get();
+            versionAfter = delegate.version();
+            return result;
+        } finally {
+            synchronized (lock) {
+                writesInProgress--;
+                invalidate(ids, matching);
+                if (versionAfter > version && writesInProgress == 0) {
+                    version = versionAfter;
+                }
+            }
+        }
+    }
+
+    //Entries containing any of the ids and, if there is a predicate, entries of matching queries
+    private void invalidate(List<Long> ids, Predicate<TodosQuery> matching) {
+        generation++;
+
+        for (var id : ids) {
+            var queries = queriesOfTodos.get(id);
+            if (queries != null) {
+                List.copyOf(queries).forEach(this::remove);
+            }
+        }
+
+        if (matching != null) {
+            for (var query : cache.keySet()) {
+                if (matching.test(query)) {
+                    remove(query);
+                }
+            }
+        }
+    }
+
+    private static boolean matches(TodosQuery query, TodoData todo) {
+        return matches(todo.name(), query.nameFilter()) && matches(todo.description(), query.descriptionFilter());
+    }
+
+    private static boolean matches(String value, String filter) {
+        if (filter == null || filter.isBlank()) {
+            return true;
+        }
+        return value != null && value.toLowerCase().contains(filter.toLowerCase());
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    /*
+    Lock is taken only if the version has changed. If an own write has changed the known version in the meantime,
+    the read one might be older than it, so it is left to the next refresh.
+    */
+    void refreshVersion() {
+        var knownVersion = version;
+        var delegateVersion = delegate.version();
+        if (delegateVersion == knownVersion) {
+            return;
+        }
+        synchronized (lock) {
+            if (version == knownVersion) {
+                generation++;
+                cache.clear();
+                evictionQueue.clear();
+                queriesOfTodos.clear();
+                weight = 0;
+                version = delegateVersion;
+            }
+        }
+    }
+
+    public Stats stats() {
+        synchronized (lock) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), cache.size(), weight);
+        }
+    }
+
+    @Override
+    public void close() {
+        versionRefresher.shutdownNow();
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size, long weight) {
+    }
+
+    //Used is marked by hits and unmarked by the eviction, see the class comment
+    private static class CachedTodos {
+
+        final TodosQuery query;
+        final List<Todo> todos;
+        final long weight;
+        final long expiresAt;
+        volatile boolean used;
+
+        CachedTodos(TodosQuery query, List<Todo> todos, long weight, long expiresAt) {
+            this.query = query;
+            this.todos = todos;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
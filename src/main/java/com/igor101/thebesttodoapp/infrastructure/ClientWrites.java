@@ -0,0 +1,46 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import java.util.function.LongConsumer;
+
+/*
+Position (in the write-ahead log of the primary) of the last write of a client, so that its reads are served only
+by replicas which have replayed it (see ReplicaRoutingTodoRepository), while reads of other clients are not affected.
+It is bound to the thread handling a client request by the http layer, which keeps it in a cookie (see TheBestTodoApp),
+and passed by ExecutorAsyncTodoRepository to its db threads. There is none outside of requests.
+*/
+public class ClientWrites {
+
+    private static final ThreadLocal<ClientWrites> CURRENT = new ThreadLocal<>();
+    private final LongConsumer onWrite;
+    private volatile long lastWritePosition;
+
+    //onWrite is called with a new position, right after a write of the client
+    public ClientWrites(long lastWritePosition, LongConsumer onWrite) {
+        this.lastWritePosition = lastWritePosition;
+        this.onWrite = onWrite;
+    }
+
+    public static ClientWrites current() {
+        return CURRENT.get();
+    }
+
+    //Null unbinds
+    public static void bind(ClientWrites clientWrites) {
+        if (clientWrites == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(clientWrites);
+        }
+    }
+
+    public long lastWritePosition() {
+        return lastWritePosition;
+    }
+
+    void written(long position) {
+        if (position > lastWritePosition) {
+            lastWritePosition = position;
+            onWrite.accept(position);
+        }
+    }
+}
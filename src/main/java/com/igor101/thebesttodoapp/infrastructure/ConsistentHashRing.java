@@ -0,0 +1,59 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/*
+Consistent hashing: every shard has weight * VIRTUAL_NODES points on a ring of 64-bit hashes and a key belongs to
+the shard of the first point at or after its hash (wrapping around).
+Points are spread evenly, so a shard owns a share of keys proportional to its weight, and adding (or removing)
+a shard moves only keys of its share, taking them from (or giving them to) all the other shards.
+Immutable, ring is rebuilt to change shards.
+*/
+class ConsistentHashRing {
+
+    static final int VIRTUAL_NODES = 128;
+    //So that points are not hashes of small numbers, the same as hashes of small keys
+    private static final long POINTS_SEED = 0x9e3779b97f4a7c15L;
+    private final long[] points;
+    private final int[] pointsShards;
+
+    //Of shard ids and their weights, shards of zero weight don't own any keys
+    ConsistentHashRing(Map<Integer, Integer> shardsWeights) {
+        var shardsPoints = new ArrayList<long[]>();
+        shardsWeights.forEach((shard, weight) -> {
+            for (int v = 0; v < weight * VIRTUAL_NODES; v++) {
+                shardsPoints.add(new long[]{hash(POINTS_SEED + (((long) shard << 32) | v)), shard});
+            }
+        });
+        if (shardsPoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard with positive weight is required");
+        }
+        shardsPoints.sort(Comparator.comparingLong(p -> p[0]));
+
+        points = new long[shardsPoints.size()];
+        pointsShards = new int[shardsPoints.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = shardsPoints.get(i)[0];
+            pointsShards[i] = (int) shardsPoints.get(i)[1];
+        }
+    }
+
+    int shard(long key) {
+        var index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return pointsShards[index == points.length ? 0 : index];
+    }
+
+    //Finalizer of SplitMix64: every bit of the input affects all bits of the output
+    static long hash(long value) {
+        var hash = value;
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -0,0 +1,124 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.AsyncTodoRepository;
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+AsyncTodoRepository of a blocking one (jdbc has no other), calling it on a fixed number of db threads,
+so that http threads don't wait for the db: many concurrent requests need only a few threads.
+Calls wait for a free thread in a queue of queueSize; when it's full, they fail right away
+with RejectedExecutionException, instead of piling up unboundedly.
+Futures are completed by db threads, so their dependent stages (like writing responses) run on them too,
+that's why there should be a bit more threads than db connections.
+*/
+public class ExecutorAsyncTodoRepository implements AsyncTodoRepository, AutoCloseable {
+
+    private final TodoRepository repository;
+    private final ThreadPoolExecutor executor;
+
+    public ExecutorAsyncTodoRepository(TodoRepository repository, int threads, int queueSize) {
+        this.repository = repository;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            var thread = new Thread(r, "todos-db-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Todo>> todos(TodosQuery query) {
+        return submit(() -> repository.todos(query));
+    }
+
+    @Override
+    public CompletableFuture<List<Todo>> search(TodosSearch search) {
+        return submit(() -> repository.search(search));
+    }
+
+    @Override
+    public CompletableFuture<List<Todo>> todos(List<Long> ids) {
+        return submit(() -> repository.todos(ids));
+    }
+
+    @Override
+    public CompletableFuture<Long> create(TodoData todo) {
+        return submit(() -> repository.create(todo));
+    }
+
+    @Override
+    public CompletableFuture<List<Long>> createAll(List<TodoData> todos) {
+        return submit(() -> repository.createAll(todos));
+    }
+
+    @Override
+    public CompletableFuture<Void> update(long id, TodoData todo) {
+        return submit(() -> {
+            repository.update(id, todo);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAll(List<Todo> todos) {
+        return submit(() -> {
+            repository.updateAll(todos);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(long id) {
+        return submit(() -> {
+            repository.delete(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll(List<Long> ids) {
+        return submit(() -> {
+            repository.deleteAll(ids);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> version() {
+        return submit(repository::version);
+    }
+
+    //Calls are made on behalf of the client of the calling thread, see ClientWrites
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        var clientWrites = ClientWrites.current();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                ClientWrites.bind(clientWrites);
+                try {
+                    return call.get();
+                } finally {
+                    ClientWrites.bind(null);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
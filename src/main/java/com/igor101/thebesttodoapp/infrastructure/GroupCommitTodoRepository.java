@@ -0,0 +1,201 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+SqlTodoRepository that, instead of executing every write in its own transaction (round trip and fsync),
+queues writes of concurrent callers and commits them in groups, in a single transaction:
+* creates - one multi-row insert, returning ids
+* updates - one jdbc batch
+* deletes - one delete of all ids
+(the same statements as createAll/updateAll/deleteAll, which are executed directly, not grouped)
+A group is collected from the first queued write, until window passes, maxSize writes are queued
+or there are no other callers to wait for (so that a lone caller doesn't wait for the window).
+Callers are blocked until their group is committed. If a group fails, its writes are retried one by one,
+so that an invalid write fails only its caller.
+Reads are not grouped.
+*/
+public class GroupCommitTodoRepository extends SqlTodoRepository implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitTodoRepository.class);
+    private static final long CLOSED_CHECK_INTERVAL_MILLIS = 100;
+    private final DSLContext context;
+    private final int maxSize;
+    private final long windowNanos;
+    private final BlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+    //Queued or being committed
+    private final AtomicInteger inFlightWrites = new AtomicInteger();
+    private final Thread committer;
+    private volatile boolean closed;
+
+    public GroupCommitTodoRepository(DSLContext context, int maxSize, Duration window) {
+        super(context);
+        this.context = context;
+        this.maxSize = maxSize;
+        this.windowNanos = window.toNanos();
+        this.committer = new Thread(this::commitGroups, "todos-group-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    @Override
+    public long create(TodoData todo) {
+        return (long) write(new PendingWrite(WriteType.CREATE, 0, todo));
+    }
+
+    @Override
+    public void update(long id, TodoData todo) {
+        write(new PendingWrite(WriteType.UPDATE, id, todo));
+    }
+
+    @Override
+    public void delete(long id) {
+        write(new PendingWrite(WriteType.DELETE, id, null));
+    }
+
+    private Object write(PendingWrite write) {
+        if (closed) {
+            throw new IllegalStateException("Repository is closed");
+        }
+
+        inFlightWrites.incrementAndGet();
+        write.result().whenComplete((r, e) -> inFlightWrites.decrementAndGet());
+
+        pendingWrites.add(write);
+        if (closed && pendingWrites.remove(write)) {
+            write.result().cancel(false);
+            throw new IllegalStateException("Repository is closed");
+        }
+
+        try {
+            return write.result().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void commitGroups() {
+        while (!closed) {
+            try {
+                var group = nextGroup();
+                if (!group.isEmpty()) {
+                    commit(group);
+                }
+            } catch (Exception e) {
+                LOG.error("Unexpected group commit failure", e);
+            }
+        }
+
+        var notCommitted = new ArrayList<PendingWrite>();
+        pendingWrites.drainTo(notCommitted);
+        notCommitted.forEach(w -> w.result().completeExceptionally(new IllegalStateException("Repository is closed")));
+    }
+
+    //Empty if there was nothing to commit for some time, to check whether repository was closed
+    private List<PendingWrite> nextGroup() throws InterruptedException {
+        var group = new ArrayList<PendingWrite>();
+        var first = pendingWrites.poll(CLOSED_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return group;
+        }
+        group.add(first);
+
+        var deadline = System.nanoTime() + windowNanos;
+        while (group.size() < maxSize) {
+            if (pendingWrites.isEmpty() && group.size() >= inFlightWrites.get()) {
+                break;
+            }
+            var remaining = deadline - System.nanoTime();
+            var next = remaining > 0 ? pendingWrites.poll(remaining, TimeUnit.NANOSECONDS) : pendingWrites.poll();
+            if (next == null) {
+                break;
+            }
+            group.add(next);
+        }
+
+        return group;
+    }
+
+    private void commit(List<PendingWrite> group) {
+        List<Long> createdIds;
+        try {
+            createdIds = context.transactionResult(configuration -> commit(DSL.using(configuration), group));
+        } catch (Exception e) {
+            if (group.size() == 1) {
+                group.get(0).result().completeExceptionally(e);
+            } else {
+                LOG.warn("Failed to commit group of {} writes, committing them one by one", group.size(), e);
+                group.forEach(w -> commit(List.of(w)));
+            }
+            return;
+        }
+
+        var createdIdx = 0;
+        for (var w : group) {
+            w.result().complete(w.type() == WriteType.CREATE ? createdIds.get(createdIdx++) : null);
+        }
+    }
+
+    //Returns ids of created todos, in the group order
+    private List<Long> commit(DSLContext context, List<PendingWrite> group) {
+        var creates = new ArrayList<TodoData>();
+        var updates = new ArrayList<Todo>();
+        var deletes = new ArrayList<Long>();
+
+        for (var w : group) {
+            switch (w.type()) {
+                case CREATE -> creates.add(w.todo());
+                case UPDATE -> updates.add(new Todo(w.id(), w.todo().name(), w.todo().description()));
+                case DELETE -> deletes.add(w.id());
+            }
+        }
+
+        var createdIds = createAll(context, creates);
+        updateAll(context, updates);
+        deleteAll(context, deletes);
+
+        return createdIds;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private enum WriteType {
+        CREATE, UPDATE, DELETE
+    }
+
+    private record PendingWrite(WriteType type, long id, TodoData todo, CompletableFuture<Object> result) {
+
+        PendingWrite(WriteType type, long id, TodoData todo) {
+            this(type, id, todo, new CompletableFuture<>());
+        }
+    }
+}
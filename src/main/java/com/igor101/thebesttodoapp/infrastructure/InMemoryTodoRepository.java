@@ -3,28 +3,299 @@ package com.igor101.thebesttodoapp.infrastructure;
 import com.igor101.thebesttodoapp.core.Todo;
 import com.igor101.thebesttodoapp.core.TodoData;
 import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
+/*
+Thread-safe: all todos and their indexes are kept in an immutable Snapshot, built from persistent structures.
+Reads take the current snapshot (single volatile read) and never wait nor retry, seeing a consistent state.
+Writes build a new snapshot from the current one, sharing most of it, and publish it with compare-and-set,
+retrying on conflict (lock-free). Ids are allocated inside that, so they are published in the insertion order.
+*/
 public class InMemoryTodoRepository implements TodoRepository {
 
-    private final Map<Long, Todo> todos = new LinkedHashMap<>();
-    private final AtomicLong nextId = new AtomicLong(0);
+    private static final Comparator<Todo> NAME_ORDER = Comparator.comparing(Todo::name)
+            .thenComparingLong(Todo::id);
+    private static final Comparator<RankedTodo> RANKED_ORDER = Comparator.comparingDouble(RankedTodo::rank)
+            .reversed()
+            .thenComparingLong(r -> r.todo().id());
+    private static final Pattern WORDS_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    //The same as default weights of ts_rank for A (name) and B (description) labels in Postgres
+    private static final double NAME_WORD_WEIGHT = 1.0;
+    private static final double DESCRIPTION_WORD_WEIGHT = 0.4;
+    private static final int MIN_BULK_PUT_SIZE = 100;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
 
     @Override
-    public List<Todo> todos(String nameFilter, String descriptionFilter) {
-        return new ArrayList<>(todos.values());
+    public List<Todo> todos(TodosQuery query) {
+        var result = new ArrayList<Todo>();
+        streamTodos(query, result::add);
+        return result;
+    }
+
+    @Override
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        var withDescription = query.withDescription();
+        var streamed = 0;
+
+        for (var todo : sortedTodos(snapshot.get(), query)) {
+            if (streamed >= query.limit()) {
+                break;
+            }
+            if (matches(todo.name(), query.nameFilter()) && matches(todo.description(), query.descriptionFilter())) {
+                consumer.accept(withDescription ? todo : new Todo(todo.id(), todo.name()));
+                streamed++;
+            }
+        }
+    }
+
+    /*
+    If any filter can be narrowed down by trigram indexes to a few candidates, only they are verified:
+    sorted by id, they are taken from after as they are, sorted by name, the ones after the cursor are sorted.
+    Otherwise (no such filter, or too many candidates, see scanCheaper()), all todos are scanned in order.
+    */
+    private Iterable<Todo> sortedTodos(Snapshot snapshot, TodosQuery query) {
+        var candidates = filtersCandidates(snapshot, query);
+        if (candidates == null) {
+            return orderedTodos(snapshot, query);
+        }
+        if (query.sort() != TodosSort.NAME) {
+            return candidatesAfter(snapshot, candidates, query.after());
+        }
+        return sortedCandidates(snapshot, candidates, query);
+    }
+
+    /*
+    Ordered scan reaches a page after about limit * todos / candidates todos, sorting candidates takes about
+    candidates * log(candidates) steps: scan is cheaper when candidates^2 >= limit * todos (ignoring the log).
+    */
+    static boolean scanCheaper(int candidates, int limit, long todos) {
+        return (long) candidates * candidates >= limit * todos;
+    }
+
+    //Null if none of the filters can be narrowed down by the indexes to a few candidates
+    private int[] filtersCandidates(Snapshot snapshot, TodosQuery query) {
+        var nameCandidates = filterCandidates(snapshot, snapshot.nameIndex(), query.nameFilter(), query.limit());
+        var descriptionCandidates = filterCandidates(snapshot, snapshot.descriptionIndex(),
+                query.descriptionFilter(), query.limit());
+        if (nameCandidates == null) {
+            return descriptionCandidates;
+        }
+        if (descriptionCandidates == null) {
+            return nameCandidates;
+        }
+        return intersection(nameCandidates, descriptionCandidates);
+    }
+
+    private int[] filterCandidates(Snapshot snapshot, TrigramIndex index, String filter, int limit) {
+        if (filter == null || filter.isBlank()) {
+            return null;
+        }
+        var candidates = index.candidates(filter);
+        if (candidates == null || scanCheaper(candidates.length, limit, snapshot.nextId())) {
+            return null;
+        }
+        return candidates;
+    }
+
+    //Of sorted arrays, by a single merge pass
+    private static int[] intersection(int[] a, int[] b) {
+        var result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    //Candidates are a superset of existing todos ids, since indexes are hashed
+    private Iterable<Todo> candidatesAfter(Snapshot snapshot, int[] candidates, Long after) {
+        //Ids are ints, so after is compared with their range before adding 1 to it, so that it doesn't overflow
+        var from = 0;
+        if (after != null && after >= Integer.MAX_VALUE) {
+            from = candidates.length;
+        } else if (after != null && after >= 0) {
+            var afterIndex = Arrays.binarySearch(candidates, (int) (after + 1));
+            from = afterIndex >= 0 ? afterIndex : -afterIndex - 1;
+        }
+        var fromIndex = from;
+        return () -> new Iterator<>() {
+
+            private int next = nextExisting(fromIndex);
+
+            private int nextExisting(int from) {
+                var index = from;
+                while (index < candidates.length && snapshot.todo(candidates[index]) == null) {
+                    index++;
+                }
+                return index;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < candidates.length;
+            }
+
+            @Override
+            public Todo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var todo = snapshot.todo(candidates[next]);
+                next = nextExisting(next + 1);
+                return todo;
+            }
+        };
+    }
+
+    private List<Todo> sortedCandidates(Snapshot snapshot, int[] candidates, TodosQuery query) {
+        var afterTodo = query.after() == null ? null : new Todo(query.after(), query.afterName());
+        var candidateTodos = new ArrayList<Todo>(candidates.length);
+        for (var id : candidates) {
+            var todo = snapshot.todo(id);
+            if (todo != null && (afterTodo == null || NAME_ORDER.compare(todo, afterTodo) > 0)) {
+                candidateTodos.add(todo);
+            }
+        }
+        candidateTodos.sort(NAME_ORDER);
+        return candidateTodos;
+    }
+
+    private Iterable<Todo> orderedTodos(Snapshot snapshot, TodosQuery query) {
+        if (query.sort() == TodosSort.NAME) {
+            if (query.after() == null) {
+                return snapshot.todosByName();
+            }
+            return snapshot.todosByName().tailSet(new Todo(query.after(), query.afterName()));
+        }
+        return snapshot.todosAfter(query.after());
+    }
+
+    private boolean matches(String value, String filter) {
+        if (filter == null || filter.isBlank()) {
+            return true;
+        }
+        return value != null && value.toLowerCase().contains(filter.toLowerCase());
+    }
+
+    /*
+    Simplified equivalent of Postgres full-text search: todo needs to contain all query words (no stemming),
+    rank is a weighted count of their occurrences. Only top limit todos are kept while scanning.
+    */
+    @Override
+    public List<Todo> search(TodosSearch search) {
+        var searchWords = words(search.query()).collect(Collectors.toSet());
+        var topRanked = new PriorityQueue<>(RANKED_ORDER.reversed());
+
+        for (var todo : snapshot.get().todosAfter(null)) {
+            var rank = rank(todo, searchWords);
+            if (rank > 0) {
+                topRanked.add(new RankedTodo(todo, rank));
+                if (topRanked.size() > search.limit()) {
+                    topRanked.poll();
+                }
+            }
+        }
+
+        return topRanked.stream()
+                .sorted(RANKED_ORDER)
+                .map(RankedTodo::todo)
+                .toList();
+    }
+
+    private Stream<String> words(String text) {
+        if (text == null) {
+            return Stream.empty();
+        }
+        return WORDS_SEPARATOR.splitAsStream(text.toLowerCase())
+                .filter(w -> !w.isEmpty());
+    }
+
+    private double rank(Todo todo, Set<String> searchWords) {
+        if (searchWords.isEmpty()) {
+            return 0;
+        }
+
+        var nameOccurrences = occurrences(todo.name(), searchWords);
+        var descriptionOccurrences = occurrences(todo.description(), searchWords);
+
+        var rank = 0.0;
+        for (var w : searchWords) {
+            var nameCount = nameOccurrences.getOrDefault(w, 0L);
+            var descriptionCount = descriptionOccurrences.getOrDefault(w, 0L);
+            if (nameCount == 0 && descriptionCount == 0) {
+                return 0;
+            }
+            rank += nameCount * NAME_WORD_WEIGHT + descriptionCount * DESCRIPTION_WORD_WEIGHT;
+        }
+
+        return rank;
+    }
+
+    private Map<String, Long> occurrences(String text, Set<String> searchWords) {
+        return words(text)
+                .filter(searchWords::contains)
+                .collect(Collectors.groupingBy(w -> w, Collectors.counting()));
+    }
+
+    @Override
+    public List<Todo> todos(List<Long> ids) {
+        var current = snapshot.get();
+        return ids.stream()
+                .distinct()
+                .sorted()
+                .map(current::todo)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     @Override
     public long create(TodoData todo) {
-        var id = nextId.getAndIncrement();
-        todos.put(id, todoFromData(id, todo));
-        return id;
+        var created = snapshot.updateAndGet(s -> s.with(todoFromData(s.nextId(), todo)));
+        return created.nextId() - 1;
+    }
+
+    //All todos are published at once, in a single snapshot
+    @Override
+    public List<Long> createAll(List<TodoData> todos) {
+        var created = snapshot.updateAndGet(s -> {
+            var next = s;
+            for (var t : todos) {
+                next = next.with(todoFromData(next.nextId(), t));
+            }
+            return next;
+        });
+        var firstId = created.nextId() - todos.size();
+        return LongStream.range(firstId, created.nextId())
+                .boxed()
+                .toList();
     }
 
     private Todo todoFromData(long id, TodoData todo) {
@@ -33,11 +304,210 @@ public class InMemoryTodoRepository implements TodoRepository {
 
     @Override
     public void update(long id, TodoData todo) {
-        todos.put(id, todoFromData(id, todo));
+        snapshot.updateAndGet(s -> s.todo(id) == null ? s : s.with(todoFromData(id, todo)));
+    }
+
+    @Override
+    public void updateAll(List<Todo> todos) {
+        snapshot.updateAndGet(s -> {
+            var next = s;
+            for (var t : todos) {
+                if (next.todo(t.id()) != null) {
+                    next = next.with(t);
+                }
+            }
+            return next;
+        });
     }
 
     @Override
     public void delete(long id) {
-        todos.remove(id);
+        snapshot.updateAndGet(s -> s.without(id));
+    }
+
+    @Override
+    public void deleteAll(List<Long> ids) {
+        snapshot.updateAndGet(s -> {
+            var next = s;
+            for (var id : ids) {
+                next = next.without(id);
+            }
+            return next;
+        });
+    }
+
+    @Override
+    public long version() {
+        return snapshot.get().version();
+    }
+
+    /*
+    For repositories persisting todos elsewhere (like LogTodoRepository) and keeping them here, to serve reads.
+    Todo is put under its id, as is: ids up to it, that were never put, are treated as ids of deleted todos.
+    */
+    void put(Todo todo) {
+        snapshot.updateAndGet(s -> s.with(todo));
+    }
+
+    /*
+    The same as put of each todo, but if they all are new (bulk load), indexes are updated at once, much faster.
+    Bulk update has a fixed cost (of going through all index buckets), so small batches are put one by one.
+    */
+    void putAll(List<Todo> todos) {
+        snapshot.updateAndGet(s -> {
+            if (todos.size() >= MIN_BULK_PUT_SIZE && allNew(s, todos)) {
+                return s.withAllNew(todos);
+            }
+            var next = s;
+            for (var t : todos) {
+                next = next.with(t);
+            }
+            return next;
+        });
+    }
+
+    private boolean allNew(Snapshot snapshot, List<Todo> todos) {
+        var ids = new HashSet<Long>();
+        for (var t : todos) {
+            if (snapshot.todo(t.id()) != null || !ids.add(t.id())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Next created todo will have at least this id
+    void reserveIds(long nextId) {
+        snapshot.updateAndGet(s -> s.withNextId(nextId));
+    }
+
+    long nextId() {
+        return snapshot.get().nextId();
+    }
+
+    Todo todo(long id) {
+        return snapshot.get().todo(id);
+    }
+
+    //Of the current state, not affected by later writes
+    Iterable<Todo> allTodos() {
+        return snapshot.get().todosAfter(null);
+    }
+
+    private record RankedTodo(Todo todo, double rank) {
+    }
+
+    /*
+    Todos are stored under their ids in the vector, so ids are allocated as its next index
+    and deleted todos leave null gaps.
+    */
+    private record Snapshot(PersistentVector<Todo> todos,
+                            PersistentSortedSet<Todo> todosByName,
+                            TrigramIndex nameIndex,
+                            TrigramIndex descriptionIndex,
+                            long version) {
+
+        static final Snapshot EMPTY = new Snapshot(PersistentVector.empty(), PersistentSortedSet.empty(NAME_ORDER),
+                TrigramIndex.EMPTY, TrigramIndex.EMPTY, 0);
+
+        long nextId() {
+            return todos.size();
+        }
+
+        Todo todo(long id) {
+            return id < 0 || id >= todos.size() ? null : todos.get((int) id);
+        }
+
+        //Compared before adding 1 to after, so that it doesn't overflow
+        Iterable<Todo> todosAfter(Long after) {
+            int from;
+            if (after == null || after < 0) {
+                from = 0;
+            } else if (after >= todos.size() - 1) {
+                from = todos.size();
+            } else {
+                from = (int) (after + 1);
+            }
+            return () -> new Iterator<>() {
+
+                private int next = nextExisting(from);
+
+                private int nextExisting(int from) {
+                    var id = from;
+                    while (id < todos.size() && todos.get(id) == null) {
+                        id++;
+                    }
+                    return id;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < todos.size();
+                }
+
+                @Override
+                public Todo next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    var todo = todos.get(next);
+                    next = nextExisting(next + 1);
+                    return todo;
+                }
+            };
+        }
+
+        Snapshot with(Todo todo) {
+            var id = Math.toIntExact(todo.id());
+            var previous = todo(id);
+            var previousName = previous == null ? null : previous.name();
+            var previousDescription = previous == null ? null : previous.description();
+            var newTodosByName = previous == null ? todosByName : todosByName.without(previous);
+            return new Snapshot(todos.set(id, todo),
+                    newTodosByName.with(todo),
+                    nameIndex.with(id, previousName, todo.name()),
+                    descriptionIndex.with(id, previousDescription, todo.description()),
+                    version + 1);
+        }
+
+        //Todos of ids that are not present
+        Snapshot withAllNew(List<Todo> newTodos) {
+            var newTodosVector = todos;
+            var newTodosByName = todosByName;
+            var ids = new int[newTodos.size()];
+            var names = new ArrayList<String>(newTodos.size());
+            var descriptions = new ArrayList<String>(newTodos.size());
+            for (int i = 0; i < ids.length; i++) {
+                var todo = newTodos.get(i);
+                ids[i] = Math.toIntExact(todo.id());
+                names.add(todo.name());
+                descriptions.add(todo.description());
+                newTodosVector = newTodosVector.set(ids[i], todo);
+                newTodosByName = newTodosByName.with(todo);
+            }
+            return new Snapshot(newTodosVector, newTodosByName, nameIndex.withAll(ids, names),
+                    descriptionIndex.withAll(ids, descriptions), version + newTodos.size());
+        }
+
+        Snapshot withNextId(long nextId) {
+            if (nextId <= nextId()) {
+                return this;
+            }
+            return new Snapshot(todos.set(Math.toIntExact(nextId - 1), null), todosByName, nameIndex,
+                    descriptionIndex, version + 1);
+        }
+
+        Snapshot without(long id) {
+            var previous = todo(id);
+            if (previous == null) {
+                return this;
+            }
+            var intId = (int) id;
+            return new Snapshot(todos.set(intId, null),
+                    todosByName.without(previous),
+                    nameIndex.with(intId, previous.name(), null),
+                    descriptionIndex.with(intId, previous.description(), null),
+                    version + 1);
+        }
     }
 }
@@ -0,0 +1,391 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import org.jooq.exception.DataAccessException;
+import org.postgresql.PGStatement;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+The same queries as SqlTodoRepository, but without jOOQ: SQL of every statement is rendered once
+(todos queries have a few variants, of filters, sort, keyset and columns, all rendered upfront), values are bound by index
+and rows are mapped by position.
+pgjdbc turns a statement into a server-side prepared one (parsed and planned once per connection) after it was
+executed prepareThreshold times on a connection; pooled connections live long, so that happens for all of them.
+The exception are statements with ILIKE filters: a server-side prepared statement switches to a generic plan after
+a few executions, and generic plan can't use trigram index for an unknown pattern (see SqlTodoRepository),
+so they are never server-side prepared and are planned for their actual patterns every time.
+Failures are thrown as jOOQ DataAccessException, the same as SqlTodoRepository ones.
+*/
+public class JdbcTodoRepository implements TodoRepository {
+
+    static final String TODOS_COLUMNS = "select id, name, description from todo";
+    static final String TODOS_WITHOUT_DESCRIPTION_COLUMNS = "select id, name, null::text from todo";
+    static final String SEARCH_SQL = """
+            select id, name, description from todo, websearch_to_tsquery('%s', ?) query
+            where search_document @@ query
+            order by ts_rank(search_document, query) desc, id
+            limit ?""".formatted(SqlTodoRepository.SEARCH_CONFIG);
+    static final String TODOS_OF_IDS_SQL = TODOS_COLUMNS + " where id = any(?) order by id";
+    static final String CREATE_SQL = "insert into todo (name, description) values (?, ?) returning id";
+    //unnest keeps arrays order, so ids are generated in todos order, but returned rows are not guaranteed to be
+    static final String CREATE_ALL_SQL = """
+            insert into todo (name, description)
+            select * from unnest(?::text[], ?::text[])
+            returning id""";
+    static final String UPDATE_SQL = "update todo set name = ?, description = ? where id = ?";
+    static final String DELETE_SQL = "delete from todo where id = ?";
+    static final String DELETE_ALL_SQL = "delete from todo where id = any(?)";
+    static final String VERSION_SQL = "select sum(version) from todo_version";
+    static final String REPLICATION_LAG_SQL = """
+            select case when not pg_is_in_recovery() or pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0
+            else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 'Infinity') end""";
+    static final String WAL_POSITION_SQL = """
+            select pg_wal_lsn_diff(case when pg_is_in_recovery() then coalesce(pg_last_wal_replay_lsn(), '0/0')
+            else pg_current_wal_insert_lsn() end, '0/0')::bigint""";
+    private static final Map<TodosQueryVariant, String> TODOS_SQLS = todosSqls();
+    private final DataSource dataSource;
+    private final int prepareThreshold;
+
+    public JdbcTodoRepository(DataSource dataSource, int prepareThreshold) {
+        this.dataSource = dataSource;
+        this.prepareThreshold = prepareThreshold;
+    }
+
+    private static Map<TodosQueryVariant, String> todosSqls() {
+        var sqls = new HashMap<TodosQueryVariant, String>();
+        for (var nameFilter : FilterType.values()) {
+            for (var descriptionFilter : FilterType.values()) {
+                for (var sort : TodosSort.values()) {
+                    for (var after : new boolean[]{false, true}) {
+                        for (var description : new boolean[]{false, true}) {
+                            var variant = new TodosQueryVariant(nameFilter, descriptionFilter, sort, after,
+                                    description);
+                            sqls.put(variant, todosSql(variant));
+                        }
+                    }
+                }
+            }
+        }
+        return sqls;
+    }
+
+    static String todosSql(TodosQueryVariant variant) {
+        var conditions = new ArrayList<String>();
+        filterCondition("name", variant.nameFilter(), conditions);
+        filterCondition("description", variant.descriptionFilter(), conditions);
+        if (variant.after()) {
+            conditions.add(variant.sort() == TodosSort.NAME ? "(name, id) > (?, ?)" : "id > ?");
+        }
+
+        var sql = new StringBuilder(variant.description() ? TODOS_COLUMNS : TODOS_WITHOUT_DESCRIPTION_COLUMNS);
+        if (!conditions.isEmpty()) {
+            sql.append(" where ").append(String.join(" and ", conditions));
+        }
+        sql.append(variant.sort() == TodosSort.NAME ? " order by name, id" : " order by id");
+        sql.append(" limit ?");
+
+        return sql.toString();
+    }
+
+    private static void filterCondition(String column, FilterType filter, List<String> conditions) {
+        if (filter == FilterType.SHORT) {
+            conditions.add("position(? in lower(%s)) > 0".formatted(column));
+        } else if (filter == FilterType.TRIGRAM) {
+            conditions.add("%s ilike ? escape '%s'".formatted(column, SqlTodoRepository.LIKE_ESCAPE));
+        }
+    }
+
+    @Override
+    public List<Todo> todos(TodosQuery query) {
+        return execute(connection -> {
+            try (var statement = todosStatement(connection, query)) {
+                return todos(statement);
+            }
+        });
+    }
+
+    private PreparedStatement todosStatement(Connection connection, TodosQuery query) throws SQLException {
+        var nameFilter = FilterType.of(query.nameFilter());
+        var descriptionFilter = FilterType.of(query.descriptionFilter());
+        var sort = query.sort() == TodosSort.NAME ? TodosSort.NAME : TodosSort.ID;
+        var variant = new TodosQueryVariant(nameFilter, descriptionFilter, sort, query.after() != null,
+                query.withDescription());
+
+        var statement = connection.prepareStatement(TODOS_SQLS.get(variant));
+        var trigramFilter = nameFilter == FilterType.TRIGRAM || descriptionFilter == FilterType.TRIGRAM;
+        statement.unwrap(PGStatement.class).setPrepareThreshold(trigramFilter ? 0 : prepareThreshold);
+
+        var index = 1;
+        index = bindFilter(statement, index, nameFilter, query.nameFilter());
+        index = bindFilter(statement, index, descriptionFilter, query.descriptionFilter());
+        if (query.after() != null) {
+            if (sort == TodosSort.NAME) {
+                statement.setString(index++, query.afterName());
+            }
+            statement.setLong(index++, query.after());
+        }
+        statement.setInt(index, query.limit());
+
+        return statement;
+    }
+
+    private int bindFilter(PreparedStatement statement, int index, FilterType filter, String value)
+            throws SQLException {
+        if (filter == FilterType.SHORT) {
+            statement.setString(index, value.toLowerCase());
+            return index + 1;
+        }
+        if (filter == FilterType.TRIGRAM) {
+            statement.setString(index, "%" + SqlTodoRepository.escapedLike(value) + "%");
+            return index + 1;
+        }
+        return index;
+    }
+
+    //Postgres uses server-side cursor (fetch size is respected) only within a transaction
+    @Override
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        execute(connection -> {
+            connection.setAutoCommit(false);
+            try (var statement = todosStatement(connection, query)) {
+                statement.setFetchSize(SqlTodoRepository.STREAM_FETCH_SIZE);
+                try (var result = statement.executeQuery()) {
+                    while (result.next()) {
+                        consumer.accept(todo(result));
+                    }
+                }
+                connection.commit();
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<Todo> search(TodosSearch search) {
+        return execute(connection -> {
+            try (var statement = preparedStatement(connection, SEARCH_SQL)) {
+                statement.setString(1, search.query());
+                statement.setInt(2, search.limit());
+                return todos(statement);
+            }
+        });
+    }
+
+    @Override
+    public List<Todo> todos(List<Long> ids) {
+        return execute(connection -> {
+            try (var statement = preparedStatement(connection, TODOS_OF_IDS_SQL)) {
+                statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+                return todos(statement);
+            }
+        });
+    }
+
+    private List<Todo> todos(PreparedStatement statement) throws SQLException {
+        try (var result = statement.executeQuery()) {
+            var todos = new ArrayList<Todo>();
+            while (result.next()) {
+                todos.add(todo(result));
+            }
+            return todos;
+        }
+    }
+
+    private Todo todo(ResultSet result) throws SQLException {
+        return new Todo(result.getLong(1), result.getString(2), result.getString(3));
+    }
+
+    @Override
+    public long create(TodoData todo) {
+        return execute(connection -> {
+            try (var statement = preparedStatement(connection, CREATE_SQL)) {
+                statement.setString(1, todo.name());
+                statement.setString(2, todo.description());
+                try (var result = statement.executeQuery()) {
+                    result.next();
+                    return result.getLong(1);
+                }
+            }
+        });
+    }
+
+    @Override
+    public List<Long> createAll(List<TodoData> todos) {
+        if (todos.isEmpty()) {
+            return List.of();
+        }
+
+        var names = new String[todos.size()];
+        var descriptions = new String[todos.size()];
+        for (int i = 0; i < todos.size(); i++) {
+            names[i] = todos.get(i).name();
+            descriptions[i] = todos.get(i).description();
+        }
+
+        return execute(connection -> {
+            try (var statement = preparedStatement(connection, CREATE_ALL_SQL)) {
+                statement.setArray(1, connection.createArrayOf("text", names));
+                statement.setArray(2, connection.createArrayOf("text", descriptions));
+                var ids = new ArrayList<Long>(todos.size());
+                try (var result = statement.executeQuery()) {
+                    while (result.next()) {
+                        ids.add(result.getLong(1));
+                    }
+                }
+                ids.sort(null);
+                return ids;
+            }
+        });
+    }
+
+    @Override
+    public void update(long id, TodoData todo) {
+        execute(connection -> {
+            try (var statement = preparedStatement(connection, UPDATE_SQL)) {
+                bindUpdate(statement, id, todo.name(), todo.description());
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    //One jdbc batch of the same, prepared statement
+    @Override
+    public void updateAll(List<Todo> todos) {
+        if (todos.isEmpty()) {
+            return;
+        }
+
+        execute(connection -> {
+            try (var statement = preparedStatement(connection, UPDATE_SQL)) {
+                for (var t : todos) {
+                    bindUpdate(statement, t.id(), t.name(), t.description());
+                    statement.addBatch();
+                }
+                return statement.executeBatch();
+            }
+        });
+    }
+
+    private void bindUpdate(PreparedStatement statement, long id, String name, String description)
+            throws SQLException {
+        statement.setString(1, name);
+        statement.setString(2, description);
+        statement.setLong(3, id);
+    }
+
+    @Override
+    public void delete(long id) {
+        execute(connection -> {
+            try (var statement = preparedStatement(connection, DELETE_SQL)) {
+                statement.setLong(1, id);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public void deleteAll(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        execute(connection -> {
+            try (var statement = preparedStatement(connection, DELETE_ALL_SQL)) {
+                statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public long version() {
+        return execute(connection -> {
+            try (var statement = preparedStatement(connection, VERSION_SQL);
+                 var result = statement.executeQuery()) {
+                result.next();
+                return result.getLong(1);
+            }
+        });
+    }
+
+    //See SqlTodoRepository.replicationLag()
+    public Duration replicationLag() {
+        return execute(connection -> {
+            try (var statement = preparedStatement(connection, REPLICATION_LAG_SQL);
+                 var result = statement.executeQuery()) {
+                result.next();
+                var lagSeconds = result.getDouble(1);
+                return Double.isInfinite(lagSeconds) ? ChronoUnit.FOREVER.getDuration() :
+                        Duration.ofNanos((long) (lagSeconds * 1_000_000_000));
+            }
+        });
+    }
+
+    //See SqlTodoRepository.walPosition()
+    public long walPosition() {
+        return execute(connection -> {
+            try (var statement = preparedStatement(connection, WAL_POSITION_SQL);
+                 var result = statement.executeQuery()) {
+                result.next();
+                return result.getLong(1);
+            }
+        });
+    }
+
+    private PreparedStatement preparedStatement(Connection connection, String sql) throws SQLException {
+        var statement = connection.prepareStatement(sql);
+        statement.unwrap(PGStatement.class).setPrepareThreshold(prepareThreshold);
+        return statement;
+    }
+
+    private <T> T execute(ConnectionFunction<T> function) {
+        try (var connection = dataSource.getConnection()) {
+            return function.apply(connection);
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to execute todos statement", e);
+        }
+    }
+
+    private interface ConnectionFunction<T> {
+
+        T apply(Connection connection) throws SQLException;
+    }
+
+    //Filters shorter than SqlTodoRepository.MIN_TRIGRAM_FILTER_LENGTH can't use trigram index
+    enum FilterType {
+        NONE, SHORT, TRIGRAM;
+
+        static FilterType of(String filter) {
+            if (filter == null || filter.isBlank()) {
+                return NONE;
+            }
+            return filter.length() < SqlTodoRepository.MIN_TRIGRAM_FILTER_LENGTH ? SHORT : TRIGRAM;
+        }
+    }
+
+    record TodosQueryVariant(FilterType nameFilter, FilterType descriptionFilter, TodosSort sort, boolean after,
+                             boolean description) {
+    }
+}
@@ -0,0 +1,422 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/*
+Durable TodoRepository without a database: todos are kept (and read from) InMemoryTodoRepository,
+but every write is first appended to a checksummed log file (TodosLog), as a single record.
+Writes are serialized by a lock, so the log order is the order in which they are applied in memory.
+Files in the directory, numbered by generation:
+* log-{generation} - records appended after the previous snapshot; only the last one is written to
+* snapshot-{generation} - all todos up to the start of the log of the same generation (TodosSnapshotFile)
+When the current log grows over compactionThreshold bytes, a new log is started and all todos, as they were
+at that moment (in-memory state is immutable), are written to a snapshot in the background;
+once it is durable, previous logs and snapshots are deleted.
+On start, in-memory state is rebuilt from the latest snapshot and logs after it. Torn tail of the last log
+(from a crash in the middle of a write) is truncated.
+
+Durability is controlled by fsyncInterval:
+* zero - writes return only after their record is forced to disk. Concurrent writers share a single fsync:
+  the one that gets the sync lock first forces all records appended so far (group commit)
+* positive - writes return after they are written to the OS page cache, which is forced every interval,
+  so only up to interval of acknowledged writes can be lost, and only if the whole machine crashes
+Either way, writes are visible to readers before they are forced.
+*/
+public class LogTodoRepository implements TodoRepository, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogTodoRepository.class);
+    private static final String LOG_PREFIX = "log-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final int RECOVERY_BATCH_SIZE = 10_000;
+    private static final Pattern FILE_PATTERN = Pattern.compile("(log|snapshot)-(\\d+)");
+    private final InMemoryTodoRepository inMemory = new InMemoryTodoRepository();
+    private final Path directory;
+    private final Duration fsyncInterval;
+    private final long compactionThreshold;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ScheduledExecutorService background;
+    private volatile TodosLog log;
+    private long generation;
+    private volatile long seq;
+    private long syncedSeq;
+    private volatile boolean closed;
+
+    public LogTodoRepository(Path directory, Duration fsyncInterval, long compactionThreshold) {
+        this.directory = directory;
+        this.fsyncInterval = fsyncInterval;
+        this.compactionThreshold = compactionThreshold;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover todos from " + directory, e);
+        }
+
+        background = Executors.newScheduledThreadPool(1, r -> {
+            var thread = new Thread(r, "todos-log-background");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!fsyncInterval.isZero()) {
+            background.scheduleWithFixedDelay(this::syncInBackground, fsyncInterval.toNanos(),
+                    fsyncInterval.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void recover() throws IOException {
+        var snapshots = files(SNAPSHOT_PREFIX);
+        var logs = files(LOG_PREFIX);
+
+        var snapshotGeneration = recoverSnapshot(snapshots);
+
+        var logsToReplay = logs.stream()
+                .filter(l -> generation(l) >= snapshotGeneration)
+                .toList();
+        //Logs are created one by one, so a missing one means lost writes, state would be inconsistent without them
+        var expectedGeneration = Math.max(snapshotGeneration, 1);
+        for (int i = 0; i < logsToReplay.size(); i++) {
+            var logFile = logsToReplay.get(i);
+            if (generation(logFile) != expectedGeneration++) {
+                throw new IOException("Log of %d generation is missing".formatted(expectedGeneration - 1));
+            }
+            var valid = TodosLog.replay(logFile, this::apply);
+            var size = Files.size(logFile);
+            if (valid < size) {
+                if (i < logsToReplay.size() - 1) {
+                    throw new IOException("Log %s is corrupted at %d byte, but it is not the last one"
+                            .formatted(logFile, valid));
+                }
+                LOG.warn("Truncating torn tail of {} log, from {} to {} bytes", logFile, size, valid);
+                TodosLog.truncate(logFile, valid);
+            }
+        }
+
+        var lastGeneration = logs.isEmpty() ? snapshotGeneration : Math.max(snapshotGeneration,
+                generation(logs.get(logs.size() - 1)));
+        generation = lastGeneration + 1;
+        log = TodosLog.create(file(LOG_PREFIX, generation));
+        syncedSeq = seq;
+        forceDirectory();
+
+        deleteFilesBefore(snapshotGeneration);
+
+        LOG.info("Recovered todos from {}: {} seq, {} next id", directory, seq, inMemory.nextId());
+    }
+
+    //Returns generation of the recovered snapshot, 0 if there is none
+    private long recoverSnapshot(List<Path> snapshots) {
+        for (var i = snapshots.size() - 1; i >= 0; i--) {
+            var snapshot = snapshots.get(i);
+            try {
+                var batch = new ArrayList<Todo>(RECOVERY_BATCH_SIZE);
+                var header = TodosSnapshotFile.read(snapshot, t -> {
+                    batch.add(t);
+                    if (batch.size() == RECOVERY_BATCH_SIZE) {
+                        inMemory.putAll(batch);
+                        batch.clear();
+                    }
+                });
+                inMemory.putAll(batch);
+                inMemory.reserveIds(header.nextId());
+                seq = header.seq();
+                return generation(snapshot);
+            } catch (IOException e) {
+                //Should not happen, since it is renamed only when complete, but there still are logs before it
+                LOG.error("Snapshot {} is corrupted, trying the previous one...", snapshot, e);
+            }
+        }
+        return 0;
+    }
+
+    private void apply(TodosLog.Record record) {
+        if (record.seq() <= seq) {
+            return;
+        }
+        //Consecutive puts (like of createAll) are applied at once
+        var puts = new ArrayList<Todo>();
+        for (var o : record.operations()) {
+            if (o.todo() == null) {
+                inMemory.putAll(puts);
+                puts.clear();
+                inMemory.delete(o.id());
+            } else {
+                puts.add(new Todo(o.id(), o.todo().name(), o.todo().description()));
+            }
+        }
+        inMemory.putAll(puts);
+        seq = record.seq();
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(f -> {
+                        var name = f.getFileName().toString();
+                        return name.startsWith(prefix) && FILE_PATTERN.matcher(name).matches();
+                    })
+                    .sorted(Comparator.comparingLong(this::generation))
+                    .toList();
+        }
+    }
+
+    private long generation(Path file) {
+        var matcher = FILE_PATTERN.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a log or snapshot file: " + file);
+        }
+        return Long.parseLong(matcher.group(2));
+    }
+
+    private Path file(String prefix, long generation) {
+        return directory.resolve(prefix + generation);
+    }
+
+    //So that created and renamed files are durable
+    private void forceDirectory() throws IOException {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void deleteFilesBefore(long generation) throws IOException {
+        for (var f : files(LOG_PREFIX)) {
+            if (generation(f) < generation) {
+                Files.delete(f);
+            }
+        }
+        for (var f : files(SNAPSHOT_PREFIX)) {
+            if (generation(f) < generation) {
+                Files.delete(f);
+            }
+        }
+    }
+
+    @Override
+    public List<Todo> todos(TodosQuery query) {
+        return inMemory.todos(query);
+    }
+
+    @Override
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        inMemory.streamTodos(query, consumer);
+    }
+
+    @Override
+    public List<Todo> search(TodosSearch search) {
+        return inMemory.search(search);
+    }
+
+    @Override
+    public List<Todo> todos(List<Long> ids) {
+        return inMemory.todos(ids);
+    }
+
+    @Override
+    public long create(TodoData todo) {
+        return createAll(List.of(todo)).get(0);
+    }
+
+    //Ids are allocated under the write lock, so they are the same as they will be while replaying the log
+    @Override
+    public List<Long> createAll(List<TodoData> todos) {
+        var ids = new ArrayList<Long>(todos.size());
+        write(() -> {
+            var operations = new ArrayList<TodosLog.Operation>(todos.size());
+            var nextId = inMemory.nextId();
+            for (var t : todos) {
+                ids.add(nextId);
+                operations.add(new TodosLog.Operation(nextId++, t));
+            }
+            return operations;
+        });
+        return ids;
+    }
+
+    @Override
+    public void update(long id, TodoData todo) {
+        updateAll(List.of(new Todo(id, todo.name(), todo.description())));
+    }
+
+    //Non-existing todos are not logged at all
+    @Override
+    public void updateAll(List<Todo> todos) {
+        write(() -> todos.stream()
+                .filter(t -> inMemory.todo(t.id()) != null)
+                .map(t -> new TodosLog.Operation(t.id(), new TodoData(t.name(), t.description())))
+                .toList());
+    }
+
+    @Override
+    public void delete(long id) {
+        deleteAll(List.of(id));
+    }
+
+    @Override
+    public void deleteAll(List<Long> ids) {
+        write(() -> ids.stream()
+                .distinct()
+                .filter(id -> inMemory.todo(id) != null)
+                .map(id -> new TodosLog.Operation(id, null))
+                .toList());
+    }
+
+    //Seq of the last write, so it survives restarts and is never repeated
+    @Override
+    public long version() {
+        return seq;
+    }
+
+    private void write(Supplier<List<TodosLog.Operation>> operationsSupplier) {
+        long writeSeq;
+        Compaction compaction = null;
+
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Repository is closed");
+            }
+
+            var operations = operationsSupplier.get();
+            if (operations.isEmpty()) {
+                return;
+            }
+
+            writeSeq = seq + 1;
+            log.append(writeSeq, operations);
+            apply(new TodosLog.Record(writeSeq, operations));
+
+            if (log.size() >= compactionThreshold && compacting.compareAndSet(false, true)) {
+                compaction = startCompaction();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (compaction != null) {
+            var toCompact = compaction;
+            background.execute(() -> compact(toCompact));
+        }
+        if (fsyncInterval.isZero()) {
+            sync(writeSeq);
+        }
+    }
+
+    private void sync(long toSeq) {
+        syncLock.lock();
+        try {
+            if (syncedSeq >= toSeq) {
+                return;
+            }
+            var appendedSeq = seq;
+            log.force();
+            syncedSeq = appendedSeq;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void syncInBackground() {
+        try {
+            sync(seq);
+        } catch (Exception e) {
+            LOG.error("Failed to sync todos log", e);
+        }
+    }
+
+    //Under the write lock: current log is forced and closed, next writes go to the new one
+    private Compaction startCompaction() throws IOException {
+        syncLock.lock();
+        try {
+            log.force();
+            log.close();
+            syncedSeq = seq;
+            generation++;
+            log = TodosLog.create(file(LOG_PREFIX, generation));
+            forceDirectory();
+        } finally {
+            syncLock.unlock();
+        }
+        return new Compaction(generation, seq, inMemory.nextId(), inMemory.allTodos());
+    }
+
+    private void compact(Compaction compaction) {
+        try {
+            var started = System.nanoTime();
+            TodosSnapshotFile.write(file(SNAPSHOT_PREFIX, compaction.generation()), compaction.seq(),
+                    compaction.nextId(), compaction.todos());
+            forceDirectory();
+            deleteFilesBefore(compaction.generation());
+            LOG.info("Compacted todos log up to {} seq, in {} ms", compaction.seq(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (Exception e) {
+            LOG.error("Failed to compact todos log, logs are kept", e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    //Waits for a compaction in progress, if there is any
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        syncLock.lock();
+        try {
+            log.force();
+            log.close();
+            syncedSeq = seq;
+        } catch (IOException e) {
+            LOG.error("Failed to close todos log", e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private record Compaction(long generation, long seq, long nextId, Iterable<Todo> todos) {
+    }
+}
@@ -0,0 +1,157 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Immutable (persistent) set of non-negative ints (ids), stored as bits in chunks of a PersistentVector.
+Adding or removing a bit copies only its chunk (256 bytes) and the vector path to it.
+Dense, mostly sequential ids (as ours are) take about a bit each.
+*/
+final class PersistentBitSet {
+
+    private static final int CHUNK_WORDS = 32;
+    private static final int CHUNK_BITS = CHUNK_WORDS * Long.SIZE;
+    static final PersistentBitSet EMPTY = new PersistentBitSet(PersistentVector.empty(), 0);
+    private final PersistentVector<long[]> chunks;
+    private final int size;
+
+    private PersistentBitSet(PersistentVector<long[]> chunks, int size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        var chunk = chunks.get(value / CHUNK_BITS);
+        return chunk != null && (chunk[wordIndex(value)] & bit(value)) != 0;
+    }
+
+    private static int wordIndex(int value) {
+        return (value % CHUNK_BITS) / Long.SIZE;
+    }
+
+    private static long bit(int value) {
+        return 1L << value;
+    }
+
+    PersistentBitSet with(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Only non-negative values are supported, but was: " + value);
+        }
+        if (contains(value)) {
+            return this;
+        }
+
+        var chunkIndex = value / CHUNK_BITS;
+        var chunk = chunks.get(chunkIndex);
+        var newChunk = chunk == null ? new long[CHUNK_WORDS] : chunk.clone();
+        newChunk[wordIndex(value)] |= bit(value);
+
+        return new PersistentBitSet(chunks.set(chunkIndex, newChunk), size + 1);
+    }
+
+    //Values need to be sorted: a chunk is copied once for all values in it, not once per value
+    PersistentBitSet withAll(int[] sortedValues) {
+        if (sortedValues.length > 0 && sortedValues[0] < 0) {
+            throw new IllegalArgumentException("Only non-negative values are supported, but was: " + sortedValues[0]);
+        }
+
+        var newChunks = chunks;
+        var newSize = size;
+        var i = 0;
+        while (i < sortedValues.length) {
+            var chunkIndex = sortedValues[i] / CHUNK_BITS;
+            var chunk = newChunks.get(chunkIndex);
+            var newChunk = chunk == null ? new long[CHUNK_WORDS] : chunk.clone();
+            for (; i < sortedValues.length && sortedValues[i] / CHUNK_BITS == chunkIndex; i++) {
+                var value = sortedValues[i];
+                if ((newChunk[wordIndex(value)] & bit(value)) == 0) {
+                    newChunk[wordIndex(value)] |= bit(value);
+                    newSize++;
+                }
+            }
+            newChunks = newChunks.set(chunkIndex, newChunk);
+        }
+
+        return newSize == size ? this : new PersistentBitSet(newChunks, newSize);
+    }
+
+    PersistentBitSet without(int value) {
+        if (!contains(value)) {
+            return this;
+        }
+        if (size == 1) {
+            return EMPTY;
+        }
+
+        var chunkIndex = value / CHUNK_BITS;
+        var newChunk = chunks.get(chunkIndex).clone();
+        newChunk[wordIndex(value)] &= ~bit(value);
+
+        return new PersistentBitSet(chunks.set(chunkIndex, isEmpty(newChunk) ? null : newChunk), size - 1);
+    }
+
+    private static boolean isEmpty(long[] chunk) {
+        for (var w : chunk) {
+            if (w != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int[] toArray() {
+        return intersection(List.of(this));
+    }
+
+    //Sorted values present in all the sets
+    static int[] intersection(List<PersistentBitSet> sets) {
+        var smallest = sets.get(0);
+        for (var s : sets) {
+            if (s.size() < smallest.size()) {
+                smallest = s;
+            }
+        }
+
+        var result = new int[smallest.size()];
+        var resultSize = 0;
+        var words = new long[CHUNK_WORDS];
+
+        for (int c = 0; c < smallest.chunks.size(); c++) {
+            if (!intersectChunk(sets, c, words)) {
+                continue;
+            }
+            for (int w = 0; w < CHUNK_WORDS; w++) {
+                var word = words[w];
+                while (word != 0) {
+                    result[resultSize++] = c * CHUNK_BITS + w * Long.SIZE + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+
+        return resultSize == result.length ? result : Arrays.copyOf(result, resultSize);
+    }
+
+    //False if any of the sets has no values in the chunk
+    private static boolean intersectChunk(List<PersistentBitSet> sets, int chunkIndex, long[] words) {
+        Arrays.fill(words, -1L);
+        for (var s : sets) {
+            var chunk = s.chunks.get(chunkIndex);
+            if (chunk == null) {
+                return false;
+            }
+            for (int w = 0; w < CHUNK_WORDS; w++) {
+                words[w] &= chunk[w];
+            }
+        }
+        return true;
+    }
+}
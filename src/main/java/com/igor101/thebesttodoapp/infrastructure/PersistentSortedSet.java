@@ -0,0 +1,153 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Immutable (persistent) sorted set: a treap (binary search tree balanced by random node priorities).
+with/without copy only the path to the changed node, which is O(log n) expected.
+*/
+final class PersistentSortedSet<T> implements Iterable<T> {
+
+    private final Comparator<? super T> comparator;
+    private final Node<T> root;
+
+    private PersistentSortedSet(Comparator<? super T> comparator, Node<T> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    static <T> PersistentSortedSet<T> empty(Comparator<? super T> comparator) {
+        return new PersistentSortedSet<>(comparator, null);
+    }
+
+    PersistentSortedSet<T> with(T value) {
+        var newRoot = with(root, value, ThreadLocalRandom.current().nextInt());
+        return newRoot == root ? this : new PersistentSortedSet<>(comparator, newRoot);
+    }
+
+    private Node<T> with(Node<T> node, T value, int priority) {
+        if (node == null) {
+            return new Node<>(value, priority, null, null);
+        }
+
+        var compared = comparator.compare(value, node.value());
+        if (compared == 0) {
+            return node;
+        }
+
+        if (compared < 0) {
+            var left = with(node.left(), value, priority);
+            if (left == node.left()) {
+                return node;
+            }
+            if (left.priority() > node.priority()) {
+                return new Node<>(left.value(), left.priority(), left.left(),
+                        new Node<>(node.value(), node.priority(), left.right(), node.right()));
+            }
+            return new Node<>(node.value(), node.priority(), left, node.right());
+        }
+
+        var right = with(node.right(), value, priority);
+        if (right == node.right()) {
+            return node;
+        }
+        if (right.priority() > node.priority()) {
+            return new Node<>(right.value(), right.priority(),
+                    new Node<>(node.value(), node.priority(), node.left(), right.left()), right.right());
+        }
+        return new Node<>(node.value(), node.priority(), node.left(), right);
+    }
+
+    PersistentSortedSet<T> without(T value) {
+        var newRoot = without(root, value);
+        return newRoot == root ? this : new PersistentSortedSet<>(comparator, newRoot);
+    }
+
+    private Node<T> without(Node<T> node, T value) {
+        if (node == null) {
+            return null;
+        }
+
+        var compared = comparator.compare(value, node.value());
+        if (compared == 0) {
+            return merge(node.left(), node.right());
+        }
+
+        if (compared < 0) {
+            var left = without(node.left(), value);
+            return left == node.left() ? node : new Node<>(node.value(), node.priority(), left, node.right());
+        }
+
+        var right = without(node.right(), value);
+        return right == node.right() ? node : new Node<>(node.value(), node.priority(), node.left(), right);
+    }
+
+    //Every value of left is smaller than all values of right
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority() > right.priority()) {
+            return new Node<>(left.value(), left.priority(), left.left(), merge(left.right(), right));
+        }
+        return new Node<>(right.value(), right.priority(), merge(left, right.left()), right.right());
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new AscendingIterator<>(root, null, comparator);
+    }
+
+    //Values greater than the given one
+    Iterable<T> tailSet(T after) {
+        return () -> new AscendingIterator<>(root, after, comparator);
+    }
+
+    private record Node<T>(T value, int priority, Node<T> left, Node<T> right) {
+    }
+
+    private static class AscendingIterator<T> implements Iterator<T> {
+
+        private final ArrayDeque<Node<T>> path = new ArrayDeque<>();
+
+        AscendingIterator(Node<T> root, T after, Comparator<? super T> comparator) {
+            var node = root;
+            while (node != null) {
+                if (after == null || comparator.compare(node.value(), after) > 0) {
+                    path.push(node);
+                    node = node.left();
+                } else {
+                    node = node.right();
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            var next = path.pop();
+            var node = next.right();
+            while (node != null) {
+                path.push(node);
+                node = node.left();
+            }
+
+            return next.value();
+        }
+    }
+}
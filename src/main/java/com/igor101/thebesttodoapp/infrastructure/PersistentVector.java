@@ -0,0 +1,81 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+/*
+Immutable (persistent) array: every set returns a new vector, sharing all but the changed path with the previous one.
+It is a trie of 32 elements wide nodes, so get and set are O(log32 n), and set copies at most 7 nodes.
+Setting an index beyond size grows it, missing elements are nulls.
+*/
+final class PersistentVector<T> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(new Object[WIDTH], 0, 0);
+    private final Object[] root;
+    private final int shift;
+    private final int size;
+
+    private PersistentVector(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        if (index < 0 || index >= size) {
+            return null;
+        }
+
+        var node = root;
+        for (var level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+
+        return (T) node[index & MASK];
+    }
+
+    PersistentVector<T> set(int index, T value) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        var newRoot = root;
+        var newShift = shift;
+        while (newShift + BITS < Integer.SIZE && (index >>> (newShift + BITS)) != 0) {
+            var grownRoot = new Object[WIDTH];
+            grownRoot[0] = newRoot;
+            newRoot = grownRoot;
+            newShift += BITS;
+        }
+
+        return new PersistentVector<>(set(newRoot, newShift, index, value), newShift, Math.max(size, index + 1));
+    }
+
+    private static Object[] set(Object[] node, int level, int index, Object value) {
+        var copy = node == null ? new Object[WIDTH] : node.clone();
+        if (level == 0) {
+            copy[index & MASK] = value;
+        } else {
+            var child = (index >>> level) & MASK;
+            copy[child] = set((Object[]) copy[child], level - BITS, index, value);
+        }
+        return copy;
+    }
+
+    PersistentVector<T> append(T value) {
+        return set(size, value);
+    }
+}
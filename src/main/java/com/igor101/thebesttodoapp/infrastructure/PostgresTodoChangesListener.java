@@ -0,0 +1,232 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.igor101.thebesttodoapp.core.TodoChange;
+import com.igor101.thebesttodoapp.core.TodoData;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+Listens to todo_changes notifications (sent by the todo table triggers, see schema.sql) on a single, dedicated
+connection (outside of the pool, since it is held forever) and passes them, as TodoChanges, to onChange,
+on its own thread.
+Notification is per statement, it has only ids of changed todos: created and updated ones are read
+on the same connection, so they have their current (maybe newer) state and those deleted in the meantime are skipped
+(their DELETED changes come next).
+Notifications sent while there was no connection are lost, so after a reconnect onMissedChanges is called,
+as it is for notifications without ids (of statements which changed too many todos).
+Notifying triggers are created disabled (they cost a global lock on every commit), start() enables them.
+Without the feed, the app disables them by notifyChanges(false), so they cost nothing.
+*/
+public class PostgresTodoChangesListener implements AutoCloseable {
+
+    static final String CHANNEL = "todo_changes";
+    private static final Logger LOG = LoggerFactory.getLogger(PostgresTodoChangesListener.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final Duration MAX_RECONNECT_DELAY = Duration.ofSeconds(10);
+    private static final String TODOS_SQL = "SELECT id, name, description FROM todo WHERE id = ANY(?) ORDER BY id";
+    private static final List<String> TRIGGERS = List.of("todo_changes_insert_notify", "todo_changes_update_notify",
+            "todo_changes_delete_notify");
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Consumer<TodoChange> onChange;
+    private final Runnable onMissedChanges;
+    private Thread listener;
+    private volatile Connection connection;
+    private volatile boolean closed;
+
+    public PostgresTodoChangesListener(String url, String user, String password,
+                                       Consumer<TodoChange> onChange,
+                                       Runnable onMissedChanges) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.onChange = onChange;
+        this.onMissedChanges = onMissedChanges;
+    }
+
+    //Connects synchronously, so that changes committed after it returns are not missed
+    public void start() {
+        try {
+            connection = listeningConnection();
+            notifyChanges(connection, true);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to listen to todo changes", e);
+        }
+        listener = new Thread(this::listen, "todo-changes-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    /*
+    Enables (or disables) notifying triggers, altering the todo table (it takes a short lock of it)
+    only if they are not in this state already, so that restarts of the app don't alter it.
+    */
+    public static void notifyChanges(Connection connection, boolean enabled) throws SQLException {
+        int enabledTriggers;
+        try (var statement = connection.prepareStatement("""
+                SELECT count(*) FROM pg_trigger
+                WHERE tgrelid = 'todo'::regclass AND tgname = ANY(?) AND tgenabled != 'D'""")) {
+            statement.setArray(1, connection.createArrayOf("text", TRIGGERS.toArray()));
+            try (var result = statement.executeQuery()) {
+                result.next();
+                enabledTriggers = result.getInt(1);
+            }
+        }
+        if (enabledTriggers == (enabled ? TRIGGERS.size() : 0)) {
+            return;
+        }
+
+        var action = enabled ? "ENABLE TRIGGER " : "DISABLE TRIGGER ";
+        try (var statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE todo " + String.join(", ", TRIGGERS.stream()
+                    .map(t -> action + t)
+                    .toList()));
+        }
+        LOG.info("Todo changes notifications are {}", enabled ? "enabled" : "disabled");
+    }
+
+    private Connection listeningConnection() throws SQLException {
+        var newConnection = DriverManager.getConnection(url, user, password);
+        try (var statement = newConnection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        } catch (SQLException e) {
+            newConnection.close();
+            throw e;
+        }
+        return newConnection;
+    }
+
+    private void listen() {
+        var reconnectDelay = Duration.ofMillis(100);
+        while (!closed) {
+            try {
+                if (connection == null) {
+                    connection = listeningConnection();
+                    reconnectDelay = Duration.ofMillis(100);
+                    LOG.info("Reconnected todo changes listener");
+                    onMissedChanges.run();
+                }
+                poll();
+            } catch (Exception e) {
+                if (closed) {
+                    return;
+                }
+                LOG.warn("Todo changes listener failure, reconnecting in {} ms...", reconnectDelay.toMillis(), e);
+                closeConnection();
+                sleep(reconnectDelay);
+                reconnectDelay = min(reconnectDelay.multipliedBy(2), MAX_RECONNECT_DELAY);
+            }
+        }
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    //Blocks for up to poll timeout, if there are no notifications
+    private void poll() throws SQLException {
+        var notifications = connection.unwrap(PGConnection.class).getNotifications(POLL_TIMEOUT_MILLIS);
+        if (notifications == null) {
+            return;
+        }
+        for (var n : notifications) {
+            ChangedTodos changed;
+            try {
+                changed = changedTodos(n.getParameter());
+            } catch (Exception e) {
+                LOG.warn("Skipping invalid todo changes notification: {}", n.getParameter(), e);
+                continue;
+            }
+            if (changed.ids() == null) {
+                onMissedChanges.run();
+            } else {
+                changes(changed).forEach(onChange);
+            }
+        }
+    }
+
+    private List<TodoChange> changes(ChangedTodos changed) throws SQLException {
+        if (changed.type() == TodoChange.Type.DELETED) {
+            return changed.ids().stream()
+                    .map(id -> new TodoChange(changed.type(), id, null))
+                    .toList();
+        }
+
+        var changes = new ArrayList<TodoChange>();
+        try (var statement = connection.prepareStatement(TODOS_SQL)) {
+            statement.setArray(1, connection.createArrayOf("bigint", changed.ids().toArray()));
+            try (var result = statement.executeQuery()) {
+                while (result.next()) {
+                    changes.add(new TodoChange(changed.type(), result.getLong(1),
+                            new TodoData(result.getString(2), result.getString(3))));
+                }
+            }
+        }
+        return changes;
+    }
+
+    /*
+    {"type": "CREATED|UPDATED|DELETED", "ids": [1, 2]}, ids are null if there were too many of them
+    */
+    static ChangedTodos changedTodos(String payload) throws Exception {
+        var json = MAPPER.readTree(payload);
+        var type = TodoChange.Type.valueOf(json.get("type").asText());
+        var ids = json.get("ids");
+        if (ids == null || ids.isNull()) {
+            return new ChangedTodos(type, null);
+        }
+        var changedIds = new ArrayList<Long>();
+        for (var id : ids) {
+            changedIds.add(id.asLong());
+        }
+        return new ChangedTodos(type, changedIds);
+    }
+
+    private void closeConnection() {
+        var toClose = connection;
+        connection = null;
+        if (toClose != null) {
+            try {
+                toClose.close();
+            } catch (SQLException e) {
+                LOG.warn("Failed to close todo changes listener connection", e);
+            }
+        }
+    }
+
+    private void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    record ChangedTodos(TodoChange.Type type, List<Long> ids) {
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (listener != null) {
+            try {
+                listener.join(2 * POLL_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeConnection();
+    }
+}
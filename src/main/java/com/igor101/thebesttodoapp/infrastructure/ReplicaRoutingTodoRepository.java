@@ -0,0 +1,406 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+Routes reads to replicas (round-robin) and writes to the primary.
+Reads are hedged: if a replica doesn't answer within p95 of recent replica reads (but not less than minHedgeDelay),
+the same read is sent to the next replica and the first answer wins, which cuts tail latency at the cost of
+about 5% more reads. Until there are MIN_LATENCY_SAMPLES, reads are not hedged.
+Replicas are checked every healthCheckInterval: the ones that are down or lag behind the primary more than maxLag
+do not get reads, until the next successful check. A failed read marks its replica as down right away.
+If no replica can serve a read, or all of them failed it, the primary serves it.
+After a write, the current position of the primary write-ahead log is kept as the last write position of its client
+(see ClientWrites), and reads of that client go only to replicas which have replayed it (as of their last check),
+so that the client doesn't miss its own write, even if replicas lag. Reads of other clients are not affected.
+Streamed todos are read from one replica, without hedging, since they are passed to a consumer as they come.
+Replica reads are done by at most readerThreads, if all of them are busy, a read is done by the calling thread
+(and is not hedged then).
+The first check is done by the constructor, which also schedules the next ones, so the class is final.
+*/
+public final class ReplicaRoutingTodoRepository implements TodoRepository, AutoCloseable {
+
+    static final int LATENCY_SAMPLES = 1024;
+    static final int MIN_LATENCY_SAMPLES = 100;
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRoutingTodoRepository.class);
+    private final TodoRepository primary;
+    private final List<ReplicaState> replicas;
+    private final Callable<Long> primaryWalPosition;
+    private final Duration maxLag;
+    private final Duration healthCheckInterval;
+    private final long minHedgeDelayNanos;
+    private final ExecutorService readers;
+    private final ScheduledExecutorService healthChecker =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("todos-replicas-health-checker"));
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+    private final AtomicLong recordedLatencies = new AtomicLong();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder hedgedReads = new LongAdder();
+    private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+
+    public ReplicaRoutingTodoRepository(TodoRepository primary,
+                                        Callable<Long> primaryWalPosition,
+                                        List<Replica> replicas,
+                                        int readerThreads,
+                                        Duration maxLag,
+                                        Duration healthCheckInterval,
+                                        Duration minHedgeDelay) {
+        this.primary = primary;
+        this.primaryWalPosition = primaryWalPosition;
+        this.replicas = replicas.stream().map(ReplicaState::new).toList();
+        this.maxLag = maxLag;
+        this.healthCheckInterval = healthCheckInterval;
+        this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+        this.readers = new ThreadPoolExecutor(0, readerThreads, 1, TimeUnit.MINUTES, new SynchronousQueue<>(),
+                daemonThreads("todos-replica-reader"), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        checkReplicas();
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, healthCheckInterval.toMillis(),
+                healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            var thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    //Position is checked before version, so that replayed writes are at least as new as the version
+    void checkReplicas() {
+        for (var r : replicas) {
+            var check = CompletableFuture.supplyAsync(() -> {
+                try {
+                    var lag = r.replica.lag().call();
+                    var replayedPosition = r.replica.replayedWalPosition().call();
+                    return new ReplicaCheck(lag, replayedPosition, r.replica.repository().version());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, readers);
+            try {
+                r.checked(check.get(healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                r.failed(e);
+            }
+        }
+        updateHedgeDelay();
+    }
+
+    private void updateHedgeDelay() {
+        var samples = (int) Math.min(recordedLatencies.get(), LATENCY_SAMPLES);
+        if (samples < MIN_LATENCY_SAMPLES) {
+            return;
+        }
+        var sorted = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        hedgeDelayNanos = Math.max(minHedgeDelayNanos, sorted[(int) (samples * 0.95)]);
+    }
+
+    private void recordLatency(long nanos) {
+        var sample = recordedLatencies.getAndIncrement();
+        latencies.set((int) (sample % LATENCY_SAMPLES), nanos);
+    }
+
+    Duration hedgeDelay() {
+        return Duration.ofNanos(hedgeDelayNanos);
+    }
+
+    public long hedgedReads() {
+        return hedgedReads.sum();
+    }
+
+    @Override
+    public List<Todo> todos(TodosQuery query) {
+        return read(r -> r.todos(query));
+    }
+
+    @Override
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        var targets = readTargets();
+        if (targets.isEmpty()) {
+            primary.streamTodos(query, consumer);
+            return;
+        }
+
+        var replica = targets.get(0);
+        var consumed = new boolean[1];
+        try {
+            replica.replica.repository().streamTodos(query, t -> {
+                consumed[0] = true;
+                consumer.accept(t);
+            });
+        } catch (RuntimeException e) {
+            //Consumer can't take the same todos again (and it might have failed itself)
+            if (consumed[0]) {
+                throw e;
+            }
+            replica.failed(e);
+            primary.streamTodos(query, consumer);
+        }
+    }
+
+    @Override
+    public List<Todo> search(TodosSearch search) {
+        return read(r -> r.search(search));
+    }
+
+    @Override
+    public List<Todo> todos(List<Long> ids) {
+        return read(r -> r.todos(ids));
+    }
+
+    private <T> T read(Function<TodoRepository, T> read) {
+        var targets = readTargets();
+        if (targets.isEmpty()) {
+            return read.apply(primary);
+        }
+
+        var first = readAsync(targets.get(0), read);
+        var result = first;
+        if (targets.size() > 1) {
+            try {
+                first.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                hedgedReads.increment();
+                result = firstSuccessful(first, readAsync(targets.get(1), read));
+            } catch (ExecutionException e) {
+                result = readAsync(targets.get(1), read);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            LOG.warn("Failed to read todos from replicas, reading from the primary...", e.getCause());
+            return read.apply(primary);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Empty if the primary should serve reads, otherwise the next replica first
+    private List<ReplicaState> readTargets() {
+        var available = availableReplicas();
+        if (available.size() < 2) {
+            return available;
+        }
+        var first = Math.floorMod(nextReplica.getAndIncrement(), available.size());
+        return List.of(available.get(first), available.get((first + 1) % available.size()));
+    }
+
+    //Available replicas which have replayed the last write of the current client, if there is one
+    private List<ReplicaState> availableReplicas() {
+        var clientWrites = ClientWrites.current();
+        var lastWritePosition = clientWrites == null ? 0 : clientWrites.lastWritePosition();
+        var available = new ArrayList<ReplicaState>(replicas.size());
+        for (var r : replicas) {
+            if (r.available() && r.check.replayedPosition() >= lastWritePosition) {
+                available.add(r);
+            }
+        }
+        return available;
+    }
+
+    private <T> CompletableFuture<T> readAsync(ReplicaState replica, Function<TodoRepository, T> read) {
+        return CompletableFuture.supplyAsync(() -> {
+            var start = System.nanoTime();
+            try {
+                var result = read.apply(replica.replica.repository());
+                recordLatency(System.nanoTime() - start);
+                return result;
+            } catch (RuntimeException e) {
+                replica.failed(e);
+                throw e;
+            }
+        }, readers);
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first,
+                                                            CompletableFuture<T> second) {
+        var result = new CompletableFuture<T>();
+        var failures = new AtomicInteger();
+        for (var f : List.of(first, second)) {
+            f.whenComplete((r, e) -> {
+                if (e == null) {
+                    result.complete(r);
+                } else if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public long create(TodoData todo) {
+        try {
+            return primary.create(todo);
+        } finally {
+            written();
+        }
+    }
+
+    @Override
+    public List<Long> createAll(List<TodoData> todos) {
+        try {
+            return primary.createAll(todos);
+        } finally {
+            written();
+        }
+    }
+
+    @Override
+    public void update(long id, TodoData todo) {
+        try {
+            primary.update(id, todo);
+        } finally {
+            written();
+        }
+    }
+
+    @Override
+    public void updateAll(List<Todo> todos) {
+        try {
+            primary.updateAll(todos);
+        } finally {
+            written();
+        }
+    }
+
+    @Override
+    public void delete(long id) {
+        try {
+            primary.delete(id);
+        } finally {
+            written();
+        }
+    }
+
+    @Override
+    public void deleteAll(List<Long> ids) {
+        try {
+            primary.deleteAll(ids);
+        } finally {
+            written();
+        }
+    }
+
+    //Failed write might have been committed as well. Without the position, client reads replicas as before
+    private void written() {
+        var clientWrites = ClientWrites.current();
+        if (clientWrites == null) {
+            return;
+        }
+        try {
+            clientWrites.written(primaryWalPosition.call());
+        } catch (Exception e) {
+            LOG.warn("Failed to get wal position of the primary, client might not read its write", e);
+        }
+    }
+
+    /*
+    The lowest version of replicas that would serve reads, so that todos read afterwards, from any of them,
+    are at least as new. Versions are taken by health checks, so there are no queries here,
+    but they might be older (by healthCheckInterval at most) than the ones of replicas.
+    If there are no such replicas, it's the primary version.
+    */
+    @Override
+    public long version() {
+        var version = Long.MAX_VALUE;
+        for (var r : availableReplicas()) {
+            version = Math.min(version, r.check.version());
+        }
+        return version == Long.MAX_VALUE ? primary.version() : version;
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        readers.shutdownNow();
+    }
+
+    /*
+    Lag of the replica behind the primary and position of the primary write-ahead log replayed by it
+    (comparable with the primary one), they throw if the replica is not available.
+    */
+    public record Replica(String name, TodoRepository repository, Callable<Duration> lag,
+                          Callable<Long> replayedWalPosition) {
+    }
+
+    private record ReplicaCheck(Duration lag, long replayedPosition, long version) {
+    }
+
+    private class ReplicaState {
+
+        private final Replica replica;
+        private volatile boolean up;
+        private volatile ReplicaCheck check = new ReplicaCheck(Duration.ZERO, 0, 0);
+
+        ReplicaState(Replica replica) {
+            this.replica = replica;
+        }
+
+        boolean available() {
+            return up && check.lag().compareTo(maxLag) <= 0;
+        }
+
+        void checked(ReplicaCheck check) {
+            var lag = check.lag();
+            if (!up) {
+                LOG.info("Replica {} is up, its lag: {} ms", replica.name(), lag.toMillis());
+            } else if (lag.compareTo(maxLag) > 0 && this.check.lag().compareTo(maxLag) <= 0) {
+                LOG.warn("Replica {} lags {} ms, more than allowed {} ms", replica.name(), lag.toMillis(),
+                        maxLag.toMillis());
+            }
+            this.check = check;
+            up = true;
+        }
+
+        void failed(Exception exception) {
+            if (up) {
+                LOG.warn("Replica {} is down", replica.name(), exception);
+            }
+            up = false;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import org.jooq.DSLContext;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+Todos spread across a few Postgres dbs (shards), each with the whole schema.sql and shard.sql (run with its id).
+Every id has its shard id in the lowest SHARD_BITS bits: sequence of a shard is set (by shard.sql) to generate only
+such ids, so todos of given ids are read and written on their shards directly, without any lookup.
+Shards are checked on start: if a sequence is not set up, or there are todos of other shards ids
+(created before sharding, for example), it fails.
+New todos are spread by a consistent hash ring (see ConsistentHashRing) of shards weights, keyed by a counter.
+Since ids are never moved, rebalance() changes only where new todos go: a new shard gets its share of them and
+a shard of zero weight gets none (it is drained), while all todos stay readable and writable where they are.
+Queries (filtered pages, streams and search) are scattered to all shards in parallel and gathered:
+* pages - every shard returns its page, they are merged in order and cut to the limit
+* streams - shards cursors are merged in order, as todos come
+* search - shards top todos are merged by their ranks
+Sorted by name pages are the ones after the (afterName, after) cursor, on every shard. Names are merged by
+code points (not by String.compareTo, which compares UTF-16 chars and orders supplementary characters, like emoji,
+before U+E000..U+FFFF ones), so shards compare them with "C" collation (by bytes of UTF-8, that is by code points,
+backed by shard.sql index), whatever their default collation is.
+A batch of new todos is created on one shard, so it is atomic. Updates and deletes of many todos are split
+by shards and executed in parallel, but not atomically: if one shard fails, the others might have committed
+their part (they are all finished when it fails). version() is a sum of shards versions, so it grows with any of them.
+Shards calls are made by at most workerThreads, if all of them are busy, RejectedExecutionException is thrown.
+*/
+public class ShardedTodoRepository implements TodoRepository, AutoCloseable {
+
+    static final int SHARD_BITS = 8;
+    static final int MAX_SHARDS = 1 << SHARD_BITS;
+    private static final Comparator<Todo> ID_ORDER = Comparator.comparingLong(Todo::id);
+    private static final Comparator<Todo> NAME_ORDER = Comparator.comparing(Todo::name,
+            ShardedTodoRepository::compareCodePoints).thenComparingLong(Todo::id);
+    private static final Comparator<SqlTodoRepository.RankedTodo> RANKED_ORDER =
+            Comparator.comparingDouble(SqlTodoRepository.RankedTodo::rank)
+                    .reversed()
+                    .thenComparingLong(r -> r.todo().id());
+    static final String NAME_COLLATION = "C";
+    private final Map<Integer, SqlTodoRepository> shards = new LinkedHashMap<>();
+    private final ExecutorService shardsExecutor;
+    private final AtomicLong nextKey = new AtomicLong();
+    private volatile ConsistentHashRing ring;
+
+    public ShardedTodoRepository(List<Shard> shards, int workerThreads) {
+        for (var s : shards) {
+            if (s.id() < 0 || s.id() >= MAX_SHARDS || this.shards.containsKey(s.id())) {
+                throw new IllegalArgumentException("Shard id needs to be unique and in [0, %d) range, but was: %d"
+                        .formatted(MAX_SHARDS, s.id()));
+            }
+            checkShard(s);
+            this.shards.put(s.id(), new SqlTodoRepository(s.context(), NAME_COLLATION));
+        }
+        shardsExecutor = new ThreadPoolExecutor(0, workerThreads, 1, TimeUnit.MINUTES, new SynchronousQueue<>(),
+                r -> {
+                    var thread = new Thread(r, "todos-shard-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        //All shards of equal weights, set directly, since rebalance() might be overridden
+        ring = new ConsistentHashRing(shards.stream().collect(Collectors.toMap(Shard::id, s -> 1)));
+    }
+
+    //Whole table is scanned for ids of other shards, it's done only on start
+    private static void checkShard(Shard shard) {
+        var context = shard.context();
+        var sequenceOfShard = context.fetchValue("""
+                SELECT s.seqincrement = %1$d AND q.last_value %% %1$d = %2$d
+                FROM pg_sequence s, todo_id_seq q
+                WHERE s.seqrelid = 'todo_id_seq'::regclass""".formatted(MAX_SHARDS, shard.id()));
+        if (!Boolean.TRUE.equals(sequenceOfShard)) {
+            throw new IllegalStateException(("Shard %s sequence doesn't generate ids of its %d id, "
+                    + "run db/shard.sql on it first").formatted(shard.name(), shard.id()));
+        }
+
+        var otherShardsIds = context.fetchValue("SELECT count(*) FROM todo WHERE id %% %d != %d"
+                .formatted(MAX_SHARDS, shard.id()));
+        if (((Number) otherShardsIds).longValue() > 0) {
+            throw new IllegalStateException(("Shard %s has %s todos of other shards ids, "
+                    + "they need to be moved to their shards first").formatted(shard.name(), otherShardsIds));
+        }
+    }
+
+    //Shards weights, shards not in them get no new todos
+    public void rebalance(Map<Integer, Integer> weights) {
+        for (var shard : weights.keySet()) {
+            if (!shards.containsKey(shard)) {
+                throw new IllegalArgumentException("There is no shard of %d id".formatted(shard));
+            }
+        }
+        ring = new ConsistentHashRing(weights);
+    }
+
+    static int compareCodePoints(String a, String b) {
+        var i = 0;
+        var j = 0;
+        while (i < a.length() && j < b.length()) {
+            var aCodePoint = a.codePointAt(i);
+            var bCodePoint = b.codePointAt(j);
+            if (aCodePoint != bCodePoint) {
+                return Integer.compare(aCodePoint, bCodePoint);
+            }
+            i += Character.charCount(aCodePoint);
+            j += Character.charCount(bCodePoint);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    }
+
+    static int shardOf(long id) {
+        return (int) (id & (MAX_SHARDS - 1));
+    }
+
+    @Override
+    public List<Todo> todos(TodosQuery query) {
+        var comparator = query.sort() == TodosSort.NAME ? NAME_ORDER : ID_ORDER;
+        return onShards(shards.keySet(), s -> s.todos(query)).stream()
+                .flatMap(List::stream)
+                .sorted(comparator)
+                .limit(query.limit())
+                .toList();
+    }
+
+    /*
+    Every shard streams its todos to a queue of SqlTodoRepository.STREAM_FETCH_SIZE (so that a slow consumer
+    stops shards cursors) and the next todo in order, of all queues heads, is passed to the consumer.
+    If the consumer, or any shard, fails, all shards streams are cancelled.
+    */
+    @Override
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        var streams = new ArrayList<ShardStream>();
+        try {
+            for (var shard : shards.values()) {
+                var stream = new ShardStream();
+                streams.add(stream);
+                shardsExecutor.execute(() -> stream.fill(shard, query));
+            }
+
+            var comparator = query.sort() == TodosSort.NAME ? NAME_ORDER : ID_ORDER;
+            var heads = new PriorityQueue<ShardStream>(streams.size(),
+                    (a, b) -> comparator.compare(a.head, b.head));
+            for (var s : streams) {
+                if (s.next()) {
+                    heads.add(s);
+                }
+            }
+
+            var streamed = 0;
+            while (!heads.isEmpty() && streamed < query.limit()) {
+                var stream = heads.poll();
+                consumer.accept(stream.head);
+                streamed++;
+                if (stream.next()) {
+                    heads.add(stream);
+                }
+            }
+        } finally {
+            streams.forEach(ShardStream::cancel);
+        }
+    }
+
+    @Override
+    public List<Todo> search(TodosSearch search) {
+        return onShards(shards.keySet(), s -> s.rankedSearch(search)).stream()
+                .flatMap(List::stream)
+                .sorted(RANKED_ORDER)
+                .limit(search.limit())
+                .map(SqlTodoRepository.RankedTodo::todo)
+                .toList();
+    }
+
+    @Override
+    public List<Todo> todos(List<Long> ids) {
+        var shardsIds = byShards(ids, id -> id);
+        return onShards(shardsIds.keySet(), (shard, s) -> s.todos(shardsIds.get(shard))).stream()
+                .flatMap(List::stream)
+                .sorted(ID_ORDER)
+                .toList();
+    }
+
+    //Ids of not existing shards are skipped, there are no such todos
+    private <T> Map<Integer, List<T>> byShards(List<T> items, Function<T, Long> id) {
+        var shardsItems = new HashMap<Integer, List<T>>();
+        for (var i : items) {
+            var shard = shardOf(id.apply(i));
+            if (shards.containsKey(shard)) {
+                shardsItems.computeIfAbsent(shard, k -> new ArrayList<>()).add(i);
+            }
+        }
+        return shardsItems;
+    }
+
+    @Override
+    public long create(TodoData todo) {
+        return shards.get(nextShard()).create(todo);
+    }
+
+    private int nextShard() {
+        return ring.shard(nextKey.getAndIncrement());
+    }
+
+    //Whole batch goes to one shard, in one statement, so either all todos are created or none
+    @Override
+    public List<Long> createAll(List<TodoData> todos) {
+        return shards.get(nextShard()).createAll(todos);
+    }
+
+    @Override
+    public void update(long id, TodoData todo) {
+        var shard = shards.get(shardOf(id));
+        if (shard != null) {
+            shard.update(id, todo);
+        }
+    }
+
+    @Override
+    public void updateAll(List<Todo> todos) {
+        var shardsTodos = byShards(todos, Todo::id);
+        onShards(shardsTodos.keySet(), (shard, s) -> {
+            s.updateAll(shardsTodos.get(shard));
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(long id) {
+        var shard = shards.get(shardOf(id));
+        if (shard != null) {
+            shard.delete(id);
+        }
+    }
+
+    @Override
+    public void deleteAll(List<Long> ids) {
+        var shardsIds = byShards(ids, id -> id);
+        onShards(shardsIds.keySet(), (shard, s) -> {
+            s.deleteAll(shardsIds.get(shard));
+            return null;
+        });
+    }
+
+    @Override
+    public long version() {
+        return onShards(shards.keySet(), SqlTodoRepository::version).stream()
+                .mapToLong(v -> v)
+                .sum();
+    }
+
+    private <T> List<T> onShards(Iterable<Integer> shardsIds, Function<SqlTodoRepository, T> operation) {
+        return onShards(shardsIds, (shard, s) -> operation.apply(s));
+    }
+
+    /*
+    The last shard operation is executed by the caller, results are in shards order.
+    All operations are finished before the first failure is thrown.
+    */
+    private <T> List<T> onShards(Iterable<Integer> shardsIds, ShardOperation<T> operation) {
+        var futures = new ArrayList<CompletableFuture<T>>();
+        Integer last = null;
+        for (var shard : shardsIds) {
+            if (last != null) {
+                var previous = last;
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> operation.apply(previous, shards.get(previous)), shardsExecutor));
+            }
+            last = shard;
+        }
+        if (last == null) {
+            return List.of();
+        }
+
+        T lastResult = null;
+        RuntimeException failure = null;
+        try {
+            lastResult = operation.apply(last, shards.get(last));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        var results = new ArrayList<T>(futures.size() + 1);
+        for (var f : futures) {
+            try {
+                results.add(f.join());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException cause ? cause : e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        results.add(lastResult);
+        return results;
+    }
+
+    @Override
+    public void close() {
+        shardsExecutor.shutdownNow();
+    }
+
+    //Id in [0, MAX_SHARDS) range, it can't change, since it is a part of the shard todos ids
+    public record Shard(int id, String name, DSLContext context) {
+    }
+
+    private interface ShardOperation<T> {
+
+        T apply(int shard, SqlTodoRepository repository);
+    }
+
+    //Todos of a shard stream, taken by the merging thread, with an END (or a failure) at the end
+    private static class ShardStream {
+
+        private static final Todo END = new Todo(-1, "");
+        private static final long CANCELLED_CHECK_INTERVAL_MILLIS = 100;
+        private final BlockingQueue<Todo> todos = new ArrayBlockingQueue<>(SqlTodoRepository.STREAM_FETCH_SIZE);
+        private volatile boolean cancelled;
+        private volatile RuntimeException failure;
+        private Todo head;
+
+        void fill(SqlTodoRepository shard, TodosQuery query) {
+            try {
+                shard.streamTodos(query, this::put);
+            } catch (CancellationException e) {
+                return;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            put(END);
+        }
+
+        private void put(Todo todo) {
+            try {
+                if (cancelled) {
+                    throw new CancellationException("Stream of todos was cancelled");
+                }
+                while (!todos.offer(todo, CANCELLED_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        throw new CancellationException("Stream of todos was cancelled");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Stream of todos was interrupted");
+            }
+        }
+
+        //False if there are no more todos
+        boolean next() {
+            try {
+                head = todos.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            if (head != END) {
+                return true;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+
+        //Cleared, so that the filling thread is not blocked and notices it right away
+        void cancel() {
+            cancelled = true;
+            todos.clear();
+        }
+    }
+}
@@ -3,13 +3,22 @@ package com.igor101.thebesttodoapp.infrastructure;
 import com.igor101.thebesttodoapp.core.Todo;
 import com.igor101.thebesttodoapp.core.TodoData;
 import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
 import org.jooq.Condition;
 import org.jooq.DSLContext;
 import org.jooq.Field;
+import org.jooq.OrderField;
+import org.jooq.Record3;
+import org.jooq.ResultQuery;
 import org.jooq.Table;
 import org.jooq.impl.DSL;
 
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class SqlTodoRepository implements TodoRepository {
 
@@ -17,18 +26,62 @@ public class SqlTodoRepository implements TodoRepository {
     static final Field<Long> ID_FIELD = DSL.field("id", long.class);
     static final Field<String> NAME_FIELD = DSL.field("name", String.class);
     static final Field<String> DESCRIPTION_FIELD = DSL.field("description", String.class);
+    static final Field<Object> SEARCH_DOCUMENT_FIELD = DSL.field("search_document");
+    static final Table<?> TODO_VERSION_TABLE = DSL.table("todo_version");
+    static final Field<Long> VERSION_FIELD = DSL.field("version", long.class);
+    static final String SEARCH_CONFIG = "english";
+    static final int STREAM_FETCH_SIZE = 500;
+    static final int MIN_TRIGRAM_FILTER_LENGTH = 3;
+    static final char LIKE_ESCAPE = '!';
     private final DSLContext context;
+    private final Field<String> sortNameField;
 
     public SqlTodoRepository(DSLContext context) {
+        this(context, null);
+    }
+
+    //Names are sorted (and compared by keyset conditions) with the given collation, null - the db default one
+    public SqlTodoRepository(DSLContext context, String nameCollation) {
         this.context = context;
+        this.sortNameField = nameCollation == null ? NAME_FIELD :
+                NAME_FIELD.collate(DSL.collation(DSL.name(nameCollation)));
     }
 
     @Override
-    public List<Todo> todos(String nameFilter, String descriptionFilter) {
-        return context.select(ID_FIELD, NAME_FIELD, DESCRIPTION_FIELD)
+    public List<Todo> todos(TodosQuery query) {
+        return todosQuery(context, query)
+                .fetch(this::todoFromRecord);
+    }
+
+    //Postgres uses server-side cursor (fetch size is respected) only within a transaction
+    @Override
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        context.transaction(configuration -> {
+            try (var cursor = todosQuery(DSL.using(configuration), query)
+                    .fetchSize(STREAM_FETCH_SIZE)
+                    .fetchLazy()) {
+                for (var record : cursor) {
+                    consumer.accept(todoFromRecord(record));
+                }
+            }
+        });
+    }
+
+    //Without description, null is selected instead, so that rows are mapped the same way
+    public ResultQuery<Record3<Long, String, String>> todosQuery(DSLContext context, TodosQuery query) {
+        var descriptionField = query.withDescription() ? DESCRIPTION_FIELD :
+                DSL.inline(null, String.class).as(DESCRIPTION_FIELD.getName());
+        return context.select(ID_FIELD, NAME_FIELD, descriptionField)
                 .from(TODO_TABLE)
-                .where(todosCondition(nameFilter, descriptionFilter))
-                .fetch(r -> new Todo(r.get(ID_FIELD), r.get(NAME_FIELD), r.get(DESCRIPTION_FIELD)));
+                .where(todosCondition(query.nameFilter(), query.descriptionFilter())
+                        .and(afterCondition(query)))
+                .orderBy(orderFields(query.sort()))
+                .limit(query.limit());
+    }
+
+    //By position, since description field may be the null one
+    private Todo todoFromRecord(Record3<Long, String, String> record) {
+        return new Todo(record.value1(), record.value2(), record.value3());
     }
 
     private Condition todosCondition(String nameFilter, String descriptionFilter) {
@@ -44,8 +97,84 @@ public class SqlTodoRepository implements TodoRepository {
         return condition;
     }
 
+    /*
+    Filters of at least 3 characters are served by pg_trgm GIN indexes (see schema.sql), but only if ILIKE is used
+    directly on a column (not on lower(column), as jOOQ renders likeIgnoreCase for some dialects).
+    Pattern is inlined (safely escaped by jOOQ), because for a bind parameter Postgres switches to a generic plan
+    after a few executions of a prepared statement, and generic plan can't use trigram index for an unknown pattern.
+    Shorter filters do not contain any trigram, so the index would need to be scanned fully, which is slower than
+    a sequential scan; position() makes sure that the index is not used for them.
+    */
     private Condition likeCaseInsensitiveCondition(Field<String> field, String like) {
-        return field.likeIgnoreCase("%" + like.toLowerCase() + '%');
+        if (like.length() < MIN_TRIGRAM_FILTER_LENGTH) {
+            return DSL.position(DSL.lower(field), like.toLowerCase()).gt(0);
+        }
+        return DSL.condition("{0} ilike {1} escape {2}",
+                field, DSL.inline("%" + escapedLike(like) + "%"), DSL.inline(String.valueOf(LIKE_ESCAPE)));
+    }
+
+    static String escapedLike(String like) {
+        var escaped = new StringBuilder(like.length());
+        for (var c : like.toCharArray()) {
+            if (c == LIKE_ESCAPE || c == '%' || c == '_') {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    //Keyset conditions, backed by todo primary key and (name, id) index (or the "C" collated one of shard.sql)
+    private Condition afterCondition(TodosQuery query) {
+        if (query.after() == null) {
+            return DSL.noCondition();
+        }
+        if (query.sort() == TodosSort.NAME) {
+            return DSL.row(sortNameField, ID_FIELD).gt(query.afterName(), query.after());
+        }
+        return ID_FIELD.gt(query.after());
+    }
+
+    private List<OrderField<?>> orderFields(TodosSort sort) {
+        if (sort == TodosSort.NAME) {
+            return List.of(sortNameField.asc(), ID_FIELD.asc());
+        }
+        return List.of(ID_FIELD.asc());
+    }
+
+    /*
+    search_document is a generated tsvector column with GIN index, see schema.sql.
+    websearch_to_tsquery accepts any user input (quoted phrases, or, -excluded words), without syntax errors.
+    */
+    @Override
+    public List<Todo> search(TodosSearch search) {
+        return rankedSearch(search).stream()
+                .map(RankedTodo::todo)
+                .toList();
+    }
+
+    //Rank of a todo depends only on it and the query, so ranks of todos from different dbs are comparable
+    List<RankedTodo> rankedSearch(TodosSearch search) {
+        var tsQuery = DSL.field("websearch_to_tsquery({0}, {1})", Object.class,
+                DSL.inline(SEARCH_CONFIG), DSL.val(search.query()));
+        var rank = DSL.field("ts_rank({0}, {1})", Double.class, SEARCH_DOCUMENT_FIELD, tsQuery);
+
+        return context.select(ID_FIELD, NAME_FIELD, DESCRIPTION_FIELD, rank)
+                .from(TODO_TABLE)
+                .where(DSL.condition("{0} @@ {1}", SEARCH_DOCUMENT_FIELD, tsQuery))
+                .orderBy(rank.desc(), ID_FIELD.asc())
+                .limit(search.limit())
+                .fetch(r -> new RankedTodo(new Todo(r.value1(), r.value2(), r.value3()), r.value4()));
+    }
+
+    //One statement, whatever number of ids: id = any(array)
+    @Override
+    public List<Todo> todos(List<Long> ids) {
+        return context.select(ID_FIELD, NAME_FIELD, DESCRIPTION_FIELD)
+                .from(TODO_TABLE)
+                .where(ID_FIELD.eq(DSL.any(ids.toArray(Long[]::new))))
+                .orderBy(ID_FIELD)
+                .fetch(this::todoFromRecord);
     }
 
     @Override
@@ -58,6 +187,33 @@ public class SqlTodoRepository implements TodoRepository {
                 .orElseThrow();
     }
 
+    @Override
+    public List<Long> createAll(List<TodoData> todos) {
+        return createAll(context, todos);
+    }
+
+    /*
+    One multi-row insert. Ids are generated by a sequence for each row, in values order,
+    but rows returned by returning clause are not guaranteed to be in that order, so they are sorted.
+    */
+    static List<Long> createAll(DSLContext context, List<TodoData> todos) {
+        if (todos.isEmpty()) {
+            return List.of();
+        }
+
+        var insert = context.insertInto(TODO_TABLE)
+                .columns(NAME_FIELD, DESCRIPTION_FIELD);
+        for (var t : todos) {
+            insert = insert.values(t.name(), t.description());
+        }
+
+        return insert.returning(ID_FIELD)
+                .fetch(ID_FIELD)
+                .stream()
+                .sorted()
+                .toList();
+    }
+
     @Override
     public void update(long id, TodoData todo) {
         context.update(TODO_TABLE)
@@ -67,10 +223,86 @@ public class SqlTodoRepository implements TodoRepository {
                 .execute();
     }
 
+    @Override
+    public void updateAll(List<Todo> todos) {
+        updateAll(context, todos);
+    }
+
+    //One jdbc batch of the same, prepared statement
+    static void updateAll(DSLContext context, List<Todo> todos) {
+        if (todos.isEmpty()) {
+            return;
+        }
+
+        var batch = context.batch(context.update(TODO_TABLE)
+                .set(NAME_FIELD, (String) null)
+                .set(DESCRIPTION_FIELD, (String) null)
+                .where(ID_FIELD.eq((Long) null)));
+        for (var t : todos) {
+            batch = batch.bind(t.name(), t.description(), t.id());
+        }
+
+        batch.execute();
+    }
+
     @Override
     public void delete(long id) {
         context.deleteFrom(TODO_TABLE)
                 .where(ID_FIELD.eq(id))
                 .execute();
     }
+
+    @Override
+    public void deleteAll(List<Long> ids) {
+        deleteAll(context, ids);
+    }
+
+    static void deleteAll(DSLContext context, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        context.deleteFrom(TODO_TABLE)
+                .where(ID_FIELD.eq(DSL.any(ids.toArray(Long[]::new))))
+                .execute();
+    }
+
+    //Incremented by the todo table trigger, in the same transaction as writes, so it is visible only with them
+    @Override
+    public long version() {
+        return context.select(DSL.sum(VERSION_FIELD))
+                .from(TODO_VERSION_TABLE)
+                .fetchOne(0, long.class);
+    }
+
+    /*
+    Replication lag, if the db is a replica: time since the last replayed transaction, or zero if everything
+    received is replayed (there might be no writes for a while). Zero for the primary.
+    If nothing was replayed yet, replay timestamp is null and lag is treated as infinite.
+    */
+    public Duration replicationLag() {
+        var lagSeconds = context.select(DSL.field("""
+                        case when not pg_is_in_recovery() or pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0
+                        else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 'Infinity') end""",
+                        Double.class))
+                .fetchOne(0, Double.class);
+        return lagSeconds.isInfinite() ? ChronoUnit.FOREVER.getDuration() :
+                Duration.ofNanos((long) (lagSeconds * 1_000_000_000));
+    }
+
+    /*
+    Position of the write-ahead log, in bytes: replayed one if the db is a replica (0 if nothing was replayed yet),
+    otherwise the current one, which is past all committed writes. Positions of the primary and its replicas
+    are comparable, see ReplicaRoutingTodoRepository.
+    */
+    public long walPosition() {
+        return context.select(DSL.field("""
+                        pg_wal_lsn_diff(case when pg_is_in_recovery() then coalesce(pg_last_wal_replay_lsn(), '0/0')
+                        else pg_current_wal_insert_lsn() end, '0/0')::bigint""",
+                        Long.class))
+                .fetchOne(0, Long.class);
+    }
+
+    record RankedTodo(Todo todo, double rank) {
+    }
 }
@@ -0,0 +1,203 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.TodoData;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/*
+Append-only file of records, each one being all operations of a single write (so they are applied atomically):
+[int payload length][int crc32c of payload][payload: long seq, int operations count, operations...],
+where an operation is [byte type][long id] and, for PUT, [string name][string description]
+(string is [int bytes length, -1 for null][utf-8 bytes]).
+Records are written with a single channel write, but only force() makes them durable.
+A crash can leave the last record torn (incomplete or with mismatched checksum); it is dropped while replaying.
+*/
+final class TodosLog implements AutoCloseable {
+
+    static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private final FileChannel channel;
+    private long size;
+
+    private TodosLog(FileChannel channel, long size) {
+        this.channel = channel;
+        this.size = size;
+    }
+
+    static TodosLog create(Path file) throws IOException {
+        return new TodosLog(FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), 0);
+    }
+
+    long size() {
+        return size;
+    }
+
+    //If write fails, file is truncated back, so that nothing of a failed record is left
+    void append(long seq, List<Operation> operations) throws IOException {
+        var record = record(seq, operations);
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record, size + record.position());
+            }
+            size += record.limit();
+        } catch (IOException e) {
+            channel.truncate(size);
+            throw e;
+        }
+    }
+
+    private static ByteBuffer record(long seq, List<Operation> operations) {
+        var encoded = new ArrayList<byte[]>(2 * operations.size());
+        var payloadSize = Long.BYTES + Integer.BYTES;
+        for (var o : operations) {
+            payloadSize += 1 + Long.BYTES;
+            if (o.todo() != null) {
+                var name = bytes(o.todo().name());
+                var description = bytes(o.todo().description());
+                encoded.add(name);
+                encoded.add(description);
+                payloadSize += stringSize(name) + stringSize(description);
+            }
+        }
+        if (payloadSize > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Record of %d bytes is bigger than max %d"
+                    .formatted(payloadSize, MAX_RECORD_SIZE));
+        }
+
+        var record = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        record.position(HEADER_SIZE);
+        record.putLong(seq);
+        record.putInt(operations.size());
+        var nextEncoded = 0;
+        for (var o : operations) {
+            record.put(o.todo() == null ? DELETE : PUT);
+            record.putLong(o.id());
+            if (o.todo() != null) {
+                putString(record, encoded.get(nextEncoded++));
+                putString(record, encoded.get(nextEncoded++));
+            }
+        }
+
+        var checksum = new CRC32C();
+        checksum.update(record.array(), HEADER_SIZE, payloadSize);
+        record.putInt(0, payloadSize);
+        record.putInt(Integer.BYTES, (int) checksum.getValue());
+
+        return record.flip();
+    }
+
+    static byte[] bytes(String string) {
+        return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int stringSize(byte[] string) {
+        return Integer.BYTES + (string == null ? 0 : string.length);
+    }
+
+    static void putString(ByteBuffer buffer, byte[] string) {
+        if (string == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(string.length);
+            buffer.put(string);
+        }
+    }
+
+    static String getString(ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        var string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /*
+    Passes valid records to the consumer, in order, and returns the size of the valid part of the file.
+    Reading stops at the first incomplete or corrupted record, the caller decides whether it is a torn tail.
+    */
+    static long replay(Path file, Consumer<Record> consumer) throws IOException {
+        var valid = 0L;
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file),
+                READ_BUFFER_SIZE))) {
+            while (true) {
+                var payloadSize = input.readInt();
+                var expectedChecksum = input.readInt();
+                if (payloadSize < 0 || payloadSize > MAX_RECORD_SIZE) {
+                    return valid;
+                }
+
+                var payload = new byte[payloadSize];
+                input.readFully(payload);
+
+                var checksum = new CRC32C();
+                checksum.update(payload);
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    return valid;
+                }
+
+                consumer.accept(record(ByteBuffer.wrap(payload)));
+                valid += HEADER_SIZE + payloadSize;
+            }
+        } catch (EOFException e) {
+            return valid;
+        }
+    }
+
+    private static Record record(ByteBuffer payload) {
+        var seq = payload.getLong();
+        var count = payload.getInt();
+        var operations = new ArrayList<Operation>(count);
+        for (int i = 0; i < count; i++) {
+            var type = payload.get();
+            var id = payload.getLong();
+            if (type == PUT) {
+                operations.add(new Operation(id, new TodoData(getString(payload), getString(payload))));
+            } else {
+                operations.add(new Operation(id, null));
+            }
+        }
+        return new Record(seq, operations);
+    }
+
+    static void truncate(Path file, long size) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+            channel.force(true);
+        }
+    }
+
+    //Put of a todo under the id or, if todo is null, delete of it
+    record Operation(long id, TodoData todo) {
+    }
+
+    record Record(long seq, List<Operation> operations) {
+    }
+}
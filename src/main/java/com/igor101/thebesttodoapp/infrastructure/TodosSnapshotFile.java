@@ -0,0 +1,127 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/*
+All todos at some log seq, in a single file:
+[int magic][int format version][long seq][long next id][todos: long id, string name, string description]...
+[long -1][int crc32c of all previous bytes], strings are encoded as in TodosLog.
+It is written to a temporary file, forced and then atomically renamed, so a snapshot file is always complete.
+It is read through a memory-mapped buffer (sequentially, without copying it to the heap first),
+so it can't be bigger than 2 GB.
+*/
+final class TodosSnapshotFile {
+
+    private static final int MAGIC = 0x544F444F;
+    private static final int FORMAT_VERSION = 1;
+    private static final long END = -1;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private TodosSnapshotFile() {
+    }
+
+    static void write(Path file, long seq, long nextId, Iterable<Todo> todos) throws IOException {
+        var tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmpFile);
+
+        try (var channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            var checkedOutput = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE), new CRC32C());
+            var output = new DataOutputStream(checkedOutput);
+
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(seq);
+            output.writeLong(nextId);
+            for (var t : todos) {
+                output.writeLong(t.id());
+                writeString(output, t.name());
+                writeString(output, t.description());
+            }
+            output.writeLong(END);
+            output.writeInt((int) checkedOutput.getChecksum().getValue());
+            output.flush();
+
+            channel.force(true);
+        }
+
+        Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        var bytes = TodosLog.bytes(string);
+        if (bytes == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    //Throws if the file is corrupted (checksum doesn't match) or is not a snapshot
+    static Header read(Path file, Consumer<Todo> consumer) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot of %d bytes is too big to be mapped".formatted(size));
+            }
+            if (size < 4 * Integer.BYTES + 3 * Long.BYTES) {
+                throw new IOException("Snapshot is too small: " + size);
+            }
+
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            verifyChecksum(file, buffer);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a todos snapshot or of unknown format: " + file);
+            }
+            var header = new Header(buffer.getLong(), buffer.getLong());
+
+            var id = buffer.getLong();
+            while (id != END) {
+                consumer.accept(new Todo(id, readString(buffer), readString(buffer)));
+                id = buffer.getLong();
+            }
+
+            return header;
+        }
+    }
+
+    private static void verifyChecksum(Path file, MappedByteBuffer buffer) throws IOException {
+        var checksumPosition = buffer.limit() - Integer.BYTES;
+        var checksum = new CRC32C();
+        checksum.update(buffer.slice(0, checksumPosition));
+        if ((int) checksum.getValue() != buffer.getInt(checksumPosition)) {
+            throw new IOException("Snapshot checksum doesn't match: " + file);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    record Header(long seq, long nextId) {
+    }
+}
@@ -0,0 +1,129 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Immutable (persistent) inverted index from (lower-cased) trigrams of a text to ids of texts, that contain them.
+Ids of texts containing a phrase are among ids that contain all of its trigrams, so candidates() is a superset
+of matching ids, which needs to be verified. Phrases shorter than 3 characters can't be narrowed down.
+To have a fixed-size, cheap to copy-on-write structure, trigrams are hashed into a fixed number of buckets;
+collisions only add more candidates to verify.
+*/
+final class TrigramIndex {
+
+    static final int TRIGRAM_LENGTH = 3;
+    private static final int BUCKETS = 1 << 15;
+    static final TrigramIndex EMPTY = new TrigramIndex(PersistentVector.empty());
+    private final PersistentVector<PersistentBitSet> postings;
+
+    private TrigramIndex(PersistentVector<PersistentBitSet> postings) {
+        this.postings = postings;
+    }
+
+    TrigramIndex with(int id, String previousText, String text) {
+        var previousBuckets = buckets(previousText);
+        var newBuckets = buckets(text);
+        var newPostings = postings;
+
+        for (var b : previousBuckets) {
+            if (Arrays.binarySearch(newBuckets, b) < 0) {
+                newPostings = newPostings.set(b, posting(newPostings, b).without(id));
+            }
+        }
+        for (var b : newBuckets) {
+            if (Arrays.binarySearch(previousBuckets, b) < 0) {
+                newPostings = newPostings.set(b, posting(newPostings, b).with(id));
+            }
+        }
+
+        return newPostings == postings ? this : new TrigramIndex(newPostings);
+    }
+
+    //For ids that are not indexed yet (bulk load): every posting is copied once, not once per id
+    TrigramIndex withAll(int[] ids, List<String> texts) {
+        var bucketsIds = new int[BUCKETS][];
+        var bucketsSizes = new int[BUCKETS];
+        for (int i = 0; i < ids.length; i++) {
+            for (var b : buckets(texts.get(i))) {
+                var bucketIds = bucketsIds[b];
+                if (bucketIds == null) {
+                    bucketIds = new int[8];
+                } else if (bucketsSizes[b] == bucketIds.length) {
+                    bucketIds = Arrays.copyOf(bucketIds, 2 * bucketIds.length);
+                }
+                bucketIds[bucketsSizes[b]++] = ids[i];
+                bucketsIds[b] = bucketIds;
+            }
+        }
+
+        var newPostings = postings;
+        for (int b = 0; b < BUCKETS; b++) {
+            if (bucketsSizes[b] > 0) {
+                var bucketIds = Arrays.copyOf(bucketsIds[b], bucketsSizes[b]);
+                Arrays.sort(bucketIds);
+                newPostings = newPostings.set(b, posting(newPostings, b).withAll(bucketIds));
+            }
+        }
+
+        return newPostings == postings ? this : new TrigramIndex(newPostings);
+    }
+
+    private static PersistentBitSet posting(PersistentVector<PersistentBitSet> postings, int bucket) {
+        var posting = postings.get(bucket);
+        return posting == null ? PersistentBitSet.EMPTY : posting;
+    }
+
+    //Null if phrase is too short to use the index
+    int[] candidates(String phrase) {
+        var phraseBuckets = buckets(phrase);
+        if (phraseBuckets.length == 0) {
+            return null;
+        }
+
+        var phrasePostings = new ArrayList<PersistentBitSet>(phraseBuckets.length);
+        for (var b : phraseBuckets) {
+            var posting = posting(postings, b);
+            if (posting.size() == 0) {
+                return new int[0];
+            }
+            phrasePostings.add(posting);
+        }
+
+        return PersistentBitSet.intersection(phrasePostings);
+    }
+
+    //Sorted and distinct
+    private static int[] buckets(String text) {
+        var trigrams = trigrams(text);
+        var buckets = new int[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            buckets[i] = bucket(trigrams[i]);
+        }
+        return Arrays.stream(buckets).sorted().distinct().toArray();
+    }
+
+    private static int bucket(long trigram) {
+        var h = trigram * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> (Long.SIZE - Integer.numberOfTrailingZeros(BUCKETS)));
+    }
+
+    static long[] trigrams(String text) {
+        if (text == null) {
+            return new long[0];
+        }
+
+        var lowerCased = text.toLowerCase();
+        var trigrams = new long[Math.max(0, lowerCased.length() - TRIGRAM_LENGTH + 1)];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = trigram(lowerCased.charAt(i), lowerCased.charAt(i + 1), lowerCased.charAt(i + 2));
+        }
+
+        return trigrams;
+    }
+
+    private static long trigram(char first, char second, char third) {
+        return ((long) first << 32) | ((long) second << 16) | third;
+    }
+}
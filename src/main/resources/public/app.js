@@ -1,4 +1,5 @@
 const TODO_ID_ATTRIBUTE = "data-todo-id";
+const TODOS_PAGE_SIZE = 100;
 const todosDiv = document.getElementById("todos-div");
 const newTodoNameInput = document.querySelector(".new-todo-name-input");
 const newTodoDescriptionTextarea = document.querySelector(".new-todo-description-textarea");
@@ -7,19 +8,29 @@ const newTodoAddButton = document.querySelector(".new-todo-add-button");
 getTodos();
 newTodoAddButton.onclick = addNewTodo;
 
+//Page by page, following the keyset cursor (id of the last todo), until there is a page shorter than the limit
 async function getTodos() {
     try {
-        const response = await fetch("todos");
-        const jsonResponse = await response.json();
-        if (jsonResponse.success) {
+        let after = null;
+        let rendered = 0;
+        while (true) {
+            const query = after == null ? `limit=${TODOS_PAGE_SIZE}` : `limit=${TODOS_PAGE_SIZE}&after=${after}`;
+            const response = await fetch(`todos?${query}`);
+            const jsonResponse = await response.json();
+            if (!jsonResponse.success) {
+                alert(`Fail to fetch todos!: ${JSON.stringify(jsonResponse)}`);
+                return;
+            }
             const todos = jsonResponse.data;
-            if (todos.length > 0) {
-                todos.forEach(t => renderTodo(t));
-            } else {
-                renderNoTodosHeader();
+            todos.forEach(t => renderTodo(t));
+            rendered += todos.length;
+            if (todos.length < TODOS_PAGE_SIZE) {
+                break;
             }
-        } else {
-            alert(`Fail to fetch todos!: ${JSON.stringify(jsonResponse)}`);
+            after = todos[todos.length - 1].id;
+        }
+        if (rendered == 0) {
+            renderNoTodosHeader();
         }
     } catch (e) {
         alert(`Fail to fetch todos!: ${e}`);
@@ -0,0 +1,53 @@
+package com.igor101.thebesttodoapp;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TheBestTodoAppConfigTest {
+
+    private static final Map<String, String> REQUIRED_ENV = Map.of("HTTP_PORT", "8080",
+            "DB_USER", "user", "DB_PASSWORD", "password", "DB_URL", "jdbc:postgresql://localhost:5432/todo");
+
+    @Test
+    void fromEnvVariables_givenOnlyRequiredOnes_shouldReturnDefaults() {
+        var config = TheBestTodoAppConfig.fromEnvVariables(REQUIRED_ENV);
+
+        Assertions.assertEquals(8080, config.httpPort());
+        Assertions.assertEquals(TheBestTodoAppConfig.DbPool.DEFAULT, config.dbPool());
+        Assertions.assertEquals(TheBestTodoAppConfig.AsyncTodos.DISABLED, config.asyncTodos());
+        Assertions.assertEquals(TheBestTodoAppConfig.TodoChangesFeed.DISABLED, config.todoChangesFeed());
+    }
+
+    @Test
+    void fromEnvVariables_givenDbPoolSizeWithoutAsyncTodosDbThreads_shouldDeriveThemFromIt() {
+        var config = TheBestTodoAppConfig.fromEnvVariables(env(Map.of("DB_POOL_SIZE", "40")));
+
+        Assertions.assertEquals(40, config.dbPool().size());
+        Assertions.assertEquals(42, config.asyncTodos().dbThreads());
+    }
+
+    @Test
+    void fromEnvVariables_givenAsyncTodosDbThreads_shouldUseThem() {
+        var config = TheBestTodoAppConfig.fromEnvVariables(env(Map.of("DB_POOL_SIZE", "40",
+                "ASYNC_TODOS_DB_THREADS", "16")));
+
+        Assertions.assertEquals(16, config.asyncTodos().dbThreads());
+    }
+
+    @Test
+    void fromEnvVariables_givenInvalidInteger_shouldThrowMeaningfulException() {
+        var exception = Assertions.assertThrows(RuntimeException.class,
+                () -> TheBestTodoAppConfig.fromEnvVariables(env(Map.of("DB_POOL_SIZE", "many"))));
+
+        Assertions.assertEquals("Invalid DB_POOL_SIZE, integer is required", exception.getMessage());
+    }
+
+    private static Map<String, String> env(Map<String, String> variables) {
+        var env = new HashMap<>(REQUIRED_ENV);
+        env.putAll(variables);
+        return env;
+    }
+}
@@ -3,18 +3,33 @@ package com.igor101.thebesttodoapp;
 import com.igor101.thebesttodoapp.application.ApiErrors;
 import com.igor101.thebesttodoapp.application.ApiResponse;
 import com.igor101.thebesttodoapp.application.JsonMapper;
+import com.igor101.thebesttodoapp.application.WireFormat;
+import com.igor101.thebesttodoapp.core.Errors;
 import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoChange;
 import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.infrastructure.InMemoryTodoRepository;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import io.javalin.util.LoomUtil;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 public class TheBestTodoAppIntegrationTest extends IntegrationTest {
 
@@ -64,6 +79,133 @@ public class TheBestTodoAppIntegrationTest extends IntegrationTest {
                 new Todo(secondTodoId, secondTodo.name(), secondTodo.description()));
     }
 
+    @Test
+    void shouldReturnTodosPagesSortedByName() throws Exception {
+        var firstTodo = new TodoData("b-todo");
+        var secondTodo = new TodoData("a-todo");
+        var thirdTodo = new TodoData("c-todo");
+
+        var firstTodoId = todoIdFromCreateResponse(createTodo(firstTodo));
+        var secondTodoId = todoIdFromCreateResponse(createTodo(secondTodo));
+        var thirdTodoId = todoIdFromCreateResponse(createTodo(thirdTodo));
+
+        var firstPageResponse = getTodos("?sort=name&limit=2");
+        var secondPageResponse = getTodos("?sort=name&limit=2&after=%d&afterName=%s".formatted(firstTodoId,
+                firstTodo.name()));
+
+        assertTodosResponse(firstPageResponse,
+                new Todo(secondTodoId, secondTodo.name()),
+                new Todo(firstTodoId, firstTodo.name()));
+        assertTodosResponse(secondPageResponse, new Todo(thirdTodoId, thirdTodo.name()));
+    }
+
+    @Test
+    void shouldStreamTodosInTheSameFormat() throws Exception {
+        var todos = new ArrayList<Todo>();
+        for (int i = 0; i < 5; i++) {
+            var todo = new TodoData("todo-" + i, i % 2 == 0 ? null : "description-" + i);
+            todos.add(new Todo(todoIdFromCreateResponse(createTodo(todo)), todo.name(), todo.description()));
+        }
+
+        var allTodosResponse = getTodos("?stream=true");
+        var limitedTodosResponse = getTodos("?stream=true&limit=2&after=" + todos.get(0).id());
+
+        Assertions.assertEquals(200, allTodosResponse.statusCode());
+        assertTodosResponse(allTodosResponse, todos.toArray(new Todo[0]));
+        assertTodosResponse(limitedTodosResponse, todos.get(1), todos.get(2));
+        assertInvalidRequestResponse(getTodos("?stream=true&limit=0"), Errors.INVALID_TODOS_LIMIT);
+    }
+
+    @Test
+    void shouldReturnOnlyRequestedTodosFields() throws Exception {
+        var firstTodo = new TodoData("a-todo", "some description");
+        var secondTodo = new TodoData("b-todo");
+
+        var firstTodoId = todoIdFromCreateResponse(createTodo(firstTodo));
+        var secondTodoId = todoIdFromCreateResponse(createTodo(secondTodo));
+
+        var expectedSummaries = "[{\"id\":%d,\"name\":\"a-todo\"},{\"id\":%d,\"name\":\"b-todo\"}]"
+                .formatted(firstTodoId, secondTodoId);
+        var expectedDescriptions = "[{\"description\":\"some description\"},{\"description\":null}]";
+
+        for (var query : List.of("?fields=id,name", "?fields=NAME&fields=id&stream=true")) {
+            Assertions.assertEquals("{\"success\":true,\"data\":%s,\"errors\":[]}".formatted(expectedSummaries),
+                    getTodos(query).body());
+        }
+        Assertions.assertEquals("{\"success\":true,\"data\":%s,\"errors\":[]}".formatted(expectedDescriptions),
+                getTodos("?fields=description&sort=name").body());
+        assertTodosResponse(getTodos("?fields=description,id,name"),
+                new Todo(firstTodoId, firstTodo.name(), firstTodo.description()),
+                new Todo(secondTodoId, secondTodo.name()));
+
+        assertInvalidRequestResponse(getTodos("?fields=id,title"), ApiErrors.INVALID_QUERY_PARAM);
+        assertInvalidRequestResponse(getTodos("?fields="), ApiErrors.INVALID_QUERY_PARAM);
+    }
+
+    @Test
+    void shouldSearchTodos() throws Exception {
+        var firstTodo = new TodoData("buy milk", "and bread");
+        var secondTodo = new TodoData("clean house", "buy milk bottles");
+
+        var firstTodoId = todoIdFromCreateResponse(createTodo(firstTodo));
+        var secondTodoId = todoIdFromCreateResponse(createTodo(secondTodo));
+        createTodo(new TodoData("read book"));
+
+        var response = getTodos("?q=milk&nameFilter=house");
+
+        assertTodosResponse(response,
+                new Todo(firstTodoId, firstTodo.name(), firstTodo.description()),
+                new Todo(secondTodoId, secondTodo.name(), secondTodo.description()));
+        assertInvalidRequestResponse(getTodos("?q=%20"), Errors.INVALID_SEARCH_QUERY);
+    }
+
+    @Test
+    void shouldServeRepeatedTodosQueriesFromCacheGivenItIsEnabled() throws Exception {
+        app.stop();
+
+        var config = new TheBestTodoAppConfig(PORT,
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword(),
+                POSTGRES.getJdbcUrl(),
+                "",
+                new TheBestTodoAppConfig.TodosCache(true, 1024 * 1024, Duration.ofMinutes(1), Duration.ofSeconds(1)),
+                TheBestTodoAppConfig.GroupCommit.DISABLED,
+                TheBestTodoAppConfig.HttpServer.DEFAULT,
+                TheBestTodoAppConfig.DbPool.DEFAULT,
+                TheBestTodoAppConfig.Compression.DEFAULT,
+                TheBestTodoAppConfig.LogStorage.DISABLED,
+                TheBestTodoAppConfig.TodoChangesFeed.DISABLED,
+                TheBestTodoAppConfig.DbReplicas.NONE,
+                TheBestTodoAppConfig.JdbcRepository.DISABLED,
+                TheBestTodoAppConfig.ConcurrencyLimit.DISABLED,
+                TheBestTodoAppConfig.WarmUp.DISABLED,
+                TheBestTodoAppConfig.DbShards.NONE,
+                TheBestTodoAppConfig.AsyncTodos.DISABLED);
+        app = new TheBestTodoApp(config);
+        app.start();
+
+        var todo = new TodoData("some-todo");
+
+        assertTodosResponse(getTodos());
+        assertTodosResponse(getTodos());
+
+        var todoId = todoIdFromCreateResponse(createTodo(todo));
+
+        assertTodosResponse(getTodos(), new Todo(todoId, todo.name()));
+        assertTodosResponse(getTodos(), new Todo(todoId, todo.name()));
+
+        var cacheStats = app.todosCache().stats();
+        Assertions.assertEquals(2, cacheStats.hits());
+        Assertions.assertEquals(2, cacheStats.misses());
+    }
+
+    @Test
+    void shouldReturnMeaningfulExceptionGivenInvalidTodosQuery() throws Exception {
+        assertInvalidRequestResponse(getTodos("?limit=0"), Errors.INVALID_TODOS_LIMIT);
+        assertInvalidRequestResponse(getTodos("?sort=description"), ApiErrors.INVALID_QUERY_PARAM);
+        assertInvalidRequestResponse(getTodos("?after=xD"), ApiErrors.INVALID_QUERY_PARAM);
+    }
+
     private void assertTodosResponse(HttpResponse<String> response, Todo... todos) {
         var expectedBody = JsonMapper.toJson(ApiResponse.ofSuccess(List.of(todos)));
         Assertions.assertEquals(expectedBody, response.body());
@@ -87,8 +229,8 @@ public class TheBestTodoAppIntegrationTest extends IntegrationTest {
     }
 
     private void assertInvalidRequestResponse(HttpResponse<String> response,
-                                              String expectedError) {
-        var expectedResponse = JsonMapper.toJson(ApiResponse.ofFailure(expectedError));
+                                              String... expectedErrors) {
+        var expectedResponse = JsonMapper.toJson(ApiResponse.ofFailure(expectedErrors));
 
         Assertions.assertEquals(400, response.statusCode());
         Assertions.assertEquals(expectedResponse, response.body());
@@ -175,6 +317,704 @@ public class TheBestTodoAppIntegrationTest extends IntegrationTest {
         assertInvalidRequestResponse(response, ApiErrors.INVALID_PATH_PARAM);
     }
 
+    @Test
+    void shouldServeTodosGivenVirtualThreadsAndSmallDbPool() throws Exception {
+        Assumptions.assumeTrue(LoomUtil.INSTANCE.getLoomAvailable());
+
+        restartApp(new TheBestTodoAppConfig.HttpServer(true, 0, 0), new TheBestTodoAppConfig.DbPool(2,
+                Duration.ofSeconds(5)));
+
+        var todoId = todoIdFromCreateResponse(createTodo(new TodoData("some-todo")));
+
+        assertTodosResponse(getTodos(), new Todo(todoId, "some-todo"));
+    }
+
+    @Test
+    void shouldFailToStartGivenVirtualThreadsWithoutRuntimeSupport() {
+        Assumptions.assumeFalse(LoomUtil.INSTANCE.getLoomAvailable());
+
+        Assertions.assertThrows(RuntimeException.class,
+                () -> restartApp(new TheBestTodoAppConfig.HttpServer(true, 0, 0),
+                        TheBestTodoAppConfig.DbPool.DEFAULT));
+    }
+
+    @Test
+    void shouldKeepTodosInLogStorageAcrossRestartsGivenItIsEnabled() throws Exception {
+        var logStorage = new TheBestTodoAppConfig.LogStorage(true,
+                Files.createTempDirectory("todos-log-storage").toString(), Duration.ZERO, 1000);
+        restartApp(TheBestTodoAppConfig.HttpServer.DEFAULT, TheBestTodoAppConfig.DbPool.DEFAULT,
+                TheBestTodoAppConfig.Compression.DEFAULT, logStorage);
+
+        var todos = new ArrayList<Todo>();
+        for (int i = 0; i < 20; i++) {
+            var todo = new TodoData("log-todo-" + i, "some description");
+            todos.add(new Todo(todoIdFromCreateResponse(createTodo(todo)), todo.name(), todo.description()));
+        }
+        var deleted = todos.remove(0);
+        Assertions.assertEquals(200, httpClient.send(HttpRequest.newBuilder()
+                .uri(todosUri("/" + deleted.id()))
+                .DELETE()
+                .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        restartApp(TheBestTodoAppConfig.HttpServer.DEFAULT, TheBestTodoAppConfig.DbPool.DEFAULT,
+                TheBestTodoAppConfig.Compression.DEFAULT, logStorage);
+
+        assertTodosResponse(getTodos(), todos.toArray(Todo[]::new));
+    }
+
+    @Test
+    void shouldStreamTodoChangesAsServerSentEventsAndNotifyChangesOnlyGivenFeedEnabled() throws Exception {
+        Assertions.assertEquals(0, enabledTodoChangesTriggers());
+
+        app.stop();
+        app = new TheBestTodoApp(new TheBestTodoAppConfig(PORT,
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword(),
+                POSTGRES.getJdbcUrl(),
+                "",
+                TheBestTodoAppConfig.TodosCache.DISABLED,
+                TheBestTodoAppConfig.GroupCommit.DISABLED,
+                TheBestTodoAppConfig.HttpServer.DEFAULT,
+                TheBestTodoAppConfig.DbPool.DEFAULT,
+                TheBestTodoAppConfig.Compression.DEFAULT,
+                TheBestTodoAppConfig.LogStorage.DISABLED,
+                TheBestTodoAppConfig.TodoChangesFeed.ENABLED,
+                TheBestTodoAppConfig.DbReplicas.NONE,
+                TheBestTodoAppConfig.JdbcRepository.DISABLED,
+                TheBestTodoAppConfig.ConcurrencyLimit.DISABLED,
+                TheBestTodoAppConfig.WarmUp.DISABLED,
+                TheBestTodoAppConfig.DbShards.NONE,
+                TheBestTodoAppConfig.AsyncTodos.DISABLED));
+        app.start();
+
+        Assertions.assertEquals(3, enabledTodoChangesTriggers());
+
+        var request = HttpRequest.newBuilder()
+                .uri(todosUri("/changes"))
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertTrue(contentType(response).startsWith("text/event-stream"));
+
+        //Headers are sent just before the client is subscribed
+        Thread.sleep(100);
+
+        var todo = new TodoData("some-todo", "some-description");
+        var todoId = todoIdFromCreateResponse(createTodo(todo));
+        httpClient.send(HttpRequest.newBuilder()
+                .uri(todosUri("/" + todoId))
+                .DELETE()
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        var eventsLines = response.body()
+                .filter(l -> l.startsWith("event: ") || l.startsWith("data: "))
+                .limit(4)
+                .toList();
+
+        Assertions.assertEquals(List.of("event: created",
+                        "data: " + JsonMapper.toJson(new TodoChange(TodoChange.Type.CREATED, todoId, todo)),
+                        "event: deleted",
+                        "data: " + JsonMapper.toJson(new TodoChange(TodoChange.Type.DELETED, todoId, null))),
+                eventsLines);
+
+        restartApp(TheBestTodoAppConfig.HttpServer.DEFAULT, TheBestTodoAppConfig.DbPool.DEFAULT);
+
+        Assertions.assertEquals(0, enabledTodoChangesTriggers());
+    }
+
+    private int enabledTodoChangesTriggers() {
+        return ((Number) CONTEXT.fetchValue("""
+                SELECT count(*) FROM pg_trigger
+                WHERE tgrelid = 'todo'::regclass AND tgname LIKE 'todo_changes_%' AND tgenabled != 'D'"""))
+                .intValue();
+    }
+
+    //There is a single db, so it is its own replica; the other one is down
+    @Test
+    void shouldServeReadsFromAvailableReplicasGivenThemConfigured() throws Exception {
+        var dbReplicas = new TheBestTodoAppConfig.DbReplicas(
+                List.of(POSTGRES.getJdbcUrl(), "jdbc:postgresql://localhost:1/non-existing-replica"),
+                Duration.ofSeconds(1), Duration.ofMillis(100), Duration.ofMillis(1));
+        restartApp(TheBestTodoAppConfig.HttpServer.DEFAULT,
+                new TheBestTodoAppConfig.DbPool(5, Duration.ofMillis(250)),
+                TheBestTodoAppConfig.Compression.DEFAULT, TheBestTodoAppConfig.LogStorage.DISABLED, dbReplicas);
+
+        var todos = new ArrayList<Todo>();
+        for (int i = 0; i < 5; i++) {
+            var todo = new TodoData("replicated-todo-" + i, "some description");
+            var response = createTodo(todo);
+            todos.add(new Todo(todoIdFromCreateResponse(response), todo.name(), todo.description()));
+
+            Assertions.assertTrue(response.headers().firstValue("set-cookie").orElseThrow()
+                    .matches("todos-write-position=\\d+;.*"));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertTodosResponse(getTodos(), todos.toArray(Todo[]::new));
+            assertTodosResponse(getTodos("?stream=true"), todos.toArray(Todo[]::new));
+            assertTodosResponse(getTodos("?ids=" + todos.get(0).id()), todos.get(0));
+        }
+    }
+
+    @Test
+    void shouldReadAndWriteTodosGivenJdbcRepository() throws Exception {
+        app.stop();
+
+        var config = new TheBestTodoAppConfig(PORT,
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword(),
+                POSTGRES.getJdbcUrl(),
+                "",
+                TheBestTodoAppConfig.TodosCache.DISABLED,
+                TheBestTodoAppConfig.GroupCommit.DISABLED,
+                TheBestTodoAppConfig.HttpServer.DEFAULT,
+                TheBestTodoAppConfig.DbPool.DEFAULT,
+                TheBestTodoAppConfig.Compression.DEFAULT,
+                TheBestTodoAppConfig.LogStorage.DISABLED,
+                TheBestTodoAppConfig.TodoChangesFeed.DISABLED,
+                TheBestTodoAppConfig.DbReplicas.NONE,
+                new TheBestTodoAppConfig.JdbcRepository(true, 1),
+                TheBestTodoAppConfig.ConcurrencyLimit.DISABLED,
+                TheBestTodoAppConfig.WarmUp.DISABLED,
+                TheBestTodoAppConfig.DbShards.NONE,
+                TheBestTodoAppConfig.AsyncTodos.DISABLED);
+        app = new TheBestTodoApp(config);
+        app.start();
+
+        var firstTodo = new Todo(todoIdFromCreateResponse(createTodo(new TodoData("first-todo"))), "first-todo");
+        var secondTodo = new TodoData("second-todo", "some description");
+        var secondTodoId = todoIdFromCreateResponse(createTodo(new TodoData("second")));
+        Assertions.assertEquals(200, httpClient.send(HttpRequest.newBuilder()
+                .uri(todosUri("/" + secondTodoId))
+                .PUT(HttpRequest.BodyPublishers.ofString(JsonMapper.toJson(secondTodo)))
+                .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        assertTodosResponse(getTodos(),
+                firstTodo, new Todo(secondTodoId, secondTodo.name(), secondTodo.description()));
+        assertTodosResponse(getTodos("?nameFilter=first"), firstTodo);
+        assertTodosResponse(getTodos("?q=description"),
+                new Todo(secondTodoId, secondTodo.name(), secondTodo.description()));
+    }
+
+    @Test
+    void shouldServeTodosAsynchronouslyGivenItIsEnabled() throws Exception {
+        app.stop();
+
+        app = new TheBestTodoApp(asyncTodosConfig(new TheBestTodoAppConfig.AsyncTodos(true, 2, 100),
+                TheBestTodoAppConfig.ConcurrencyLimit.ENABLED));
+        app.start();
+
+        var firstTodo = new Todo(todoIdFromCreateResponse(createTodo(new TodoData("first-todo"))), "first-todo");
+        var secondTodo = new TodoData("second-todo", "some description");
+        var secondTodoId = todoIdFromCreateResponse(createTodo(new TodoData("second")));
+        Assertions.assertEquals(200, httpClient.send(HttpRequest.newBuilder()
+                .uri(todosUri("/" + secondTodoId))
+                .PUT(HttpRequest.BodyPublishers.ofString(JsonMapper.toJson(secondTodo)))
+                .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+        var batchIds = todosIdsFromBatchCreateResponse(batchRequest("POST", "",
+                JsonMapper.toJson(List.of(new TodoData("third-todo"), new TodoData("fourth-todo")))));
+        Assertions.assertEquals(200, batchRequest("DELETE", "?ids=" + batchIds.get(1), "").statusCode());
+
+        var todos = new Todo[]{firstTodo, new Todo(secondTodoId, secondTodo.name(), secondTodo.description()),
+                new Todo(batchIds.get(0), "third-todo")};
+        var response = getTodos();
+        assertTodosResponse(response, todos);
+        assertTodosResponse(getTodos("?stream=true"), todos);
+        assertTodosResponse(getTodos("?ids=%d,%d".formatted(firstTodo.id(), batchIds.get(1))), firstTodo);
+        assertTodosResponse(getTodos("?q=description"), todos[1]);
+        Assertions.assertEquals(304, getTodos("", response.headers().firstValue("etag").orElseThrow()).statusCode());
+
+        assertInvalidRequestResponse(getTodos("?limit=0"), Errors.INVALID_TODOS_LIMIT);
+        assertInvalidRequestResponse(createTodo(new TodoData("x")), Errors.INVALID_TODO_NAME);
+        assertInvalidRequestResponse(batchRequest("DELETE", "?ids=1,a", ""), ApiErrors.INVALID_QUERY_PARAM);
+    }
+
+    @Test
+    void shouldRejectAsyncTodosCallsOverDbThreadsQueueRightAway() throws Exception {
+        app.stop();
+
+        var todosRequested = new CountDownLatch(1);
+        var todosReleased = new CountDownLatch(1);
+        var repository = new InMemoryTodoRepository() {
+            @Override
+            public List<Todo> todos(TodosQuery query) {
+                todosRequested.countDown();
+                try {
+                    todosReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.todos(query);
+            }
+        };
+        app = new TheBestTodoApp(asyncTodosConfig(new TheBestTodoAppConfig.AsyncTodos(true, 1, 1),
+                TheBestTodoAppConfig.ConcurrencyLimit.DISABLED), repository);
+        app.start();
+
+        var pendingResponse = httpClient.sendAsync(HttpRequest.newBuilder().uri(todosUri()).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        todosRequested.await();
+        //Waits in the queue
+        var queuedResponse = httpClient.sendAsync(HttpRequest.newBuilder().uri(todosUri()).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        Thread.sleep(100);
+
+        var rejectedResponse = createTodo(new TodoData("some-todo"));
+        todosReleased.countDown();
+
+        Assertions.assertEquals(503, rejectedResponse.statusCode());
+        Assertions.assertEquals(JsonMapper.toJson(ApiResponse.ofFailure(ApiErrors.SERVICE_OVERLOADED)),
+                rejectedResponse.body());
+        Assertions.assertEquals("1", rejectedResponse.headers().firstValue("retry-after").orElse(""));
+        assertTodosResponse(pendingResponse.get());
+        assertTodosResponse(queuedResponse.get());
+        Assertions.assertEquals(201, createTodo(new TodoData("some-todo")).statusCode());
+    }
+
+    private TheBestTodoAppConfig asyncTodosConfig(TheBestTodoAppConfig.AsyncTodos asyncTodos,
+                                                  TheBestTodoAppConfig.ConcurrencyLimit concurrencyLimit) {
+        return new TheBestTodoAppConfig(PORT,
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword(),
+                POSTGRES.getJdbcUrl(),
+                "",
+                TheBestTodoAppConfig.TodosCache.DISABLED,
+                TheBestTodoAppConfig.GroupCommit.DISABLED,
+                TheBestTodoAppConfig.HttpServer.DEFAULT,
+                TheBestTodoAppConfig.DbPool.DEFAULT,
+                TheBestTodoAppConfig.Compression.DEFAULT,
+                TheBestTodoAppConfig.LogStorage.DISABLED,
+                TheBestTodoAppConfig.TodoChangesFeed.DISABLED,
+                TheBestTodoAppConfig.DbReplicas.NONE,
+                TheBestTodoAppConfig.JdbcRepository.DISABLED,
+                concurrencyLimit,
+                TheBestTodoAppConfig.WarmUp.DISABLED,
+                TheBestTodoAppConfig.DbShards.NONE,
+                asyncTodos);
+    }
+
+    private void restartApp(TheBestTodoAppConfig.HttpServer httpServer, TheBestTodoAppConfig.DbPool dbPool) {
+        restartApp(httpServer, dbPool, TheBestTodoAppConfig.Compression.DEFAULT);
+    }
+
+    private void restartApp(TheBestTodoAppConfig.HttpServer httpServer,
+                            TheBestTodoAppConfig.DbPool dbPool,
+                            TheBestTodoAppConfig.Compression compression) {
+        restartApp(httpServer, dbPool, compression, TheBestTodoAppConfig.LogStorage.DISABLED);
+    }
+
+    private void restartApp(TheBestTodoAppConfig.HttpServer httpServer,
+                            TheBestTodoAppConfig.DbPool dbPool,
+                            TheBestTodoAppConfig.Compression compression,
+                            TheBestTodoAppConfig.LogStorage logStorage) {
+        restartApp(httpServer, dbPool, compression, logStorage, TheBestTodoAppConfig.DbReplicas.NONE);
+    }
+
+    private void restartApp(TheBestTodoAppConfig.HttpServer httpServer,
+                            TheBestTodoAppConfig.DbPool dbPool,
+                            TheBestTodoAppConfig.Compression compression,
+                            TheBestTodoAppConfig.LogStorage logStorage,
+                            TheBestTodoAppConfig.DbReplicas dbReplicas) {
+        app.stop();
+
+        var config = new TheBestTodoAppConfig(PORT,
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword(),
+                POSTGRES.getJdbcUrl(),
+                "",
+                TheBestTodoAppConfig.TodosCache.DISABLED,
+                TheBestTodoAppConfig.GroupCommit.DISABLED,
+                httpServer,
+                dbPool,
+                compression,
+                logStorage,
+                TheBestTodoAppConfig.TodoChangesFeed.DISABLED,
+                dbReplicas,
+                TheBestTodoAppConfig.JdbcRepository.DISABLED,
+                TheBestTodoAppConfig.ConcurrencyLimit.DISABLED,
+                TheBestTodoAppConfig.WarmUp.DISABLED,
+                TheBestTodoAppConfig.DbShards.NONE,
+                TheBestTodoAppConfig.AsyncTodos.DISABLED);
+        app = new TheBestTodoApp(config);
+        app.start();
+    }
+
+    @Test
+    void shouldCreateUpdateGetAndDeleteTodosInBatches() throws Exception {
+        var todos = List.of(new TodoData("first-todo"), new TodoData("second-todo", "description"),
+                new TodoData("third-todo"));
+
+        var createResponse = batchRequest("POST", "", JsonMapper.toJson(todos));
+        Assertions.assertEquals(201, createResponse.statusCode());
+
+        var ids = todosIdsFromBatchCreateResponse(createResponse);
+        var idsQuery = "?ids=%d,%d&ids=%d".formatted(ids.get(2), ids.get(0), ids.get(1));
+
+        assertTodosResponse(getTodos(idsQuery),
+                new Todo(ids.get(0), "first-todo"),
+                new Todo(ids.get(1), "second-todo", "description"),
+                new Todo(ids.get(2), "third-todo"));
+
+        var updatedTodo = new Todo(ids.get(1), "updated-todo", "updated-description");
+        Assertions.assertEquals(200, batchRequest("PUT", "", JsonMapper.toJson(List.of(updatedTodo))).statusCode());
+        Assertions.assertEquals(200,
+                batchRequest("DELETE", "?ids=%d,%d".formatted(ids.get(0), ids.get(2)), "").statusCode());
+
+        assertTodosResponse(getTodos(idsQuery), updatedTodo);
+    }
+
+    @Test
+    void shouldReturnErrorsOfEachInvalidItemGivenInvalidBatch() throws Exception {
+        var todos = List.of(new TodoData("valid-todo"), new TodoData("x"), new TodoData(null));
+
+        assertInvalidRequestResponse(batchRequest("POST", "", JsonMapper.toJson(todos)),
+                Errors.ofItem(Errors.INVALID_TODO_NAME, 1), Errors.ofItem(Errors.INVALID_TODO_NAME, 2));
+        assertInvalidRequestResponse(batchRequest("POST", "", "[]"), Errors.INVALID_BATCH_SIZE);
+        assertInvalidRequestResponse(batchRequest("DELETE", "?ids=1,a", ""), ApiErrors.INVALID_QUERY_PARAM);
+        assertInvalidRequestResponse(getTodos("?ids=1,,2"), ApiErrors.INVALID_QUERY_PARAM);
+    }
+
+    @Test
+    void shouldReturnNotModifiedGivenMatchingETagUntilTodosChange() throws Exception {
+        createTodo(new TodoData("some-todo"));
+
+        var response = getTodos("?nameFilter=some");
+        var etag = response.headers().firstValue("etag").orElseThrow();
+        var otherFiltersETag = getTodos("?nameFilter=other").headers().firstValue("etag").orElseThrow();
+
+        var notModifiedResponse = getTodos("?nameFilter=some", etag);
+        var otherFiltersResponse = getTodos("?nameFilter=other", etag);
+
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertNotEquals(etag, otherFiltersETag);
+        Assertions.assertEquals(304, notModifiedResponse.statusCode());
+        Assertions.assertEquals("", notModifiedResponse.body());
+        Assertions.assertEquals(etag, notModifiedResponse.headers().firstValue("etag").orElseThrow());
+        Assertions.assertEquals(200, otherFiltersResponse.statusCode());
+        Assertions.assertEquals(304, getTodos("?nameFilter=some", "\"other\", W/" + etag).statusCode());
+
+        var todoId = todoIdFromCreateResponse(createTodo(new TodoData("some-other-todo")));
+
+        var modifiedResponse = getTodos("?nameFilter=some", etag);
+        Assertions.assertEquals(200, modifiedResponse.statusCode());
+        Assertions.assertNotEquals(etag, modifiedResponse.headers().firstValue("etag").orElseThrow());
+        Assertions.assertTrue(modifiedResponse.body().contains(String.valueOf(todoId)));
+    }
+
+    @Test
+    void shouldCompressResponsesBiggerThanMinSizeGivenAcceptedEncoding() throws Exception {
+        restartApp(TheBestTodoAppConfig.HttpServer.DEFAULT, TheBestTodoAppConfig.DbPool.DEFAULT,
+                new TheBestTodoAppConfig.Compression(true, 500, 6, true));
+
+        var todos = new ArrayList<Todo>();
+        for (int i = 0; i < 3; i++) {
+            var todo = new TodoData("todo-" + i, "some description ".repeat(50));
+            todos.add(new Todo(todoIdFromCreateResponse(createTodo(todo)), todo.name(), todo.description()));
+        }
+        var expectedBody = JsonMapper.toJson(ApiResponse.ofSuccess(todos));
+
+        var gzipResponse = getTodosBytes("", "gzip, deflate");
+        var zstdResponse = getTodosBytes("", "gzip;q=0.5, zstd");
+        var streamedGzipResponse = getTodosBytes("?stream=true", "gzip");
+        var notAcceptedResponse = getTodosBytes("", "br, zstd;q=0");
+        var smallResponse = getTodosBytes("?ids=999999", "gzip");
+
+        Assertions.assertEquals("gzip", contentEncoding(gzipResponse));
+        Assertions.assertEquals(expectedBody, new String(new GZIPInputStream(
+                new ByteArrayInputStream(gzipResponse.body())).readAllBytes(), StandardCharsets.UTF_8));
+        Assertions.assertTrue(gzipResponse.body().length < expectedBody.length() / 5);
+        Assertions.assertTrue(gzipResponse.headers().firstValue("etag").orElseThrow().endsWith("--gzip\""));
+
+        Assertions.assertEquals("zstd", contentEncoding(zstdResponse));
+        var zstdBody = zstdResponse.body();
+        var decompressed = new byte[expectedBody.length()];
+        new ZstdDecompressor().decompress(zstdBody, 0, zstdBody.length, decompressed, 0, decompressed.length);
+        Assertions.assertEquals(expectedBody, new String(decompressed, StandardCharsets.UTF_8));
+
+        Assertions.assertEquals("gzip", contentEncoding(streamedGzipResponse));
+        Assertions.assertEquals(expectedBody, new String(new GZIPInputStream(
+                new ByteArrayInputStream(streamedGzipResponse.body())).readAllBytes(), StandardCharsets.UTF_8));
+
+        Assertions.assertEquals("", contentEncoding(notAcceptedResponse));
+        Assertions.assertEquals(expectedBody, new String(notAcceptedResponse.body(), StandardCharsets.UTF_8));
+        Assertions.assertEquals("", contentEncoding(smallResponse));
+        Assertions.assertTrue(smallResponse.headers().allValues("vary").contains("Accept-Encoding"));
+
+        var gzipETag = gzipResponse.headers().firstValue("etag").orElseThrow();
+        var notModifiedResponse = getTodos("", gzipETag);
+        Assertions.assertEquals(304, notModifiedResponse.statusCode());
+        Assertions.assertEquals(gzipETag, notModifiedResponse.headers().firstValue("etag").orElseThrow());
+    }
+
+    @Test
+    void shouldAcceptAndReturnBinaryFormatsGivenContentTypeAndAcceptHeaders() throws Exception {
+        var todo = new TodoData("cbor-todo", "some description");
+        var createRequest = HttpRequest.newBuilder()
+                .uri(todosUri())
+                .header("Content-Type", WireFormat.CBOR.contentType())
+                .header("Accept", WireFormat.CBOR.contentType())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(WireFormat.CBOR.toBytes(todo)))
+                .build();
+
+        var createResponse = httpClient.send(createRequest, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assertions.assertEquals(201, createResponse.statusCode());
+        Assertions.assertEquals(WireFormat.CBOR.contentType(), contentType(createResponse));
+        var todoId = Long.parseLong(WireFormat.CBOR.toObject(createResponse.body(), ApiResponse.class)
+                .data().toString());
+
+        var expectedResponse = JsonMapper.toObject(
+                JsonMapper.toJson(ApiResponse.ofSuccess(List.of(new Todo(todoId, todo.name(), todo.description())))),
+                ApiResponse.class);
+
+        for (var format : List.of(WireFormat.SMILE, WireFormat.MESSAGE_PACK)) {
+            for (var query : List.of("", "?stream=true")) {
+                var response = getTodosBytes(query, format.contentType() + ", application/json;q=0.5", "identity");
+
+                Assertions.assertEquals(200, response.statusCode());
+                Assertions.assertEquals(format.contentType(), contentType(response));
+                Assertions.assertTrue(response.headers().allValues("vary").contains("Accept"));
+                Assertions.assertEquals(expectedResponse, format.toObject(response.body(), ApiResponse.class));
+            }
+        }
+
+        var jsonETag = getTodos().headers().firstValue("etag").orElseThrow();
+        var smileETag = getTodosBytes("", WireFormat.SMILE.contentType(), "identity")
+                .headers().firstValue("etag").orElseThrow();
+        Assertions.assertNotEquals(jsonETag, smileETag);
+    }
+
+    @Test
+    void shouldReturnMeaningfulExceptionGivenUnsupportedOrInvalidBodyFormat() throws Exception {
+        for (var contentType : List.of("text/plain", WireFormat.MESSAGE_PACK.contentType())) {
+            var request = HttpRequest.newBuilder()
+                    .uri(todosUri())
+                    .header("Content-Type", contentType)
+                    .POST(HttpRequest.BodyPublishers.ofString(JsonMapper.toJson(new TodoData("some-todo"))))
+                    .build();
+
+            var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            assertInvalidRequestResponse(response, ApiErrors.INVALID_BODY);
+        }
+    }
+
+    private String contentType(HttpResponse<?> response) {
+        return response.headers().firstValue("content-type").orElse("");
+    }
+
+    private HttpResponse<byte[]> getTodosBytes(String query, String accept, String acceptEncoding) throws Exception {
+        var request = HttpRequest.newBuilder()
+                .uri(todosUri(query))
+                .header("Accept", accept)
+                .header("Accept-Encoding", acceptEncoding)
+                .GET()
+                .build();
+
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpResponse<byte[]> getTodosBytes(String query, String acceptEncoding) throws Exception {
+        return getTodosBytes(query, WireFormat.JSON.contentType(), acceptEncoding);
+    }
+
+    private String contentEncoding(HttpResponse<?> response) {
+        return response.headers().firstValue("content-encoding").orElse("");
+    }
+
+    @Test
+    void shouldExposeRoutesLatenciesAndDbPoolMetrics() throws Exception {
+        var todoId = todoIdFromCreateResponse(createTodo(new TodoData("some-todo")));
+        getTodos();
+        getTodos("?limit=0");
+        batchRequest("DELETE", "?ids=" + todoId, "");
+
+        var expectedSamples = List.of(
+                "http_server_request_duration_seconds_count{method=\"POST\",route=\"/todos\",status=\"201\"} 1",
+                "http_server_request_duration_seconds_count{method=\"GET\",route=\"/todos\",status=\"200\"} 1",
+                "http_server_request_duration_seconds_count{method=\"GET\",route=\"/todos\",status=\"400\"} 1",
+                "http_server_request_duration_seconds_bucket{method=\"DELETE\",route=\"/todos/batch\",status=\"200\","
+                        + "le=\"+Inf\"} 1",
+                "http_server_request_duration_quantile_seconds{method=\"GET\",route=\"/todos\",status=\"200\","
+                        + "quantile=\"0.99\"}",
+                "db_pool_max_connections 10",
+                "jvm_memory_used_bytes{area=\"heap\"}");
+
+        assertMetricsContain(expectedSamples);
+    }
+
+    @Test
+    void shouldRejectTodosRequestsOverConcurrencyLimitRightAway() throws Exception {
+        app.stop();
+
+        var todosRequested = new CountDownLatch(1);
+        var todosReleased = new CountDownLatch(1);
+        var repository = new InMemoryTodoRepository() {
+            @Override
+            public List<Todo> todos(TodosQuery query) {
+                todosRequested.countDown();
+                try {
+                    todosReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.todos(query);
+            }
+        };
+        var config = new TheBestTodoAppConfig(PORT,
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword(),
+                POSTGRES.getJdbcUrl(),
+                "",
+                TheBestTodoAppConfig.TodosCache.DISABLED,
+                TheBestTodoAppConfig.GroupCommit.DISABLED,
+                TheBestTodoAppConfig.HttpServer.DEFAULT,
+                TheBestTodoAppConfig.DbPool.DEFAULT,
+                TheBestTodoAppConfig.Compression.DEFAULT,
+                TheBestTodoAppConfig.LogStorage.DISABLED,
+                TheBestTodoAppConfig.TodoChangesFeed.DISABLED,
+                TheBestTodoAppConfig.DbReplicas.NONE,
+                TheBestTodoAppConfig.JdbcRepository.DISABLED,
+                new TheBestTodoAppConfig.ConcurrencyLimit(true, 1, 1, 1, Duration.ofSeconds(10)),
+                TheBestTodoAppConfig.WarmUp.DISABLED,
+                TheBestTodoAppConfig.DbShards.NONE,
+                TheBestTodoAppConfig.AsyncTodos.DISABLED);
+        app = new TheBestTodoApp(config, repository);
+        app.start();
+
+        var pendingResponse = httpClient.sendAsync(HttpRequest.newBuilder().uri(todosUri()).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        todosRequested.await();
+
+        var rejectedResponse = createTodo(new TodoData("some-todo"));
+        todosReleased.countDown();
+
+        Assertions.assertEquals(503, rejectedResponse.statusCode());
+        Assertions.assertEquals(JsonMapper.toJson(ApiResponse.ofFailure(ApiErrors.SERVICE_OVERLOADED)),
+                rejectedResponse.body());
+        Assertions.assertEquals("1", rejectedResponse.headers().firstValue("retry-after").orElse(""));
+        assertTodosResponse(pendingResponse.get());
+        Assertions.assertEquals(201, createTodo(new TodoData("some-todo")).statusCode());
+
+        assertMetricsContain(List.of("todos_concurrency_limit 1", "todos_requests_rejected_total 1",
+                "http_server_request_duration_seconds_count{method=\"POST\",route=\"/todos\",status=\"503\"} 1"));
+    }
+
+    @Test
+    void shouldNotLimitStreamedTodosRequests() throws Exception {
+        app.stop();
+
+        var todosStreamed = new CountDownLatch(1);
+        var streamReleased = new CountDownLatch(1);
+        var repository = new InMemoryTodoRepository() {
+            @Override
+            public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+                todosStreamed.countDown();
+                try {
+                    streamReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.streamTodos(query, consumer);
+            }
+        };
+        app = new TheBestTodoApp(asyncTodosConfig(TheBestTodoAppConfig.AsyncTodos.DISABLED,
+                new TheBestTodoAppConfig.ConcurrencyLimit(true, 1, 1, 1, Duration.ofSeconds(10))), repository);
+        app.start();
+
+        var streamResponse = httpClient.sendAsync(HttpRequest.newBuilder().uri(todosUri("?stream=true")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        todosStreamed.await();
+
+        var createResponse = createTodo(new TodoData("some-todo"));
+        streamReleased.countDown();
+
+        Assertions.assertEquals(201, createResponse.statusCode());
+        Assertions.assertEquals(200, streamResponse.get().statusCode());
+        assertMetricsContain(List.of("todos_concurrency_limit 1", "todos_requests_rejected_total 0"));
+    }
+
+    @Test
+    void shouldBeReadyAfterWarmUpWithoutWritingAnything() throws Exception {
+        app.stop();
+
+        var config = new TheBestTodoAppConfig(PORT,
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword(),
+                POSTGRES.getJdbcUrl(),
+                "",
+                TheBestTodoAppConfig.TodosCache.DISABLED,
+                TheBestTodoAppConfig.GroupCommit.DISABLED,
+                TheBestTodoAppConfig.HttpServer.DEFAULT,
+                TheBestTodoAppConfig.DbPool.DEFAULT,
+                TheBestTodoAppConfig.Compression.DEFAULT,
+                TheBestTodoAppConfig.LogStorage.DISABLED,
+                TheBestTodoAppConfig.TodoChangesFeed.DISABLED,
+                TheBestTodoAppConfig.DbReplicas.NONE,
+                TheBestTodoAppConfig.JdbcRepository.DISABLED,
+                TheBestTodoAppConfig.ConcurrencyLimit.DISABLED,
+                new TheBestTodoAppConfig.WarmUp(true, 12, false),
+                TheBestTodoAppConfig.DbShards.NONE,
+                TheBestTodoAppConfig.AsyncTodos.DISABLED);
+        app = new TheBestTodoApp(config);
+        app.start();
+
+        var readyResponse = httpClient.send(HttpRequest.newBuilder()
+                        .uri(new URI("http://localhost:%d/ready".formatted(PORT)))
+                        .GET()
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, readyResponse.statusCode());
+        Assertions.assertEquals(JsonMapper.toJson(ApiResponse.ofSuccess()), readyResponse.body());
+        assertTodosResponse(getTodos());
+        assertMetricsContain(List.of(
+                "http_server_request_duration_seconds_count{method=\"GET\",route=\"/todos\",status=\"200\"} 1",
+                "db_pool_connections{state=\"idle\"} 10"));
+    }
+
+    private void assertMetricsContain(List<String> expectedSamples) throws Exception {
+        //Requests are recorded right after their responses were sent, so it may take a while
+        String metrics = null;
+        for (int i = 0; i < 10; i++) {
+            var response = httpClient.send(HttpRequest.newBuilder()
+                            .uri(new URI("http://localhost:%d/metrics".formatted(PORT)))
+                            .GET()
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertTrue(response.headers().firstValue("content-type").orElseThrow()
+                    .startsWith("text/plain"));
+
+            metrics = response.body();
+            if (expectedSamples.stream().allMatch(metrics::contains)) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+
+        Assertions.fail("Metrics should contain all of: %s, but were:%n%s".formatted(expectedSamples, metrics));
+    }
+
+    private HttpResponse<String> batchRequest(String method, String query, String body) throws Exception {
+        var request = HttpRequest.newBuilder()
+                .uri(todosUri("/batch" + query))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Long> todosIdsFromBatchCreateResponse(HttpResponse<String> createResponse) {
+        var apiResponse = JsonMapper.toObject(createResponse.body(), ApiResponse.class);
+        return ((List<?>) apiResponse.data()).stream()
+                .map(id -> Long.parseLong(id.toString()))
+                .toList();
+    }
+
     private HttpResponse<String> createTodo(TodoData todo) throws Exception {
         var request = HttpRequest.newBuilder()
                 .uri(todosUri())
@@ -185,8 +1025,22 @@ public class TheBestTodoAppIntegrationTest extends IntegrationTest {
     }
 
     private HttpResponse<String> getTodos() throws Exception {
+        return getTodos("");
+    }
+
+    private HttpResponse<String> getTodos(String query) throws Exception {
         var request = HttpRequest.newBuilder()
-                .uri(todosUri())
+                .uri(todosUri(query))
+                .GET()
+                .build();
+
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> getTodos(String query, String ifNoneMatch) throws Exception {
+        var request = HttpRequest.newBuilder()
+                .uri(todosUri(query))
+                .header("If-None-Match", ifNoneMatch)
                 .GET()
                 .build();
 
@@ -0,0 +1,88 @@
+package com.igor101.thebesttodoapp.application;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.stream.IntStream;
+
+public class ConcurrencyLimiterTest {
+
+    private static final Duration LATENCY_THRESHOLD = Duration.ofMillis(100);
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = LATENCY_THRESHOLD.toNanos() + 1;
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 12, LATENCY_THRESHOLD);
+
+    @Test
+    void shouldRejectRequestsOverLimitAndCountThem() {
+        acquire(10);
+
+        Assertions.assertFalse(limiter.tryAcquire());
+        Assertions.assertFalse(limiter.tryAcquire());
+        Assertions.assertEquals(10, limiter.inFlight());
+        Assertions.assertEquals(2, limiter.rejected());
+
+        limiter.release(System.nanoTime(), FAST, false);
+
+        Assertions.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void shouldIncreaseLimitByOneWithFastRequestsOnlyIfAtLeastHalfOfItIsUsed() {
+        acquire(4);
+        limiter.release(System.nanoTime(), FAST, false);
+
+        Assertions.assertEquals(10, limiter.limit());
+
+        acquire(2);
+        limiter.release(System.nanoTime(), FAST, false);
+        limiter.release(System.nanoTime(), FAST, false);
+
+        Assertions.assertEquals(11, limiter.limit());
+    }
+
+    @Test
+    void shouldNotIncreaseLimitOverMax() {
+        for (int i = 0; i < 5; i++) {
+            acquire(10);
+            IntStream.range(0, 10).forEach(r -> limiter.release(System.nanoTime(), FAST, false));
+        }
+
+        Assertions.assertEquals(12, limiter.limit());
+    }
+
+    @Test
+    void shouldDecreaseLimitOncePerSlowOrFailedRoundTrip() {
+        var start = System.nanoTime();
+        acquire(3);
+
+        limiter.release(start, SLOW, false);
+        limiter.release(start, SLOW, false);
+
+        Assertions.assertEquals((int) (10 * ConcurrencyLimiter.BACKOFF_RATIO), limiter.limit());
+
+        limiter.release(start + SLOW + 1, FAST, true);
+
+        Assertions.assertEquals((int) (10 * ConcurrencyLimiter.BACKOFF_RATIO * ConcurrencyLimiter.BACKOFF_RATIO),
+                limiter.limit());
+    }
+
+    @Test
+    void shouldNotDecreaseLimitBelowMin() {
+        var start = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            acquire(1);
+            start += SLOW + 1;
+            limiter.release(start, SLOW, false);
+        }
+
+        Assertions.assertEquals(2, limiter.limit());
+        Assertions.assertEquals(0, limiter.inFlight());
+    }
+
+    private void acquire(int requests) {
+        for (int i = 0; i < requests; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+    }
+}
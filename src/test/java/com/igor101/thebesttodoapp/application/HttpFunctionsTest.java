@@ -0,0 +1,28 @@
+package com.igor101.thebesttodoapp.application;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HttpFunctionsTest {
+
+    @Test
+    void queryHash_givenQueriesOfTheSameStringHashCode_shouldReturnDifferentHashes() {
+        Assertions.assertEquals("nameFilter=Aa".hashCode(), "nameFilter=BB".hashCode());
+
+        Assertions.assertNotEquals(HttpFunctions.queryHash("nameFilter=Aa"), HttpFunctions.queryHash("nameFilter=BB"));
+    }
+
+    @Test
+    void queryHash_givenTheSameParamsInOtherOrder_shouldReturnTheSameHash() {
+        Assertions.assertEquals(HttpFunctions.queryHash("nameFilter=some&limit=10&sort=name"),
+                HttpFunctions.queryHash("limit=10&sort=name&nameFilter=some"));
+        Assertions.assertEquals(HttpFunctions.queryHash(null), HttpFunctions.queryHash(""));
+        Assertions.assertEquals(32, HttpFunctions.queryHash("limit=10").length());
+    }
+
+    @Test
+    void queryHash_givenValuesOfRepeatedParamInOtherOrder_shouldReturnDifferentHashes() {
+        Assertions.assertNotEquals(HttpFunctions.queryHash("fields=name&fields=id"),
+                HttpFunctions.queryHash("fields=id&fields=name"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.igor101.thebesttodoapp.application;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void shouldHaveContiguousBucketsWithBoundedRelativeError() {
+        for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+            var lower = LatencyHistogram.bucketLowerBound(b);
+            var upper = LatencyHistogram.bucketUpperBound(b);
+
+            Assertions.assertEquals(b, LatencyHistogram.bucket(lower));
+            Assertions.assertEquals(b, LatencyHistogram.bucket(upper));
+            if (b > 0) {
+                Assertions.assertEquals(LatencyHistogram.bucketUpperBound(b - 1) + 1, lower);
+            }
+            Assertions.assertTrue((upper - lower) <= lower / 16.0, "Too wide bucket: " + b);
+        }
+        Assertions.assertEquals(LatencyHistogram.MAX_VALUE,
+                LatencyHistogram.bucketUpperBound(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    void shouldClampValuesOutOfRange() {
+        histogram.record(-10);
+        histogram.record(Long.MAX_VALUE);
+
+        var snapshot = histogram.snapshot();
+
+        Assertions.assertEquals(2, snapshot.count());
+        Assertions.assertEquals(0, snapshot.quantile(0.5));
+        Assertions.assertEquals(LatencyHistogram.MAX_VALUE, snapshot.quantile(1));
+    }
+
+    @Test
+    void snapshot_shouldReturnCountsSumAndQuantiles() {
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100L);
+        }
+
+        var snapshot = histogram.snapshot();
+
+        Assertions.assertEquals(1000, snapshot.count());
+        Assertions.assertEquals(50_050_000, snapshot.sumMicros());
+        Assertions.assertEquals(10, snapshot.countAtMost(1000));
+        assertApproximately(50_000, snapshot.quantile(0.5));
+        assertApproximately(99_000, snapshot.quantile(0.99));
+        assertApproximately(100_000, snapshot.quantile(1));
+    }
+
+    @Test
+    void givenConcurrentRecorders_shouldCountAllValues() throws Exception {
+        var threads = 8;
+        var values = 10_000;
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            var recorders = new ArrayList<Callable<Void>>();
+            for (int t = 0; t < threads; t++) {
+                recorders.add(() -> {
+                    for (int i = 0; i < values; i++) {
+                        histogram.record(i);
+                    }
+                    return null;
+                });
+            }
+            for (var f : executor.invokeAll(recorders)) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        var snapshot = histogram.snapshot();
+
+        Assertions.assertEquals(threads * values, snapshot.count());
+        Assertions.assertEquals(threads * ((long) values * (values - 1) / 2), snapshot.sumMicros());
+    }
+
+    @Test
+    void record_shouldNotAllocate() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().threadId();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(i);
+        }
+
+        var allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(i);
+        }
+        var allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        //Measurement itself may allocate a little
+        Assertions.assertTrue(allocated < 1024, "Allocated: " + allocated);
+    }
+
+    private void assertApproximately(long expected, long actual) {
+        Assertions.assertTrue(Math.abs(expected - actual) <= expected / 16,
+                "Expected ~%d, but was %d".formatted(expected, actual));
+    }
+}
@@ -0,0 +1,35 @@
+package com.igor101.thebesttodoapp.application;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class ResponseBufferTest {
+
+    @Test
+    void shouldGrowKeepingWrittenBytes() {
+        var buffer = new ResponseBuffer();
+        var bytes = new byte[3 * ResponseBuffer.INITIAL_SIZE];
+        Arrays.fill(bytes, (byte) 'a');
+
+        buffer.write('{');
+        buffer.write(bytes, 1, bytes.length - 2);
+        buffer.write('}');
+
+        bytes[0] = '{';
+        bytes[bytes.length - 1] = '}';
+        Assertions.assertEquals(bytes.length, buffer.size());
+        Assertions.assertArrayEquals(bytes, Arrays.copyOf(buffer.bytes(), buffer.size()));
+    }
+
+    @Test
+    void shouldBeEmptyAfterRelease() {
+        var buffer = ResponseBuffer.borrow();
+        buffer.write(new byte[100], 0, 100);
+
+        ResponseBuffer.release(buffer);
+
+        Assertions.assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,97 @@
+package com.igor101.thebesttodoapp.application;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class ResponseCompressionTest {
+
+    private final ResponseCompression compression = new ResponseCompression(true, 100, 6, true);
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "|IDENTITY",
+            "deflate, br|IDENTITY",
+            "gzip|GZIP",
+            "GZIP;q=0.8, deflate|GZIP",
+            "gzip, zstd|ZSTD",
+            "gzip;q=1.0, zstd;q=0.5|GZIP",
+            "zstd;q=0, gzip;q=0.1|GZIP",
+            "*|ZSTD",
+            "zstd;q=0, *|GZIP",
+            "gzip;q=0, zstd;q=0, *;q=1|IDENTITY",
+            "gzip;q=xyz|IDENTITY"})
+    void negotiate_givenAcceptEncoding_shouldReturnBestEncoding(String acceptEncoding,
+                                                                ResponseCompression.Encoding expected) {
+        Assertions.assertEquals(expected, compression.negotiate(acceptEncoding));
+    }
+
+    @Test
+    void negotiate_givenZstdDisabled_shouldFallbackToGzip() {
+        var gzipOnly = new ResponseCompression(true, 100, 6, false);
+
+        Assertions.assertEquals(ResponseCompression.Encoding.GZIP, gzipOnly.negotiate("zstd, gzip"));
+        Assertions.assertEquals(ResponseCompression.Encoding.IDENTITY, gzipOnly.negotiate("zstd"));
+    }
+
+    @Test
+    void gzip_givenResponsesOfVariousSizes_shouldCompressThemReusingEncoders() throws Exception {
+        var random = new Random(101);
+        for (var size : new int[]{0, 1, 1000, 100_000, 10, 1_000_000}) {
+            var response = new byte[size];
+            for (int i = 0; i < size; i++) {
+                response[i] = (byte) ('a' + random.nextInt(4));
+            }
+
+            var compressed = compression.gzip(response);
+
+            Assertions.assertArrayEquals(response,
+                    new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes());
+        }
+    }
+
+    @Test
+    void zstd_givenResponse_shouldCompressIt() {
+        var response = "{\"success\": true, \"data\": [], \"errors\": []}".repeat(100)
+                .getBytes(StandardCharsets.UTF_8);
+
+        var compressed = compression.zstd(response);
+
+        var decompressed = new byte[response.length];
+        var length = new ZstdDecompressor().decompress(compressed, 0, compressed.length,
+                decompressed, 0, decompressed.length);
+        Assertions.assertEquals(response.length, length);
+        Assertions.assertArrayEquals(response, decompressed);
+        Assertions.assertTrue(compressed.length < response.length / 10);
+    }
+
+    @Test
+    void givenLength_shouldCompressOnlyTheseFirstBytes() throws Exception {
+        var response = "{\"success\": true, \"data\": [], \"errors\": []}".repeat(10)
+                .getBytes(StandardCharsets.UTF_8);
+        var buffer = Arrays.copyOf(response, response.length * 2);
+
+        var gzipped = compression.gzip(buffer, response.length);
+        var zstded = compression.zstd(buffer, response.length);
+
+        Assertions.assertArrayEquals(response, new GZIPInputStream(new ByteArrayInputStream(gzipped)).readAllBytes());
+        var decompressed = new byte[buffer.length];
+        var length = new ZstdDecompressor().decompress(zstded, 0, zstded.length, decompressed, 0, decompressed.length);
+        Assertions.assertArrayEquals(response, Arrays.copyOf(decompressed, length));
+    }
+
+    @Test
+    void encodingETag_shouldBeDifferentForEachEncoding() {
+        Assertions.assertEquals("\"1-abc--gzip\"",
+                ResponseCompression.encodingETag("\"1-abc\"", ResponseCompression.Encoding.GZIP));
+        Assertions.assertEquals(3, ResponseCompression.allEncodingsETags("\"1-abc\"").stream().distinct().count());
+    }
+}
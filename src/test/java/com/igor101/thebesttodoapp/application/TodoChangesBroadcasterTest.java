@@ -0,0 +1,190 @@
+package com.igor101.thebesttodoapp.application;
+
+import com.igor101.thebesttodoapp.core.TodoChange;
+import com.igor101.thebesttodoapp.core.TodoData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+public class TodoChangesBroadcasterTest {
+
+    private static final int CLIENT_BUFFER_SIZE = 10;
+    private TodoChangesBroadcaster broadcaster = new TodoChangesBroadcaster(CLIENT_BUFFER_SIZE, 2,
+            Duration.ofHours(1), Duration.ofHours(1));
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.close();
+    }
+
+    @Test
+    void shouldSendEachChangeToAllSubscribersInOrder() throws Exception {
+        var first = new FakeSink();
+        var second = new FakeSink();
+        broadcaster.subscribe(first);
+        broadcaster.subscribe(second);
+
+        var changes = IntStream.range(0, 5)
+                .mapToObj(i -> new TodoChange(TodoChange.Type.CREATED, i, new TodoData("todo-" + i)))
+                .toList();
+        changes.forEach(broadcaster::publish);
+        broadcaster.publish(new TodoChange(TodoChange.Type.DELETED, 1, null));
+
+        for (var sink : List.of(first, second)) {
+            await(() -> sink.events.size() == 6);
+            Assertions.assertEquals(List.of("created", "created", "created", "created", "created", "deleted"),
+                    sink.events.stream().map(TodoChangesBroadcaster.Event::name).toList());
+            Assertions.assertEquals(List.of("1", "2", "3", "4", "5", "6"),
+                    sink.events.stream().map(TodoChangesBroadcaster.Event::id).toList());
+            Assertions.assertEquals(changes.get(2),
+                    JsonMapper.toObject(sink.events.get(2).data(), TodoChange.class));
+        }
+    }
+
+    @Test
+    void shouldDisconnectTooSlowSubscriberWithoutAffectingOthers() throws Exception {
+        var slow = new FakeSink();
+        slow.blocked = new CountDownLatch(1);
+        var fast = new FakeSink();
+        broadcaster.subscribe(slow);
+        broadcaster.subscribe(fast);
+
+        //The first one is taken (slow is blocked on sending it), the rest overflows its buffer eventually
+        //and slow is disconnected right away, without waiting for its send; fast keeps up, so it gets all of them
+        var changes = CLIENT_BUFFER_SIZE + 5;
+        for (int i = 0; i < changes; i++) {
+            broadcaster.publish(new TodoChange(TodoChange.Type.UPDATED, i, new TodoData("todo-" + i)));
+            var published = i + 1;
+            await(() -> fast.events.size() == published);
+        }
+
+        Assertions.assertTrue(slow.closed);
+        Assertions.assertEquals(1, broadcaster.subscribers());
+        Assertions.assertFalse(fast.closed);
+    }
+
+    @Test
+    void shouldUnsubscribeClosedClients() throws Exception {
+        var sink = new FakeSink();
+        broadcaster.subscribe(sink);
+
+        sink.onClose.run();
+        broadcaster.publish(new TodoChange(TodoChange.Type.DELETED, 1, null));
+
+        Assertions.assertEquals(0, broadcaster.subscribers());
+        Assertions.assertTrue(sink.events.isEmpty());
+    }
+
+    @Test
+    void shouldDisconnectSubscriberGivenSendingFailure() throws Exception {
+        var failing = new FakeSink();
+        failing.failure = new RuntimeException("Broken pipe");
+        broadcaster.subscribe(failing);
+
+        broadcaster.publish(new TodoChange(TodoChange.Type.DELETED, 1, null));
+
+        await(() -> failing.closed);
+        Assertions.assertEquals(0, broadcaster.subscribers());
+    }
+
+    @Test
+    void shouldDisconnectSubscriberGivenSendTakingLongerThanTimeout() throws Exception {
+        broadcaster.close();
+        broadcaster = new TodoChangesBroadcaster(CLIENT_BUFFER_SIZE, 1, Duration.ofHours(1), Duration.ofMillis(50));
+        var blocked = new FakeSink();
+        blocked.blocked = new CountDownLatch(1);
+        var other = new FakeSink();
+        broadcaster.subscribe(blocked);
+        broadcaster.subscribe(other);
+
+        broadcaster.publish(new TodoChange(TodoChange.Type.DELETED, 1, null));
+
+        //With a single sender, other gets the change only after the blocked send is failed
+        await(() -> blocked.closed && other.events.size() == 1);
+        Assertions.assertEquals(1, broadcaster.subscribers());
+        Assertions.assertTrue(blocked.events.isEmpty());
+    }
+
+    @Test
+    void shouldSendKeepAlivesToIdleSubscribers() throws Exception {
+        broadcaster.close();
+        broadcaster = new TodoChangesBroadcaster(CLIENT_BUFFER_SIZE, 1, Duration.ofMillis(10), Duration.ofHours(1));
+        var sink = new FakeSink();
+        broadcaster.subscribe(sink);
+
+        await(() -> sink.events.size() >= 2);
+
+        Assertions.assertTrue(sink.events.stream().allMatch(e -> e == TodoChangesBroadcaster.Event.KEEP_ALIVE));
+    }
+
+    @Test
+    void shouldSendMissedChangesEvent() throws Exception {
+        var sink = new FakeSink();
+        broadcaster.subscribe(sink);
+
+        broadcaster.publishMissedChanges();
+
+        await(() -> sink.events.size() == 1);
+        Assertions.assertEquals(TodoChangesBroadcaster.MISSED_CHANGES_EVENT, sink.events.get(0).name());
+    }
+
+    private void await(BooleanSupplier condition) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        Assertions.fail("Condition not met in time");
+    }
+
+    private static class FakeSink implements TodoChangesBroadcaster.Sink {
+
+        final List<TodoChangesBroadcaster.Event> events = new CopyOnWriteArrayList<>();
+        volatile CountDownLatch blocked;
+        volatile RuntimeException failure;
+        volatile Runnable onClose;
+        volatile boolean closed;
+
+        @Override
+        public void send(TodoChangesBroadcaster.Event event) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (blocked != null) {
+                try {
+                    blocked.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (closed) {
+                throw new RuntimeException("Connection aborted");
+            }
+            events.add(event);
+        }
+
+        @Override
+        public void onClose(Runnable onClose) {
+            this.onClose = onClose;
+        }
+
+        //Like aborting a connection, it fails a blocked send
+        @Override
+        public void close() {
+            closed = true;
+            if (blocked != null) {
+                blocked.countDown();
+            }
+            onClose.run();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.igor101.thebesttodoapp.application;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoField;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+public class WireFormatTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "|JSON",
+            "text/html|JSON",
+            "*/*|JSON",
+            "application/cbor|CBOR",
+            "Application/CBOR; charset=utf-8|CBOR",
+            "application/x-jackson-smile, application/json|SMILE",
+            "application/json;q=0.9, application/x-msgpack|MESSAGE_PACK",
+            "application/msgpack;q=0.5, application/cbor;q=0.8, */*;q=0.1|CBOR",
+            "application/cbor;q=0, text/html|JSON",
+            "application/cbor;q=xyz, application/*;q=0.2|JSON"})
+    void ofAccept_shouldReturnBestSupportedFormat(String accept, WireFormat expected) {
+        Assertions.assertEquals(expected, WireFormat.ofAccept(accept));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "application/json; charset=utf-8|JSON",
+            "application/cbor|CBOR",
+            "application/x-jackson-smile|SMILE",
+            "application/msgpack|MESSAGE_PACK",
+            "application/x-msgpack|MESSAGE_PACK",
+            "text/plain|",
+            "*/*|"})
+    void ofContentType_shouldReturnFormatOrNullGivenUnsupportedType(String contentType, WireFormat expected) {
+        Assertions.assertEquals(expected, WireFormat.ofContentType(contentType));
+    }
+
+    @ParameterizedTest
+    @EnumSource(WireFormat.class)
+    void shouldWriteAndReadTodoData(WireFormat format) {
+        var todo = new TodoData("some-todo", "some description with ąę unicode");
+
+        Assertions.assertEquals(todo, format.toObject(format.toBytes(todo), TodoData.class));
+    }
+
+    @ParameterizedTest
+    @EnumSource(WireFormat.class)
+    void shouldWriteOnlyFieldsOfProjectedTodo(WireFormat format) {
+        var projected = new ProjectedTodo(new Todo(1, "some-todo", "some description"),
+                Set.of(TodoField.NAME, TodoField.ID));
+
+        Assertions.assertEquals(Map.of("id", 1, "name", "some-todo"),
+                format.toObject(format.toBytes(projected), Map.class));
+    }
+
+    @ParameterizedTest
+    @EnumSource(WireFormat.class)
+    void shouldWriteApiResponseReadableAsJsonOne(WireFormat format) {
+        var response = ApiResponse.ofSuccess(List.of(new Todo(1, "first", null),
+                new Todo(Long.MAX_VALUE, "second", "some description")));
+
+        var expected = WireFormat.JSON.toObject(WireFormat.JSON.toBytes(response), ApiResponse.class);
+
+        Assertions.assertEquals(expected, format.toObject(format.toBytes(response), ApiResponse.class));
+    }
+
+    @ParameterizedTest
+    @EnumSource(WireFormat.class)
+    void generator_shouldWriteTheSameBytesAsMapperWithoutClosingOutput(WireFormat format) throws Exception {
+        var response = ApiResponse.ofFailure("SOME_ERROR");
+        var output = new ByteArrayOutputStream() {
+            boolean closed;
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+        };
+
+        var generator = format.generator(output);
+        generator.writeObject(response);
+        generator.close();
+
+        Assertions.assertArrayEquals(format.toBytes(response), output.toByteArray());
+        Assertions.assertFalse(output.closed);
+    }
+
+    @ParameterizedTest
+    @EnumSource(WireFormat.class)
+    void write_shouldWriteTheSameBytesAsToBytesToPooledBuffer(WireFormat format) {
+        var todos = IntStream.range(0, 1000)
+                .mapToObj(i -> new Todo(i, "todo-" + i, "some description of todo " + i))
+                .toList();
+        var responses = List.of(ApiResponse.ofSuccess(todos), ApiResponse.ofSuccess(1L), ApiResponse.ofSuccess(),
+                ApiResponse.ofFailure("SOME_ERROR"));
+
+        for (var r : responses) {
+            var buffer = ResponseBuffer.borrow();
+            try {
+                format.write(r, buffer);
+
+                Assertions.assertArrayEquals(format.toBytes(r), Arrays.copyOf(buffer.bytes(), buffer.size()));
+            } finally {
+                ResponseBuffer.release(buffer);
+            }
+        }
+    }
+
+    @Test
+    void shouldEncodeBinaryFormatsSmallerThanJson() {
+        var todos = List.of(new Todo(1, "first-todo", "some description"),
+                new Todo(2, "second-todo", "some other description"));
+        var jsonSize = WireFormat.JSON.toBytes(ApiResponse.ofSuccess(todos)).length;
+
+        for (var f : List.of(WireFormat.CBOR, WireFormat.SMILE, WireFormat.MESSAGE_PACK)) {
+            Assertions.assertTrue(f.toBytes(ApiResponse.ofSuccess(todos)).length < jsonSize, f.name());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.TodoData;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+//Benchmarks dataset: a fraction (selectivity) of todos has MATCHING_PHRASE in their name and description
+class BenchmarkTodos {
+
+    static final String MATCHING_PHRASE = "needle";
+
+    static List<TodoData> todos(int count, double selectivity) {
+        var matchingEvery = selectivity <= 0 ? Integer.MAX_VALUE : (int) Math.round(1 / selectivity);
+        return IntStream.range(0, count)
+                .mapToObj(i -> {
+                    var phrase = i % matchingEvery == 0 ? MATCHING_PHRASE : "hay";
+                    return new TodoData("todo-%d-%s".formatted(i, phrase),
+                            "Some description of %d todo, with a %s inside".formatted(i, phrase));
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,179 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.TheBestTodoApp;
+import com.igor101.thebesttodoapp.TheBestTodoAppConfig;
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.infrastructure.InMemoryTodoRepository;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Load test of GET /todos under overload, with and without the ConcurrencyLimiter.
+The db is simulated by a repository of DB_CONNECTIONS "connections", each query holds one for DB_QUERY_TIME,
+so it can serve at most ~200 req/s. Requests are sent at a fixed rate (open loop: clients don't slow down when
+the app does), each one times out on the client after CLIENT_TIMEOUT.
+Goodput is a rate of successful responses that came before their timeout. Without the limit, requests over
+the db capacity queue up and, once the queue is longer than the timeout, almost all of them time out.
+With it, they are rejected right away and goodput stays close to the db capacity.
+Duration of every load level can be changed by the DURATION_SECONDS env variable, 10 by default.
+*/
+public class ConcurrencyLimitBenchmark {
+
+    private static final int PORT = 9393;
+    private static final int TODOS = 1000;
+    private static final int DB_CONNECTIONS = 4;
+    private static final Duration DB_QUERY_TIME = Duration.ofMillis(20);
+    private static final Duration CLIENT_TIMEOUT = Duration.ofSeconds(1);
+    private static final List<Integer> REQUESTS_PER_SECOND = List.of(100, 200, 400, 800);
+
+    public static void main(String[] args) throws Exception {
+        var durationSeconds = Integer.parseInt(envOrDefault("DURATION_SECONDS", "10"));
+
+        //Of jvm and http clients, so that the first load level is not slowed down by it
+        var warmUpApp = new TheBestTodoApp(config(true), new SlowDbTodoRepository());
+        warmUpApp.start();
+        try {
+            run(100, 5, false);
+        } finally {
+            warmUpApp.stop();
+        }
+
+        for (var limited : List.of(false, true)) {
+            System.out.printf("%s concurrency limit, db capacity of ~%d req/s, client timeout of %d ms%n",
+                    limited ? "With" : "Without", DB_CONNECTIONS * 1000 / DB_QUERY_TIME.toMillis(),
+                    CLIENT_TIMEOUT.toMillis());
+            for (var rate : REQUESTS_PER_SECOND) {
+                var app = new TheBestTodoApp(config(limited), new SlowDbTodoRepository());
+                app.start();
+                try {
+                    run(rate, durationSeconds, true);
+                } finally {
+                    app.stop();
+                }
+            }
+        }
+    }
+
+    private static String envOrDefault(String key, String defaultValue) {
+        var value = System.getenv(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static TheBestTodoAppConfig config(boolean limited) {
+        return new TheBestTodoAppConfig(PORT, "", "", "", "",
+                new TheBestTodoAppConfig.TodosCache(false, 0, Duration.ZERO, Duration.ZERO),
+                new TheBestTodoAppConfig.GroupCommit(false, 0, Duration.ZERO),
+                new TheBestTodoAppConfig.HttpServer(false, 8, 200),
+                new TheBestTodoAppConfig.DbPool(DB_CONNECTIONS, Duration.ofSeconds(30)),
+                new TheBestTodoAppConfig.Compression(false, 0, 0, false),
+                new TheBestTodoAppConfig.LogStorage(false, "", Duration.ZERO, 0),
+                new TheBestTodoAppConfig.TodoChangesFeed(false, 0, 0, Duration.ZERO, Duration.ZERO),
+                new TheBestTodoAppConfig.DbReplicas(List.of(), Duration.ZERO, Duration.ZERO,
+                        Duration.ZERO),
+                new TheBestTodoAppConfig.JdbcRepository(false, 0),
+                new TheBestTodoAppConfig.ConcurrencyLimit(limited, 20, 4, 200, Duration.ofMillis(100)),
+                new TheBestTodoAppConfig.WarmUp(false, 0, false),
+                new TheBestTodoAppConfig.DbShards(List.of()),
+                new TheBestTodoAppConfig.AsyncTodos(false, 0, 0));
+    }
+
+    private static void run(int requestsPerSecond, int durationSeconds, boolean report) throws Exception {
+        var client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(4))
+                .build();
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:%d/todos?limit=20".formatted(PORT)))
+                .timeout(CLIENT_TIMEOUT)
+                .GET()
+                .build();
+
+        var requests = requestsPerSecond * durationSeconds;
+        var sent = new AtomicInteger();
+        var completed = new AtomicInteger();
+        var rejected = new AtomicInteger();
+        var timedOut = new AtomicInteger();
+        var successLatenciesNanos = new ConcurrentLinkedQueue<Long>();
+
+        var sender = Executors.newSingleThreadScheduledExecutor();
+        sender.scheduleAtFixedRate(() -> {
+            if (sent.getAndIncrement() >= requests) {
+                return;
+            }
+            var start = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((r, e) -> {
+                        if (e != null) {
+                            timedOut.incrementAndGet();
+                        } else if (r.statusCode() == 503) {
+                            rejected.incrementAndGet();
+                        } else if (r.statusCode() == 200) {
+                            successLatenciesNanos.add(System.nanoTime() - start);
+                        }
+                        completed.incrementAndGet();
+                    });
+        }, 0, 1_000_000_000 / requestsPerSecond, TimeUnit.NANOSECONDS);
+
+        var deadline = System.nanoTime() + Duration.ofSeconds(durationSeconds).plus(CLIENT_TIMEOUT)
+                .plusSeconds(5).toNanos();
+        while (completed.get() < requests && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        sender.shutdownNow();
+
+        if (!report) {
+            return;
+        }
+
+        var latencies = successLatenciesNanos.stream().mapToLong(l -> l).toArray();
+        Arrays.sort(latencies);
+        System.out.printf("  offered %d req/s -> goodput: %.0f req/s, rejected: %.0f req/s, timed out: %.0f req/s"
+                        + ", success p50: %.1f ms, p99: %.1f ms%n",
+                requestsPerSecond, latencies.length / (double) durationSeconds,
+                rejected.get() / (double) durationSeconds, timedOut.get() / (double) durationSeconds,
+                percentileMillis(latencies, 0.5), percentileMillis(latencies, 0.99));
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        return sortedNanos[(int) (sortedNanos.length * percentile)] / 1_000_000.0;
+    }
+
+    //Todos are read with one of DB_CONNECTIONS, each read takes DB_QUERY_TIME
+    private static class SlowDbTodoRepository extends InMemoryTodoRepository {
+
+        private final Semaphore connections = new Semaphore(DB_CONNECTIONS, true);
+
+        SlowDbTodoRepository() {
+            createAll(BenchmarkTodos.todos(TODOS, 0.01));
+        }
+
+        @Override
+        public List<Todo> todos(TodosQuery query) {
+            try {
+                connections.acquire();
+                try {
+                    Thread.sleep(DB_QUERY_TIME.toMillis());
+                    return super.todos(query);
+                } finally {
+                    connections.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
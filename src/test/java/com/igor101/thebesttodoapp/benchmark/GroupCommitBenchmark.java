@@ -0,0 +1,139 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.GroupCommitTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.SqlTodoRepository;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Measures writes (70% creates, 20% updates, 10% deletes) throughput and latency of SqlTodoRepository,
+with and without group commit, for a few concurrency levels, sharing a Hikari pool of POOL_SIZE (10 by default).
+Runs against DB_URL/DB_USER/DB_PASSWORD db, if given (its todo table is recreated!), or against a testcontainer.
+Writes per concurrency level can be changed by the WRITES env variable, 20k by default.
+*/
+public class GroupCommitBenchmark {
+
+    private static final List<Integer> CONCURRENCY_LEVELS = List.of(1, 8, 32, 128);
+    private static final int MAX_GROUP_SIZE = 100;
+    private static final Duration GROUP_WINDOW = Duration.ofMillis(2);
+
+    public static void main(String[] args) throws Exception {
+        var writes = Integer.parseInt(envOrDefault("WRITES", "20000"));
+        var poolSize = Integer.parseInt(envOrDefault("POOL_SIZE", "10"));
+
+        PostgreSQLContainer<?> postgres = null;
+        HikariDataSource dataSource;
+        if (System.getenv("DB_URL") == null) {
+            postgres = new PostgreSQLContainer<>("postgres:14.3");
+            postgres.start();
+            dataSource = dataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword(), poolSize);
+        } else {
+            dataSource = dataSource(System.getenv("DB_URL"), System.getenv("DB_USER"),
+                    System.getenv("DB_PASSWORD"), poolSize);
+        }
+
+        try {
+            var context = DSL.using(dataSource, SQLDialect.POSTGRES);
+            prepareTable(context);
+
+            System.out.printf("%d writes per concurrency level, pool of %d connections%n", writes, poolSize);
+            for (var concurrency : CONCURRENCY_LEVELS) {
+                measure("single", new SqlTodoRepository(context), concurrency, writes);
+                try (var groupCommit = new GroupCommitTodoRepository(context, MAX_GROUP_SIZE, GROUP_WINDOW)) {
+                    measure("group", groupCommit, concurrency, writes);
+                }
+            }
+        } finally {
+            dataSource.close();
+            if (postgres != null) {
+                postgres.stop();
+            }
+        }
+    }
+
+    private static String envOrDefault(String key, String defaultValue) {
+        var value = System.getenv(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static HikariDataSource dataSource(String url, String user, String password, int poolSize) {
+        var config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        return new HikariDataSource(config);
+    }
+
+    private static void prepareTable(DSLContext context) throws Exception {
+        context.execute("DROP TABLE IF EXISTS todo");
+        context.execute(Files.readString(Path.of("db", "schema.sql")));
+    }
+
+    private static void measure(String mode, TodoRepository repository, int concurrency, int writes)
+            throws Exception {
+        var firstId = repository.create(new TodoData("first-todo"));
+        var latenciesNanos = new long[writes];
+        var executor = Executors.newFixedThreadPool(concurrency);
+
+        try {
+            var workers = new ArrayList<Callable<Void>>();
+            for (int w = 0; w < concurrency; w++) {
+                var worker = w;
+                workers.add(() -> {
+                    var random = ThreadLocalRandom.current();
+                    for (int i = worker; i < writes; i += concurrency) {
+                        var start = System.nanoTime();
+                        write(repository, random, firstId, i);
+                        latenciesNanos[i] = System.nanoTime() - start;
+                    }
+                    return null;
+                });
+            }
+
+            var start = System.nanoTime();
+            for (var f : executor.invokeAll(workers)) {
+                f.get();
+            }
+            var seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            Arrays.sort(latenciesNanos);
+            System.out.printf("  %s, concurrency %d -> %.0f writes/s, p50: %.2f ms, p99: %.2f ms%n",
+                    mode, concurrency, writes / seconds,
+                    latenciesNanos[writes / 2] / 1_000_000.0,
+                    latenciesNanos[(int) (writes * 0.99)] / 1_000_000.0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void write(TodoRepository repository, ThreadLocalRandom random, long firstId, int i) {
+        var type = random.nextInt(10);
+        if (type < 7) {
+            repository.create(new TodoData("todo-" + i, "description of todo " + i));
+        } else {
+            var id = firstId + random.nextInt(i + 1);
+            if (type < 9) {
+                repository.update(id, new TodoData("updated-todo-" + i));
+            } else {
+                repository.delete(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.TheBestTodoApp;
+import com.igor101.thebesttodoapp.TheBestTodoAppConfig;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/*
+Measures throughput and latency of TodoController routes, served by platform threads (default Jetty pool)
+and virtual threads, for a few client concurrency levels.
+Both modes use the same db pool of POOL_SIZE (10 by default) connections.
+Runs against DB_URL/DB_USER/DB_PASSWORD db, if given (its todo table is recreated!), or against a testcontainer.
+Requests per route and concurrency level can be changed by the REQUESTS env variable, 5000 by default.
+*/
+public class HttpThreadsBenchmark {
+
+    private static final int PORT = 9191;
+    private static final int TODOS = 10_000;
+    private static final List<Integer> CONCURRENCY_LEVELS = List.of(16, 64, 256);
+    private static final List<Route> ROUTES = List.of(
+            new Route("GET /todos?limit=20", i -> get("/todos?limit=20&after=" + (i % TODOS))),
+            new Route("GET /todos?ids=", i -> get("/todos?ids=%d,%d,%d".formatted(i % TODOS, (i * 7) % TODOS,
+                    (i * 13) % TODOS))),
+            new Route("POST /todos", i -> HttpRequest.newBuilder(uri("/todos"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"name\": \"todo-%d\"}".formatted(i)))
+                    .build()));
+
+    public static void main(String[] args) throws Exception {
+        var requests = Integer.parseInt(envOrDefault("REQUESTS", "5000"));
+        var poolSize = Integer.parseInt(envOrDefault("POOL_SIZE", "10"));
+
+        PostgreSQLContainer<?> postgres = null;
+        String url, user, password;
+        if (System.getenv("DB_URL") == null) {
+            postgres = new PostgreSQLContainer<>("postgres:14.3");
+            postgres.start();
+            url = postgres.getJdbcUrl();
+            user = postgres.getUsername();
+            password = postgres.getPassword();
+        } else {
+            url = System.getenv("DB_URL");
+            user = System.getenv("DB_USER");
+            password = System.getenv("DB_PASSWORD");
+        }
+
+        try {
+            prepareTable(url, user, password);
+
+            for (var virtualThreads : List.of(false, true)) {
+                var config = new TheBestTodoAppConfig(PORT, user, password, url, "",
+                        new TheBestTodoAppConfig.TodosCache(false, 0, Duration.ZERO, Duration.ZERO),
+                        new TheBestTodoAppConfig.GroupCommit(false, 0, Duration.ZERO),
+                        new TheBestTodoAppConfig.HttpServer(virtualThreads, 8, 200),
+                        new TheBestTodoAppConfig.DbPool(poolSize, Duration.ofSeconds(30)),
+                        new TheBestTodoAppConfig.Compression(false, 0, 0, false),
+                        new TheBestTodoAppConfig.LogStorage(false, "", Duration.ZERO, 0),
+                        new TheBestTodoAppConfig.TodoChangesFeed(false, 0, 0, Duration.ZERO, Duration.ZERO),
+                        new TheBestTodoAppConfig.DbReplicas(List.of(), Duration.ZERO, Duration.ZERO,
+                                Duration.ZERO),
+                        new TheBestTodoAppConfig.JdbcRepository(false, 0),
+                        new TheBestTodoAppConfig.ConcurrencyLimit(false, 0, 0, 0, Duration.ZERO),
+                        new TheBestTodoAppConfig.WarmUp(false, 0, false),
+                        new TheBestTodoAppConfig.DbShards(List.of()),
+                        new TheBestTodoAppConfig.AsyncTodos(false, 0, 0));
+                var app = new TheBestTodoApp(config);
+                app.start();
+                try {
+                    System.out.printf("%s threads, db pool of %d, %d requests per route%n",
+                            virtualThreads ? "Virtual" : "Platform", poolSize, requests);
+                    measure(requests);
+                } finally {
+                    app.stop();
+                }
+            }
+        } finally {
+            if (postgres != null) {
+                postgres.stop();
+            }
+        }
+    }
+
+    private static String envOrDefault(String key, String defaultValue) {
+        var value = System.getenv(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static void prepareTable(String url, String user, String password) throws Exception {
+        try (var connection = DriverManager.getConnection(url, user, password);
+             var statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS todo");
+            statement.execute(Files.readString(Path.of("db", "schema.sql")));
+            statement.execute("""
+                    INSERT INTO todo (name, description)
+                    SELECT 'todo-' || i, 'description of todo ' || i
+                    FROM generate_series(1, %d) AS i""".formatted(TODOS));
+            statement.execute("VACUUM ANALYZE todo");
+        }
+    }
+
+    private static URI uri(String path) {
+        return URI.create("http://localhost:%d%s".formatted(PORT, path));
+    }
+
+    private static HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private static void measure(int requests) throws Exception {
+        var client = HttpClient.newBuilder()
+                .executor(Executors.newCachedThreadPool())
+                .build();
+
+        for (var route : ROUTES) {
+            run(client, route, CONCURRENCY_LEVELS.get(0), requests / 5, false);
+            for (var concurrency : CONCURRENCY_LEVELS) {
+                run(client, route, concurrency, requests, true);
+            }
+        }
+    }
+
+    private static void run(HttpClient client, Route route, int concurrency, int requests,
+                            boolean report) throws Exception {
+        var latenciesNanos = new long[requests];
+        var nextRequest = new AtomicInteger();
+        var failures = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(concurrency);
+
+        try {
+            var workers = new ArrayList<Callable<Void>>();
+            for (int w = 0; w < concurrency; w++) {
+                workers.add(() -> {
+                    int i;
+                    while ((i = nextRequest.getAndIncrement()) < requests) {
+                        var start = System.nanoTime();
+                        var response = client.send(route.request().apply(i), HttpResponse.BodyHandlers.discarding());
+                        latenciesNanos[i] = System.nanoTime() - start;
+                        if (response.statusCode() >= 300) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+
+            var start = System.nanoTime();
+            for (var f : executor.invokeAll(workers)) {
+                f.get();
+            }
+            var seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            if (!report) {
+                return;
+            }
+
+            Arrays.sort(latenciesNanos);
+            System.out.printf("  %s, concurrency %d -> %.0f req/s, p50: %.2f ms, p99: %.2f ms, failures: %d%n",
+                    route.name(), concurrency, requests / seconds,
+                    latenciesNanos[requests / 2] / 1_000_000.0,
+                    latenciesNanos[(int) (requests * 0.99)] / 1_000_000.0,
+                    failures.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private record Route(String name, IntFunction<HttpRequest> request) {
+    }
+}
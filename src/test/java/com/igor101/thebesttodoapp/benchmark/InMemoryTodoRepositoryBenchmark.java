@@ -0,0 +1,73 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import com.igor101.thebesttodoapp.infrastructure.InMemoryTodoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Selectivity is a fraction of todos matching filters (and search) of the queries
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InMemoryTodoRepositoryBenchmark {
+
+    @Param({"1000", "100000"})
+    public int todos;
+    @Param({"0.001", "0.1", "1"})
+    public double selectivity;
+    private InMemoryTodoRepository repository;
+    private int nextUpdated;
+
+    @Setup
+    public void setup() {
+        repository = new InMemoryTodoRepository();
+        repository.createAll(BenchmarkTodos.todos(todos, selectivity));
+    }
+
+    @Benchmark
+    public List<Todo> firstPage() {
+        return repository.todos(new TodosQuery(null, null, TodosSort.ID, null, TodosQuery.DEFAULT_LIMIT));
+    }
+
+    @Benchmark
+    public List<Todo> nameFilterPage() {
+        return repository.todos(new TodosQuery(BenchmarkTodos.MATCHING_PHRASE, null, TodosSort.ID, null,
+                TodosQuery.DEFAULT_LIMIT));
+    }
+
+    @Benchmark
+    public List<Todo> filtersPageSortedByName() {
+        return repository.todos(new TodosQuery(BenchmarkTodos.MATCHING_PHRASE, BenchmarkTodos.MATCHING_PHRASE,
+                TodosSort.NAME, null, TodosQuery.DEFAULT_LIMIT));
+    }
+
+    @Benchmark
+    public List<Todo> search() {
+        return repository.search(new TodosSearch(BenchmarkTodos.MATCHING_PHRASE));
+    }
+
+    @Benchmark
+    public void update() {
+        var id = nextUpdated++ % todos;
+        repository.update(id, new TodoData("updated-todo-" + id, "updated description"));
+    }
+}
@@ -0,0 +1,159 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import com.igor101.thebesttodoapp.infrastructure.InMemoryTodoRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+Measures throughput of InMemoryTodoRepository under a mixed load (90% reads of todos pages, 10% writes),
+for 1, 2, 4... up to available processors threads, compared to the same repository guarded by a single lock
+(what synchronized methods would give).
+Initial todos count can be changed by the TODOS env variable (10k by default), writes percentage by WRITES.
+*/
+public class InMemoryTodosThroughputBenchmark {
+
+    private static final long WARMUP_MILLIS = 3000;
+    private static final long MEASURED_MILLIS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        var todos = Integer.parseInt(envOrDefault("TODOS", "10000"));
+        var writesPercentage = Integer.parseInt(envOrDefault("WRITES", "10"));
+        var processors = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%d todos, %d%% writes, %d available processors%n", todos, writesPercentage, processors);
+
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            var lockFree = measure(InMemoryTodoRepository::new, todos, writesPercentage, threads);
+            var locked = measure(() -> new LockedTodoRepository(new InMemoryTodoRepository()), todos,
+                    writesPercentage, threads);
+            System.out.printf("  %d threads -> lock-free: %.0f ops/s, locked: %.0f ops/s%n", threads, lockFree,
+                    locked);
+        }
+    }
+
+    private static String envOrDefault(String name, String defaultValue) {
+        var value = System.getenv(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static double measure(Supplier<TodoRepository> repositorySupplier, int todos, int writesPercentage,
+                                  int threads) throws Exception {
+        var repository = repositorySupplier.get();
+        for (int i = 0; i < todos; i++) {
+            repository.create(new TodoData("todo-" + i, "description of todo " + i));
+        }
+
+        run(repository, todos, writesPercentage, threads, WARMUP_MILLIS);
+        return run(repository, todos, writesPercentage, threads, MEASURED_MILLIS) * 1000.0 / MEASURED_MILLIS;
+    }
+
+    private static long run(TodoRepository repository, int todos, int writesPercentage, int threads,
+                            long millis) throws Exception {
+        var operations = new LongAdder();
+        var finished = new CountDownLatch(threads);
+        var deadline = System.currentTimeMillis() + millis;
+        var workers = new ArrayList<Thread>();
+
+        for (int t = 0; t < threads; t++) {
+            var worker = new Thread(() -> {
+                var random = ThreadLocalRandom.current();
+                while (System.currentTimeMillis() < deadline) {
+                    for (int i = 0; i < 100; i++) {
+                        operation(repository, random.nextInt(todos), random.nextInt(100) < writesPercentage);
+                    }
+                    operations.add(100);
+                }
+                finished.countDown();
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        finished.await();
+        for (var w : workers) {
+            w.join();
+        }
+
+        return operations.sum();
+    }
+
+    private static void operation(TodoRepository repository, int todo, boolean write) {
+        if (write) {
+            repository.update(todo, new TodoData("todo-" + todo, "updated description of todo " + todo));
+        } else if (todo % 2 == 0) {
+            repository.todos(new TodosQuery(null, null, TodosSort.ID, (long) todo, 20));
+        } else {
+            repository.todos(new TodosQuery("todo-" + todo, null, TodosSort.NAME, null, 20));
+        }
+    }
+
+    private record LockedTodoRepository(TodoRepository delegate) implements TodoRepository {
+
+        @Override
+        public synchronized List<Todo> todos(TodosQuery query) {
+            return delegate.todos(query);
+        }
+
+        @Override
+        public synchronized void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+            delegate.streamTodos(query, consumer);
+        }
+
+        @Override
+        public synchronized List<Todo> search(TodosSearch search) {
+            return delegate.search(search);
+        }
+
+        @Override
+        public synchronized List<Todo> todos(List<Long> ids) {
+            return delegate.todos(ids);
+        }
+
+        @Override
+        public synchronized long create(TodoData todo) {
+            return delegate.create(todo);
+        }
+
+        @Override
+        public synchronized List<Long> createAll(List<TodoData> todos) {
+            return delegate.createAll(todos);
+        }
+
+        @Override
+        public synchronized void update(long id, TodoData todo) {
+            delegate.update(id, todo);
+        }
+
+        @Override
+        public synchronized void updateAll(List<Todo> todos) {
+            delegate.updateAll(todos);
+        }
+
+        @Override
+        public synchronized void delete(long id) {
+            delegate.delete(id);
+        }
+
+        @Override
+        public synchronized void deleteAll(List<Long> ids) {
+            delegate.deleteAll(ids);
+        }
+
+        @Override
+        public synchronized long version() {
+            return delegate.version();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.application.ApiResponse;
+import com.igor101.thebesttodoapp.application.JsonMapper;
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Serialization of todos responses (of todos page size) and deserialization of request bodies
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMapperBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int todos;
+    private ApiResponse<List<Todo>> todosResponse;
+    private String todoDataJson;
+
+    @Setup
+    public void setup() {
+        var data = BenchmarkTodos.todos(todos, 0.1);
+        todosResponse = ApiResponse.ofSuccess(IntStream.range(0, todos)
+                .mapToObj(i -> new Todo(i, data.get(i).name(), data.get(i).description()))
+                .toList());
+        todoDataJson = JsonMapper.toJson(data.get(0));
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JsonMapper.toJson(todosResponse);
+    }
+
+    @Benchmark
+    public TodoData toObject() {
+        return JsonMapper.toObject(todoDataJson, TodoData.class);
+    }
+}
@@ -0,0 +1,142 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.infrastructure.LogTodoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+Write throughput of LogTodoRepository (by fsync mode and batch size; with 8 threads, writes share fsyncs)
+and its recovery time at 1M todos: from logs only and from a snapshot (with a tiny log tail).
+Files are written to the temporary directory, so results depend on its disk (and fsync cost of it).
+*/
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class LogTodoRepositoryBenchmark {
+
+    private static final long COMPACTION_THRESHOLD = 64 * 1024 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class Writes {
+
+        @Param({"0", "10"})
+        public long fsyncIntervalMillis;
+        @Param({"1", "100"})
+        public int batchSize;
+        private Path directory;
+        private LogTodoRepository repository;
+        private List<TodoData> batch;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("log-todo-repository-writes");
+            repository = new LogTodoRepository(directory, Duration.ofMillis(fsyncIntervalMillis),
+                    COMPACTION_THRESHOLD);
+            batch = BenchmarkTodos.todos(batchSize, 0.1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            repository.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recovery {
+
+        @Param({"1000000"})
+        public int todos;
+        @Param({"false", "true"})
+        public boolean snapshot;
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("log-todo-repository-recovery");
+
+            var repository = new LogTodoRepository(directory, Duration.ofSeconds(1), Long.MAX_VALUE);
+            var data = BenchmarkTodos.todos(todos, 0.1);
+            for (int i = 0; i < todos; i += 1000) {
+                repository.createAll(data.subList(i, Math.min(i + 1000, todos)));
+            }
+            repository.close();
+
+            if (snapshot) {
+                //The next write compacts all previous logs, close waits for it
+                var compacting = new LogTodoRepository(directory, Duration.ZERO, 1);
+                compacting.update(0, new TodoData("updated-todo"));
+                compacting.close();
+            }
+
+            try (var files = Files.list(directory)) {
+                System.out.printf("%n%d todos files: %s%n", todos, files
+                        .map(f -> f.getFileName() + " (" + f.toFile().length() / 1024 + " KB)")
+                        .toList());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            for (var f : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(f);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public List<Long> write(Writes writes) {
+        return writes.repository.createAll(writes.batch);
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public List<Long> writeConcurrently(Writes writes) {
+        return writes.repository.createAll(writes.batch);
+    }
+
+    //Each recovery also creates a new, empty log file, so directory grows by one file per iteration
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public long recover(Recovery recovery) {
+        var repository = new LogTodoRepository(recovery.directory, Duration.ZERO, Long.MAX_VALUE);
+        repository.close();
+        return repository.version();
+    }
+}
@@ -0,0 +1,77 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.infrastructure.InMemoryTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.ReplicaRoutingTodoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Latency distribution (see p99 and p99.9) of reads routed to two simulated replicas,
+that answer in 1 ms, but 2% of their reads take 50 ms (a GC pause, a cold cache or a noisy neighbour),
+with and without hedging (minHedgeDelay of an hour disables it).
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ReplicaRoutingBenchmark {
+
+    private static final TodosQuery QUERY = new TodosQuery(null, null, null, null, 10);
+    @Param({"true", "false"})
+    public boolean hedging;
+    private ReplicaRoutingTodoRepository repository;
+
+    @Setup
+    public void setup() {
+        var replicas = List.of(new ReplicaRoutingTodoRepository.Replica("first", new SlowAtTimesReplica(),
+                        () -> Duration.ZERO, () -> 0L),
+                new ReplicaRoutingTodoRepository.Replica("second", new SlowAtTimesReplica(),
+                        () -> Duration.ZERO, () -> 0L));
+        repository = new ReplicaRoutingTodoRepository(new InMemoryTodoRepository(), () -> 0L, replicas, 8,
+                Duration.ofSeconds(1), Duration.ofMillis(500), hedging ? Duration.ofMillis(2) : Duration.ofHours(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        repository.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Todo> read() {
+        return repository.todos(QUERY);
+    }
+
+    private static class SlowAtTimesReplica extends InMemoryTodoRepository {
+
+        @Override
+        public List<Todo> todos(TodosQuery query) {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(100) < 2 ? 50 : 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.todos(query);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.application.ApiResponse;
+import com.igor101.thebesttodoapp.application.JsonMapper;
+import com.igor101.thebesttodoapp.application.ResponseCompression;
+import com.igor101.thebesttodoapp.core.Todo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/*
+CPU cost of compressing todos responses (with ~1000 characters descriptions of random words) by each encoding,
+compressed to original sizes ratio (bytes on wire) is printed in setup.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseCompressionBenchmark {
+
+    private static final String[] WORDS = {"buy", "milk", "bread", "clean", "house", "read", "book", "call", "mom",
+            "write", "report", "fix", "bike", "plan", "trip", "pay", "bills", "walk", "dog", "cook", "dinner"};
+    @Param({"10", "100", "1000"})
+    public int todos;
+    @Param({"gzip-1", "gzip-4", "gzip-6", "gzip-9", "zstd"})
+    public String encoding;
+    private ResponseCompression compression;
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        var random = new Random(todos);
+        response = JsonMapper.toJsonBytes(ApiResponse.ofSuccess(IntStream.range(0, todos)
+                .mapToObj(i -> new Todo(i, "todo-" + i, description(random)))
+                .toList()));
+
+        var gzipLevel = encoding.startsWith("gzip") ? Integer.parseInt(encoding.substring(5)) : 1;
+        compression = new ResponseCompression(true, 0, gzipLevel, true);
+
+        var compressed = compress();
+        System.out.printf("%n%s of %d todos: %d -> %d bytes (%.1f%%)%n", encoding, todos, response.length,
+                compressed.length, 100.0 * compressed.length / response.length);
+    }
+
+    private static String description(Random random) {
+        var description = new StringBuilder();
+        while (description.length() < 1000) {
+            description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return description.toString();
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return encoding.equals("zstd") ? compression.zstd(response) : compression.gzip(response);
+    }
+}
@@ -0,0 +1,199 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoField;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import com.igor101.thebesttodoapp.infrastructure.JdbcTodoRepository;
+import com.igor101.thebesttodoapp.infrastructure.SqlTodoRepository;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/*
+Latency of every TodoRepository operation of SqlTodoRepository (jOOQ) and JdbcTodoRepository, with statements
+server-side prepared after the first execution (jdbc) and never (jdbc-unprepared), on a db of TODOS todos.
+Runs against DB_URL/DB_USER/DB_PASSWORD db, if given (its todo table is recreated!), or against a testcontainer.
+Writes (creates) grow the table, but it is recreated for every repository.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlTodoRepositoriesBenchmark {
+
+    private static final int TODOS = 10_000;
+    private static final int BATCH_SIZE = 10;
+    private static final TodosQuery FIRST_PAGE = new TodosQuery(null, null);
+    private static final TodosQuery LARGE_PAGE = new TodosQuery(null, null, TodosSort.ID, null, 1000);
+    private static final TodosQuery LARGE_SUMMARY_PAGE = new TodosQuery(null, null, TodosSort.ID, null, 1000,
+            Set.of(TodoField.ID, TodoField.NAME));
+    private static final TodosQuery FILTERED_PAGE = new TodosQuery(BenchmarkTodos.MATCHING_PHRASE, null);
+    private static final TodosSearch SEARCH = new TodosSearch(BenchmarkTodos.MATCHING_PHRASE, 20);
+    @Param({"jooq", "jdbc", "jdbc-unprepared"})
+    public String repositoryType;
+    private PostgreSQLContainer<?> postgres;
+    private HikariDataSource dataSource;
+    private TodoRepository repository;
+    private TodosQuery nameSortedPage;
+    private List<Long> ids;
+    private List<TodoData> batch;
+
+    @Setup
+    public void setup() throws Exception {
+        var config = new HikariConfig();
+        if (System.getenv("DB_URL") == null) {
+            postgres = new PostgreSQLContainer<>("postgres:14.3");
+            postgres.start();
+            config.setJdbcUrl(postgres.getJdbcUrl());
+            config.setUsername(postgres.getUsername());
+            config.setPassword(postgres.getPassword());
+        } else {
+            config.setJdbcUrl(System.getenv("DB_URL"));
+            config.setUsername(System.getenv("DB_USER"));
+            config.setPassword(System.getenv("DB_PASSWORD"));
+        }
+        config.setMaximumPoolSize(2);
+        dataSource = new HikariDataSource(config);
+
+        var context = DSL.using(dataSource, SQLDialect.POSTGRES);
+        context.execute("DROP TABLE IF EXISTS todo");
+        context.execute(Files.readString(Path.of("db", "schema.sql")));
+        context.execute("ANALYZE");
+
+        repository = switch (repositoryType) {
+            case "jooq" -> new SqlTodoRepository(context);
+            case "jdbc" -> new JdbcTodoRepository(dataSource, 1);
+            case "jdbc-unprepared" -> new JdbcTodoRepository(dataSource, 0);
+            default -> throw new IllegalArgumentException("Unknown repository: " + repositoryType);
+        };
+
+        var todos = BenchmarkTodos.todos(TODOS, 0.01);
+        for (int i = 0; i < TODOS; i += 1000) {
+            repository.createAll(todos.subList(i, i + 1000));
+        }
+        context.execute("ANALYZE todo");
+
+        var firstId = repository.todos(new TodosQuery(null, null, TodosSort.ID, null, 1)).get(0).id();
+        var middleTodo = repository.todos(List.of(firstId + TODOS / 2)).get(0);
+        nameSortedPage = new TodosQuery(null, null, TodosSort.NAME, middleTodo.id(), middleTodo.name(),
+                TodosQuery.DEFAULT_LIMIT);
+        ids = LongStream.range(0, 20).map(i -> firstId + i * 100).boxed().toList();
+        batch = BenchmarkTodos.todos(BATCH_SIZE, 0.1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    @Benchmark
+    public List<Todo> firstPage() {
+        return repository.todos(FIRST_PAGE);
+    }
+
+    @Benchmark
+    public List<Todo> largePage() {
+        return repository.todos(LARGE_PAGE);
+    }
+
+    @Benchmark
+    public List<Todo> largeSummaryPage() {
+        return repository.todos(LARGE_SUMMARY_PAGE);
+    }
+
+    @Benchmark
+    public List<Todo> filteredPage() {
+        return repository.todos(FILTERED_PAGE);
+    }
+
+    @Benchmark
+    public List<Todo> nameSortedPageAfter() {
+        return repository.todos(nameSortedPage);
+    }
+
+    @Benchmark
+    public int streamedPage() {
+        var count = new int[1];
+        repository.streamTodos(FIRST_PAGE, t -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public List<Todo> search() {
+        return repository.search(SEARCH);
+    }
+
+    @Benchmark
+    public List<Todo> todosOfIds() {
+        return repository.todos(ids);
+    }
+
+    @Benchmark
+    public long create() {
+        return repository.create(batch.get(0));
+    }
+
+    @Benchmark
+    public List<Long> createAll() {
+        return repository.createAll(batch);
+    }
+
+    @Benchmark
+    public void update() {
+        repository.update(randomId(), batch.get(1));
+    }
+
+    @Benchmark
+    public void updateAll() {
+        var id = randomId();
+        repository.updateAll(LongStream.range(id, id + BATCH_SIZE)
+                .mapToObj(i -> new Todo(i, "updated-todo-" + i, null))
+                .toList());
+    }
+
+    //Of non-existing todos, so that the dataset doesn't change
+    @Benchmark
+    public void delete() {
+        repository.delete(-randomId());
+    }
+
+    @Benchmark
+    public long version() {
+        return repository.version();
+    }
+
+    private long randomId() {
+        return ids.get(0) + ThreadLocalRandom.current().nextInt(TODOS - BATCH_SIZE);
+    }
+}
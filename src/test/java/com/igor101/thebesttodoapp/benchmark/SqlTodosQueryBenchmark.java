@@ -0,0 +1,50 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import com.igor101.thebesttodoapp.infrastructure.SqlTodoRepository;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//Building and rendering (what jOOQ does before every execution) of todos queries, without a db
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlTodosQueryBenchmark {
+
+    private DSLContext context;
+    private SqlTodoRepository repository;
+
+    @Setup
+    public void setup() {
+        context = DSL.using(SQLDialect.POSTGRES);
+        repository = new SqlTodoRepository(context);
+    }
+
+    @Benchmark
+    public String firstPageQuery() {
+        return repository.todosQuery(context, new TodosQuery(null, null)).getSQL();
+    }
+
+    @Benchmark
+    public String filtersPageSortedByNameQuery() {
+        return repository.todosQuery(context, new TodosQuery("some name", "some description", TodosSort.NAME,
+                101L, "some name", TodosQuery.DEFAULT_LIMIT)).getSQL();
+    }
+}
@@ -0,0 +1,220 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.infrastructure.LogTodoRepository;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/*
+Measures how fast a fresh app process serves requests: time from its launch to the first response
+and latency (p99) of requests that follow, in windows of WINDOW requests, in a few startup modes:
+* cold - neither warm-up nor AppCDS archive
+* warm-up - app warms itself up before it is ready (GET /ready), see StartupWarmUp
+* warm-up + AppCDS - as above, with classes mapped from an archive, created by a training run (as in Dockerfile)
+Requests are sent one by one, as soon as the app is ready. Time to steady state is a time from launch until
+the end of the first window with p99 at most 1.5 times higher than p99 of the last STEADY_STATE_REQUESTS.
+Every mode is run RUNS times (3 by default), results are averaged.
+App is run from the assembly jar (mvn package -DskipTests), since AppCDS archives only classes from jars.
+Runs against DB_URL/DB_USER/DB_PASSWORD db, if given (its todo table is recreated!), or on log storage.
+*/
+public class StartupBenchmark {
+
+    private static final int PORT = 9494;
+    private static final int TODOS = 10_000;
+    private static final int WINDOW = 100;
+    private static final int REQUESTS = 3000;
+    private static final int STEADY_STATE_REQUESTS = 1000;
+    private static final Path JAR = Path.of("target", "the-best-todo-app-jar-with-dependencies.jar");
+    private static final Path CDS_ARCHIVE = Path.of("target", "todo-app.jsa");
+    private static final Path LOG_STORAGE_DIRECTORY = Path.of("target", "startup-benchmark-todos");
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    public static void main(String[] args) throws Exception {
+        if (!Files.exists(JAR)) {
+            throw new RuntimeException("There is no %s, build it first: mvn package -DskipTests".formatted(JAR));
+        }
+        var runs = Integer.parseInt(envOrDefault("RUNS", "3"));
+
+        prepareTodos();
+
+        Files.deleteIfExists(CDS_ARCHIVE);
+        var training = launch(List.of("-XX:ArchiveClassesAtExit=" + CDS_ARCHIVE),
+                Map.of("WARM_UP_ENABLED", "true", "WARM_UP_EXIT_AFTER", "true"));
+        if (training.waitFor() != 0) {
+            throw new RuntimeException("AppCDS training run has failed");
+        }
+
+        measure("cold", List.of(), Map.of("WARM_UP_ENABLED", "false"), runs);
+        measure("warm-up", List.of(), Map.of("WARM_UP_ENABLED", "true"), runs);
+        measure("warm-up + AppCDS", List.of("-XX:SharedArchiveFile=" + CDS_ARCHIVE),
+                Map.of("WARM_UP_ENABLED", "true"), runs);
+    }
+
+    private static String envOrDefault(String key, String defaultValue) {
+        var value = System.getenv(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static void prepareTodos() throws Exception {
+        var url = System.getenv("DB_URL");
+        if (url == null) {
+            deleteDirectory(LOG_STORAGE_DIRECTORY);
+            try (var repository = new LogTodoRepository(LOG_STORAGE_DIRECTORY, Duration.ofSeconds(1),
+                    Long.MAX_VALUE)) {
+                var todos = BenchmarkTodos.todos(TODOS, 0.01);
+                for (int i = 0; i < TODOS; i += 1000) {
+                    repository.createAll(todos.subList(i, i + 1000));
+                }
+            }
+            return;
+        }
+        try (var connection = DriverManager.getConnection(url, System.getenv("DB_USER"),
+                System.getenv("DB_PASSWORD"));
+             var statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS todo");
+            statement.execute(Files.readString(Path.of("db", "schema.sql")));
+            statement.execute("""
+                    INSERT INTO todo (name, description)
+                    SELECT 'todo-' || i, 'description of todo ' || i
+                    FROM generate_series(1, %d) AS i""".formatted(TODOS));
+            statement.execute("VACUUM ANALYZE todo");
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws Exception {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (var files = Files.list(directory)) {
+            for (var f : files.toList()) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static Process launch(List<String> jvmOptions, Map<String, String> env) throws Exception {
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.addAll(List.of("-jar", JAR.toString()));
+
+        var process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        var processEnv = process.environment();
+        processEnv.put("HTTP_PORT", String.valueOf(PORT));
+        if (System.getenv("DB_URL") == null) {
+            processEnv.put("LOG_STORAGE_ENABLED", "true");
+            processEnv.put("LOG_STORAGE_DIRECTORY", LOG_STORAGE_DIRECTORY.toString());
+        }
+        processEnv.put("TODO_CHANGES_FEED_ENABLED", "false");
+        processEnv.putAll(env);
+
+        return process.start();
+    }
+
+    private static void measure(String mode, List<String> jvmOptions, Map<String, String> env,
+                                int runs) throws Exception {
+        var results = new ArrayList<double[]>();
+        for (int r = 0; r < runs; r++) {
+            results.add(run(jvmOptions, env));
+        }
+        var average = new double[results.get(0).length];
+        for (var result : results) {
+            for (int i = 0; i < average.length; i++) {
+                average[i] += result[i] / runs;
+            }
+        }
+        System.out.printf("%s -> ready: %.0f ms, first response: %.0f ms (latency: %.1f ms), "
+                        + "p99 of requests 1-%d: %.1f ms, %d-%d: %.1f ms, last %d: %.1f ms, steady state: %.0f ms%n",
+                mode, average[0], average[1], average[2], WINDOW, average[3], WINDOW + 1, 1000, average[4],
+                STEADY_STATE_REQUESTS, average[5], average[6]);
+    }
+
+    //Millis: ready, first response, its latency, p99 of the first window, of the rest to 1000, steady p99 and time
+    private static double[] run(List<String> jvmOptions, Map<String, String> env) throws Exception {
+        var launched = System.nanoTime();
+        var process = launch(jvmOptions, env);
+        try {
+            awaitReady(process);
+            var ready = System.nanoTime();
+
+            var latencies = new long[REQUESTS];
+            var ends = new long[REQUESTS];
+            for (int i = 0; i < REQUESTS; i++) {
+                var start = System.nanoTime();
+                var response = CLIENT.send(request(i), HttpResponse.BodyHandlers.discarding());
+                ends[i] = System.nanoTime();
+                latencies[i] = ends[i] - start;
+                if (response.statusCode() != 200) {
+                    throw new RuntimeException("Request has failed with %d status".formatted(response.statusCode()));
+                }
+            }
+
+            var steadyP99 = p99(latencies, REQUESTS - STEADY_STATE_REQUESTS, REQUESTS);
+            var steadyState = ends[REQUESTS - 1];
+            for (int w = 0; w + WINDOW <= REQUESTS; w += WINDOW) {
+                if (p99(latencies, w, w + WINDOW) <= 1.5 * steadyP99) {
+                    steadyState = ends[w + WINDOW - 1];
+                    break;
+                }
+            }
+
+            return new double[]{millis(ready - launched), millis(ends[0] - launched), millis(latencies[0]),
+                    millis(p99(latencies, 0, WINDOW)), millis(p99(latencies, WINDOW, 1000)), millis(steadyP99),
+                    millis(steadyState - launched)};
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static void awaitReady(Process process) throws Exception {
+        var ready = HttpRequest.newBuilder(uri("/ready")).GET().build();
+        while (process.isAlive()) {
+            try {
+                if (CLIENT.send(ready, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (Exception ignored) {
+                //Not listening yet
+            }
+            Thread.sleep(5);
+        }
+        throw new RuntimeException("App has exited with %d code".formatted(process.exitValue()));
+    }
+
+    private static HttpRequest request(int i) {
+        var path = switch (i % 3) {
+            case 0 -> "/todos?limit=20&after=" + (i % TODOS);
+            case 1 -> "/todos?limit=20&nameFilter=" + BenchmarkTodos.MATCHING_PHRASE;
+            default -> "/todos?ids=%d,%d,%d".formatted(i % TODOS, (i * 7) % TODOS, (i * 13) % TODOS);
+        };
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private static URI uri(String path) {
+        return URI.create("http://localhost:%d%s".formatted(PORT, path));
+    }
+
+    private static long p99(long[] latencies, int from, int to) {
+        var window = Arrays.copyOfRange(latencies, from, to);
+        Arrays.sort(window);
+        return window[(int) (window.length * 0.99)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
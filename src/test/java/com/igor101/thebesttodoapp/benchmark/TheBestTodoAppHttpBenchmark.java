@@ -0,0 +1,89 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.TheBestTodoApp;
+import com.igor101.thebesttodoapp.TheBestTodoAppConfig;
+import com.igor101.thebesttodoapp.infrastructure.InMemoryTodoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/*
+End-to-end: http client -> TheBestTodoApp (Javalin, TodoController, TodoService) -> InMemoryTodoRepository,
+over local http, so that everything but the db is measured.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TheBestTodoAppHttpBenchmark {
+
+    private static final int PORT = 9292;
+    @Param({"1000", "100000"})
+    public int todos;
+    @Param({"0.01", "1"})
+    public double selectivity;
+    private TheBestTodoApp app;
+    private HttpClient client;
+    private HttpRequest firstPageRequest;
+    private HttpRequest nameFilterPageRequest;
+    private HttpRequest createRequest;
+
+    @Setup
+    public void setup() {
+        var repository = new InMemoryTodoRepository();
+        repository.createAll(BenchmarkTodos.todos(todos, selectivity));
+
+        app = new TheBestTodoApp(new TheBestTodoAppConfig(PORT, "", "", ""), repository);
+        app.start();
+
+        client = HttpClient.newHttpClient();
+        firstPageRequest = HttpRequest.newBuilder(uri("/todos?limit=20")).GET().build();
+        nameFilterPageRequest = HttpRequest.newBuilder(uri("/todos?limit=20&nameFilter="
+                + BenchmarkTodos.MATCHING_PHRASE)).GET().build();
+        createRequest = HttpRequest.newBuilder(uri("/todos"))
+                .POST(HttpRequest.BodyPublishers.ofString("""
+                        {"name": "new todo", "description": "created by benchmark"}"""))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:%d%s".formatted(PORT, path));
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.stop();
+    }
+
+    @Benchmark
+    public String firstPage() throws Exception {
+        return client.send(firstPageRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public String nameFilterPage() throws Exception {
+        return client.send(nameFilterPageRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public String create() throws Exception {
+        return client.send(createRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,86 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.application.TodoChangesBroadcaster;
+import com.igor101.thebesttodoapp.core.TodoChange;
+import com.igor101.thebesttodoapp.core.TodoData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Time to deliver a todo change to all subscribers (sinks only count events, so it is the cost of fan-out itself:
+serialization once, buffering and draining by sender threads, not of writing to sockets).
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TodoChangesBroadcasterBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int subscribers;
+    @Param({"1", "4"})
+    public int senderThreads;
+    private final AtomicLong delivered = new AtomicLong();
+    private TodoChangesBroadcaster broadcaster;
+    private TodoChange change;
+    private long published;
+
+    @Setup
+    public void setup() {
+        broadcaster = new TodoChangesBroadcaster(1000, senderThreads, Duration.ofHours(1), Duration.ofHours(1));
+        for (int i = 0; i < subscribers; i++) {
+            broadcaster.subscribe(new CountingSink());
+        }
+        change = new TodoChange(TodoChange.Type.UPDATED, 1, new TodoData("some-todo", "some description"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        broadcaster.close();
+    }
+
+    @Benchmark
+    public long publishToAll() {
+        broadcaster.publish(change);
+        published++;
+        var expected = published * subscribers;
+        while (delivered.get() < expected) {
+            Thread.yield();
+        }
+        return expected;
+    }
+
+    private class CountingSink implements TodoChangesBroadcaster.Sink {
+
+        @Override
+        public void send(TodoChangesBroadcaster.Event event) {
+            delivered.incrementAndGet();
+        }
+
+        @Override
+        public void onClose(Runnable onClose) {
+
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.TheBestTodoAppException;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoService;
+import com.igor101.thebesttodoapp.infrastructure.InMemoryTodoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+TodoData validation, of valid and invalid (exception creating) todos.
+Updates of a non-existing todo are no-ops in InMemoryTodoRepository, so mostly validation is measured.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TodoServiceBenchmark {
+
+    private final TodoData validTodo = new TodoData("some valid todo", "with some description");
+    private final TodoData invalidTodo = new TodoData("x", "d".repeat(1001));
+    private TodoService service;
+
+    @Setup
+    public void setup() {
+        service = new TodoService(new InMemoryTodoRepository());
+    }
+
+    @Benchmark
+    public void updateValidTodo() {
+        service.update(-1, validTodo);
+    }
+
+    @Benchmark
+    public List<String> updateInvalidTodo() {
+        try {
+            service.update(-1, invalidTodo);
+            return List.of();
+        } catch (TheBestTodoAppException e) {
+            return e.errors();
+        }
+    }
+}
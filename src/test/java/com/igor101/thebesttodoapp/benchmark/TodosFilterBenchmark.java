@@ -0,0 +1,115 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.infrastructure.SqlTodoRepository;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Measures name/description filters latency on a big todo table, without (before) and with (after) trigram indexes.
+Runs against DB_URL/DB_USER/DB_PASSWORD db, if given (its todo table is recreated!), or against a testcontainer.
+Rows count can be changed by the TODOS env variable, 1M by default.
+*/
+public class TodosFilterBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final List<TodosQuery> QUERIES = List.of(
+            new TodosQuery("name-99999", null),
+            new TodosQuery(null, "phrase-4242"),
+            new TodosQuery("rare", "phrase-1"),
+            new TodosQuery("zz", null));
+
+    public static void main(String[] args) throws Exception {
+        var todos = Integer.parseInt(envOrDefault("TODOS", "1000000"));
+
+        PostgreSQLContainer<?> postgres = null;
+        DSLContext context;
+        if (System.getenv("DB_URL") == null) {
+            postgres = new PostgreSQLContainer<>("postgres:14.3");
+            postgres.start();
+            context = context(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        } else {
+            context = context(System.getenv("DB_URL"), System.getenv("DB_USER"), System.getenv("DB_PASSWORD"));
+        }
+
+        try {
+            prepareTable(context, todos);
+
+            var repository = new SqlTodoRepository(context);
+
+            dropTrigramIndexes(context);
+            System.out.printf("%d todos, without trigram indexes:%n", todos);
+            measure(repository);
+
+            createTrigramIndexes(context);
+            System.out.printf("%d todos, with trigram indexes:%n", todos);
+            measure(repository);
+        } finally {
+            if (postgres != null) {
+                postgres.stop();
+            }
+        }
+    }
+
+    private static String envOrDefault(String key, String defaultValue) {
+        var value = System.getenv(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static DSLContext context(String url, String user, String password) throws Exception {
+        return DSL.using(DriverManager.getConnection(url, user, password), SQLDialect.POSTGRES);
+    }
+
+    private static void prepareTable(DSLContext context, int todos) throws Exception {
+        context.execute("DROP TABLE IF EXISTS todo");
+        context.execute(Files.readString(Path.of("db", "schema.sql")));
+        context.execute("""
+                INSERT INTO todo (name, description)
+                SELECT 'name-' || i || (CASE WHEN i %% 100000 = 0 THEN '-rare' ELSE '' END),
+                       repeat('some long description with a phrase-' || (i %% 10000) || ' ', 10)
+                FROM generate_series(1, %d) AS i""".formatted(todos));
+        context.execute("VACUUM ANALYZE todo");
+    }
+
+    private static void dropTrigramIndexes(DSLContext context) {
+        context.execute("DROP INDEX todo_name_trgm");
+        context.execute("DROP INDEX todo_description_trgm");
+        context.execute("ANALYZE todo");
+    }
+
+    private static void createTrigramIndexes(DSLContext context) {
+        context.execute("CREATE INDEX todo_name_trgm ON todo USING gin (name gin_trgm_ops)");
+        context.execute("CREATE INDEX todo_description_trgm ON todo USING gin (description gin_trgm_ops)");
+        context.execute("ANALYZE todo");
+    }
+
+    private static void measure(SqlTodoRepository repository) {
+        for (var query : QUERIES) {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                repository.todos(query);
+            }
+
+            var timesMs = new double[MEASURED_ITERATIONS];
+            var found = 0;
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                var start = System.nanoTime();
+                found = repository.todos(query).size();
+                timesMs[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+            Arrays.sort(timesMs);
+
+            System.out.printf("  nameFilter=%s, descriptionFilter=%s -> %d todos, median: %.2f ms, max: %.2f ms%n",
+                    query.nameFilter(), query.descriptionFilter(), found,
+                    timesMs[MEASURED_ITERATIONS / 2], timesMs[MEASURED_ITERATIONS - 1]);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.igor101.thebesttodoapp.benchmark;
+
+import com.igor101.thebesttodoapp.application.ApiResponse;
+import com.igor101.thebesttodoapp.application.ResponseBuffer;
+import com.igor101.thebesttodoapp.application.WireFormat;
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/*
+Encoding of todos responses and decoding of them (client side) and of request bodies, by each wire format.
+Encoded sizes (bytes on wire, before compression) are printed in setup.
+Run with -prof gc (default jmh.args) to compare allocations of toBytes with the pooled ResponseBuffer.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int todos;
+    @Param({"JSON", "CBOR", "SMILE", "MESSAGE_PACK"})
+    public WireFormat format;
+    private ApiResponse<List<Todo>> todosResponse;
+    private byte[] todosResponseBytes;
+    private byte[] todoDataBytes;
+
+    @Setup
+    public void setup() {
+        var data = BenchmarkTodos.todos(todos, 0.1);
+        todosResponse = ApiResponse.ofSuccess(IntStream.range(0, todos)
+                .mapToObj(i -> new Todo(i, data.get(i).name(), data.get(i).description()))
+                .toList());
+        todosResponseBytes = format.toBytes(todosResponse);
+        todoDataBytes = format.toBytes(data.get(0));
+
+        System.out.printf("%n%s of %d todos: %d bytes, todo data: %d bytes%n", format, todos,
+                todosResponseBytes.length, todoDataBytes.length);
+    }
+
+    @Benchmark
+    public byte[] encodeTodos() {
+        return format.toBytes(todosResponse);
+    }
+
+    //As HttpFunctions.writeResponse does it, with bytes written from the buffer, not copied
+    @Benchmark
+    public int encodeTodosToPooledBuffer() {
+        var buffer = ResponseBuffer.borrow();
+        try {
+            format.write(todosResponse, buffer);
+            return buffer.size();
+        } finally {
+            ResponseBuffer.release(buffer);
+        }
+    }
+
+    @Benchmark
+    public ApiResponse<?> decodeTodos() {
+        return format.toObject(todosResponseBytes, ApiResponse.class);
+    }
+
+    @Benchmark
+    public TodoData decodeTodoData() {
+        return format.toObject(todoDataBytes, TodoData.class);
+    }
+}
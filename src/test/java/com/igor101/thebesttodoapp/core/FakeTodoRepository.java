@@ -1,22 +1,45 @@
 package com.igor101.thebesttodoapp.core;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
 
 public class FakeTodoRepository implements TodoRepository {
 
-    private String capturedNameFilter;
-    private String capturedDescriptionFilter;
+    private TodosQuery capturedQuery;
+    private TodosSearch capturedSearch;
     private List<Todo> toReturnTodos;
     private TodoData createdTodo;
     private long nextId;
     private long updatedTodoId;
     private TodoData updatedTodo;
     private long deletedTodoId;
+    private List<Long> capturedIds;
+    private List<TodoData> createdTodos;
+    private List<Todo> updatedTodos;
+    private long version;
 
     @Override
-    public List<Todo> todos(String nameFilter, String descriptionFilter) {
-        capturedNameFilter = nameFilter;
-        capturedDescriptionFilter = descriptionFilter;
+    public List<Todo> todos(TodosQuery query) {
+        capturedQuery = query;
+        return toReturnTodos;
+    }
+
+    @Override
+    public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+        capturedQuery = query;
+        toReturnTodos.forEach(consumer);
+    }
+
+    @Override
+    public List<Todo> search(TodosSearch search) {
+        capturedSearch = search;
+        return toReturnTodos;
+    }
+
+    @Override
+    public List<Todo> todos(List<Long> ids) {
+        capturedIds = ids;
         return toReturnTodos;
     }
 
@@ -26,23 +49,44 @@ public class FakeTodoRepository implements TodoRepository {
         return nextId;
     }
 
+    @Override
+    public List<Long> createAll(List<TodoData> todos) {
+        createdTodos = todos;
+        return LongStream.range(nextId, nextId + todos.size()).boxed().toList();
+    }
+
     @Override
     public void update(long id, TodoData todo) {
         updatedTodoId = id;
         updatedTodo = todo;
     }
 
+    @Override
+    public void updateAll(List<Todo> todos) {
+        updatedTodos = todos;
+    }
+
     @Override
     public void delete(long id) {
         deletedTodoId = id;
     }
 
-    public String capturedNameFilter() {
-        return capturedNameFilter;
+    @Override
+    public void deleteAll(List<Long> ids) {
+        capturedIds = ids;
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    public TodosQuery capturedQuery() {
+        return capturedQuery;
     }
 
-    public String capturedDescriptionFilter() {
-        return capturedDescriptionFilter;
+    public TodosSearch capturedSearch() {
+        return capturedSearch;
     }
 
     public TodoData createdTodo() {
@@ -61,10 +105,26 @@ public class FakeTodoRepository implements TodoRepository {
         return deletedTodoId;
     }
 
+    public List<Long> capturedIds() {
+        return capturedIds;
+    }
+
+    public List<TodoData> createdTodos() {
+        return createdTodos;
+    }
+
+    public List<Todo> updatedTodos() {
+        return updatedTodos;
+    }
+
     public void setToReturnTodos(List<Todo> todos) {
         toReturnTodos = todos;
     }
 
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public void setNextId(long id) {
         nextId = id;
     }
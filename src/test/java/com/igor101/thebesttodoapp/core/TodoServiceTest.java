@@ -6,9 +6,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class TodoServiceTest {
@@ -29,16 +33,83 @@ public class TodoServiceTest {
 
         todoRepository.setToReturnTodos(todos);
 
-        var nameFilter = "some-filter1";
-        var descriptionFilter = "some-filter2";
+        var query = new TodosQuery("some-filter1", "some-filter2", TodosSort.NAME, 22L, "some-name", 10);
 
-        Assertions.assertEquals(todos, service.todos(nameFilter, descriptionFilter));
+        Assertions.assertEquals(todos, service.todos(query));
 
-        Assertions.assertEquals(nameFilter, todoRepository.capturedNameFilter());
-        Assertions.assertEquals(descriptionFilter, todoRepository.capturedDescriptionFilter());
+        Assertions.assertEquals(query, todoRepository.capturedQuery());
     }
 
     @ParameterizedTest
+    @ValueSource(ints = {-1, 0, TodoService.MAX_TODOS_LIMIT + 1})
+    void todos_givenInvalidLimit_shouldThrowException(int limit) {
+        var query = new TodosQuery(null, null, TodosSort.ID, null, limit);
+
+        var exception = Assertions.assertThrows(TheBestTodoAppException.class, () -> service.todos(query));
+
+        Assertions.assertEquals(List.of(Errors.INVALID_TODOS_LIMIT), exception.errors());
+        Assertions.assertNull(todoRepository.capturedQuery());
+    }
+
+    @Test
+    void todos_givenNameSortAfterWithoutAfterName_shouldThrowException() {
+        var query = new TodosQuery(null, null, TodosSort.NAME, 22L, 10);
+
+        var exception = Assertions.assertThrows(TheBestTodoAppException.class, () -> service.todos(query));
+
+        Assertions.assertEquals(List.of(Errors.INVALID_TODOS_CURSOR), exception.errors());
+        Assertions.assertNull(todoRepository.capturedQuery());
+    }
+
+    @Test
+    void streamTodos_givenUnboundedLimit_shouldStreamTodosFromRepository() {
+        var todos = List.of(new Todo(1, "some-name", "some-description"),
+                new Todo(2, "some-name2"));
+
+        todoRepository.setToReturnTodos(todos);
+
+        var query = new TodosQuery("some-filter", null, TodosSort.ID, null, TodosQuery.NO_LIMIT);
+        var streamedTodos = new ArrayList<Todo>();
+
+        service.streamTodos(query, streamedTodos::add);
+
+        Assertions.assertEquals(todos, streamedTodos);
+        Assertions.assertEquals(query, todoRepository.capturedQuery());
+    }
+
+    @Test
+    void streamTodos_givenInvalidLimit_shouldThrowException() {
+        var query = new TodosQuery(null, null, TodosSort.ID, null, 0);
+
+        var exception = Assertions.assertThrows(TheBestTodoAppException.class,
+                () -> service.streamTodos(query, t -> {
+                }));
+
+        Assertions.assertEquals(List.of(Errors.INVALID_TODOS_LIMIT), exception.errors());
+    }
+
+    @Test
+    void search_givenValidSearch_shouldDelegateCallToRepository() {
+        var todos = List.of(new Todo(1, "some-name", "some-description"));
+
+        todoRepository.setToReturnTodos(todos);
+
+        var search = new TodosSearch("some words", 5);
+
+        Assertions.assertEquals(todos, service.search(search));
+        Assertions.assertEquals(search, todoRepository.capturedSearch());
+    }
+
+    @ParameterizedTest
+    @MethodSource("invalidSearchesCases")
+    void search_givenInvalidSearch_shouldThrowException(TodosSearch search, List<String> errors) {
+        var exception = Assertions.assertThrows(TheBestTodoAppException.class, () -> service.search(search));
+
+        Assertions.assertEquals(errors, exception.errors());
+        Assertions.assertNull(todoRepository.capturedSearch());
+    }
+
+        @ParameterizedTest
     @MethodSource("invalidTodosCases")
     void create_givenInvalidTodo_shouldThrowException(TodoData invalidTodo, TheBestTodoAppException exception) {
         var actualException = Assertions.assertThrows(TheBestTodoAppException.class,
@@ -89,6 +160,87 @@ public class TodoServiceTest {
         Assertions.assertEquals(todoId, todoRepository.deletedTodoId());
     }
 
+    @Test
+    void todosByIds_givenIds_shouldDelegateCallToRepository() {
+        var ids = List.of(1L, 3L);
+        var todos = List.of(new Todo(1, "some-todo"), new Todo(3, "another-todo"));
+        todoRepository.setToReturnTodos(todos);
+
+        Assertions.assertEquals(todos, service.todos(ids));
+        Assertions.assertEquals(ids, todoRepository.capturedIds());
+    }
+
+    @ParameterizedTest
+    @MethodSource("invalidBatchSizes")
+    void givenInvalidBatchSize_shouldThrowExceptionForAllBatchOperations(int size) {
+        var ids = LongStream.range(0, size).boxed().toList();
+        var todosData = ids.stream().map(id -> new TodoData("todo-" + id)).toList();
+        var todos = ids.stream().map(id -> new Todo(id, "todo-" + id)).toList();
+
+        for (var operation : List.<Runnable>of(() -> service.todos(ids),
+                () -> service.createAll(todosData),
+                () -> service.updateAll(todos),
+                () -> service.deleteAll(ids))) {
+            var exception = Assertions.assertThrows(TheBestTodoAppException.class, operation::run);
+            Assertions.assertEquals(List.of(Errors.INVALID_BATCH_SIZE), exception.errors());
+        }
+    }
+
+    @Test
+    void createAll_givenValidTodos_shouldCreateThemAndReturnTheirIds() {
+        var todos = List.of(new TodoData("some todo"), new TodoData("another todo", "description"));
+        todoRepository.setNextId(5);
+
+        Assertions.assertEquals(List.of(5L, 6L), service.createAll(todos));
+        Assertions.assertEquals(todos, todoRepository.createdTodos());
+    }
+
+    @Test
+    void createAll_givenInvalidTodos_shouldThrowExceptionWithErrorsOfEachItem() {
+        var todos = Arrays.asList(new TodoData("some todo"),
+                new TodoData("a", "d".repeat(TodoService.MAX_DESCRIPTION_LENGTH + 1)),
+                null,
+                new TodoData("another todo"));
+
+        var exception = Assertions.assertThrows(TheBestTodoAppException.class, () -> service.createAll(todos));
+
+        Assertions.assertEquals(List.of("INVALID_TODO_NAME[1]", "INVALID_TODO_DESCRIPTION[1]", "INVALID_TODO_NAME[2]"),
+                exception.errors());
+        Assertions.assertNull(todoRepository.createdTodos());
+    }
+
+    @Test
+    void updateAll_givenValidTodos_shouldUpdateThem() {
+        var todos = List.of(new Todo(1, "some todo"), new Todo(2, "another todo", "description"));
+
+        service.updateAll(todos);
+
+        Assertions.assertEquals(todos, todoRepository.updatedTodos());
+    }
+
+    @Test
+    void updateAll_givenInvalidTodos_shouldThrowExceptionWithErrorsOfEachItem() {
+        var todos = List.of(new Todo(1, "some todo"), new Todo(2, " "));
+
+        var exception = Assertions.assertThrows(TheBestTodoAppException.class, () -> service.updateAll(todos));
+
+        Assertions.assertEquals(List.of(Errors.ofItem(Errors.INVALID_TODO_NAME, 1)), exception.errors());
+        Assertions.assertNull(todoRepository.updatedTodos());
+    }
+
+    @Test
+    void deleteAll_givenIds_shouldDelegateCallToRepository() {
+        var ids = List.of(1L, 2L);
+
+        service.deleteAll(ids);
+
+        Assertions.assertEquals(ids, todoRepository.capturedIds());
+    }
+
+    static Stream<Integer> invalidBatchSizes() {
+        return Stream.of(0, TodoService.MAX_BATCH_SIZE + 1);
+    }
+
     static Stream<Arguments> invalidTodosCases() {
         var invalidNameException = new TheBestTodoAppException(Errors.INVALID_TODO_NAME);
 
@@ -111,7 +263,19 @@ public class TodoServiceTest {
                         new TheBestTodoAppException(Errors.INVALID_TODO_NAME, Errors.INVALID_TODO_DESCRIPTION)));
     }
 
-    static Stream<TodoData> validTodos() {
+    static Stream<Arguments> invalidSearchesCases() {
+        var tooLongQuery = "a".repeat(TodoService.MAX_SEARCH_QUERY_LENGTH + 1);
+
+        return Stream.of(
+                Arguments.of(new TodosSearch(null), List.of(Errors.INVALID_SEARCH_QUERY)),
+                Arguments.of(new TodosSearch(" "), List.of(Errors.INVALID_SEARCH_QUERY)),
+                Arguments.of(new TodosSearch(tooLongQuery), List.of(Errors.INVALID_SEARCH_QUERY)),
+                Arguments.of(new TodosSearch("query", 0), List.of(Errors.INVALID_TODOS_LIMIT)),
+                Arguments.of(new TodosSearch("", TodoService.MAX_SEARCH_LIMIT + 1),
+                        List.of(Errors.INVALID_SEARCH_QUERY, Errors.INVALID_TODOS_LIMIT)));
+    }
+
+        static Stream<TodoData> validTodos() {
         return Stream.of(new TodoData("some todo"),
                 new TodoData("a1", "Let's have some description"));
     }
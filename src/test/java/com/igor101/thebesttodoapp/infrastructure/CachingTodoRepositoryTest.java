@@ -0,0 +1,361 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CachingTodoRepositoryTest {
+
+    private static final Duration TTL = Duration.ofSeconds(10);
+    private static final long MAX_WEIGHT = 10_000;
+    //Refreshed explicitly by tests
+    private static final Duration VERSION_REFRESH_INTERVAL = Duration.ofHours(1);
+    private CountingTodoRepository delegate;
+    private TestClock clock;
+    private CachingTodoRepository repository;
+
+    @BeforeEach
+    void setup() {
+        delegate = new CountingTodoRepository();
+        clock = new TestClock();
+        repository = new CachingTodoRepository(delegate, MAX_WEIGHT, TTL, VERSION_REFRESH_INTERVAL, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void todos_givenRepeatedQuery_shouldReturnItFromCache() {
+        var todo = createTodo(new TodoData("some-todo"));
+        var query = new TodosQuery("todo", null);
+
+        Assertions.assertEquals(List.of(todo), repository.todos(query));
+        Assertions.assertEquals(List.of(todo), repository.todos(query));
+        Assertions.assertEquals(List.of(todo), repository.todos(new TodosQuery("todo", null)));
+
+        Assertions.assertEquals(1, delegate.todosCalls);
+        assertStats(2, 1, 0);
+    }
+
+    @Test
+    void todos_givenExpiredEntry_shouldLoadItAgain() {
+        var query = new TodosQuery(null, null);
+
+        repository.todos(query);
+        clock.advance(TTL.minusMillis(1));
+        repository.todos(query);
+        clock.advance(Duration.ofMillis(1));
+        repository.todos(query);
+
+        Assertions.assertEquals(2, delegate.todosCalls);
+        assertStats(1, 2, 0);
+    }
+
+    @Test
+    void todos_givenEntriesOverMaxWeight_shouldEvictNotRecentlyUsed() {
+        createTodo(new TodoData("some-todo", "x".repeat(1000)));
+
+        var firstQuery = new TodosQuery(null, null, TodosSort.ID, null, 10);
+        var secondQuery = new TodosQuery(null, null, TodosSort.ID, null, 20);
+        var thirdQuery = new TodosQuery(null, null, TodosSort.NAME, null, 10);
+
+        //each entry weights more than 2000, so only 4 fit
+        for (int i = 0; i < 4; i++) {
+            repository.todos(new TodosQuery(null, null, TodosSort.ID, null, 100 + i));
+        }
+        repository.todos(firstQuery);
+        repository.todos(secondQuery);
+        repository.todos(firstQuery);
+        repository.todos(thirdQuery);
+
+        var stats = repository.stats();
+        Assertions.assertEquals(4, stats.size());
+        Assertions.assertTrue(stats.weight() <= MAX_WEIGHT);
+        Assertions.assertEquals(3, stats.evictions());
+
+        delegate.todosCalls = 0;
+        repository.todos(firstQuery);
+        repository.todos(thirdQuery);
+        Assertions.assertEquals(0, delegate.todosCalls);
+    }
+
+    @Test
+    void todos_givenEntriesOverMaxWeight_shouldGiveOldestButUsedEntrySecondChance() {
+        createTodo(new TodoData("some-todo", "x".repeat(1000)));
+
+        //each entry weights more than 2000, so only 4 fit
+        var queries = new ArrayList<TodosQuery>();
+        for (int i = 0; i < 5; i++) {
+            queries.add(new TodosQuery(null, null, TodosSort.ID, null, 100 + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            repository.todos(queries.get(i));
+        }
+        repository.todos(queries.get(0));
+        repository.todos(queries.get(4));
+        Assertions.assertEquals(1, repository.stats().evictions());
+
+        delegate.todosCalls = 0;
+        repository.todos(queries.get(0));
+        repository.todos(queries.get(2));
+        repository.todos(queries.get(3));
+        repository.todos(queries.get(4));
+        Assertions.assertEquals(0, delegate.todosCalls);
+        repository.todos(queries.get(1));
+        Assertions.assertEquals(1, delegate.todosCalls);
+    }
+
+    @Test
+    void refreshVersion_givenWriteBypassingCache_shouldDropAllEntries() {
+        var query = new TodosQuery(null, null);
+        repository.todos(query);
+
+        var todo = new Todo(delegate.create(new TodoData("some-todo")), "some-todo");
+        repository.todos(query);
+        repository.refreshVersion();
+        Assertions.assertEquals(delegate.version(), repository.version());
+
+        Assertions.assertEquals(List.of(todo), repository.todos(query));
+        repository.refreshVersion();
+        repository.todos(query);
+        Assertions.assertEquals(2, delegate.todosCalls);
+        assertStats(2, 2, 0);
+    }
+
+    @Test
+    void version_givenWriteBypassingCache_shouldReturnKnownVersionWithoutReadingItUntilRefresh() {
+        var version = repository.version();
+        var query = new TodosQuery(null, null);
+        repository.todos(query);
+        delegate.create(new TodoData("some-todo"));
+        delegate.versionCalls = 0;
+
+        Assertions.assertEquals(version, repository.version());
+        Assertions.assertEquals(List.of(), repository.todos(query));
+        Assertions.assertEquals(0, delegate.versionCalls);
+
+        repository.refreshVersion();
+        Assertions.assertEquals(delegate.version(), repository.version());
+        Assertions.assertNotEquals(version, repository.version());
+    }
+
+    @Test
+    void version_givenOwnWrites_shouldKeepEntriesNotChangedByThem() {
+        var matchingQuery = new TodosQuery("todo", null);
+        var notMatchingQuery = new TodosQuery("item", null);
+        repository.todos(matchingQuery);
+        repository.todos(notMatchingQuery);
+
+        var todo = createTodo(new TodoData("some-todo"));
+        repository.update(todo.id(), new TodoData("other-todo"));
+        Assertions.assertEquals(delegate.version(), repository.version());
+
+        Assertions.assertEquals(List.of(new Todo(todo.id(), "other-todo")), repository.todos(matchingQuery));
+        repository.todos(notMatchingQuery);
+        assertStats(1, 3, 0);
+    }
+
+    @Test
+    void version_givenOwnWrite_shouldReadDelegateVersionOnlyAfterIt() {
+        var version = repository.version();
+        delegate.versionCalls = 0;
+
+        createTodo(new TodoData("some-todo"));
+
+        Assertions.assertEquals(1, delegate.versionCalls);
+        Assertions.assertTrue(repository.version() > version);
+    }
+
+    @Test
+    void version_givenFailedOwnWrite_shouldKeepKnownVersion() {
+        var version = repository.version();
+        delegate.versionCalls = 0;
+        delegate.createFailure = new RuntimeException("failed");
+
+        Assertions.assertThrows(RuntimeException.class, () -> repository.create(new TodoData("some-todo")));
+
+        Assertions.assertEquals(0, delegate.versionCalls);
+        Assertions.assertEquals(version, repository.version());
+    }
+
+    @Test
+    void create_givenTodo_shouldInvalidateOnlyEntriesWithMatchingFilters() {
+        var matchingQuery = new TodosQuery("TODO", null);
+        var notMatchingQuery = new TodosQuery("item", null);
+        repository.todos(matchingQuery);
+        repository.todos(notMatchingQuery);
+
+        var todo = createTodo(new TodoData("new todo"));
+
+        Assertions.assertEquals(List.of(todo), repository.todos(matchingQuery));
+        Assertions.assertEquals(List.of(), repository.todos(notMatchingQuery));
+        Assertions.assertEquals(3, delegate.todosCalls);
+    }
+
+    @Test
+    void update_givenTodo_shouldInvalidateEntriesContainingItOrMatchingItsNewVersion() {
+        var todo = createTodo(new TodoData("some todo"));
+        var containingQuery = new TodosQuery("todo", null);
+        var matchingQuery = new TodosQuery("item", null);
+        var notMatchingQuery = new TodosQuery("other", null);
+        repository.todos(containingQuery);
+        repository.todos(matchingQuery);
+        repository.todos(notMatchingQuery);
+
+        repository.update(todo.id(), new TodoData("some item"));
+
+        var updatedTodo = new Todo(todo.id(), "some item");
+        Assertions.assertEquals(List.of(), repository.todos(containingQuery));
+        Assertions.assertEquals(List.of(updatedTodo), repository.todos(matchingQuery));
+        Assertions.assertEquals(List.of(), repository.todos(notMatchingQuery));
+        Assertions.assertEquals(5, delegate.todosCalls);
+    }
+
+    @Test
+    void delete_givenTodo_shouldInvalidateEntriesContainingItButNotPagesAfterIt() {
+        var firstTodo = createTodo(new TodoData("a todo"));
+        var secondTodo = createTodo(new TodoData("b todo"));
+        var containingQuery = new TodosQuery("todo", null);
+        var afterQuery = new TodosQuery(null, null, TodosSort.NAME, firstTodo.id(), firstTodo.name(), 10);
+        var notContainingQuery = new TodosQuery("other", null);
+        repository.todos(containingQuery);
+        repository.todos(afterQuery);
+        repository.todos(notContainingQuery);
+
+        repository.delete(firstTodo.id());
+
+        Assertions.assertEquals(List.of(secondTodo), repository.todos(containingQuery));
+        Assertions.assertEquals(List.of(secondTodo), repository.todos(afterQuery));
+        Assertions.assertEquals(List.of(), repository.todos(notContainingQuery));
+        Assertions.assertEquals(4, delegate.todosCalls);
+    }
+
+    @Test
+    void update_givenAfterTodoOfPageSortedByName_shouldReturnPageOfItsCursor() {
+        var firstTodo = createTodo(new TodoData("a todo"));
+        var secondTodo = createTodo(new TodoData("b todo"));
+        var afterQuery = new TodosQuery(null, null, TodosSort.NAME, firstTodo.id(), firstTodo.name(), 10);
+        repository.todos(afterQuery);
+
+        repository.update(firstTodo.id(), new TodoData("c todo"));
+
+        Assertions.assertEquals(List.of(secondTodo, new Todo(firstTodo.id(), "c todo")),
+                repository.todos(afterQuery));
+    }
+
+    @Test
+    void batchWrites_givenTodos_shouldInvalidateEntriesChangedByAnyOfThem() {
+        var todo = createTodo(new TodoData("some todo"));
+        var containingQuery = new TodosQuery("todo", null);
+        var matchingQuery = new TodosQuery("item", null);
+        var notMatchingQuery = new TodosQuery("other", null);
+
+        repository.todos(containingQuery);
+        repository.todos(matchingQuery);
+        repository.todos(notMatchingQuery);
+
+        repository.createAll(List.of(new TodoData("x"), new TodoData("new item")));
+        repository.todos(matchingQuery);
+        repository.todos(notMatchingQuery);
+
+        repository.deleteAll(List.of(todo.id()));
+        repository.todos(containingQuery);
+        repository.todos(notMatchingQuery);
+
+        assertStats(2, 5, 0);
+    }
+
+    @Test
+    void todos_givenWriteDuringLoad_shouldNotCacheLoadedResult() {
+        var query = new TodosQuery(null, null);
+        delegate.duringTodos = () -> repository.create(new TodoData("other-todo", "x"));
+
+        repository.todos(query);
+        delegate.duringTodos = null;
+        repository.todos(query);
+
+        Assertions.assertEquals(2, delegate.todosCalls);
+        Assertions.assertEquals(1, repository.stats().size());
+    }
+
+    private Todo createTodo(TodoData todo) {
+        return new Todo(repository.create(todo), todo.name(), todo.description());
+    }
+
+    private void assertStats(long hits, long misses, long evictions) {
+        var stats = repository.stats();
+        Assertions.assertEquals(hits, stats.hits());
+        Assertions.assertEquals(misses, stats.misses());
+        Assertions.assertEquals(evictions, stats.evictions());
+    }
+
+    private static class CountingTodoRepository extends InMemoryTodoRepository {
+
+        int todosCalls;
+        int versionCalls;
+        Runnable duringTodos;
+        RuntimeException createFailure;
+
+        @Override
+        public long create(TodoData todo) {
+            if (createFailure != null) {
+                throw createFailure;
+            }
+            return super.create(todo);
+        }
+
+        @Override
+        public long version() {
+            versionCalls++;
+            return super.version();
+        }
+
+        @Override
+        public List<Todo> todos(TodosQuery query) {
+            todosCalls++;
+            var todos = super.todos(query);
+            if (duringTodos != null) {
+                duringTodos.run();
+            }
+            return todos;
+        }
+    }
+
+    private static class TestClock extends Clock {
+
+        private Instant now = Instant.parse("2022-11-11T11:11:11Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 100_000;
+
+    @Test
+    void shouldSpreadKeysProportionallyToShardsWeights() {
+        var ring = new ConsistentHashRing(Map.of(0, 1, 1, 1, 2, 2));
+
+        var shardsKeys = shardsKeys(ring);
+
+        Assertions.assertEquals(KEYS / 4.0, shardsKeys.get(0), KEYS * 0.05);
+        Assertions.assertEquals(KEYS / 4.0, shardsKeys.get(1), KEYS * 0.05);
+        Assertions.assertEquals(KEYS / 2.0, shardsKeys.get(2), KEYS * 0.05);
+    }
+
+    @Test
+    void shouldMoveOnlyKeysOfNewShardGivenItIsAdded() {
+        var ring = new ConsistentHashRing(Map.of(0, 1, 1, 1, 2, 1));
+        var newRing = new ConsistentHashRing(Map.of(0, 1, 1, 1, 2, 1, 3, 1));
+
+        var moved = 0;
+        for (long key = 0; key < KEYS; key++) {
+            var shard = ring.shard(key);
+            var newShard = newRing.shard(key);
+            if (shard != newShard) {
+                Assertions.assertEquals(3, newShard);
+                moved++;
+            }
+        }
+
+        Assertions.assertEquals(KEYS / 4.0, moved, KEYS * 0.05);
+    }
+
+    @Test
+    void shouldNotAssignKeysToShardsOfZeroWeight() {
+        var ring = new ConsistentHashRing(Map.of(0, 0, 1, 1));
+
+        Assertions.assertEquals(Map.of(1, KEYS), shardsKeys(ring));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(Map.of(0, 0)));
+    }
+
+    private Map<Integer, Integer> shardsKeys(ConsistentHashRing ring) {
+        var shardsKeys = new HashMap<Integer, Integer>();
+        LongStream.range(0, KEYS).forEach(k -> shardsKeys.merge(ring.shard(k), 1, Integer::sum));
+        return shardsKeys;
+    }
+}
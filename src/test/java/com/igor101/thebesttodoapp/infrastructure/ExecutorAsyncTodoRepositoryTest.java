@@ -0,0 +1,81 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ExecutorAsyncTodoRepositoryTest {
+
+    private final CountDownLatch todosRequested = new CountDownLatch(1);
+    private final CountDownLatch todosReleased = new CountDownLatch(1);
+    private final InMemoryTodoRepository delegate = new InMemoryTodoRepository() {
+        @Override
+        public List<Todo> todos(TodosQuery query) {
+            if (query.nameFilter() != null && query.nameFilter().equals("blocking")) {
+                todosRequested.countDown();
+                try {
+                    todosReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.todos(query);
+        }
+    };
+    private final ExecutorAsyncTodoRepository repository = new ExecutorAsyncTodoRepository(delegate, 1, 1);
+
+    @AfterEach
+    void tearDown() {
+        todosReleased.countDown();
+        repository.close();
+    }
+
+    @Test
+    void shouldReadAndWriteTodosOfDelegate() throws Exception {
+        var firstId = repository.create(new TodoData("first-todo")).get();
+        var ids = repository.createAll(List.of(new TodoData("second-todo", "milk"), new TodoData("third-todo")))
+                .get();
+        repository.update(firstId, new TodoData("updated-todo")).get();
+        repository.delete(ids.get(1)).get();
+
+        var todos = List.of(new Todo(firstId, "updated-todo"), new Todo(ids.get(0), "second-todo", "milk"));
+        Assertions.assertEquals(todos, repository.todos(new TodosQuery(null, null)).get());
+        Assertions.assertEquals(todos, repository.todos(List.of(firstId, ids.get(0), ids.get(1))).get());
+        Assertions.assertEquals(todos.subList(1, 2), repository.search(new TodosSearch("milk")).get());
+        Assertions.assertEquals(delegate.version(), repository.version().get());
+    }
+
+    @Test
+    void shouldFailRightAwayGivenFullQueue() throws Exception {
+        var pending = repository.todos(new TodosQuery("blocking", null));
+        todosRequested.await();
+        var queued = repository.create(new TodoData("queued-todo"));
+
+        var rejected = repository.create(new TodoData("rejected-todo"));
+
+        var exception = Assertions.assertThrows(ExecutionException.class, rejected::get);
+        Assertions.assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+
+        todosReleased.countDown();
+        Assertions.assertEquals(List.of(), pending.get());
+        Assertions.assertEquals(List.of(new Todo(queued.get(), "queued-todo")),
+                repository.todos(new TodosQuery(null, null)).get());
+    }
+
+    @Test
+    void shouldPassDelegateFailures() {
+        var exception = Assertions.assertThrows(ExecutionException.class,
+                () -> repository.updateAll(null).get());
+
+        Assertions.assertInstanceOf(NullPointerException.class, exception.getCause());
+    }
+}
@@ -0,0 +1,132 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.IntegrationTest;
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+public class GroupCommitTodoRepositoryTest extends IntegrationTest {
+
+    private static final int MAX_GROUP_SIZE = 10;
+    private GroupCommitTodoRepository repository;
+
+    @BeforeEach
+    void setup() {
+        repository = new GroupCommitTodoRepository(CONTEXT, MAX_GROUP_SIZE, Duration.ofMillis(50));
+    }
+
+    @Override
+    protected void afterEach() {
+        repository.close();
+    }
+
+    @Test
+    void create_givenConcurrentCallers_shouldReturnEachItsOwnId() throws Exception {
+        var todos = IntStream.range(0, 25)
+                .mapToObj(i -> new TodoData("todo-" + i, i % 2 == 0 ? null : "description-" + i))
+                .toList();
+
+        var ids = concurrently(todos.stream()
+                .map(t -> (Callable<Long>) () -> repository.create(t))
+                .toList());
+
+        var expectedTodos = IntStream.range(0, todos.size())
+                .mapToObj(i -> new Todo(ids.get(i), todos.get(i).name(), todos.get(i).description()))
+                .sorted((a, b) -> Long.compare(a.id(), b.id()))
+                .toList();
+
+        Assertions.assertEquals(expectedTodos, allTodos());
+    }
+
+    @Test
+    void givenConcurrentUpdatesAndDeletes_shouldCommitAllOfThem() throws Exception {
+        var ids = IntStream.range(0, 6)
+                .mapToObj(i -> repository.create(new TodoData("todo-" + i)))
+                .toList();
+
+        var writes = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < ids.size(); i++) {
+            var id = ids.get(i);
+            if (i % 2 == 0) {
+                writes.add(() -> {
+                    repository.update(id, new TodoData("updated-" + id, "description"));
+                    return null;
+                });
+            } else {
+                writes.add(() -> {
+                    repository.delete(id);
+                    return null;
+                });
+            }
+        }
+
+        concurrently(writes);
+
+        Assertions.assertEquals(List.of(new Todo(ids.get(0), "updated-" + ids.get(0), "description"),
+                        new Todo(ids.get(2), "updated-" + ids.get(2), "description"),
+                        new Todo(ids.get(4), "updated-" + ids.get(4), "description")),
+                allTodos());
+    }
+
+    @Test
+    void givenInvalidWriteInGroup_shouldFailOnlyItsCaller() throws Exception {
+        var executor = Executors.newFixedThreadPool(MAX_GROUP_SIZE);
+        try {
+            var valid = new ArrayList<Future<Long>>();
+            for (int i = 0; i < MAX_GROUP_SIZE - 1; i++) {
+                var todo = new TodoData("todo-" + i);
+                valid.add(executor.submit(() -> repository.create(todo)));
+            }
+            var invalid = executor.submit(() -> repository.create(new TodoData(null)));
+
+            for (var v : valid) {
+                Assertions.assertNotNull(v.get(10, TimeUnit.SECONDS));
+            }
+            var exception = Assertions.assertThrows(ExecutionException.class,
+                    () -> invalid.get(10, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(RuntimeException.class, exception.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(MAX_GROUP_SIZE - 1, allTodos().size());
+    }
+
+    @Test
+    void close_shouldRejectNewWrites() {
+        repository.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> repository.create(new TodoData("todo")));
+    }
+
+    private <T> List<T> concurrently(List<Callable<T>> tasks) throws Exception {
+        var executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            var results = new ArrayList<T>();
+            for (var f : executor.invokeAll(tasks)) {
+                results.add(f.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Todo> allTodos() {
+        return repository.todos(new TodosQuery(null, null, TodosSort.ID, null, TodosQuery.NO_LIMIT));
+    }
+}
@@ -0,0 +1,415 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoField;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+public class InMemoryTodoRepositoryTest {
+
+    private InMemoryTodoRepository repository;
+
+    @BeforeEach
+    void setup() {
+        repository = new InMemoryTodoRepository();
+    }
+
+    @Test
+    void todos_withEmptyRepository_shouldReturnEmpty() {
+        Assertions.assertEquals(List.of(), repository.todos(new TodosQuery(null, null)));
+    }
+
+    @Test
+    void todos_givenFilters_shouldReturnCaseInsensitiveMatches() {
+        var todos = createTodos(new TodoData("Some-todo"),
+                new TodoData("todo2-some", "some-description"),
+                new TodoData("3 todo", "3todo DESC"),
+                new TodoData("desc in title", "some another description"));
+
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(1)),
+                repository.todos(new TodosQuery("SOME", " ")));
+        Assertions.assertEquals(List.of(todos.get(1), todos.get(2)),
+                repository.todos(new TodosQuery("todo", "desc")));
+    }
+
+    @Test
+    void todos_givenShortAndLongFilters_shouldReturnCaseInsensitiveMatches() {
+        var todos = createTodos(new TodoData("Ab-todo"),
+                new TodoData("todo", "some aB"),
+                new TodoData("xab", "ab"),
+                new TodoData("Some TODO list", "abc"));
+
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(2)), repository.todos(new TodosQuery("aB", null)));
+        Assertions.assertEquals(List.of(todos.get(1), todos.get(3)), repository.todos(new TodosQuery("T", "b")));
+        Assertions.assertEquals(List.of(todos.get(3)), repository.todos(new TodosQuery("me todo", "AB")));
+        Assertions.assertEquals(List.of(), repository.todos(new TodosQuery("todos", null)));
+    }
+
+    @Test
+    void todos_givenFiltersAfterUpdatesAndDeletes_shouldReturnOnlyCurrentMatches() {
+        var todos = createTodos(new TodoData("first todo", "description"),
+                new TodoData("second todo", "another description"),
+                new TodoData("third todo", "yet another one"));
+
+        repository.update(todos.get(0).id(), new TodoData("first item", "updated"));
+        repository.update(todos.get(2).id(), new TodoData("third todo", "new description"));
+        repository.delete(todos.get(1).id());
+
+        var thirdTodo = new Todo(todos.get(2).id(), "third todo", "new description");
+
+        Assertions.assertEquals(List.of(thirdTodo), repository.todos(new TodosQuery("todo", null)));
+        Assertions.assertEquals(List.of(thirdTodo), repository.todos(new TodosQuery(null, "descr")));
+        Assertions.assertEquals(List.of(new Todo(todos.get(0).id(), "first item", "updated")),
+                repository.todos(new TodosQuery("ITEM", "date")));
+    }
+
+    @Test
+    void todos_givenFiltersWithAfter_shouldReturnNextPagesOfCandidates() {
+        var todos = createTodos(new TodoData("d-todo"),
+                new TodoData("c-todo"),
+                new TodoData("b-item"),
+                new TodoData("a-todo"));
+
+        var byId = repository.todos(new TodosQuery("todo", null, TodosSort.ID, todos.get(0).id(), 1));
+        var byName = repository.todos(new TodosQuery("todo", null, TodosSort.NAME, todos.get(3).id(),
+                "a-todo", 5));
+
+        Assertions.assertEquals(List.of(todos.get(1)), byId);
+        Assertions.assertEquals(List.of(todos.get(1), todos.get(0)), byName);
+    }
+
+    @Test
+    void todos_givenFiltersWithAfterOutOfIdsRange_shouldReturnAllOrNoCandidates() {
+        var todos = createTodos(new TodoData("a-todo"), new TodoData("b-item"), new TodoData("c-todo"));
+        var matching = List.of(todos.get(0), todos.get(2));
+
+        Assertions.assertEquals(List.of(),
+                repository.todos(new TodosQuery("todo", null, TodosSort.ID, Long.MAX_VALUE, 10)));
+        Assertions.assertEquals(List.of(),
+                repository.todos(new TodosQuery("todo", null, TodosSort.ID, (long) Integer.MAX_VALUE, 10)));
+        Assertions.assertEquals(matching,
+                repository.todos(new TodosQuery("todo", null, TodosSort.ID, Long.MIN_VALUE, 10)));
+        Assertions.assertEquals(matching,
+                repository.todos(new TodosQuery("todo", null, TodosSort.ID, -1L - Integer.MAX_VALUE * 4L, 10)));
+    }
+
+    @Test
+    void todos_givenLimitAndAfter_shouldReturnPagesOrderedById() {
+        var todos = createTodos(new TodoData("c-todo"),
+                new TodoData("a-todo"),
+                new TodoData("b-todo"));
+
+        var firstPage = repository.todos(new TodosQuery(null, null, TodosSort.ID, null, 2));
+        var secondPage = repository.todos(new TodosQuery(null, null, TodosSort.ID, firstPage.get(1).id(), 2));
+
+        Assertions.assertEquals(todos.subList(0, 2), firstPage);
+        Assertions.assertEquals(todos.subList(2, 3), secondPage);
+    }
+
+    @Test
+    void todos_givenAfterOutOfIdsRange_shouldReturnAllOrNoTodos() {
+        var todos = createTodos(new TodoData("a-todo"), new TodoData("b-todo"));
+
+        Assertions.assertEquals(List.of(),
+                repository.todos(new TodosQuery(null, null, TodosSort.ID, Long.MAX_VALUE, 10)));
+        Assertions.assertEquals(List.of(),
+                repository.todos(new TodosQuery(null, null, TodosSort.ID, todos.get(1).id(), 10)));
+        Assertions.assertEquals(todos,
+                repository.todos(new TodosQuery(null, null, TodosSort.ID, Long.MIN_VALUE, 10)));
+    }
+
+    @Test
+    void todos_givenLimitAndAfter_shouldReturnFilteredPagesOrderedByNameAndId() {
+        var todos = createTodos(new TodoData("b-todo"),
+                new TodoData("a-todo"),
+                new TodoData("b-todo"),
+                new TodoData("x-item"),
+                new TodoData("c-todo"));
+
+        var firstPage = repository.todos(new TodosQuery("todo", null, TodosSort.NAME, null, 2));
+        var secondPage = repository.todos(new TodosQuery("todo", null, TodosSort.NAME, todos.get(0).id(),
+                "b-todo", 2));
+        var pageAfterNonExistingTodo = repository.todos(new TodosQuery("todo", null, TodosSort.NAME, 99L,
+                "b-todo", 2));
+
+        Assertions.assertEquals(List.of(todos.get(1), todos.get(0)), firstPage);
+        Assertions.assertEquals(List.of(todos.get(2), todos.get(4)), secondPage);
+        Assertions.assertEquals(List.of(todos.get(4)), pageAfterNonExistingTodo);
+    }
+
+    @Test
+    void todos_givenManyOrFewCandidates_shouldReturnTheSamePagesOrderedByNameAndId() {
+        var todos = createTodos(IntStream.range(0, 300)
+                .mapToObj(i -> new TodoData("todo-%03d".formatted((i * 7) % 300), i % 2 == 0 ? "milk" : "bread"))
+                .toArray(TodoData[]::new));
+        var expected = todos.stream()
+                .filter(t -> t.description().equals("milk"))
+                .sorted(Comparator.comparing(Todo::name).thenComparingLong(Todo::id))
+                .toList();
+
+        Assertions.assertTrue(InMemoryTodoRepository.scanCheaper(expected.size(), 7, todos.size()));
+        Assertions.assertFalse(InMemoryTodoRepository.scanCheaper(expected.size(), 1000, todos.size()));
+        Assertions.assertEquals(expected, namePages("milk", 7));
+        Assertions.assertEquals(expected, namePages("milk", 1000));
+    }
+
+    private List<Todo> namePages(String descriptionFilter, int limit) {
+        var pages = new ArrayList<Todo>();
+        List<Todo> page;
+        do {
+            var last = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+            page = repository.todos(new TodosQuery(null, descriptionFilter, TodosSort.NAME,
+                    last == null ? null : last.id(), last == null ? null : last.name(), limit));
+            pages.addAll(page);
+        } while (page.size() == limit);
+        return pages;
+    }
+
+    @Test
+    void todos_givenFieldsWithoutDescription_shouldReturnTodosWithoutItFilteredByIt() {
+        var todos = createTodos(new TodoData("a-todo", "some description"),
+                new TodoData("b-todo", "other description"),
+                new TodoData("c-todo", "some other description"));
+
+        var page = repository.todos(new TodosQuery(null, "some", TodosSort.NAME, null, 10,
+                Set.of(TodoField.ID, TodoField.NAME)));
+
+        Assertions.assertEquals(List.of(new Todo(todos.get(0).id(), "a-todo"), new Todo(todos.get(2).id(), "c-todo")),
+                page);
+    }
+
+    @Test
+    void streamTodos_givenQuery_shouldStreamSamePageAsTodos() {
+        createTodos(new TodoData("b-todo"),
+                new TodoData("a-todo", "description"),
+                new TodoData("c-todo"),
+                new TodoData("d-item"));
+
+        var query = new TodosQuery("todo", null, TodosSort.NAME, null, 2);
+        var streamedTodos = new ArrayList<Todo>();
+
+        repository.streamTodos(query, streamedTodos::add);
+
+        Assertions.assertEquals(repository.todos(query), streamedTodos);
+        Assertions.assertEquals(2, streamedTodos.size());
+    }
+
+    @Test
+    void search_givenQuery_shouldReturnTodosWithAllWordsRankedByRelevance() {
+        var todos = createTodos(new TodoData("buy milk", "and bread"),
+                new TodoData("clean house", "buy new milk bottles, milk is important"),
+                new TodoData("Milk", null),
+                new TodoData("read book", "about cows"));
+
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(2), todos.get(1)),
+                repository.search(new TodosSearch("Milk")));
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(2)),
+                repository.search(new TodosSearch("milk", 2)));
+        Assertions.assertEquals(List.of(todos.get(0)),
+                repository.search(new TodosSearch("bread, milk!")));
+        Assertions.assertEquals(List.of(), repository.search(new TodosSearch("milk cows")));
+    }
+
+    @Test
+    void update_givenExistingTodo_shouldUpdateItKeepingNameOrder() {
+        var todos = createTodos(new TodoData("a-todo"), new TodoData("b-todo"));
+        var firstTodo = todos.get(0);
+
+        repository.update(firstTodo.id(), new TodoData("c-todo", "description"));
+
+        Assertions.assertEquals(List.of(todos.get(1), new Todo(firstTodo.id(), "c-todo", "description")),
+                repository.todos(new TodosQuery(null, null, TodosSort.NAME, null, 10)));
+    }
+
+    @Test
+    void update_givenNonExistingTodo_shouldDoNothing() {
+        repository.update(1, new TodoData("some-todo"));
+
+        Assertions.assertEquals(List.of(), repository.todos(new TodosQuery(null, null)));
+    }
+
+    @Test
+    void delete_givenExistingTodo_shouldDeleteIt() {
+        var todos = createTodos(new TodoData("a-todo"), new TodoData("b-todo"));
+
+        repository.delete(todos.get(0).id());
+
+        Assertions.assertEquals(todos.subList(1, 2),
+                repository.todos(new TodosQuery(null, null, TodosSort.NAME, null, 10)));
+    }
+
+    @Test
+    void givenBatchWrites_shouldApplyThemAndReturnTodosByIds() {
+        var ids = repository.createAll(List.of(new TodoData("a-todo"),
+                new TodoData("b-todo", "description"),
+                new TodoData("c-todo")));
+
+        repository.updateAll(List.of(new Todo(ids.get(0), "updated-todo", "description"), new Todo(99, "xyz")));
+        repository.deleteAll(List.of(ids.get(1), 100L));
+
+        Assertions.assertEquals(List.of(0L, 1L, 2L), ids);
+        Assertions.assertEquals(List.of(new Todo(0, "updated-todo", "description"), new Todo(2, "c-todo")),
+                repository.todos(List.of(2L, 1L, 0L, 99L)));
+        Assertions.assertEquals(List.of(new Todo(0, "updated-todo", "description")),
+                repository.todos(new TodosQuery("updated", "desc")));
+    }
+
+    @Test
+    void version_shouldIncreaseOnlyOnActualWrites() {
+        var initial = repository.version();
+
+        var id = repository.create(new TodoData("some-todo"));
+        var afterCreate = repository.version();
+        repository.update(99, new TodoData("non-existing-todo"));
+        repository.delete(99);
+        var afterNoOpWrites = repository.version();
+        repository.update(id, new TodoData("updated-todo"));
+        repository.delete(id);
+
+        Assertions.assertTrue(afterCreate > initial);
+        Assertions.assertEquals(afterCreate, afterNoOpWrites);
+        Assertions.assertEquals(afterCreate + 2, repository.version());
+    }
+
+    /*
+    Writers create, update and delete their own todos, while readers check that every page they see is consistent:
+    ordered, without duplicates and matching filters.
+    */
+    @Test
+    void givenConcurrentWritersAndReaders_shouldKeepConsistentSnapshotsAndAllWrites() throws Exception {
+        var writers = 4;
+        var readers = 4;
+        var todosPerWriter = 1000;
+        var executor = Executors.newFixedThreadPool(writers + readers);
+        var writing = new CountDownLatch(writers);
+        var expectedTodos = new ConcurrentHashMap<Long, Todo>();
+
+        try {
+            var results = new ArrayList<Future<?>>();
+            for (int w = 0; w < writers; w++) {
+                var writer = w;
+                results.add(executor.submit(() -> {
+                    try {
+                        writeTodos(writer, todosPerWriter, expectedTodos);
+                    } finally {
+                        writing.countDown();
+                    }
+                    return null;
+                }));
+            }
+            for (int r = 0; r < readers; r++) {
+                results.add(executor.submit(() -> {
+                    while (writing.getCount() > 0) {
+                        assertConsistentPages();
+                    }
+                    return null;
+                }));
+            }
+            for (var r : results) {
+                r.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        var expected = expectedTodos.values().stream()
+                .sorted(Comparator.comparingLong(Todo::id))
+                .toList();
+        Assertions.assertEquals(expected, repository.todos(new TodosQuery(null, null, TodosSort.ID, null,
+                TodosQuery.NO_LIMIT)));
+        Assertions.assertEquals(writers * todosPerWriter, repository.create(new TodoData("last")));
+    }
+
+    @Test
+    void putAll_givenNewTodos_shouldBeQueryableAsPutOneByOne() {
+        var existing = createTodos(new TodoData("existing todo", "needle"));
+        var todos = IntStream.range(0, 500)
+                .mapToObj(i -> new Todo(2 * i + 10, "todo-" + i, i % 10 == 0 ? "with needle" : "with hay"))
+                .toList();
+        var oneByOne = new InMemoryTodoRepository();
+        oneByOne.put(existing.get(0));
+        todos.forEach(oneByOne::put);
+
+        repository.putAll(todos);
+
+        for (var query : List.of(new TodosQuery(null, null, TodosSort.ID, null, 1000),
+                new TodosQuery("todo-1", "needle", TodosSort.NAME, null, 1000),
+                new TodosQuery(null, "needle", TodosSort.ID, 100L, 1000))) {
+            Assertions.assertEquals(oneByOne.todos(query), repository.todos(query));
+        }
+        Assertions.assertEquals(1009, repository.create(new TodoData("next")));
+    }
+
+    @Test
+    void putAll_givenExistingOrRepeatedTodos_shouldPutThemInOrder() {
+        var existing = createTodos(new TodoData("existing todo"));
+        var todos = new ArrayList<Todo>();
+        for (int i = 0; i < 200; i++) {
+            todos.add(new Todo(i % 150, "todo-" + i, null));
+        }
+
+        repository.putAll(todos);
+
+        var all = repository.todos(new TodosQuery(null, null, TodosSort.ID, null, 1000));
+        Assertions.assertEquals(150, all.size());
+        Assertions.assertEquals(new Todo(existing.get(0).id(), "todo-150", null), all.get(0));
+        Assertions.assertEquals(new Todo(149, "todo-149", null), all.get(149));
+    }
+
+    private void writeTodos(int writer, int todos, Map<Long, Todo> expectedTodos) {
+        var previousId = -1L;
+        for (int i = 0; i < todos; i++) {
+            var data = new TodoData("writer-%d-todo-%d".formatted(writer, i), "description " + i);
+            var id = repository.create(data);
+            Assertions.assertTrue(id > previousId);
+            previousId = id;
+
+            if (i % 3 == 0) {
+                data = new TodoData("updated-" + data.name(), "updated " + data.description());
+                repository.update(id, data);
+            }
+            if (i % 5 == 0) {
+                repository.delete(id);
+            } else {
+                expectedTodos.put(id, new Todo(id, data.name(), data.description()));
+            }
+        }
+    }
+
+    private void assertConsistentPages() {
+        var byId = repository.todos(new TodosQuery("updated-", null, TodosSort.ID, null, 200));
+        for (int i = 1; i < byId.size(); i++) {
+            Assertions.assertTrue(byId.get(i - 1).id() < byId.get(i).id());
+        }
+        byId.forEach(t -> Assertions.assertTrue(t.name().startsWith("updated-")));
+
+        var byName = repository.todos(new TodosQuery(null, "description 1", TodosSort.NAME, null, 200));
+        for (int i = 1; i < byName.size(); i++) {
+            Assertions.assertTrue(byName.get(i - 1).name().compareTo(byName.get(i).name()) < 0);
+        }
+        byName.forEach(t -> Assertions.assertTrue(t.description().contains("description 1")));
+    }
+
+    private List<Todo> createTodos(TodoData... todos) {
+        return List.of(todos).stream()
+                .map(t -> new Todo(repository.create(t), t.name(), t.description()))
+                .toList();
+    }
+}
@@ -0,0 +1,122 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoField;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+//All SqlTodoRepository test cases, plus the ones specific to prepared statements
+public class JdbcTodoRepositoryTest extends SqlTodoRepositoryTest {
+
+    private static final int PREPARE_THRESHOLD = 1;
+    private static HikariDataSource dataSource;
+
+    @BeforeAll
+    static void dataSourceSetup() {
+        var config = new HikariConfig();
+        config.setJdbcUrl(POSTGRES.getJdbcUrl());
+        config.setUsername(POSTGRES.getUsername());
+        config.setPassword(POSTGRES.getPassword());
+        config.setMaximumPoolSize(1);
+        dataSource = new HikariDataSource(config);
+    }
+
+    @AfterAll
+    static void dataSourceTearDown() {
+        dataSource.close();
+    }
+
+    @Override
+    protected TodoRepository newRepository() {
+        return new JdbcTodoRepository(dataSource, PREPARE_THRESHOLD);
+    }
+
+    @Override
+    protected Duration replicationLag() {
+        return ((JdbcTodoRepository) repository).replicationLag();
+    }
+
+    @Override
+    protected long walPosition() {
+        return ((JdbcTodoRepository) repository).walPosition();
+    }
+
+    @Test
+    void todos_givenQueriesOfDifferentVariants_shouldReturnTheSameTodosAsSqlTodoRepository() {
+        var variants = List.of(
+                new TodosQuery(null, null, TodosSort.ID, null, 10),
+                new TodosQuery("ab", null, TodosSort.ID, 1L, 10),
+                new TodosQuery(null, "abc", TodosSort.NAME, null, 10),
+                new TodosQuery("a", "abcd", TodosSort.NAME, 1L, "ABC todo 1", 10),
+                new TodosQuery("abc", null, TodosSort.NAME, 1L, "ABC todo 12", 10,
+                        Set.of(TodoField.ID, TodoField.NAME)));
+        var todos = IntStream.range(0, 20)
+                .mapToObj(i -> new TodoData("ABC todo " + i, i % 3 == 0 ? null : "abcd ab description " + i))
+                .toList();
+        repository.createAll(todos);
+        var sqlRepository = new SqlTodoRepository(CONTEXT);
+
+        //Executed more times than prepare threshold, so that server-side prepared statements are used as well
+        for (int i = 0; i < 5; i++) {
+            for (var v : variants) {
+                Assertions.assertEquals(sqlRepository.todos(v), repository.todos(v), v.toString());
+            }
+        }
+    }
+
+    @Test
+    void todosSql_shouldBeRenderedForAllVariantsWithTheirParameters() {
+        var variants = 0;
+        for (var nameFilter : JdbcTodoRepository.FilterType.values()) {
+            for (var descriptionFilter : JdbcTodoRepository.FilterType.values()) {
+                for (var sort : TodosSort.values()) {
+                    for (var after : new boolean[]{false, true}) {
+                        for (var description : new boolean[]{false, true}) {
+                            var sql = JdbcTodoRepository.todosSql(new JdbcTodoRepository.TodosQueryVariant(
+                                    nameFilter, descriptionFilter, sort, after, description));
+                            Assertions.assertEquals(expectedParameters(nameFilter, descriptionFilter, sort, after),
+                                    sql.chars().filter(c -> c == '?').count(), sql);
+                            variants++;
+                        }
+                    }
+                }
+            }
+        }
+        Assertions.assertEquals(72, variants);
+    }
+
+    private long expectedParameters(JdbcTodoRepository.FilterType nameFilter,
+                                    JdbcTodoRepository.FilterType descriptionFilter,
+                                    TodosSort sort, boolean after) {
+        var none = JdbcTodoRepository.FilterType.NONE;
+        var afterParameters = after ? (sort == TodosSort.NAME ? 2 : 1) : 0;
+        return (nameFilter == none ? 0 : 1) + (descriptionFilter == none ? 0 : 1) + afterParameters + 1;
+    }
+
+    @Test
+    void createAll_givenManyTodos_shouldReturnIdsInTodosOrder() {
+        var todos = IntStream.range(0, 500)
+                .mapToObj(i -> new TodoData("todo-" + i, i % 2 == 0 ? null : "description-" + i))
+                .toList();
+
+        var ids = repository.createAll(todos);
+
+        Assertions.assertEquals(IntStream.range(0, 500)
+                        .mapToObj(i -> new Todo(ids.get(i), todos.get(i).name(), todos.get(i).description()))
+                        .toList(),
+                repository.todos(ids));
+    }
+}
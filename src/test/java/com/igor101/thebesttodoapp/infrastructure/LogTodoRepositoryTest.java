@@ -0,0 +1,258 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+public class LogTodoRepositoryTest {
+
+    private static final long NO_COMPACTION = Long.MAX_VALUE;
+    private static final String FIRST_LOG = "log-1";
+    @TempDir
+    Path directory;
+    private LogTodoRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    @Test
+    void shouldRecoverTodosAfterWritesOfAllTypes() {
+        repository = newRepository(Duration.ZERO, NO_COMPACTION);
+        var todos = createTodos(new TodoData("first todo", "description"),
+                new TodoData("second todo", null),
+                new TodoData("third todo", "yet another ąę description"),
+                new TodoData("fourth todo"));
+
+        repository.update(todos.get(0).id(), new TodoData("first item", "updated"));
+        repository.updateAll(List.of(new Todo(todos.get(3).id(), "fourth item", "4"),
+                new Todo(999, "non-existing", null)));
+        repository.delete(todos.get(1).id());
+        repository.deleteAll(List.of(todos.get(2).id(), 1000L));
+
+        var expected = List.of(new Todo(todos.get(0).id(), "first item", "updated"),
+                new Todo(todos.get(3).id(), "fourth item", "4"));
+
+        Assertions.assertEquals(expected, allTodos());
+
+        var version = repository.version();
+        reopenRepository(Duration.ZERO, NO_COMPACTION);
+
+        Assertions.assertEquals(expected, allTodos());
+        Assertions.assertEquals(version, repository.version());
+        Assertions.assertEquals(List.of(expected.get(1)), repository.search(new TodosSearch("fourth", 10)));
+    }
+
+    @Test
+    void shouldNotReuseIdsOfDeletedTodosAfterRecovery() {
+        repository = newRepository(Duration.ZERO, NO_COMPACTION);
+        var ids = repository.createAll(List.of(new TodoData("first"), new TodoData("second")));
+        repository.deleteAll(ids);
+
+        reopenRepository(Duration.ZERO, NO_COMPACTION);
+        var id = repository.create(new TodoData("third"));
+
+        Assertions.assertEquals(ids.get(1) + 1, id);
+    }
+
+    @Test
+    void shouldIncreaseVersionOnlyOnActualWritesAndKeepItAcrossRestarts() {
+        repository = newRepository(Duration.ZERO, NO_COMPACTION);
+        var id = repository.create(new TodoData("some-todo"));
+        var version = repository.version();
+
+        repository.update(999, new TodoData("non-existing"));
+        repository.delete(999);
+
+        Assertions.assertEquals(version, repository.version());
+
+        reopenRepository(Duration.ZERO, NO_COMPACTION);
+        repository.update(id, new TodoData("some-other-todo"));
+
+        Assertions.assertTrue(repository.version() > version);
+    }
+
+    @Test
+    void shouldTruncateTornTailOfTheLastLogAndRecoverAllPreviousWrites() throws Exception {
+        repository = newRepository(Duration.ZERO, NO_COMPACTION);
+        var todos = createTodos(new TodoData("first"), new TodoData("second"));
+        repository.close();
+
+        var log = directory.resolve(FIRST_LOG);
+        var validSize = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 50, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        reopenRepository(Duration.ZERO, NO_COMPACTION);
+
+        Assertions.assertEquals(todos, allTodos());
+        Assertions.assertEquals(validSize, Files.size(log));
+        Assertions.assertEquals(todos.get(1).id() + 1, repository.create(new TodoData("third")));
+    }
+
+    @Test
+    void shouldDropRecordOfMismatchedChecksum() throws Exception {
+        repository = newRepository(Duration.ZERO, NO_COMPACTION);
+        var first = createTodos(new TodoData("first"));
+        var validSize = Files.size(directory.resolve(FIRST_LOG));
+        createTodos(new TodoData("second"));
+        repository.close();
+
+        var log = directory.resolve(FIRST_LOG);
+        var bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 2] ^= 1;
+        Files.write(log, bytes);
+
+        reopenRepository(Duration.ZERO, NO_COMPACTION);
+
+        Assertions.assertEquals(first, allTodos());
+        Assertions.assertEquals(validSize, Files.size(log));
+    }
+
+    @Test
+    void shouldFailToRecoverGivenCorruptedLogThatIsNotTheLastOne() throws Exception {
+        repository = newRepository(Duration.ZERO, NO_COMPACTION);
+        createTodos(new TodoData("first"), new TodoData("second"));
+        reopenRepository(Duration.ZERO, NO_COMPACTION);
+        createTodos(new TodoData("third"));
+        repository.close();
+
+        var firstLog = directory.resolve(FIRST_LOG);
+        var bytes = Files.readAllBytes(firstLog);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(firstLog, bytes);
+        repository = null;
+
+        Assertions.assertThrows(UncheckedIOException.class, () -> newRepository(Duration.ZERO, NO_COMPACTION));
+    }
+
+    @Test
+    void shouldCompactLogsToSnapshotAndRecoverFromItAndLogTail() throws Exception {
+        repository = newRepository(Duration.ZERO, 1000);
+        var todos = new ArrayList<>(createTodos(IntStream.range(0, 50)
+                .mapToObj(i -> new TodoData("todo-" + i, "description of " + i))
+                .toArray(TodoData[]::new)));
+        for (int i = 0; i < 10; i++) {
+            var id = todos.get(i).id();
+            repository.update(id, new TodoData("updated-" + i, null));
+            todos.set(i, new Todo(id, "updated-" + i, null));
+        }
+        repository.deleteAll(todos.stream().skip(40).map(Todo::id).toList());
+        todos.subList(40, 50).clear();
+
+        awaitSnapshot();
+        repository.close();
+
+        var files = directoryFiles();
+        Assertions.assertEquals(1, files.stream().filter(f -> f.startsWith("snapshot-")).count(), files.toString());
+        Assertions.assertTrue(files.stream().filter(f -> f.startsWith("log-")).count() <= 2, files.toString());
+
+        reopenRepository(Duration.ZERO, 1000);
+
+        Assertions.assertEquals(todos, allTodos());
+        Assertions.assertEquals(50, repository.create(new TodoData("next")));
+    }
+
+    @Test
+    void shouldSyncLogsInBackgroundGivenFsyncInterval() {
+        repository = newRepository(Duration.ofMillis(10), NO_COMPACTION);
+        var todos = createTodos(new TodoData("first"), new TodoData("second"));
+
+        reopenRepository(Duration.ofMillis(10), NO_COMPACTION);
+
+        Assertions.assertEquals(todos, allTodos());
+    }
+
+    @Test
+    void shouldWriteConcurrentlyAndRecoverAllWrites() throws Exception {
+        repository = newRepository(Duration.ZERO, 2000);
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var futures = new ArrayList<Future<Long>>();
+            for (int i = 0; i < 200; i++) {
+                var name = "todo-" + i;
+                futures.add(executor.submit(() -> repository.create(new TodoData(name))));
+            }
+
+            var ids = new ArrayList<Long>();
+            for (var f : futures) {
+                ids.add(f.get(10, TimeUnit.SECONDS));
+            }
+
+            Assertions.assertEquals(200, ids.stream().distinct().count());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        var beforeRestart = allTodos();
+        awaitSnapshot();
+        reopenRepository(Duration.ZERO, 2000);
+
+        Assertions.assertEquals(200, beforeRestart.size());
+        Assertions.assertEquals(beforeRestart, allTodos());
+    }
+
+    @Test
+    void shouldThrowGivenWriteAfterClose() {
+        repository = newRepository(Duration.ZERO, NO_COMPACTION);
+        repository.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> repository.create(new TodoData("todo")));
+    }
+
+    private LogTodoRepository newRepository(Duration fsyncInterval, long compactionThreshold) {
+        return new LogTodoRepository(directory, fsyncInterval, compactionThreshold);
+    }
+
+    private void reopenRepository(Duration fsyncInterval, long compactionThreshold) {
+        repository.close();
+        repository = newRepository(fsyncInterval, compactionThreshold);
+    }
+
+    private List<Todo> createTodos(TodoData... todos) {
+        var ids = repository.createAll(List.of(todos));
+        return IntStream.range(0, todos.length)
+                .mapToObj(i -> new Todo(ids.get(i), todos[i].name(), todos[i].description()))
+                .toList();
+    }
+
+    private List<Todo> allTodos() {
+        return repository.todos(new TodosQuery(null, null, null, null, Integer.MAX_VALUE));
+    }
+
+    private List<String> directoryFiles() throws Exception {
+        try (var files = Files.list(directory)) {
+            return files.map(f -> f.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    //Compaction happens in the background, it is visible when a snapshot file appears
+    private void awaitSnapshot() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (directoryFiles().stream().anyMatch(f -> f.startsWith("snapshot-") && !f.endsWith(".tmp"))) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        Assertions.fail("No snapshot in " + directoryFiles());
+    }
+}
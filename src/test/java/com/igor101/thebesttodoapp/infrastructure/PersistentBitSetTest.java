@@ -0,0 +1,92 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class PersistentBitSetTest {
+
+    @Test
+    void shouldBehaveAsSetOfIntsGivenRandomAddsAndRemoves() {
+        var random = new Random(101);
+        var set = PersistentBitSet.EMPTY;
+        var expected = new HashSet<Integer>();
+
+        for (int i = 0; i < 100_000; i++) {
+            var value = random.nextInt(50_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(value);
+                set = set.without(value);
+            } else {
+                expected.add(value);
+                set = set.with(value);
+            }
+        }
+
+        Assertions.assertEquals(expected.size(), set.size());
+        for (int v = 0; v < 50_000; v++) {
+            Assertions.assertEquals(expected.contains(v), set.contains(v));
+        }
+
+        var expectedSorted = expected.stream().mapToInt(Integer::intValue).sorted().toArray();
+        Assertions.assertArrayEquals(expectedSorted, set.toArray());
+    }
+
+    @Test
+    void withAll_shouldAddAllValuesAsWithOfEachOne() {
+        var random = new Random(101);
+        var values = random.ints(10_000, 0, 100_000).sorted().toArray();
+        var existing = setOf(1, 50_000, 200_000);
+
+        var expected = existing;
+        for (var v : values) {
+            expected = expected.with(v);
+        }
+        var actual = existing.withAll(values);
+
+        Assertions.assertEquals(expected.size(), actual.size());
+        Assertions.assertArrayEquals(expected.toArray(), actual.toArray());
+        Assertions.assertArrayEquals(new int[]{1, 50_000, 200_000}, existing.toArray());
+        Assertions.assertSame(existing, existing.withAll(new int[]{1, 200_000}));
+    }
+
+    @Test
+    void shouldNotChangePreviousVersions() {
+        var first = setOf(1, 2, 3000);
+        var second = first.with(5_000_000).without(2);
+
+        Assertions.assertArrayEquals(new int[]{1, 2, 3000}, first.toArray());
+        Assertions.assertArrayEquals(new int[]{1, 3000, 5_000_000}, second.toArray());
+    }
+
+    @Test
+    void shouldRejectNegativeValues() {
+        var set = PersistentBitSet.EMPTY;
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> set.with(-1));
+        Assertions.assertFalse(set.contains(-1));
+        Assertions.assertSame(set, set.without(-1));
+    }
+
+    @Test
+    void intersection_givenSets_shouldReturnCommonValues() {
+        var first = setOf(1, 2, 3, 4, 5, 10_000);
+        var second = setOf(2, 4, 5, 6, 10_000);
+        var third = setOf(5, 4, 10, 10_000, 100_000);
+
+        var intersection = PersistentBitSet.intersection(List.of(first, second, third));
+
+        Assertions.assertArrayEquals(new int[]{4, 5, 10_000}, intersection);
+    }
+
+    private PersistentBitSet setOf(int... values) {
+        var set = PersistentBitSet.EMPTY;
+        for (var v : values) {
+            set = set.with(v);
+        }
+        return set;
+    }
+}
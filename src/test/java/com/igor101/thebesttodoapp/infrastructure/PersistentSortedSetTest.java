@@ -0,0 +1,53 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class PersistentSortedSetTest {
+
+    @Test
+    void shouldBehaveAsSortedSetGivenRandomAddsAndRemoves() {
+        var random = new Random(101);
+        var set = PersistentSortedSet.<Integer>empty(Comparator.naturalOrder());
+        var expected = new TreeSet<Integer>();
+
+        for (int i = 0; i < 50_000; i++) {
+            var value = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(value);
+                set = set.without(value);
+            } else {
+                expected.add(value);
+                set = set.with(value);
+            }
+        }
+
+        Assertions.assertEquals(List.copyOf(expected), toList(set));
+        for (var after : List.of(-1, 0, 1000, 2500, 4999)) {
+            Assertions.assertEquals(List.copyOf(expected.tailSet(after, false)), toList(set.tailSet(after)));
+        }
+    }
+
+    @Test
+    void shouldNotChangePreviousVersions() {
+        var first = PersistentSortedSet.<String>empty(Comparator.naturalOrder())
+                .with("b")
+                .with("a");
+        var second = first.with("c").without("a");
+
+        Assertions.assertEquals(List.of("a", "b"), toList(first));
+        Assertions.assertEquals(List.of("b", "c"), toList(second));
+    }
+
+    private <T> List<T> toList(Iterable<T> iterable) {
+        var list = new ArrayList<T>();
+        iterable.forEach(list::add);
+        return list;
+    }
+}
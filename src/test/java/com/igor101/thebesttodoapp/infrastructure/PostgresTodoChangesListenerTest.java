@@ -0,0 +1,122 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.IntegrationTest;
+import com.igor101.thebesttodoapp.core.TodoChange;
+import com.igor101.thebesttodoapp.core.TodoData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class PostgresTodoChangesListenerTest extends IntegrationTest {
+
+    private final LinkedBlockingQueue<TodoChange> changes = new LinkedBlockingQueue<>();
+    private final AtomicInteger missedChanges = new AtomicInteger();
+    private PostgresTodoChangesListener listener;
+    private SqlTodoRepository repository;
+
+    @BeforeEach
+    void setup() {
+        listener = new PostgresTodoChangesListener(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(),
+                POSTGRES.getPassword(), changes::add, missedChanges::incrementAndGet);
+        listener.start();
+        repository = new SqlTodoRepository(CONTEXT);
+    }
+
+    @Override
+    protected void afterEach() {
+        listener.close();
+    }
+
+    @Test
+    void shouldReceiveChangesOfAllTypesInCommitOrder() throws Exception {
+        var ids = repository.createAll(List.of(new TodoData("first", "description"), new TodoData("second")));
+        repository.update(ids.get(1), new TodoData("second-updated", "some ąę description"));
+        repository.delete(ids.get(0));
+
+        Assertions.assertEquals(List.of(
+                        new TodoChange(TodoChange.Type.CREATED, ids.get(0), new TodoData("first", "description")),
+                        new TodoChange(TodoChange.Type.CREATED, ids.get(1), new TodoData("second")),
+                        new TodoChange(TodoChange.Type.UPDATED, ids.get(1),
+                                new TodoData("second-updated", "some ąę description")),
+                        new TodoChange(TodoChange.Type.DELETED, ids.get(0), null)),
+                nextChanges(4));
+    }
+
+    @Test
+    void shouldNotReceiveChangesOfRolledBackTransaction() throws Exception {
+        Assertions.assertThrows(RuntimeException.class, () -> CONTEXT.transaction(c -> {
+            new SqlTodoRepository(c.dsl()).create(new TodoData("rolled-back"));
+            throw new RuntimeException("Rollback");
+        }));
+        var id = repository.create(new TodoData("committed"));
+
+        Assertions.assertEquals(List.of(new TodoChange(TodoChange.Type.CREATED, id, new TodoData("committed"))),
+                nextChanges(1));
+    }
+
+    @Test
+    void shouldReceiveMissedChangesGivenStatementChangingTooManyTodosForNotification() throws Exception {
+        var todos = IntStream.range(0, 301)
+                .mapToObj(i -> new TodoData("todo-" + i))
+                .toList();
+        repository.createAll(todos);
+        var id = repository.create(new TodoData("last"));
+
+        Assertions.assertEquals(List.of(new TodoChange(TodoChange.Type.CREATED, id, new TodoData("last"))),
+                nextChanges(1));
+        Assertions.assertEquals(1, missedChanges.get());
+    }
+
+    @Test
+    void shouldSkipCreatedAndUpdatedChangesOfTodosDeletedBeforeTheyWereRead() throws Exception {
+        var deletedId = CONTEXT.transactionResult(c -> {
+            var transactional = new SqlTodoRepository(c.dsl());
+            var id = transactional.create(new TodoData("deleted"));
+            transactional.delete(id);
+            return id;
+        });
+
+        Assertions.assertEquals(List.of(new TodoChange(TodoChange.Type.DELETED, deletedId, null)), nextChanges(1));
+    }
+
+    @Test
+    void shouldNotReceiveChangesGivenNotificationsDisabled() throws Exception {
+        CONTEXT.connection(c -> PostgresTodoChangesListener.notifyChanges(c, false));
+        try {
+            repository.create(new TodoData("not-notified"));
+
+            Assertions.assertNull(changes.poll(500, TimeUnit.MILLISECONDS));
+        } finally {
+            CONTEXT.connection(c -> PostgresTodoChangesListener.notifyChanges(c, true));
+        }
+
+        var id = repository.create(new TodoData("notified"));
+
+        Assertions.assertEquals(List.of(new TodoChange(TodoChange.Type.CREATED, id, new TodoData("notified"))),
+                nextChanges(1));
+    }
+
+    @Test
+    void changedTodos_givenInvalidPayload_shouldThrow() {
+        Assertions.assertThrows(Exception.class,
+                () -> PostgresTodoChangesListener.changedTodos("{\"type\": \"X\", \"ids\": [1]}"));
+        Assertions.assertThrows(Exception.class, () -> PostgresTodoChangesListener.changedTodos("not-json"));
+    }
+
+    private List<TodoChange> nextChanges(int count) throws Exception {
+        var next = new ArrayList<TodoChange>();
+        for (int i = 0; i < count; i++) {
+            var change = changes.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(change, "Missing change, got only: " + next);
+            next.add(change);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,246 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ReplicaRoutingTodoRepositoryTest {
+
+    private static final Duration MAX_LAG = Duration.ofSeconds(1);
+    private static final Duration MIN_HEDGE_DELAY = Duration.ofMillis(20);
+    private static final TodosQuery ALL_TODOS = new TodosQuery(null, null, null, null, 100);
+    private final FakeReplica primary = new FakeReplica("primary");
+    private final FakeReplica firstReplica = new FakeReplica("first-replica");
+    private final FakeReplica secondReplica = new FakeReplica("second-replica");
+    private final AtomicLong primaryWalPosition = new AtomicLong(100);
+    private ReplicaRoutingTodoRepository repository;
+
+    @BeforeEach
+    void setup() {
+        repository = new ReplicaRoutingTodoRepository(primary, primaryWalPosition::get,
+                List.of(firstReplica.replica(), secondReplica.replica()),
+                4, MAX_LAG, Duration.ofHours(1), MIN_HEDGE_DELAY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ClientWrites.bind(null);
+        repository.close();
+    }
+
+    @Test
+    void shouldRouteReadsToReplicasInTurnsAndWritesToPrimary() {
+        Assertions.assertEquals(Set.of("first-replica", "second-replica"), Set.of(readBy(), readBy()));
+
+        var id = repository.create(new TodoData("new-todo"));
+
+        Assertions.assertEquals(List.of(new Todo(id, "new-todo")), primary.todos(List.of(id)));
+        Assertions.assertEquals(0, firstReplica.writes.get() + secondReplica.writes.get());
+    }
+
+    @Test
+    void shouldReadClientWritesOnlyFromReplicasWhichReplayedThem() {
+        var writePositions = new ArrayList<Long>();
+        ClientWrites.bind(new ClientWrites(0, writePositions::add));
+
+        repository.delete(999);
+
+        Assertions.assertEquals(List.of(100L), writePositions);
+        Assertions.assertEquals("primary", readBy());
+        Assertions.assertEquals(primary.version(), repository.version());
+
+        firstReplica.walPosition = 100;
+        repository.checkReplicas();
+
+        Assertions.assertEquals(Set.of("first-replica"), readsBy(3));
+    }
+
+    @Test
+    void shouldReadFromReplicasGivenClientWithoutWritesAfterWriteOfOtherClient() {
+        ClientWrites.bind(new ClientWrites(0, p -> {
+        }));
+        repository.delete(999);
+
+        ClientWrites.bind(new ClientWrites(0, p -> {
+        }));
+        Assertions.assertEquals(Set.of("first-replica", "second-replica"), readsBy(2));
+
+        ClientWrites.bind(null);
+        Assertions.assertEquals(Set.of("first-replica", "second-replica"), readsBy(2));
+    }
+
+    @Test
+    void shouldNotReadFromReplicaLaggingMoreThanMaxLag() {
+        firstReplica.lag = MAX_LAG.plusMillis(1);
+        repository.checkReplicas();
+
+        Assertions.assertEquals(Set.of("second-replica"), readsBy(5));
+
+        firstReplica.lag = MAX_LAG;
+        repository.checkReplicas();
+
+        Assertions.assertEquals(Set.of("first-replica", "second-replica"), readsBy(5));
+    }
+
+    @Test
+    void shouldReadFromOtherReplicaGivenFailureAndSkipFailedOneUntilNextCheck() {
+        firstReplica.failing = true;
+
+        Assertions.assertEquals(Set.of("second-replica"), readsBy(5));
+        Assertions.assertEquals(1, firstReplica.reads.get());
+
+        firstReplica.failing = false;
+        repository.checkReplicas();
+
+        Assertions.assertEquals(Set.of("first-replica", "second-replica"), readsBy(5));
+    }
+
+    @Test
+    void shouldReadFromPrimaryGivenAllReplicasFailing() {
+        firstReplica.failing = true;
+        secondReplica.failing = true;
+
+        Assertions.assertEquals("primary", readBy());
+
+        repository.checkReplicas();
+
+        Assertions.assertEquals(Set.of("primary"), readsBy(3));
+    }
+
+    @Test
+    void shouldHedgeReadsSlowerThanP95ToOtherReplica() {
+        Assertions.assertEquals(Duration.ofNanos(Long.MAX_VALUE), repository.hedgeDelay());
+
+        readsBy(ReplicaRoutingTodoRepository.MIN_LATENCY_SAMPLES);
+        repository.checkReplicas();
+
+        Assertions.assertEquals(MIN_HEDGE_DELAY, repository.hedgeDelay());
+
+        firstReplica.delayMillis = 1000;
+        for (int i = 0; i < 4; i++) {
+            var start = System.nanoTime();
+
+            Assertions.assertEquals("second-replica", readBy());
+            Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 500);
+        }
+        Assertions.assertEquals(2, repository.hedgedReads());
+    }
+
+    @Test
+    void shouldReturnLowestVersionOfAvailableReplicasAsOfTheirLastCheck() {
+        var checkedVersion = secondReplica.version();
+        IntStream.range(0, 3).forEach(i -> firstReplica.create(new TodoData("todo-" + i)));
+        secondReplica.create(new TodoData("todo"));
+        IntStream.range(0, 5).forEach(i -> primary.create(new TodoData("todo-" + i)));
+
+        Assertions.assertEquals(checkedVersion, repository.version());
+
+        repository.checkReplicas();
+
+        Assertions.assertEquals(secondReplica.version(), repository.version());
+
+        secondReplica.failing = true;
+        repository.checkReplicas();
+
+        Assertions.assertEquals(firstReplica.version(), repository.version());
+    }
+
+    @Test
+    void shouldStreamTodosFromPrimaryGivenReplicaFailureBeforeFirstTodo() {
+        firstReplica.failing = true;
+        secondReplica.failing = true;
+
+        var streamed = new ArrayList<Todo>();
+        repository.streamTodos(ALL_TODOS, streamed::add);
+
+        Assertions.assertEquals(primary.todos(ALL_TODOS), streamed);
+    }
+
+    private String readBy() {
+        return repository.todos(ALL_TODOS).get(0).name();
+    }
+
+    private Set<String> readsBy(int reads) {
+        return IntStream.range(0, reads)
+                .mapToObj(i -> readBy())
+                .collect(Collectors.toSet());
+    }
+
+    //Has a single todo, named as the replica, when created
+    private static class FakeReplica extends InMemoryTodoRepository {
+
+        final String name;
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+        volatile boolean failing;
+        volatile long delayMillis;
+        volatile Duration lag = Duration.ZERO;
+        volatile long walPosition;
+
+        FakeReplica(String name) {
+            this.name = name;
+            super.create(new TodoData(name));
+        }
+
+        ReplicaRoutingTodoRepository.Replica replica() {
+            return new ReplicaRoutingTodoRepository.Replica(name, this, () -> {
+                if (failing) {
+                    throw new RuntimeException("Replica is down");
+                }
+                return lag;
+            }, () -> walPosition);
+        }
+
+        private void read() {
+            reads.incrementAndGet();
+            if (failing) {
+                throw new RuntimeException("Replica is down");
+            }
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public List<Todo> todos(TodosQuery query) {
+            read();
+            return super.todos(query);
+        }
+
+        @Override
+        public void streamTodos(TodosQuery query, Consumer<Todo> consumer) {
+            read();
+            super.streamTodos(query, consumer);
+        }
+
+        @Override
+        public long create(TodoData todo) {
+            writes.incrementAndGet();
+            return super.create(todo);
+        }
+
+        @Override
+        public void delete(long id) {
+            writes.incrementAndGet();
+            super.delete(id);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.igor101.thebesttodoapp.infrastructure;
+
+import com.igor101.thebesttodoapp.IntegrationTest;
+import com.igor101.thebesttodoapp.core.Todo;
+import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//Shards are separate dbs of the test Postgres, with the default collation
+public class ShardedTodoRepositoryTest extends IntegrationTest {
+
+    private static final int SHARDS = 3;
+    //Cancelled streams release their threads asynchronously, so there are more of them than needed
+    private static final int WORKER_THREADS = 4 * SHARDS;
+    private static final List<HikariDataSource> DATA_SOURCES = new ArrayList<>();
+    private static final List<DSLContext> CONTEXTS = new ArrayList<>();
+    private ShardedTodoRepository repository;
+
+    @BeforeAll
+    static void shardsSetup() throws Exception {
+        var schema = Files.readString(Path.of("db", "schema.sql"));
+        var shardSchema = Files.readString(Path.of("db", "shard.sql"));
+        for (int i = 0; i < SHARDS; i++) {
+            var db = "todo_shard_" + i;
+            CONTEXT.execute("DROP DATABASE IF EXISTS " + db);
+            CONTEXT.execute("CREATE DATABASE " + db);
+
+            var config = new HikariConfig();
+            config.setJdbcUrl("jdbc:postgresql://%s:%d/%s".formatted(POSTGRES.getHost(),
+                    POSTGRES.getFirstMappedPort(), db));
+            config.setUsername(POSTGRES.getUsername());
+            config.setPassword(POSTGRES.getPassword());
+            config.setMaximumPoolSize(2);
+            var dataSource = new HikariDataSource(config);
+            DATA_SOURCES.add(dataSource);
+
+            var context = DSL.using(dataSource, SQLDialect.POSTGRES);
+            context.execute(schema);
+            context.execute(shardSchema.replace(":shard_id", String.valueOf(i)));
+            CONTEXTS.add(context);
+        }
+    }
+
+    @AfterAll
+    static void shardsTearDown() {
+        DATA_SOURCES.forEach(HikariDataSource::close);
+    }
+
+    @BeforeEach
+    void setup() {
+        repository = new ShardedTodoRepository(shards(), WORKER_THREADS);
+    }
+
+    private static List<ShardedTodoRepository.Shard> shards() {
+        return IntStream.range(0, SHARDS)
+                .mapToObj(i -> new ShardedTodoRepository.Shard(i, "shard-" + i, CONTEXTS.get(i)))
+                .toList();
+    }
+
+    @Override
+    protected void afterEach() {
+        repository.close();
+        CONTEXTS.forEach(c -> c.truncate("todo").execute());
+    }
+
+    @Test
+    void shouldCreateTodosOnAllShardsWithShardIdsInTheirIds() {
+        var todos = IntStream.range(0, 30)
+                .mapToObj(i -> new TodoData("todo-" + i, "description-" + i))
+                .toList();
+
+        var ids = todos.stream().map(repository::create).toList();
+
+        for (int i = 0; i < SHARDS; i++) {
+            var shard = i;
+            var shardIds = ids.stream().filter(id -> ShardedTodoRepository.shardOf(id) == shard).toList();
+            Assertions.assertFalse(shardIds.isEmpty());
+            Assertions.assertEquals(shardIds, new SqlTodoRepository(CONTEXTS.get(i)).todos(shardIds).stream()
+                    .map(Todo::id)
+                    .toList());
+        }
+        Assertions.assertEquals(IntStream.range(0, 30)
+                        .mapToObj(i -> new Todo(ids.get(i), todos.get(i).name(), todos.get(i).description()))
+                        .sorted(Comparator.comparingLong(Todo::id))
+                        .toList(),
+                repository.todos(ids));
+    }
+
+    @Test
+    void shouldCreateBatchOfTodosOnOneShardAtomically() {
+        var todos = IntStream.range(0, 30)
+                .mapToObj(i -> new TodoData("todo-" + i))
+                .toList();
+
+        var ids = repository.createAll(todos);
+
+        Assertions.assertEquals(1, ids.stream().map(ShardedTodoRepository::shardOf).distinct().count());
+        Assertions.assertEquals(30, repository.todos(ids).size());
+
+        var failingTodos = new ArrayList<TodoData>();
+        for (int i = 0; i < 30; i++) {
+            failingTodos.add(new TodoData(i == 29 ? null : "failing-todo-" + i));
+        }
+        for (int i = 0; i < SHARDS; i++) {
+            Assertions.assertThrows(RuntimeException.class, () -> repository.createAll(failingTodos));
+        }
+
+        Assertions.assertEquals(30, repository.todos(new TodosQuery(null, null, TodosSort.ID, null, 100)).size());
+    }
+
+    @Test
+    void shouldUpdateTodosOfOtherShardsGivenUpdateFailingOnOneShard() {
+        var first = repository.create(new TodoData("first-todo"));
+        var second = repository.create(new TodoData("second-todo"));
+        Assertions.assertNotEquals(ShardedTodoRepository.shardOf(first), ShardedTodoRepository.shardOf(second));
+
+        Assertions.assertThrows(RuntimeException.class, () -> repository.updateAll(
+                List.of(new Todo(first, "updated-first-todo"), new Todo(second, null))));
+
+        Assertions.assertEquals(Set.of(new Todo(first, "updated-first-todo"), new Todo(second, "second-todo")),
+                Set.copyOf(repository.todos(List.of(first, second))));
+    }
+
+    @Test
+    void shouldNotStartGivenShardWithoutItsSequence() {
+        var shards = new ArrayList<>(shards());
+        shards.add(new ShardedTodoRepository.Shard(SHARDS, "not-prepared-shard", CONTEXT));
+
+        var exception = Assertions.assertThrows(IllegalStateException.class,
+                () -> new ShardedTodoRepository(shards, WORKER_THREADS));
+
+        Assertions.assertTrue(exception.getMessage().contains("shard.sql"));
+    }
+
+    @Test
+    void shouldNotStartGivenShardWithTodosOfOtherShardsIds() {
+        CONTEXTS.get(1).execute("INSERT INTO todo (id, name) VALUES (2, 'todo-of-other-shard')");
+
+        var exception = Assertions.assertThrows(IllegalStateException.class,
+                () -> new ShardedTodoRepository(shards(), WORKER_THREADS));
+
+        Assertions.assertTrue(exception.getMessage().contains("shard-1 has 1 todos of other shards ids"));
+    }
+
+    //Worker threads are kept busy by updates (of todos of every shard) waiting for rows locked by the test
+    @Test
+    void shouldRejectCallsGivenAllWorkerThreadsBusy() throws Exception {
+        var todos = new ArrayList<Todo>();
+        while (todos.stream().map(t -> ShardedTodoRepository.shardOf(t.id())).distinct().count() < SHARDS) {
+            todos.add(new Todo(repository.create(new TodoData("some-todo")), "some-todo"));
+        }
+        var limitedRepository = new ShardedTodoRepository(shards(), SHARDS - 1);
+        var lockingConnections = new ArrayList<Connection>();
+        try {
+            for (var dataSource : DATA_SOURCES) {
+                var connection = dataSource.getConnection();
+                lockingConnections.add(connection);
+                connection.setAutoCommit(false);
+                connection.createStatement().execute("SELECT id FROM todo FOR UPDATE");
+            }
+            var update = CompletableFuture.runAsync(() -> limitedRepository.updateAll(todos));
+            awaitLockWaits(SHARDS);
+
+            Assertions.assertThrows(RejectedExecutionException.class, () -> limitedRepository.streamTodos(
+                    new TodosQuery(null, null, TodosSort.ID, null, TodosQuery.NO_LIMIT), t -> {
+                    }));
+
+            for (var c : lockingConnections) {
+                c.rollback();
+            }
+            update.get(5, TimeUnit.SECONDS);
+        } finally {
+            for (var c : lockingConnections) {
+                c.close();
+            }
+            limitedRepository.close();
+        }
+    }
+
+    private static void awaitLockWaits(int waits) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 5000;
+        while (((Number) CONTEXT.fetchValue("SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'"))
+                .intValue() < waits) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Updates are not waiting for locks");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void shouldReturnFilteredPagesSortedByIdAndNameOfAllShards() {
+        var todos = new ArrayList<>(createTodos(60));
+        for (var name : List.of("B-todo", "a-todo", "é-todo", "Z-todo", "_todo")) {
+            todos.add(new Todo(repository.create(new TodoData(name)), name));
+        }
+        var filter = "todo-1";
+        var filtered = todos.stream()
+                .filter(t -> t.name().contains(filter))
+                .toList();
+
+        Assertions.assertEquals(sorted(filtered, TodosSort.ID), allPages(filter, TodosSort.ID, 4));
+        var sortedByName = sorted(todos, TodosSort.NAME);
+        Assertions.assertEquals(sortedByName, allPages(null, TodosSort.NAME, 7));
+        var last = sortedByName.get(sortedByName.size() - 1);
+        Assertions.assertEquals(List.of(),
+                repository.todos(new TodosQuery(null, null, TodosSort.NAME, last.id(), last.name(), 10)));
+    }
+
+    //U+FF21 is after every char of a surrogate pair, but before the code point of any supplementary character
+    @Test
+    void shouldReturnPagesAndStreamsSortedByNameCodePointsGivenSupplementaryCharacters() {
+        var fullwidthNames = new ArrayList<String>();
+        var emojiNames = new ArrayList<String>();
+        for (int i = 0; i < 2 * SHARDS; i++) {
+            fullwidthNames.add("\uFF21-todo-" + i);
+            emojiNames.add("\uD83D\uDE00-todo-" + i);
+        }
+        for (int i = 0; i < fullwidthNames.size(); i++) {
+            repository.create(new TodoData(emojiNames.get(i)));
+            repository.create(new TodoData(fullwidthNames.get(i)));
+        }
+        var expectedNames = new ArrayList<>(fullwidthNames);
+        expectedNames.addAll(emojiNames);
+
+        var streamed = new ArrayList<Todo>();
+        repository.streamTodos(new TodosQuery(null, null, TodosSort.NAME, null, TodosQuery.NO_LIMIT),
+                streamed::add);
+
+        Assertions.assertEquals(expectedNames, allPages(null, TodosSort.NAME, 5).stream().map(Todo::name).toList());
+        Assertions.assertEquals(expectedNames, streamed.stream().map(Todo::name).toList());
+        Assertions.assertTrue(ShardedTodoRepository.compareCodePoints("\uFF21", "\uD83D\uDE00") < 0);
+        Assertions.assertTrue(ShardedTodoRepository.compareCodePoints("a", "a\uD83D\uDE00") < 0);
+        Assertions.assertEquals(0, ShardedTodoRepository.compareCodePoints("\uD83D\uDE00", "\uD83D\uDE00"));
+    }
+
+    private List<Todo> allPages(String nameFilter, TodosSort sort, int limit) {
+        var pages = new ArrayList<Todo>();
+        Long after = null;
+        String afterName = null;
+        while (true) {
+            var page = repository.todos(new TodosQuery(nameFilter, null, sort, after, afterName, limit));
+            Assertions.assertTrue(page.size() <= limit);
+            if (page.isEmpty()) {
+                return pages;
+            }
+            pages.addAll(page);
+            after = page.get(page.size() - 1).id();
+            afterName = page.get(page.size() - 1).name();
+        }
+    }
+
+    private List<Todo> sorted(List<Todo> todos, TodosSort sort) {
+        var comparator = sort == TodosSort.NAME ?
+                Comparator.comparing(Todo::name, ShardedTodoRepository::compareCodePoints).thenComparingLong(Todo::id) :
+                Comparator.comparingLong(Todo::id);
+        return todos.stream().sorted(comparator).toList();
+    }
+
+    @Test
+    void shouldStreamTodosOfAllShardsInOrder() {
+        var todos = createTodos(SqlTodoRepository.STREAM_FETCH_SIZE * 2 + 1);
+        var sortedByName = sorted(todos, TodosSort.NAME);
+
+        var streamed = new ArrayList<Todo>();
+        repository.streamTodos(new TodosQuery(null, null, TodosSort.NAME, null, TodosQuery.NO_LIMIT),
+                streamed::add);
+        var limitedStreamed = new ArrayList<Todo>();
+        repository.streamTodos(new TodosQuery(null, null, TodosSort.NAME, sortedByName.get(9).id(),
+                sortedByName.get(9).name(), 5), limitedStreamed::add);
+
+        Assertions.assertEquals(sortedByName, streamed);
+        Assertions.assertEquals(sortedByName.subList(10, 15), limitedStreamed);
+    }
+
+    @Test
+    void shouldCancelShardsStreamsGivenFailingConsumer() {
+        var todos = createTodos(SqlTodoRepository.STREAM_FETCH_SIZE * 4);
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertThrows(IllegalStateException.class,
+                    () -> repository.streamTodos(new TodosQuery(null, null, TodosSort.ID, null, TodosQuery.NO_LIMIT),
+                            t -> {
+                                throw new IllegalStateException("Consumer failure");
+                            }));
+        }
+
+        Assertions.assertEquals(sorted(todos, TodosSort.ID).subList(0, 10),
+                repository.todos(new TodosQuery(null, null, TodosSort.ID, null, 10)));
+    }
+
+    @Test
+    void shouldSearchTodosOfAllShardsRankedByRelevance() {
+        var milkTodos = new ArrayList<Todo>();
+        for (int i = 0; i < 6; i++) {
+            var todo = new TodoData(i % 2 == 0 ? "buy milk " + i : "clean house " + i,
+                    i % 2 == 0 ? "and bread" : "buy new milk bottles");
+            milkTodos.add(new Todo(repository.create(todo), todo.name(), todo.description()));
+        }
+        repository.createAll(List.of(new TodoData("read book"), new TodoData("walk dog")));
+
+        var expected = milkTodos.stream()
+                .sorted(Comparator.<Todo, Boolean>comparing(t -> t.name().startsWith("clean"))
+                        .thenComparingLong(Todo::id))
+                .toList();
+
+        Assertions.assertEquals(expected, repository.search(new TodosSearch("milk")));
+        Assertions.assertEquals(expected.subList(0, 2), repository.search(new TodosSearch("milk", 2)));
+    }
+
+    @Test
+    void shouldUpdateAndDeleteTodosOnTheirShards() {
+        var todos = createTodos(12);
+        var nonExistingShardId = (long) ShardedTodoRepository.MAX_SHARDS * 10 + SHARDS;
+
+        repository.update(todos.get(0).id(), new TodoData("updated-0"));
+        repository.updateAll(List.of(new Todo(todos.get(1).id(), "updated-1", "updated description"),
+                new Todo(todos.get(2).id(), "updated-2"),
+                new Todo(nonExistingShardId, "non-existing")));
+        repository.delete(todos.get(3).id());
+        repository.deleteAll(List.of(todos.get(4).id(), todos.get(5).id(), nonExistingShardId));
+        repository.delete(nonExistingShardId);
+
+        var expected = new ArrayList<Todo>();
+        expected.add(new Todo(todos.get(0).id(), "updated-0"));
+        expected.add(new Todo(todos.get(1).id(), "updated-1", "updated description"));
+        expected.add(new Todo(todos.get(2).id(), "updated-2"));
+        expected.addAll(todos.subList(6, 12));
+
+        Assertions.assertEquals(sorted(expected, TodosSort.ID),
+                repository.todos(new TodosQuery(null, null, TodosSort.ID, null, 100)));
+    }
+
+    @Test
+    void shouldIncreaseVersionGivenWriteOnAnyShard() {
+        var version = repository.version();
+
+        for (var context : CONTEXTS) {
+            new SqlTodoRepository(context).create(new TodoData("direct-todo"));
+
+            var newVersion = repository.version();
+            Assertions.assertTrue(newVersion > version);
+            version = newVersion;
+        }
+    }
+
+    @Test
+    void shouldNotCreateTodosOnDrainedShardButKeepServingItsTodos() {
+        var todos = createTodos(30);
+        var drainedTodo = todos.stream()
+                .filter(t -> ShardedTodoRepository.shardOf(t.id()) == 0)
+                .findFirst()
+                .orElseThrow();
+
+        repository.rebalance(Map.of(1, 1, 2, 3));
+        var ids = IntStream.range(0, 100)
+                .mapToObj(i -> repository.create(new TodoData("rebalanced-todo-" + i)))
+                .toList();
+        repository.update(drainedTodo.id(), new TodoData("updated-drained-todo"));
+
+        var idsShards = ids.stream()
+                .collect(Collectors.groupingBy(ShardedTodoRepository::shardOf, Collectors.counting()));
+        Assertions.assertEquals(Set.of(1, 2), idsShards.keySet());
+        Assertions.assertTrue(idsShards.get(2) > idsShards.get(1));
+        Assertions.assertEquals(List.of(new Todo(drainedTodo.id(), "updated-drained-todo")),
+                repository.todos(List.of(drainedTodo.id())));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> repository.rebalance(Map.of(SHARDS, 1)));
+    }
+
+    //In batches of 10, so that they are spread across shards
+    private List<Todo> createTodos(int count) {
+        var todos = IntStream.range(0, count)
+                .mapToObj(i -> new TodoData("todo-" + (count - i), "description-" + i))
+                .toList();
+        var ids = new ArrayList<Long>();
+        for (int i = 0; i < count; i += 10) {
+            ids.addAll(repository.createAll(todos.subList(i, Math.min(count, i + 10))));
+        }
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Todo(ids.get(i), todos.get(i).name(), todos.get(i).description()))
+                .toList();
+    }
+}
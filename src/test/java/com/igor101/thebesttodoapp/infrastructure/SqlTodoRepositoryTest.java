@@ -3,6 +3,11 @@ package com.igor101.thebesttodoapp.infrastructure;
 import com.igor101.thebesttodoapp.IntegrationTest;
 import com.igor101.thebesttodoapp.core.Todo;
 import com.igor101.thebesttodoapp.core.TodoData;
+import com.igor101.thebesttodoapp.core.TodoField;
+import com.igor101.thebesttodoapp.core.TodoRepository;
+import com.igor101.thebesttodoapp.core.TodosQuery;
+import com.igor101.thebesttodoapp.core.TodosSearch;
+import com.igor101.thebesttodoapp.core.TodosSort;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,20 +15,37 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 public class SqlTodoRepositoryTest extends IntegrationTest {
 
-    private SqlTodoRepository repository;
+    protected TodoRepository repository;
 
     @BeforeEach
     void setup() {
-        repository = new SqlTodoRepository(CONTEXT);
+        repository = newRepository();
+    }
+
+    //The same test cases are run against JdbcTodoRepository
+    protected TodoRepository newRepository() {
+        return new SqlTodoRepository(CONTEXT);
+    }
+
+    protected Duration replicationLag() {
+        return ((SqlTodoRepository) repository).replicationLag();
+    }
+
+    protected long walPosition() {
+        return ((SqlTodoRepository) repository).walPosition();
     }
 
     @Test
     void todos_withEmptyDb_shouldReturnEmpty() {
-        Assertions.assertEquals(List.of(), repository.todos(null, null));
+        Assertions.assertEquals(List.of(), repository.todos(new TodosQuery(null, null)));
     }
 
     @ParameterizedTest
@@ -32,7 +54,139 @@ public class SqlTodoRepositoryTest extends IntegrationTest {
         var testCaseData = prepareTodosTestCase(testCase);
 
         Assertions.assertEquals(testCaseData.expectedTodos(),
-                repository.todos(testCaseData.nameFilter(), testCaseData.descriptionFilter()));
+                repository.todos(new TodosQuery(testCaseData.nameFilter(), testCaseData.descriptionFilter())));
+    }
+
+    @Test
+    void todos_givenFiltersWithLikeWildcards_shouldMatchThemLiterally() {
+        var todos = List.of(new Todo(1, "100% done", "a_b"),
+                new Todo(2, "100 done", "axb"),
+                new Todo(3, "some!todo", "ab"));
+
+        createTodos(todos);
+
+        Assertions.assertEquals(List.of(todos.get(0)), repository.todos(new TodosQuery("0% D", null)));
+        Assertions.assertEquals(List.of(todos.get(0)), repository.todos(new TodosQuery(null, "A_B")));
+        Assertions.assertEquals(List.of(todos.get(0)), repository.todos(new TodosQuery(null, "_")));
+        Assertions.assertEquals(List.of(todos.get(2)), repository.todos(new TodosQuery("e!t", null)));
+    }
+
+    @Test
+    void todos_givenShortFilters_shouldReturnCaseInsensitiveMatches() {
+        var todos = List.of(new Todo(1, "Ab-todo"),
+                new Todo(2, "todo", "some aB"),
+                new Todo(3, "xab", "ab"));
+
+        createTodos(todos);
+
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(2)), repository.todos(new TodosQuery("aB", null)));
+        Assertions.assertEquals(List.of(todos.get(1)), repository.todos(new TodosQuery("T", "b")));
+    }
+
+    @Test
+    void todos_givenLimitAndAfter_shouldReturnPagesOrderedById() {
+        var todos = List.of(new Todo(3, "c-todo"),
+                new Todo(1, "b-todo"),
+                new Todo(5, "e-todo", "some-description"),
+                new Todo(2, "a-todo"),
+                new Todo(4, "d-todo"));
+
+        createTodos(todos);
+
+        var firstPage = repository.todos(new TodosQuery(null, null, TodosSort.ID, null, 2));
+        var secondPage = repository.todos(new TodosQuery(null, null, TodosSort.ID, 2L, 2));
+        var lastPage = repository.todos(new TodosQuery(null, null, TodosSort.ID, 4L, 2));
+
+        Assertions.assertEquals(List.of(todos.get(1), todos.get(3)), firstPage);
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(4)), secondPage);
+        Assertions.assertEquals(List.of(todos.get(2)), lastPage);
+    }
+
+    @Test
+    void todos_givenLimitAndAfter_shouldReturnFilteredPagesOrderedByNameAndId() {
+        var todos = List.of(new Todo(1, "b-todo"),
+                new Todo(2, "a-todo"),
+                new Todo(3, "b-todo"),
+                new Todo(4, "x-item"),
+                new Todo(5, "c-todo"));
+
+        createTodos(todos);
+
+        var firstPage = repository.todos(new TodosQuery("todo", null, TodosSort.NAME, null, 2));
+        var secondPage = repository.todos(new TodosQuery("todo", null, TodosSort.NAME, 1L, "b-todo", 2));
+        var pageAfterNonExistingTodo = repository.todos(new TodosQuery("todo", null, TodosSort.NAME, 99L,
+                "b-todo", 2));
+
+        Assertions.assertEquals(List.of(todos.get(1), todos.get(0)), firstPage);
+        Assertions.assertEquals(List.of(todos.get(2), todos.get(4)), secondPage);
+        Assertions.assertEquals(List.of(todos.get(4)), pageAfterNonExistingTodo);
+    }
+
+    @Test
+    void todos_givenFieldsWithoutDescription_shouldReturnTodosWithoutItFilteredByIt() {
+        var todos = List.of(new Todo(1, "a-todo", "some description"),
+                new Todo(2, "b-todo", "other description"),
+                new Todo(3, "c-todo", "some other description"));
+
+        createTodos(todos);
+
+        var fields = Set.of(TodoField.ID, TodoField.NAME);
+        var page = repository.todos(new TodosQuery(null, "some", TodosSort.NAME, null, 10, fields));
+        var streamedTodos = new ArrayList<Todo>();
+        repository.streamTodos(new TodosQuery(null, null, TodosSort.ID, 1L, 10, fields), streamedTodos::add);
+
+        Assertions.assertEquals(List.of(new Todo(1, "a-todo"), new Todo(3, "c-todo")), page);
+        Assertions.assertEquals(List.of(new Todo(2, "b-todo"), new Todo(3, "c-todo")), streamedTodos);
+    }
+
+    @Test
+    void streamTodos_givenMoreTodosThanFetchSize_shouldStreamAllFilteredTodosInOrder() {
+        var todos = IntStream.rangeClosed(1, SqlTodoRepository.STREAM_FETCH_SIZE * 2 + 1)
+                .mapToObj(i -> new Todo(i, (i % 2 == 0 ? "even-" : "odd-") + i, "description" + i))
+                .toList();
+
+        createTodos(todos);
+
+        var streamedTodos = new ArrayList<Todo>();
+
+        repository.streamTodos(new TodosQuery("odd", null, TodosSort.ID, null, TodosQuery.NO_LIMIT),
+                streamedTodos::add);
+
+        var expectedTodos = todos.stream()
+                .filter(t -> t.name().startsWith("odd"))
+                .toList();
+
+        Assertions.assertEquals(expectedTodos, streamedTodos);
+    }
+
+    @Test
+    void search_givenQuery_shouldReturnTodosWithAllWordsRankedByRelevance() {
+        var todos = List.of(new Todo(1, "buy milk", "and bread"),
+                new Todo(2, "clean house", "buy new milk bottles, milk is important"),
+                new Todo(3, "Milk", null),
+                new Todo(4, "read book", "about cows"));
+
+        createTodos(todos);
+
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(2), todos.get(1)),
+                repository.search(new TodosSearch("Milk")));
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(2)),
+                repository.search(new TodosSearch("milk", 2)));
+        Assertions.assertEquals(List.of(todos.get(0)),
+                repository.search(new TodosSearch("bread, milk!")));
+        Assertions.assertEquals(List.of(), repository.search(new TodosSearch("milk cows")));
+    }
+
+    @Test
+    void search_givenQueryWithDifferentWordForms_shouldReturnMatchingTodos() {
+        var todos = List.of(new Todo(1, "bottles", "clean them"),
+                new Todo(2, "cleaning", "a bottle"),
+                new Todo(3, "other todo", "nothing"));
+
+        createTodos(todos);
+
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(1)),
+                repository.search(new TodosSearch("bottle cleaned")));
     }
 
     @ParameterizedTest
@@ -93,6 +247,102 @@ public class SqlTodoRepositoryTest extends IntegrationTest {
         Assertions.assertEquals(secondTodo, todoById(secondTodoId));
     }
 
+    @Test
+    void todosByIds_givenIds_shouldReturnExistingTodosOrderedById() {
+        var todos = List.of(new Todo(1, "first-todo"),
+                new Todo(2, "second-todo", "description"),
+                new Todo(3, "third-todo"));
+        createTodos(todos);
+
+        Assertions.assertEquals(List.of(todos.get(0), todos.get(2)), repository.todos(List.of(3L, 99L, 1L)));
+    }
+
+    @Test
+    void createAll_givenTodos_shouldCreateThemReturningIdsInTheirOrder() {
+        var todos = List.of(new TodoData("first-todo"),
+                new TodoData("second-todo", "description"),
+                new TodoData("third-todo"));
+
+        var ids = repository.createAll(todos);
+
+        Assertions.assertEquals(todos.size(), ids.size());
+        for (int i = 0; i < todos.size(); i++) {
+            Assertions.assertEquals(toTodo(ids.get(i), todos.get(i)), todoById(ids.get(i)));
+        }
+    }
+
+    @Test
+    void updateAll_givenExistingAndNonExistingTodos_shouldUpdateExistingOnes() {
+        var todo = new Todo(1, "first-todo");
+        var anotherTodo = new Todo(2, "second-todo", "description");
+        createTodos(List.of(todo, anotherTodo));
+
+        var updatedTodo = new Todo(todo.id(), "updated-todo", "updated description");
+
+        repository.updateAll(List.of(updatedTodo, new Todo(99, "non-existing")));
+
+        Assertions.assertEquals(updatedTodo, todoById(todo.id()));
+        Assertions.assertEquals(anotherTodo, todoById(anotherTodo.id()));
+        Assertions.assertNull(todoById(99));
+    }
+
+    @Test
+    void deleteAll_givenIds_shouldDeleteTheirTodos() {
+        var todos = List.of(new Todo(1, "first-todo"),
+                new Todo(2, "second-todo"),
+                new Todo(3, "third-todo"));
+        createTodos(todos);
+
+        repository.deleteAll(List.of(1L, 3L, 99L));
+
+        Assertions.assertEquals(List.of(todos.get(1)), repository.todos(new TodosQuery(null, null)));
+    }
+
+    @Test
+    void version_shouldIncreaseOnEveryWriteIncludingTheOnesBypassingRepository() {
+        var versions = new ArrayList<Long>();
+        versions.add(repository.version());
+
+        var id = repository.create(new TodoData("some-todo"));
+        versions.add(repository.version());
+        repository.updateAll(List.of(new Todo(id, "updated-todo")));
+        versions.add(repository.version());
+        CONTEXT.execute("INSERT INTO todo (name) VALUES ('another-todo')");
+        versions.add(repository.version());
+        repository.deleteAll(List.of(id));
+        versions.add(repository.version());
+
+        for (int i = 1; i < versions.size(); i++) {
+            Assertions.assertTrue(versions.get(i) > versions.get(i - 1), "Versions should increase: " + versions);
+        }
+    }
+
+    @Test
+    void version_givenRolledBackWrite_shouldNotChange() {
+        var version = repository.version();
+
+        Assertions.assertThrows(RuntimeException.class, () -> CONTEXT.transaction(c -> {
+            new SqlTodoRepository(c.dsl()).create(new TodoData("some-todo"));
+            throw new RuntimeException("rollback");
+        }));
+
+        Assertions.assertEquals(version, repository.version());
+    }
+
+    @Test
+    void replicationLag_givenPrimary_shouldBeZero() {
+        Assertions.assertEquals(Duration.ZERO, replicationLag());
+    }
+
+    @Test
+    void walPosition_givenPrimary_shouldBePastWrites() {
+        var before = walPosition();
+
+        repository.create(new TodoData("some-todo"));
+
+        Assertions.assertTrue(walPosition() > before);
+    }
+
     private TodosTestCaseData prepareTodosTestCase(TodosTestCase testCase) {
         return switch (testCase) {
             case NULL_FILTERS, EMPTY_FILTERS -> prepareNullOrEmptyTestCase(testCase);